@@ -61,20 +61,20 @@ public final class AtomAtomMapping implements Serializable {
     private static final ILoggingTool LOGGER
             = LoggingToolFactory.createLoggingTool(AtomAtomMapping.class);
 
-    class MyQueryIAtomComp implements Comparator<IAtom> {
-
-        @Override
-        public int compare(IAtom o1, IAtom o2) {
-            int atomNumber1 = getQuery().indexOf(o1);
-            int atomNumber2 = getQuery().indexOf(o2);
-            return atomNumber1 - atomNumber2;
-        }
-    }
-    private static final long serialVersionUID = 1223637237262778L;
+    private static final long serialVersionUID = 1223637237262779L;
+    private static final int UNMAPPED = -1;
     private final IAtomContainer query;
     private final IAtomContainer target;
-    private final Map<IAtom, IAtom> mapping;
-    private final Map<Integer, Integer> mappingIndex;
+    /*
+     * query atom index -> target atom index, UNMAPPED (-1) if not mapped
+     */
+    private int[] queryToTarget;
+    private int count;
+    /*
+     * Map views generated on demand and dropped on change
+     */
+    private transient Map<IAtom, IAtom> atomView;
+    private transient SortedMap<Integer, Integer> indexView;
 
     @Override
     public boolean equals(Object obj) {
@@ -91,19 +91,19 @@ public final class AtomAtomMapping implements Serializable {
         if (this.getTarget() != other.getTarget() && (this.getTarget() == null || !this.target.equals(other.target))) {
             return false;
         }
-        if (this.mapping != other.getMappingsByAtoms() && (this.mapping == null || !this.mapping.equals(other.mapping))) {
-            return false;
+        int[] otherMapping = other.getMappingIndexArray();
+        synchronized (this) {
+            return this.count == other.count
+                    && Arrays.equals(queryToTarget, otherMapping);
         }
-        return this.mappingIndex == other.getMappingsByIndex() || (this.mappingIndex != null && this.mappingIndex.equals(other.mappingIndex));
     }
 
     @Override
-    public int hashCode() {
+    public synchronized int hashCode() {
         int hash = 7;
         hash = 67 * hash + (this.getQuery() != null ? this.getQuery().hashCode() : 0);
         hash = 67 * hash + (this.getTarget() != null ? this.getTarget().hashCode() : 0);
-        hash = 67 * hash + (this.mapping != null ? this.getMappingsByAtoms().hashCode() : 0);
-        hash = 67 * hash + (this.mappingIndex != null ? this.getMappingsByIndex().hashCode() : 0);
+        hash = 67 * hash + Arrays.hashCode(queryToTarget);
         return hash;
     }
 
@@ -115,8 +115,22 @@ public final class AtomAtomMapping implements Serializable {
     public AtomAtomMapping(IAtomContainer query, IAtomContainer target) {
         this.query = query;
         this.target = target;
-        mapping = new TreeMap<>(new MyQueryIAtomComp());
-        this.mappingIndex = Collections.synchronizedSortedMap(new TreeMap<>());
+        this.queryToTarget = new int[query == null ? 0 : query.getAtomCount()];
+        Arrays.fill(this.queryToTarget, UNMAPPED);
+        this.count = 0;
+    }
+
+    /**
+     * Copy of the mapping on the same molecules
+     *
+     * @param aam
+     */
+    public AtomAtomMapping(AtomAtomMapping aam) {
+        this(aam.getQuery(), aam.getTarget());
+        synchronized (aam) {
+            this.queryToTarget = aam.queryToTarget.clone();
+            this.count = aam.count;
+        }
     }
 
     /**
@@ -125,14 +139,82 @@ public final class AtomAtomMapping implements Serializable {
      * @param atom2
      */
     public synchronized void put(IAtom atom1, IAtom atom2) {
-        try {
-            atom1.setID(atom1.getID() == null ? getQuery().indexOf(atom1) + "" : atom1.getID());
-            atom2.setID(atom2.getID() == null ? getTarget().indexOf(atom2) + "" : atom2.getID());
-            mapping.put(atom1, atom2);
-            mappingIndex.put(getQuery().indexOf(atom1), getTarget().indexOf(atom2));
-        } catch (Exception e) {
-            LOGGER.error("Error: Add Mapping to the Map", e.getMessage());
+        int queryIndex = getQuery().indexOf(atom1);
+        int targetIndex = getTarget().indexOf(atom2);
+        if (queryIndex < 0 || targetIndex < 0) {
+            LOGGER.warn("Mapping of atom " + (atom1 == null ? null : atom1.getID())
+                    + " to " + (atom2 == null ? null : atom2.getID())
+                    + " dropped, atom not in the " + (queryIndex < 0 ? "query" : "target"));
+            return;
+        }
+        put(queryIndex, targetIndex);
+    }
+
+    /**
+     * Add mapping by atom index
+     *
+     * @param queryIndex index of the atom in the query
+     * @param targetIndex index of the atom in the target
+     */
+    public synchronized void put(int queryIndex, int targetIndex) {
+        if (queryIndex < 0 || targetIndex < 0) {
+            LOGGER.error("Error: Add Mapping to the Map", "atom not found in the query/target");
+            return;
+        }
+        if (queryIndex >= queryToTarget.length) {
+            int length = queryToTarget.length;
+            queryToTarget = Arrays.copyOf(queryToTarget, Math.max(queryIndex + 1, getQuery().getAtomCount()));
+            Arrays.fill(queryToTarget, length, queryToTarget.length, UNMAPPED);
+        }
+        IAtom atom1 = getQuery().getAtom(queryIndex);
+        IAtom atom2 = getTarget().getAtom(targetIndex);
+        atom1.setID(atom1.getID() == null ? queryIndex + "" : atom1.getID());
+        atom2.setID(atom2.getID() == null ? targetIndex + "" : atom2.getID());
+        if (queryToTarget[queryIndex] == UNMAPPED) {
+            count++;
+        }
+        queryToTarget[queryIndex] = targetIndex;
+        atomView = null;
+        indexView = null;
+    }
+
+    /**
+     * Index of the target atom mapped to a query atom
+     *
+     * @param queryIndex
+     * @return target atom index or -1 if unmapped
+     */
+    public synchronized int getMappedTargetIndex(int queryIndex) {
+        return queryIndex >= 0 && queryIndex < queryToTarget.length
+                ? queryToTarget[queryIndex] : UNMAPPED;
+    }
+
+    /**
+     * Returns the mapping as an array indexed by query atom index holding the
+     * target atom index (-1 for unmapped atoms).
+     *
+     * @return copy of the index mapping
+     */
+    public synchronized int[] getMappingIndexArray() {
+        return queryToTarget.clone();
+    }
+
+    private IAtom getMappedAtom(IAtom queryAtom) {
+        int j = getMappedTargetIndex(getQuery().indexOf(queryAtom));
+        return j == UNMAPPED ? null : getTarget().getAtom(j);
+    }
+
+    /*
+     * target atom indices with a query partner
+     */
+    private BitSet getMappedTargets() {
+        BitSet mapped = new BitSet(getTarget().getAtomCount());
+        for (int k : queryToTarget) {
+            if (k != UNMAPPED) {
+                mapped.set(k);
+            }
         }
+        return mapped;
     }
 
     /**
@@ -151,12 +233,10 @@ public final class AtomAtomMapping implements Serializable {
             int counter = 1;
             for (IAtomContainer ac : reaction.getReactants().atomContainers()) {
                 for (IAtom a : ac.atoms()) {
-                    IAtom refAtom = getQuery().getAtom(ac.indexOf(a));
-                    if (mapping.containsKey(refAtom)) {
+                    int mappedAtomIndex = getMappedTargetIndex(ac.indexOf(a));
+                    if (mappedAtomIndex != UNMAPPED) {
                         a.setProperty(ATOM_ATOM_MAPPING, counter);
                         a.setFlag(MAPPED, true);
-                        IAtom mappedAtom = mapping.get(refAtom);
-                        int mappedAtomIndex = getTarget().indexOf(mappedAtom);
                         IAtom b = reaction.getProducts().getAtomContainer(0).getAtom(mappedAtomIndex);
                         b.setProperty(ATOM_ATOM_MAPPING, counter);
                         b.setFlag(MAPPED, true);
@@ -181,11 +261,11 @@ public final class AtomAtomMapping implements Serializable {
             }
 
             s.append("MMP: ").append(createReactionSMILES).append(", AAM:[");
-            mapping.keySet().stream().forEach((firstAtom) -> {
-                int keyIndex = getQuery().indexOf(firstAtom) + 1;
-                int valueIndex = getTarget().indexOf(mapping.get(firstAtom)) + 1;
-                s.append(keyIndex).append(":").append(valueIndex).append("|");
-            });
+            for (int i = 0; i < queryToTarget.length; i++) {
+                if (queryToTarget[i] != UNMAPPED) {
+                    s.append(i + 1).append(":").append(queryToTarget[i] + 1).append("|");
+                }
+            }
 
             s.append("]");
 
@@ -207,7 +287,7 @@ public final class AtomAtomMapping implements Serializable {
      * @return true if 'query' is not isomorphic of 'target'
      */
     public synchronized boolean isEmpty() {
-        return mapping.isEmpty();
+        return count == 0;
     }
 
     /**
@@ -215,8 +295,10 @@ public final class AtomAtomMapping implements Serializable {
      * Clear mappings
      */
     public synchronized void clear() {
-        mapping.clear();
-        mappingIndex.clear();
+        Arrays.fill(queryToTarget, UNMAPPED);
+        count = 0;
+        atomView = null;
+        indexView = null;
     }
 
     /**
@@ -226,7 +308,7 @@ public final class AtomAtomMapping implements Serializable {
      * @return mapping size
      */
     public synchronized int getCount() {
-        return mapping.isEmpty() ? 0 : mapping.size();
+        return count;
     }
 
     /**
@@ -235,7 +317,16 @@ public final class AtomAtomMapping implements Serializable {
      * @return atom-atom mappings
      */
     public synchronized Map<IAtom, IAtom> getMappingsByAtoms() {
-        return Collections.unmodifiableMap(new LinkedHashMap<>(mapping));
+        if (atomView == null) {
+            Map<IAtom, IAtom> view = new LinkedHashMap<>();
+            for (int i = 0; i < queryToTarget.length; i++) {
+                if (queryToTarget[i] != UNMAPPED) {
+                    view.put(getQuery().getAtom(i), getTarget().getAtom(queryToTarget[i]));
+                }
+            }
+            atomView = Collections.unmodifiableMap(view);
+        }
+        return atomView;
     }
 
     /**
@@ -244,7 +335,16 @@ public final class AtomAtomMapping implements Serializable {
      * @return atom-atom index mappings
      */
     public synchronized Map<Integer, Integer> getMappingsByIndex() {
-        return Collections.unmodifiableSortedMap(new TreeMap<>(mappingIndex));
+        if (indexView == null) {
+            SortedMap<Integer, Integer> view = new TreeMap<>();
+            for (int i = 0; i < queryToTarget.length; i++) {
+                if (queryToTarget[i] != UNMAPPED) {
+                    view.put(i, queryToTarget[i]);
+                }
+            }
+            indexView = Collections.unmodifiableSortedMap(view);
+        }
+        return indexView;
     }
 
     /**
@@ -294,9 +394,9 @@ public final class AtomAtomMapping implements Serializable {
     public synchronized IAtomContainer getMapCommonFragmentOnQuery() throws CloneNotSupportedException {
         IAtomContainer ac = getQuery().clone();
         List<IAtom> unmappedAtoms = Collections.synchronizedList(new ArrayList<>());
-        for (IAtom atom : getQuery().atoms()) {
-            if (!mapping.containsKey(atom)) {
-                unmappedAtoms.add(ac.getAtom(getQueryIndex(atom)));
+        for (int i = 0; i < getQuery().getAtomCount(); i++) {
+            if (getMappedTargetIndex(i) == UNMAPPED) {
+                unmappedAtoms.add(ac.getAtom(i));
             }
         }
 
@@ -318,9 +418,10 @@ public final class AtomAtomMapping implements Serializable {
     public synchronized IAtomContainer getMapCommonFragmentOnTarget() throws CloneNotSupportedException {
         IAtomContainer ac = getTarget().clone();
         List<IAtom> unmappedAtoms = Collections.synchronizedList(new ArrayList<>());
-        for (IAtom atom : getTarget().atoms()) {
-            if (!mapping.containsValue(atom)) {
-                unmappedAtoms.add(ac.getAtom(getTargetIndex(atom)));
+        BitSet mapped = getMappedTargets();
+        for (int j = 0; j < getTarget().getAtomCount(); j++) {
+            if (!mapped.get(j)) {
+                unmappedAtoms.add(ac.getAtom(j));
             }
         }
 
@@ -339,9 +440,9 @@ public final class AtomAtomMapping implements Serializable {
     public synchronized IAtomContainer getCommonFragment() throws CloneNotSupportedException {
         IAtomContainer ac = getQuery().clone();
         List<IAtom> unmappedAtoms = Collections.synchronizedList(new ArrayList<>());
-        for (IAtom atom : getQuery().atoms()) {
-            if (!mapping.containsKey(atom)) {
-                unmappedAtoms.add(ac.getAtom(getQueryIndex(atom)));
+        for (int i = 0; i < getQuery().getAtomCount(); i++) {
+            if (getMappedTargetIndex(i) == UNMAPPED) {
+                unmappedAtoms.add(ac.getAtom(i));
             }
         }
 
@@ -351,8 +452,8 @@ public final class AtomAtomMapping implements Serializable {
          exist between atoms.
          */
         for (IBond queryBond : getQuery().bonds()) {
-            IAtom targetAtomBegin = mapping.get(queryBond.getBegin());
-            IAtom targetAtomEnd = mapping.get(queryBond.getEnd());
+            IAtom targetAtomBegin = getMappedAtom(queryBond.getBegin());
+            IAtom targetAtomEnd = getMappedAtom(queryBond.getEnd());
             if (targetAtomBegin == null) {
                 continue;
             }
@@ -37,6 +37,7 @@ import org.openscience.smsd.algorithm.single.SingleMappingHandler;
 import org.openscience.smsd.algorithm.ventofoggia.VF2MCS;
 import org.openscience.smsd.interfaces.Algorithm;
 import org.openscience.smsd.interfaces.IResults;
+import org.openscience.smsd.tools.EngineSelector;
 
 /**
  * <p>
@@ -218,13 +219,13 @@ public final class Isomorphism extends BaseMapping implements Serializable {
         if (expectedMaxGraphmatch == 1 || rAtomCount == 1 || pAtomCount == 1) {
             singleMapping();
         } else {
-            chooseAlgorithm();
+            chooseAlgorithm(algorithmType);
         }
     }
 
-    private synchronized void chooseAlgorithm() throws CDKException {
+    private synchronized void chooseAlgorithm(Algorithm algorithm) throws CDKException {
 
-        switch (algorithmType) {
+        switch (algorithm) {
             case CDKMCS:
                 if (DEBUG) {
                     System.out.println("Calling CDKMCS ");
@@ -261,6 +262,13 @@ public final class Isomorphism extends BaseMapping implements Serializable {
                     System.out.println("Calling DONE VFLibMCS ");
                 }
                 break;
+            case ADAPTIVE:
+                Algorithm selected = EngineSelector.getInstance().select(getQuery(), getTarget());
+                if (DEBUG) {
+                    System.out.println("Calling ADAPTIVE " + selected);
+                }
+                chooseAlgorithm(selected);
+                break;
         }
 
     }
@@ -30,7 +30,6 @@ import java.util.TreeMap;
 import static java.util.logging.Level.SEVERE;
 import org.openscience.cdk.exception.CDKException;
 
-import org.openscience.cdk.interfaces.IAtom;
 import org.openscience.cdk.interfaces.IAtomContainer;
 import org.openscience.cdk.isomorphism.matchers.IQueryAtomContainer;
 import org.openscience.cdk.tools.ILoggingTool;
@@ -196,9 +195,7 @@ public final class MCSPlusMapper implements IResults {
                     int indexI = m.getKey() - 1;
                     int indexJ = m.getValue() - 1;
 //                    System.out.println("indexI " + indexI + ", " + "indexJ " + indexJ);
-                    IAtom sourceAtom = this.source.getAtom(indexI);
-                    IAtom targetAtom = this.target.getAtom(indexJ);
-                    atomMapping.put(sourceAtom, targetAtom);
+                    atomMapping.put(indexI, indexJ);
                 });
                 return atomMapping;
             }).forEach((atomMapping) -> {
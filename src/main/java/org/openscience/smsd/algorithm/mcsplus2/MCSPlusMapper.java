@@ -28,7 +28,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 
-import org.openscience.cdk.interfaces.IAtom;
 import org.openscience.cdk.interfaces.IAtomContainer;
 import org.openscience.cdk.isomorphism.matchers.IQueryAtomContainer;
 import org.openscience.smsd.AtomAtomMapping;
@@ -161,15 +160,7 @@ public final class MCSPlusMapper implements IResults {
             for (Map<Integer, Integer> solution : allMCS) {
                 AtomAtomMapping atomMappings = new AtomAtomMapping(source, target);
                 solution.entrySet().forEach((map) -> {
-                    int IIndex = map.getKey();
-                    int JIndex = map.getValue();
-
-                    IAtom sourceAtom;
-                    IAtom targetAtom;
-
-                    sourceAtom = source.getAtom(IIndex);
-                    targetAtom = target.getAtom(JIndex);
-                    atomMappings.put(sourceAtom, targetAtom);
+                    atomMappings.put(map.getKey().intValue(), map.getValue().intValue());
                 });
                 allAtomMCS.add(counter++, atomMappings);
             }
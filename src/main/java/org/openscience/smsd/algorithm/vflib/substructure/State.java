@@ -196,8 +196,7 @@ final class State {
         AtomAtomMapping mapping = new AtomAtomMapping(source, target);
 
         for (int i = 0; i < size; i++) {
-            mapping.put(source.getAtom(i),
-                    target.getAtom(sharedState.sourceMapping[i]));
+            mapping.put(i, sharedState.sourceMapping[i]);
         }
         return mapping;
     }
@@ -28,6 +28,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.stream.IntStream;
 
 import org.openscience.cdk.exception.CDKException;
 import org.openscience.cdk.interfaces.IAtomContainer;
@@ -38,6 +40,12 @@ import org.openscience.smsd.AtomAtomMapping;
  *
  * A set of filters applied to the results.
  *
+ * The filters act as lexicographic tie-breakers: each sort keeps only the best
+ * scoring solutions, hence the next filter is scored over the tied solutions
+ * alone. Scores are computed on index arrays of the mappings against a shared
+ * {@link IndexedGraph} of each molecule and in parallel if many solutions are
+ * left.
+ *
  * @author Syed Asad Rahman <asad at ebi.ac.uk>
  *
  *
@@ -48,6 +56,12 @@ public class ChemicalFilters extends BaseFilter {
     private final IChemicalFilter<Double> energyFilter;
     private final IChemicalFilter<Integer> fragmentFilter;
     private final IChemicalFilter<Double> stereoFilter;
+    /**
+     * Solutions are scored in parallel at or above this count
+     */
+    static final int PARALLEL_SCORING_THRESHOLD = 64;
+    private IndexedGraph queryGraph;
+    private IndexedGraph targetGraph;
 
     /**
      *
@@ -79,6 +93,64 @@ public class ChemicalFilters extends BaseFilter {
         this.energyFilter = new EnergyFilter(this);
     }
 
+    /**
+     * @return index view of the query, built on first use
+     */
+    synchronized IndexedGraph getQueryGraph() {
+        if (queryGraph == null) {
+            queryGraph = new IndexedGraph(getQuery());
+        }
+        return queryGraph;
+    }
+
+    /**
+     * @return index view of the target, built on first use
+     */
+    synchronized IndexedGraph getTargetGraph() {
+        if (targetGraph == null) {
+            targetGraph = new IndexedGraph(getTarget());
+        }
+        return targetGraph;
+    }
+
+    /**
+     * Scores every solution and puts the score under the solution key. The
+     * scorer must not lock this object or the calling filter as it may run on
+     * the common fork-join pool.
+     *
+     * @param <T>
+     * @param solutions
+     * @param scoreMap
+     * @param scorer
+     */
+    static <T> void scoreSolutions(
+            Map<Integer, AtomAtomMapping> solutions,
+            Map<Integer, T> scoreMap,
+            Function<AtomAtomMapping, T> scorer) {
+        Integer[] keys;
+        AtomAtomMapping[] mappings;
+        synchronized (solutions) {
+            keys = solutions.keySet().toArray(new Integer[solutions.size()]);
+            mappings = new AtomAtomMapping[keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                mappings[i] = solutions.get(keys[i]);
+            }
+        }
+        Object[] scores = new Object[keys.length];
+        IntStream range = IntStream.range(0, keys.length);
+        if (keys.length >= PARALLEL_SCORING_THRESHOLD) {
+            range = range.parallel();
+        }
+        range.forEach((i) -> {
+            scores[i] = scorer.apply(mappings[i]);
+        });
+        for (int i = 0; i < keys.length; i++) {
+            @SuppressWarnings("unchecked")
+            T score = (T) scores[i];
+            scoreMap.put(keys[i], score);
+        }
+    }
+
     private synchronized void clear(
             Map<Integer, AtomAtomMapping> sortedAllAtomMCS,
             Map<Integer, Double> stereoScoreMap,
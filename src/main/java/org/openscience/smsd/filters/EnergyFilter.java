@@ -28,13 +28,9 @@ import java.util.List;
 import java.util.Map;
 
 import org.openscience.cdk.exception.CDKException;
-import org.openscience.cdk.interfaces.IAtom;
-import org.openscience.cdk.interfaces.IBond;
-import org.openscience.cdk.interfaces.IAtomContainer;
-import org.openscience.cdk.silent.SilentChemObjectBuilder;
 import org.openscience.smsd.AtomAtomMapping;
+import static org.openscience.smsd.filters.ChemicalFilters.scoreSolutions;
 import static org.openscience.smsd.filters.Sotter.sortMapByValueInAscendingOrder;
-import org.openscience.smsd.tools.BondEnergies;
 
 /**
  * Filter based on energies.
@@ -58,11 +54,12 @@ public final class EnergyFilter extends Sotter implements IChemicalFilter<Double
     public synchronized Double sortResults(
             Map<Integer, AtomAtomMapping> allAtomEnergyMCS,
             Map<Integer, Double> energySelectionMap) throws CDKException {
-        for (Integer Key : allAtomEnergyMCS.keySet()) {
-            AtomAtomMapping mcsAtom = allAtomEnergyMCS.get(Key);
-            Double energies = getMappedMoleculeEnergies(mcsAtom);
-            energySelectionMap.put(Key, energies);
-        }
+        IndexedGraph educt = chemfilter.getQueryGraph();
+        IndexedGraph product = chemfilter.getTargetGraph();
+        double[] eductEnergies = educt.getBondEnergies();
+        double[] productEnergies = product.getBondEnergies();
+        scoreSolutions(allAtomEnergyMCS, energySelectionMap,
+                (mcsAtom) -> getMappedMoleculeEnergies(mcsAtom, educt, eductEnergies, product, productEnergies));
 
         energySelectionMap = sortMapByValueInAscendingOrder(energySelectionMap);
 
@@ -98,69 +95,23 @@ public final class EnergyFilter extends Sotter implements IChemicalFilter<Double
         }
     }
 
-    private synchronized Double getMappedMoleculeEnergies(AtomAtomMapping mcsAtomSolution) throws CDKException {
+    /*
+     * Energy of the bonds broken between the mapped and the unmapped atoms
+     */
+    private static Double getMappedMoleculeEnergies(AtomAtomMapping mcsAtomSolution,
+            IndexedGraph educt, double[] eductEnergies,
+            IndexedGraph product, double[] productEnergies) {
 
 //        System.out.println("\nSort By Energies");
         double totalBondEnergy = -9999.0;
 
-        IAtomContainer educt = SilentChemObjectBuilder.getInstance().newInstance(IAtomContainer.class, chemfilter.getQuery());
-        IAtomContainer product = SilentChemObjectBuilder.getInstance().newInstance(IAtomContainer.class, chemfilter.getTarget());
-
-        for (int i = 0; i < educt.getAtomCount(); i++) {
-            educt.getAtom(i).setProperty("Energy", false);
-        }
-
-        for (int i = 0; i < product.getAtomCount(); i++) {
-            product.getAtom(i).setProperty("Energy", false);
-        }
-
         if (mcsAtomSolution != null) {
-            Map<IAtom, IAtom> mappingsByAtoms = mcsAtomSolution.getMappingsByAtoms();
-            mappingsByAtoms.entrySet().stream().map((mapping) -> {
-                mapping.getKey().setProperty("Energy", true);
-                return mapping;
-            }).forEach((mapping) -> {
-                mapping.getValue().setProperty("Energy", true);
-            });
-            totalBondEnergy = getEnergy(educt, product);
-        }
-
-        /*
-         * Reset the flag
-         */
-        for (int i = 0; i < educt.getAtomCount(); i++) {
-            educt.getAtom(i).setProperty("Energy", false);
-        }
-
-        for (int i = 0; i < product.getAtomCount(); i++) {
-            product.getAtom(i).setProperty("Energy", false);
+            int[] queryToTarget = mcsAtomSolution.getMappingIndexArray();
+            boolean[] eductMask = IndexedGraph.toQueryMask(queryToTarget, educt.getAtomCount());
+            boolean[] productMask = IndexedGraph.toMask(queryToTarget, product.getAtomCount());
+            totalBondEnergy = educt.getBoundaryEnergy(eductMask, eductEnergies)
+                    + product.getBoundaryEnergy(productMask, productEnergies);
         }
-
         return totalBondEnergy;
     }
-
-    private synchronized static double getEnergy(IAtomContainer educt, IAtomContainer product) throws CDKException {
-        Double eEnergy = 0.0;
-        BondEnergies bondEnergy = BondEnergies.getInstance();
-        for (int i = 0; i < educt.getBondCount(); i++) {
-            IBond bond = educt.getBond(i);
-            eEnergy += getBondEnergy(bond, bondEnergy);
-        }
-        Double pEnergy = 0.0;
-        for (int j = 0; j < product.getBondCount(); j++) {
-            IBond bond = product.getBond(j);
-            pEnergy += getBondEnergy(bond, bondEnergy);
-        }
-        return (eEnergy + pEnergy);
-    }
-
-    private synchronized static double getBondEnergy(IBond bond, BondEnergies bondEnergy) {
-        double energy = 0.0;
-        if ((bond.getAtom(0).getProperty("Energy").equals(true) && bond.getAtom(1).getProperty("Energy").equals(false))
-                || (bond.getAtom(0).getProperty("Energy").equals(false) && bond.getAtom(1).getProperty("Energy").equals(true))) {
-            int val = bondEnergy.getEnergies(bond.getAtom(0), bond.getAtom(1), bond.getOrder());
-            energy = val;
-        }
-        return energy;
-    }
 }
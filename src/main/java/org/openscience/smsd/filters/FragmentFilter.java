@@ -24,16 +24,13 @@ package org.openscience.smsd.filters;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import org.openscience.cdk.exception.CDKException;
-import org.openscience.cdk.graph.ConnectivityChecker;
-import org.openscience.cdk.interfaces.IAtom;
-import org.openscience.cdk.interfaces.IAtomContainer;
-import org.openscience.cdk.interfaces.IAtomContainerSet;
-import org.openscience.cdk.silent.SilentChemObjectBuilder;
 import org.openscience.smsd.AtomAtomMapping;
+import static org.openscience.smsd.filters.ChemicalFilters.scoreSolutions;
 
 /**
  * Filter the results based on fragment size.
@@ -56,11 +53,16 @@ public final class FragmentFilter extends Sotter implements IChemicalFilter<Inte
             Map<Integer, AtomAtomMapping> allFragmentAtomMCS,
             Map<Integer, Integer> fragmentScoreMap) throws CDKException {
 
+        IndexedGraph query = chemfilter.getQueryGraph();
+        IndexedGraph target = chemfilter.getTargetGraph();
+        Map<Integer, Integer> scores = new HashMap<>();
+        scoreSolutions(allFragmentAtomMCS, scores,
+                (mcsAtom) -> getMappedMoleculeFragmentSize(mcsAtom, query, target));
+
         int _minFragmentScore = 9999;
-        for (Integer key : allFragmentAtomMCS.keySet()) {
-            AtomAtomMapping mcsAtom = allFragmentAtomMCS.get(key);
-            int fragmentCount = getMappedMoleculeFragmentSize(mcsAtom);
-            fragmentScoreMap.put(key, fragmentCount);
+        for (Map.Entry<Integer, Integer> score : scores.entrySet()) {
+            int fragmentCount = score.getValue();
+            fragmentScoreMap.put(score.getKey(), fragmentCount);
             if (_minFragmentScore > fragmentCount) {
                 _minFragmentScore = fragmentCount;
             }
@@ -93,36 +95,18 @@ public final class FragmentFilter extends Sotter implements IChemicalFilter<Inte
         }
     }
 
-    private synchronized int getMappedMoleculeFragmentSize(AtomAtomMapping mcsAtomSolution) {
-
-        IAtomContainer Educt = SilentChemObjectBuilder.getInstance().newInstance(IAtomContainer.class, chemfilter.getQuery());
-        IAtomContainer product = SilentChemObjectBuilder.getInstance().newInstance(IAtomContainer.class, chemfilter.getTarget());
-
+    /*
+     * Fragments left in the educt and product once the mapped atoms are removed
+     */
+    private static int getMappedMoleculeFragmentSize(AtomAtomMapping mcsAtomSolution,
+            IndexedGraph query, IndexedGraph target) {
+        boolean[] queryMask = new boolean[query.getAtomCount()];
+        boolean[] targetMask = new boolean[target.getAtomCount()];
         if (mcsAtomSolution != null) {
-            mcsAtomSolution.getMappingsByAtoms().entrySet().stream().forEach((map) -> {
-                IAtom atomE = map.getKey();
-                IAtom atomP = map.getValue();
-                Educt.removeAtom(atomE);
-                product.removeAtom(atomP);
-            });
-        }
-        return getFragmentCount(Educt) + getFragmentCount(product);
-    }
-
-    private synchronized int getFragmentCount(IAtomContainer molecule) {
-        boolean fragmentFlag = true;
-        IAtomContainerSet fragmentMolSet = SilentChemObjectBuilder.getInstance().newInstance(IAtomContainerSet.class);
-        int countFrag = 0;
-        if (molecule.getAtomCount()
-                > 0) {
-            fragmentFlag = ConnectivityChecker.isConnected(molecule);
-            if (!fragmentFlag) {
-                fragmentMolSet.add(ConnectivityChecker.partitionIntoMolecules(molecule));
-            } else {
-                fragmentMolSet.addAtomContainer(molecule);
-            }
-            countFrag = fragmentMolSet.getAtomContainerCount();
+            int[] queryToTarget = mcsAtomSolution.getMappingIndexArray();
+            queryMask = IndexedGraph.toQueryMask(queryToTarget, query.getAtomCount());
+            targetMask = IndexedGraph.toMask(queryToTarget, target.getAtomCount());
         }
-        return countFrag;
+        return query.countUnmappedFragments(queryMask) + target.countUnmappedFragments(targetMask);
     }
 }
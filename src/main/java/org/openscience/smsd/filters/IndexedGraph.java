@@ -0,0 +1,265 @@
+/* Copyright (C) 2009-2020  Syed Asad Rahman <asad at ebi.ac.uk>
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.smsd.filters;
+
+import java.util.Arrays;
+import org.openscience.cdk.exception.Intractable;
+import org.openscience.cdk.graph.Cycles;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IBond;
+import org.openscience.smsd.tools.BondEnergies;
+
+/**
+ * Index view of a molecule (adjacency, bond ends, bond energies) shared by the
+ * chemical filters. Candidate mappings are scored on atom masks against this
+ * view so no molecule is copied or flagged per candidate.
+ *
+ * @author Syed Asad Rahman <asad at ebi.ac.uk>
+ *
+ */
+final class IndexedGraph {
+
+    private final IAtomContainer container;
+    private final int atomCount;
+    private final int[] bondBegin;
+    private final int[] bondEnd;
+    private final int[][] adjacency;
+    private final int[][] adjacentBonds;
+    private double[] bondEnergies;
+    private double[] bondOrderSums;
+
+    IndexedGraph(IAtomContainer container) {
+        this.container = container;
+        this.atomCount = container.getAtomCount();
+        int bondCount = container.getBondCount();
+        this.bondBegin = new int[bondCount];
+        this.bondEnd = new int[bondCount];
+        int[] degree = new int[atomCount];
+        for (int b = 0; b < bondCount; b++) {
+            IBond bond = container.getBond(b);
+            bondBegin[b] = container.indexOf(bond.getAtom(0));
+            bondEnd[b] = container.indexOf(bond.getAtom(1));
+            if (bondBegin[b] >= 0 && bondEnd[b] >= 0) {
+                degree[bondBegin[b]]++;
+                degree[bondEnd[b]]++;
+            }
+        }
+        this.adjacency = new int[atomCount][];
+        this.adjacentBonds = new int[atomCount][];
+        for (int i = 0; i < atomCount; i++) {
+            adjacency[i] = new int[degree[i]];
+            adjacentBonds[i] = new int[degree[i]];
+        }
+        Arrays.fill(degree, 0);
+        for (int b = 0; b < bondCount; b++) {
+            int u = bondBegin[b];
+            int v = bondEnd[b];
+            if (u >= 0 && v >= 0) {
+                adjacency[u][degree[u]] = v;
+                adjacentBonds[u][degree[u]++] = b;
+                adjacency[v][degree[v]] = u;
+                adjacentBonds[v][degree[v]++] = b;
+            }
+        }
+    }
+
+    IAtomContainer getContainer() {
+        return container;
+    }
+
+    int getAtomCount() {
+        return atomCount;
+    }
+
+    int getBondCount() {
+        return bondBegin.length;
+    }
+
+    int getBondBegin(int bondIndex) {
+        return bondBegin[bondIndex];
+    }
+
+    int getBondEnd(int bondIndex) {
+        return bondEnd[bondIndex];
+    }
+
+    /**
+     *
+     * @param u atom index
+     * @param v atom index
+     * @return bond between the two atoms or null
+     */
+    IBond getBond(int u, int v) {
+        if (u < 0 || u >= atomCount) {
+            return null;
+        }
+        for (int k = 0; k < adjacency[u].length; k++) {
+            if (adjacency[u][k] == v) {
+                return container.getBond(adjacentBonds[u][k]);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Bond breaking energy of each bond, computed on first use.
+     *
+     * @return energy per bond index
+     */
+    synchronized double[] getBondEnergies() {
+        if (bondEnergies == null) {
+            BondEnergies bondEnergy = BondEnergies.getInstance();
+            double[] energies = new double[bondBegin.length];
+            for (int b = 0; b < energies.length; b++) {
+                IBond bond = container.getBond(b);
+                energies[b] = bondEnergy.getEnergies(bond.getAtom(0), bond.getAtom(1), bond.getOrder());
+            }
+            bondEnergies = energies;
+        }
+        return bondEnergies;
+    }
+
+    /**
+     * Bond order sum of each atom, computed on first use.
+     *
+     * @return bond order sum per atom index
+     */
+    synchronized double[] getBondOrderSums() {
+        if (bondOrderSums == null) {
+            double[] sums = new double[atomCount];
+            for (int i = 0; i < atomCount; i++) {
+                IAtom atom = container.getAtom(i);
+                sums[i] = container.getBondOrderSum(atom);
+            }
+            bondOrderSums = sums;
+        }
+        return bondOrderSums;
+    }
+
+    /**
+     * Number of connected components left after removing the mapped atoms.
+     *
+     * @param mapped mask of the mapped atoms
+     * @return fragment count
+     */
+    int countUnmappedFragments(boolean[] mapped) {
+        boolean[] visited = mapped.clone();
+        int[] stack = new int[atomCount];
+        int fragments = 0;
+        for (int i = 0; i < atomCount; i++) {
+            if (visited[i]) {
+                continue;
+            }
+            fragments++;
+            int top = 0;
+            stack[top++] = i;
+            visited[i] = true;
+            while (top > 0) {
+                int u = stack[--top];
+                for (int v : adjacency[u]) {
+                    if (!visited[v]) {
+                        visited[v] = true;
+                        stack[top++] = v;
+                    }
+                }
+            }
+        }
+        return fragments;
+    }
+
+    /**
+     * Sum of the energies of the bonds with exactly one mapped atom.
+     *
+     * @param mapped mask of the mapped atoms
+     * @param energies bond energies, see {@link #getBondEnergies()}
+     * @return energy of the broken bonds
+     */
+    double getBoundaryEnergy(boolean[] mapped, double[] energies) {
+        double energy = 0.0;
+        for (int b = 0; b < bondBegin.length; b++) {
+            if (bondBegin[b] >= 0 && bondEnd[b] >= 0
+                    && mapped[bondBegin[b]] != mapped[bondEnd[b]]) {
+                energy += energies[b];
+            }
+        }
+        return energy;
+    }
+
+    /**
+     * Number of cycles (all simple cycles) of the subgraph induced by the
+     * mapped atoms.
+     *
+     * @param mapped mask of the mapped atoms
+     * @return cycle count
+     * @throws Intractable
+     */
+    int countMappedCycles(boolean[] mapped) throws Intractable {
+        int[][] induced = new int[atomCount][];
+        for (int u = 0; u < atomCount; u++) {
+            if (!mapped[u]) {
+                induced[u] = new int[0];
+                continue;
+            }
+            int n = 0;
+            int[] neighbours = new int[adjacency[u].length];
+            for (int v : adjacency[u]) {
+                if (mapped[v]) {
+                    neighbours[n++] = v;
+                }
+            }
+            induced[u] = n == neighbours.length ? neighbours : Arrays.copyOf(neighbours, n);
+        }
+        return Cycles.all().find(container, induced, atomCount).numberOfCycles();
+    }
+
+    /**
+     *
+     * @param indices mapped atom indices, negative values are ignored
+     * @param size
+     * @return mask of the mapped atoms
+     */
+    static boolean[] toMask(int[] indices, int size) {
+        boolean[] mask = new boolean[size];
+        for (int i : indices) {
+            if (i >= 0 && i < size) {
+                mask[i] = true;
+            }
+        }
+        return mask;
+    }
+
+    /**
+     *
+     * @param queryToTarget query to target index array of a mapping
+     * @param size query atom count
+     * @return mask of the mapped query atoms
+     */
+    static boolean[] toQueryMask(int[] queryToTarget, int size) {
+        boolean[] mask = new boolean[size];
+        for (int i = 0; i < size && i < queryToTarget.length; i++) {
+            mask[i] = queryToTarget[i] >= 0;
+        }
+        return mask;
+    }
+}
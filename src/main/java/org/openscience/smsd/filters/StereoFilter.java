@@ -23,29 +23,25 @@
 package org.openscience.smsd.filters;
 
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.logging.Level;
-import org.openscience.cdk.AtomContainer;
 
 import org.openscience.cdk.CDKConstants;
 import org.openscience.cdk.exception.CDKException;
 import org.openscience.cdk.exception.Intractable;
-import org.openscience.cdk.graph.Cycles;
 import org.openscience.cdk.interfaces.IAtom;
-import org.openscience.cdk.interfaces.IAtomContainer;
 import org.openscience.cdk.interfaces.IBond;
-import org.openscience.cdk.interfaces.IRingSet;
 import org.openscience.cdk.isomorphism.matchers.IQueryAtom;
 import org.openscience.cdk.isomorphism.matchers.IQueryAtomContainer;
 import org.openscience.cdk.isomorphism.matchers.IQueryBond;
 import org.openscience.cdk.tools.ILoggingTool;
 import org.openscience.cdk.tools.LoggingToolFactory;
 import org.openscience.smsd.AtomAtomMapping;
+import static org.openscience.smsd.filters.ChemicalFilters.scoreSolutions;
 
 /**
  * Filter on stereo and bond matches.
@@ -107,68 +103,71 @@ public final class StereoFilter extends Sotter implements IChemicalFilter<Double
     private synchronized boolean getStereoBondChargeMatch(Map<Integer, Double> stereoScoreMap,
             Map<Integer, AtomAtomMapping> allStereoAtomMCS) throws CDKException {
 
-        boolean stereoMatchFlag = false;
-        for (Integer Key : allStereoAtomMCS.keySet()) {
-            try {
-                double score = 0.0;
-                //            System.out.println("\nStart score " + score);
-                AtomAtomMapping atomMapMCS = allStereoAtomMCS.get(Key);
-                double atomScore = getAtomScore(score, atomMapMCS, chemfilter.getQuery(), chemfilter.getTarget());
-                Map<IBond, IBond> bondMaps = makeBondMapsOfAtomMaps(chemfilter.getQuery(), chemfilter.getTarget(), atomMapMCS);
-                double ringScore = 0.0;
-                if (chemfilter.getQuery().getBondCount() > 1
-                        && chemfilter.getTarget().getBondCount() > 1
-                        && !(chemfilter.getQuery() instanceof IQueryAtomContainer
-                        || chemfilter.getTarget() instanceof IQueryAtomContainer)) {
-                    List<IAtomContainer> subgraphRList = getMappedFragment(chemfilter.getQuery(), atomMapMCS.getMappingsByAtoms().keySet());
-                    double rscore = getRingMatchScore(subgraphRList);
-                    List<IAtomContainer> subgraphPList = getMappedFragment(chemfilter.getTarget(), atomMapMCS.getMappingsByAtoms().values());
-                    double pscore = getRingMatchScore(subgraphPList);
-                    ringScore = rscore + pscore;
-                }
-                double bondScore = getBondScore(score, bondMaps);
-
-                score = atomScore + ringScore + bondScore;
-                if (!stereoMatchFlag) {
-                    stereoMatchFlag = true;
-                }
-                stereoScoreMap.put(Key, score);
-            } catch (CloneNotSupportedException ex) {
-                LOGGER.error(Level.SEVERE, null, ex);
+        IndexedGraph query = chemfilter.getQueryGraph();
+        IndexedGraph target = chemfilter.getTargetGraph();
+        double[] queryBondOrderSums = query.getBondOrderSums();
+        double[] targetBondOrderSums = target.getBondOrderSums();
+        boolean ringMatch = query.getBondCount() > 1
+                && target.getBondCount() > 1
+                && !(query.getContainer() instanceof IQueryAtomContainer
+                || target.getContainer() instanceof IQueryAtomContainer);
+
+        scoreSolutions(allStereoAtomMCS, stereoScoreMap, (atomMapMCS) -> {
+            int[] queryToTarget = atomMapMCS.getMappingIndexArray();
+            double atomScore = getAtomScore(0.0, queryToTarget, query, queryBondOrderSums, target, targetBondOrderSums);
+            double ringScore = 0.0;
+            if (ringMatch) {
+                double rscore = getRingMatchScore(query,
+                        IndexedGraph.toQueryMask(queryToTarget, query.getAtomCount()));
+                double pscore = getRingMatchScore(target,
+                        IndexedGraph.toMask(queryToTarget, target.getAtomCount()));
+                ringScore = rscore + pscore;
             }
-        }
-        return stereoMatchFlag;
+            double bondScore = getBondScore(0.0, makeBondMapsOfAtomMaps(query, target, queryToTarget));
+            return atomScore + ringScore + bondScore;
+        });
+        return !allStereoAtomMCS.isEmpty();
     }
 
-    private synchronized Map<IBond, IBond> makeBondMapsOfAtomMaps(IAtomContainer ac1, IAtomContainer ac2,
-            AtomAtomMapping mappings) {
+    /*
+     * Pairs each query bond between two mapped atoms with the target bond between their images
+     */
+    private static Map<IBond, IBond> makeBondMapsOfAtomMaps(IndexedGraph ac1, IndexedGraph ac2,
+            int[] queryToTarget) {
 
         Map<IBond, IBond> bondbondMappingMap = new HashMap<>();
-
-        mappings.getMappingsByAtoms().entrySet().stream().forEach((Map.Entry<IAtom, IAtom> map1) -> {
-            mappings.getMappingsByAtoms().entrySet().stream().filter((map2) -> (map1.getKey() != map2.getKey())).forEach((map2) -> {
-                IBond bond1 = ac1.getBond(map1.getKey(), map2.getKey());
-                IBond bond2 = ac2.getBond(map1.getValue(), map2.getValue());
-                if (bond1 != null && bond2 != null && !bondbondMappingMap.containsKey(bond1)) {
-                    bondbondMappingMap.put(bond1, bond2);
-                }
-            });
-        });
+        for (int b = 0; b < ac1.getBondCount(); b++) {
+            int i = ac1.getBondBegin(b);
+            int j = ac1.getBondEnd(b);
+            if (i < 0 || j < 0 || i >= queryToTarget.length || j >= queryToTarget.length
+                    || queryToTarget[i] < 0 || queryToTarget[j] < 0) {
+                continue;
+            }
+            IBond bond2 = ac2.getBond(queryToTarget[i], queryToTarget[j]);
+            if (bond2 != null) {
+                bondbondMappingMap.put(ac1.getContainer().getBond(b), bond2);
+            }
+        }
 //        System.out.println("Mol Map size:" + bondbondMappingMap.size());
         return bondbondMappingMap;
     }
 
-    private synchronized double getAtomScore(double scoreGlobal, AtomAtomMapping atomMapMCS, IAtomContainer reactant,
-            IAtomContainer product) {
+    private static double getAtomScore(double scoreGlobal, int[] queryToTarget,
+            IndexedGraph reactant, double[] reactantBondOrderSums,
+            IndexedGraph product, double[] productBondOrderSums) {
         double score = scoreGlobal;
-        for (Map.Entry<IAtom, IAtom> mappings : atomMapMCS.getMappingsByAtoms().entrySet()) {
-            IAtom rAtom = mappings.getKey();
-            IAtom pAtom = mappings.getValue();
+        for (int i = 0; i < reactant.getAtomCount() && i < queryToTarget.length; i++) {
+            int j = queryToTarget[i];
+            if (j < 0) {
+                continue;
+            }
+            IAtom rAtom = reactant.getContainer().getAtom(i);
+            IAtom pAtom = product.getContainer().getAtom(j);
 
             int rHCount = 0;
             int pHCount = 0;
-            double rBO = reactant.getBondOrderSum(rAtom);
-            double pBO = product.getBondOrderSum(pAtom);
+            double rBO = reactantBondOrderSums[i];
+            double pBO = productBondOrderSums[j];
 
             if (rAtom.getImplicitHydrogenCount() != null) {
                 rHCount = rAtom.getImplicitHydrogenCount();
@@ -199,7 +198,7 @@ public final class StereoFilter extends Sotter implements IChemicalFilter<Double
         return score;
     }
 
-    private synchronized double getBondScore(double scoreGlobal, Map<IBond, IBond> bondMaps) {
+    private static double getBondScore(double scoreGlobal, Map<IBond, IBond> bondMaps) {
         double score = scoreGlobal;
         for (Map.Entry<IBond, IBond> matchedBonds : bondMaps.entrySet()) {
 
@@ -211,7 +210,7 @@ public final class StereoFilter extends Sotter implements IChemicalFilter<Double
         return score;
     }
 
-    private synchronized double getBondTypeMatches(IBond queryBond, IBond targetBond) {
+    private static double getBondTypeMatches(IBond queryBond, IBond targetBond) {
         double score = 0;
 
         if (targetBond instanceof IQueryBond && queryBond instanceof IBond) {
@@ -336,59 +335,26 @@ public final class StereoFilter extends Sotter implements IChemicalFilter<Double
         return value;
     }
 
-    private synchronized double getRingMatchScore(List<IAtomContainer> list) throws CloneNotSupportedException {
+    /*
+     * Every unmapped atom scores -10 for each ring of the mapped subgraph, an
+     * unmapped atom is never part of such a ring
+     */
+    private static double getRingMatchScore(IndexedGraph molecule, boolean[] mapped) {
         double lScore = 0;
-        IAtomContainer listMap = list.get(0).clone();
-        IAtomContainer subGraph = list.get(1).clone();
+        int unmapped = 0;
+        for (boolean m : mapped) {
+            if (!m) {
+                unmapped++;
+            }
+        }
+        if (unmapped == 0) {
+            return lScore;
+        }
         try {
-            Cycles cycles = Cycles.all(subGraph);
-            lScore = getRingMatch(cycles.toRingSet(), listMap);
+            lScore = -10.0 * unmapped * molecule.countMappedCycles(mapped);
         } catch (Intractable ex) {
             LOGGER.error(Level.SEVERE, null, ex);
         }
         return lScore;
     }
-
-    private synchronized double getRingMatch(IRingSet rings, IAtomContainer atoms) {
-        double score = 0.0;
-        for (IAtom a : atoms.atoms()) {
-            for (IAtomContainer ring : rings.atomContainers()) {
-                if (ring.contains(a)) {
-                    score += 10;
-                } else {
-                    score -= 10;
-                }
-            }
-        }
-        return score;
-    }
-
-    private synchronized List<IAtomContainer> getMappedFragment(IAtomContainer molecule, Collection<IAtom> atomsMCS) throws CloneNotSupportedException {
-        IAtomContainer subgraphContainer;
-
-        if (molecule instanceof IAtomContainer) {
-            subgraphContainer = molecule.getBuilder().newInstance(IAtomContainer.class, molecule);
-        } else {
-            return new ArrayList<>(2);
-        }
-        List<IAtom> list = new ArrayList<>(atomsMCS.size());
-        atomsMCS.stream().map((atom) -> molecule.indexOf(atom)).forEach((post) -> {
-            list.add(subgraphContainer.getAtom(post));
-        });
-
-        IAtomContainer rlist = new AtomContainer();
-        for (IAtom atoms : subgraphContainer.atoms()) {
-            if (!list.contains(atoms)) {
-                rlist.addAtom(atoms);
-            }
-        }
-
-        for (IAtom atoms : rlist.atoms()) {
-            subgraphContainer.removeAtom(atoms);
-        }
-        List<IAtomContainer> l = new ArrayList<>(2);
-        l.add(rlist);
-        l.add(subgraphContainer);
-        return l;
-    }
 }
@@ -78,6 +78,8 @@ public class MoleculeInitializer {
             = LoggingToolFactory.createLoggingTool(MoleculeInitializer.class);
 
     /**
+     * Prepares the molecule, from the {@link MoleculePreparationCache} if it
+     * is enabled.
      *
      * @param atomContainer Atom container where rings are to be marked
      * @throws CDKException if there is a problem in ring perception or
@@ -88,6 +90,22 @@ public class MoleculeInitializer {
         if (atomContainer == null) {
             return;
         }
+        MoleculePreparationCache cache = MoleculePreparationCache.getInstance();
+        if (cache == null || !cache.prepare(atomContainer)) {
+            prepare(atomContainer);
+        }
+    }
+
+    /**
+     * Atom typing, aromaticity, ring perception and the ring/hydrogen count
+     * properties, cached by the {@link MoleculePreparationCache}. Unlike
+     * {@link #initializeMolecule} it takes no lock and no cache, for a
+     * molecule which no other thread can see.
+     *
+     * @param atomContainer Atom container where rings are to be marked
+     * @throws CDKException
+     */
+    protected static void prepare(IAtomContainer atomContainer) throws CDKException {
         try {
             try {
                 // figure out which atoms are in aromatic rings:
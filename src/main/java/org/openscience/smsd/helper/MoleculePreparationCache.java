@@ -0,0 +1,497 @@
+/* Copyright (C) 2009-2020  Syed Asad Rahman <asad at ebi.ac.uk>
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.smsd.helper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import org.openscience.cdk.CDKConstants;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.graph.GraphUtil.EdgeToBondMap;
+import static org.openscience.cdk.graph.GraphUtil.EdgeToBondMap.withSpaceFor;
+import static org.openscience.cdk.graph.GraphUtil.toAdjList;
+import static org.openscience.cdk.graph.invariant.Canon.label;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IAtomType;
+import org.openscience.cdk.interfaces.IBond;
+import org.openscience.cdk.interfaces.IChemObject;
+import org.openscience.cdk.interfaces.IPseudoAtom;
+import org.openscience.cdk.interfaces.IRing;
+import org.openscience.cdk.interfaces.IRingSet;
+import org.openscience.cdk.isomorphism.matchers.IQueryAtomContainer;
+import static org.openscience.cdk.smiles.CanonSmiAdapter.betterInvariants;
+import org.openscience.cdk.tools.ILoggingTool;
+import org.openscience.cdk.tools.LoggingToolFactory;
+
+/**
+ * Process wide cache of {@link MoleculeInitializer#initializeMolecule}: the
+ * prepared state (atom types, hybridisation, valencies, ring and aromatic
+ * flags, hydrogen and ring counts, ring sizes and smallest rings) is stored
+ * under a canonical key of the input structure and copied, by canonical rank,
+ * onto the next container with the same structure. Common cofactors (water,
+ * ATP, NAD+, CoA) are then prepared once per process.
+ * <p>
+ * The key covers everything the preparation reads: elements, isotopes,
+ * charges, hydrogen counts, preset hybridisation, aromatic flags and bond
+ * orders. A structure is prepared on a copy without properties, so only the
+ * properties set by the preparation are stored and the own properties of the
+ * atoms (IDs, mappings) are left alone. Likewise only the flags the
+ * preparation sets (aromatic, ring, aliphatic, H-bond donor/acceptor) are
+ * copied, MAPPED, VISITED etc. keep their value.
+ * <p>
+ * The cache is opt-in, enabled by the system property {@value #CACHE_PROPERTY}
+ * (the number of structures kept) or by
+ * {@link #setInstance(MoleculePreparationCache)}.
+ *
+ * @author Syed Asad Rahman <asad at ebi.ac.uk>
+ */
+public class MoleculePreparationCache {
+
+    private final static ILoggingTool LOGGER
+            = LoggingToolFactory.createLoggingTool(MoleculePreparationCache.class);
+
+    /**
+     * System property enabling the cache, value is the capacity
+     */
+    public static final String CACHE_PROPERTY = "smsd.preparation.cache";
+
+    private static volatile MoleculePreparationCache instance = fromSystemProperty();
+
+    private final Map<String, Prepared> cache;
+    private final int capacity;
+    private long hits;
+    private long misses;
+
+    /**
+     *
+     * @param capacity structures kept, least recently used ones are dropped
+     */
+    public MoleculePreparationCache(int capacity) {
+        this.capacity = capacity;
+        this.cache = new LinkedHashMap<String, Prepared>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Prepared> eldest) {
+                return size() > MoleculePreparationCache.this.capacity;
+            }
+        };
+    }
+
+    private static MoleculePreparationCache fromSystemProperty() {
+        String value = System.getProperty(CACHE_PROPERTY);
+        if (value != null && !value.isEmpty()) {
+            try {
+                int capacity = Integer.parseInt(value.trim());
+                if (capacity > 0) {
+                    return new MoleculePreparationCache(capacity);
+                }
+            } catch (NumberFormatException e) {
+                LOGGER.error(Level.WARNING, "Invalid " + CACHE_PROPERTY + " " + value);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the process wide cache, null if disabled
+     */
+    public static MoleculePreparationCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * Enables (or disables with null) the process wide cache
+     *
+     * @param cache
+     */
+    public static void setInstance(MoleculePreparationCache cache) {
+        instance = cache;
+    }
+
+    /*
+     * Canonical form of the input structure with the atom and bond order it
+     * was computed on
+     */
+    private static final class Key {
+
+        private final String form;
+        private final int[] atoms;
+        private final int[] bonds;
+
+        private Key(String form, int[] atoms, int[] bonds) {
+            this.form = form;
+            this.atoms = atoms;
+            this.bonds = bonds;
+        }
+    }
+
+    /**
+     * @param mol
+     * @return key of the structure, null if the molecule can't be cached
+     */
+    private Key key(IAtomContainer mol) {
+        if (mol instanceof IQueryAtomContainer || mol.getAtomCount() == 0) {
+            return null;
+        }
+        try {
+            EdgeToBondMap bondMap = withSpaceFor(mol);
+            int[][] graph = toAdjList(mol, bondMap);
+            long[] labels = label(mol, graph, betterInvariants(mol, graph, bondMap));
+            int n = mol.getAtomCount();
+            int[] atoms = new int[n];
+            int[] rank = new int[n];
+            for (int i = 0; i < n; i++) {
+                rank[i] = (int) labels[i] - 1;
+                atoms[rank[i]] = i;
+            }
+            StringBuilder form = new StringBuilder();
+            for (int r = 0; r < n; r++) {
+                IAtom a = mol.getAtom(atoms[r]);
+                form.append(a instanceof IPseudoAtom ? "*" + ((IPseudoAtom) a).getLabel() : a.getSymbol())
+                        .append(',').append(a.getMassNumber())
+                        .append(',').append(a.getFormalCharge())
+                        .append(',').append(a.getImplicitHydrogenCount())
+                        .append(',').append(a.getHybridization())
+                        .append(',').append(a.isAromatic() ? 'a' : '-')
+                        .append(';');
+            }
+            Integer[] bondOrder = new Integer[mol.getBondCount()];
+            long[] bondKeys = new long[bondOrder.length];
+            for (int i = 0; i < bondOrder.length; i++) {
+                IBond b = mol.getBond(i);
+                int u = rank[mol.indexOf(b.getBegin())];
+                int v = rank[mol.indexOf(b.getEnd())];
+                bondKeys[i] = (long) Math.min(u, v) * n + Math.max(u, v);
+                bondOrder[i] = i;
+            }
+            Arrays.sort(bondOrder, (x, y) -> Long.compare(bondKeys[x], bondKeys[y]));
+            int[] bonds = new int[bondOrder.length];
+            for (int i = 0; i < bonds.length; i++) {
+                bonds[i] = bondOrder[i];
+                IBond b = mol.getBond(bonds[i]);
+                form.append(bondKeys[bonds[i]] / n).append('-').append(bondKeys[bonds[i]] % n)
+                        .append(',').append(b.getOrder())
+                        .append(',').append(b.getStereo())
+                        .append(',').append(b.isAromatic() ? 'a' : '-')
+                        .append(';');
+            }
+            return new Key(form.toString(), atoms, bonds);
+        } catch (RuntimeException e) {
+            // missing atomic numbers, atoms of a bond not in the container
+            LOGGER.debug("Structure not cached " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Prepares the molecule from the cache. On a miss a copy of the molecule
+     * without properties is prepared, stored and copied onto the molecule.
+     *
+     * @param mol
+     * @return false if the molecule can't be cached and must be prepared
+     * @throws CDKException from the preparation
+     */
+    synchronized boolean prepare(IAtomContainer mol) throws CDKException {
+        Key key = key(mol);
+        if (key == null) {
+            return false;
+        }
+        Prepared prepared = cache.get(key.form);
+        if (prepared == null) {
+            IAtomContainer bare;
+            try {
+                bare = mol.clone();
+            } catch (CloneNotSupportedException e) {
+                return false;
+            }
+            for (IAtom a : bare.atoms()) {
+                clearProperties(a);
+            }
+            for (IBond b : bare.bonds()) {
+                clearProperties(b);
+            }
+            MoleculeInitializer.prepare(bare);
+            prepared = Prepared.of(key, bare);
+            if (prepared == null) {
+                return false;
+            }
+            misses++;
+            cache.put(key.form, prepared);
+        } else {
+            hits++;
+        }
+        prepared.apply(key, mol);
+        return true;
+    }
+
+    private static void clearProperties(IChemObject o) {
+        for (Object k : new ArrayList<>(o.getProperties().keySet())) {
+            o.removeProperty(k);
+        }
+    }
+
+    /**
+     * @return structures in the cache
+     */
+    public synchronized int size() {
+        return cache.size();
+    }
+
+    /**
+     * @return molecules prepared from the cache
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return molecules prepared and added to the cache
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Empties the cache
+     */
+    public synchronized void clear() {
+        cache.clear();
+        hits = 0;
+        misses = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "MoleculePreparationCache{" + "size=" + cache.size() + ", capacity=" + capacity
+                + ", hits=" + hits + ", misses=" + misses + '}';
+    }
+
+    /*
+     * Prepared state in canonical order. Property values referring to atoms
+     * (ring sets) are kept as canonical ranks and rebuilt on the target.
+     */
+    private static final class Prepared {
+
+        private final AtomState[] atoms;
+        private final BondState[] bonds;
+        private final int[][] rings;
+
+        private Prepared(AtomState[] atoms, BondState[] bonds, int[][] rings) {
+            this.atoms = atoms;
+            this.bonds = bonds;
+            this.rings = rings;
+        }
+
+        static Prepared of(Key key, IAtomContainer mol) {
+            int n = key.atoms.length;
+            int[] rank = new int[n];
+            for (int r = 0; r < n; r++) {
+                rank[key.atoms[r]] = r;
+            }
+            Map<IRing, Integer> ringIndex = new IdentityHashMap<>();
+            List<int[]> rings = new ArrayList<>();
+            AtomState[] atoms = new AtomState[n];
+            for (int r = 0; r < n; r++) {
+                IAtom a = mol.getAtom(key.atoms[r]);
+                Map<Object, Object> properties = new LinkedHashMap<>(a.getProperties());
+                for (Map.Entry<Object, Object> e : properties.entrySet()) {
+                    Object value = e.getValue();
+                    if (value instanceof IRingSet) {
+                        List<Integer> refs = new ArrayList<>();
+                        for (IAtomContainer ring : ((IRingSet) value).atomContainers()) {
+                            Integer index = ringIndex.get((IRing) ring);
+                            if (index == null) {
+                                int[] ringAtoms = new int[ring.getAtomCount()];
+                                for (int i = 0; i < ringAtoms.length; i++) {
+                                    int idx = mol.indexOf(ring.getAtom(i));
+                                    if (idx < 0) {
+                                        return null;
+                                    }
+                                    ringAtoms[i] = rank[idx];
+                                }
+                                index = rings.size();
+                                rings.add(ringAtoms);
+                                ringIndex.put((IRing) ring, index);
+                            }
+                            refs.add(index);
+                        }
+                        e.setValue(new RingRefs(refs));
+                    } else if (value instanceof IChemObject) {
+                        return null;
+                    } else if (value instanceof Collection) {
+                        e.setValue(new ArrayList<>((Collection<?>) value));
+                    }
+                }
+                atoms[r] = new AtomState(a, properties);
+            }
+            BondState[] bonds = new BondState[key.bonds.length];
+            for (int i = 0; i < bonds.length; i++) {
+                IBond b = mol.getBond(key.bonds[i]);
+                Map<Object, Object> properties = new LinkedHashMap<>(b.getProperties());
+                for (Object value : properties.values()) {
+                    if (value instanceof IChemObject) {
+                        return null;
+                    }
+                }
+                bonds[i] = new BondState(b, properties);
+            }
+            return new Prepared(atoms, bonds, rings.toArray(new int[rings.size()][]));
+        }
+
+        void apply(Key key, IAtomContainer mol) {
+            IRing[] targetRings = new IRing[rings.length];
+            for (int i = 0; i < rings.length; i++) {
+                IRing ring = mol.getBuilder().newInstance(IRing.class);
+                for (int r : rings[i]) {
+                    ring.addAtom(mol.getAtom(key.atoms[r]));
+                }
+                for (int j = 0; j < rings[i].length; j++) {
+                    IBond b = mol.getBond(ring.getAtom(j), ring.getAtom((j + 1) % rings[i].length));
+                    if (b != null) {
+                        ring.addBond(b);
+                    }
+                }
+                targetRings[i] = ring;
+            }
+            for (int r = 0; r < atoms.length; r++) {
+                atoms[r].apply(mol.getAtom(key.atoms[r]), mol, targetRings);
+            }
+            for (int i = 0; i < bonds.length; i++) {
+                bonds[i].apply(mol.getBond(key.bonds[i]));
+            }
+        }
+    }
+
+    private static final class RingRefs {
+
+        private final List<Integer> rings;
+
+        RingRefs(List<Integer> rings) {
+            this.rings = rings;
+        }
+    }
+
+    /*
+     * flags set by the preparation, the others (MAPPED, ISPLACED, VISITED..)
+     * belong to the caller and are left as they are
+     */
+    private static final int[] PREPARED_FLAGS = {
+        CDKConstants.ISAROMATIC,
+        CDKConstants.ISINRING,
+        CDKConstants.ISALIPHATIC,
+        CDKConstants.IS_HYDROGENBOND_DONOR,
+        CDKConstants.IS_HYDROGENBOND_ACCEPTOR
+    };
+
+    private static boolean[] preparedFlags(IChemObject o) {
+        boolean[] flags = new boolean[PREPARED_FLAGS.length];
+        for (int i = 0; i < flags.length; i++) {
+            flags[i] = o.getFlag(PREPARED_FLAGS[i]);
+        }
+        return flags;
+    }
+
+    private static void applyPreparedFlags(IChemObject o, boolean[] flags) {
+        for (int i = 0; i < flags.length; i++) {
+            o.setFlag(PREPARED_FLAGS[i], flags[i]);
+        }
+    }
+
+    private static final class AtomState {
+
+        private final String atomTypeName;
+        private final IAtomType.Hybridization hybridization;
+        private final Integer valency;
+        private final Integer formalNeighbourCount;
+        private final IBond.Order maxBondOrder;
+        private final Double bondOrderSum;
+        private final Double covalentRadius;
+        private final Integer formalCharge;
+        private final Integer implicitHydrogenCount;
+        private final boolean[] flags;
+        private final Map<Object, Object> properties;
+
+        AtomState(IAtom a, Map<Object, Object> properties) {
+            this.atomTypeName = a.getAtomTypeName();
+            this.hybridization = a.getHybridization();
+            this.valency = a.getValency();
+            this.formalNeighbourCount = a.getFormalNeighbourCount();
+            this.maxBondOrder = a.getMaxBondOrder();
+            this.bondOrderSum = a.getBondOrderSum();
+            this.covalentRadius = a.getCovalentRadius();
+            this.formalCharge = a.getFormalCharge();
+            this.implicitHydrogenCount = a.getImplicitHydrogenCount();
+            this.flags = preparedFlags(a);
+            this.properties = properties;
+        }
+
+        void apply(IAtom a, IAtomContainer mol, IRing[] rings) {
+            a.setAtomTypeName(atomTypeName);
+            a.setHybridization(hybridization);
+            a.setValency(valency);
+            a.setFormalNeighbourCount(formalNeighbourCount);
+            a.setMaxBondOrder(maxBondOrder);
+            a.setBondOrderSum(bondOrderSum);
+            a.setCovalentRadius(covalentRadius);
+            a.setFormalCharge(formalCharge);
+            a.setImplicitHydrogenCount(implicitHydrogenCount);
+            applyPreparedFlags(a, flags);
+            for (Map.Entry<Object, Object> e : properties.entrySet()) {
+                Object value = e.getValue();
+                if (value instanceof RingRefs) {
+                    IRingSet ringSet = mol.getBuilder().newInstance(IRingSet.class);
+                    for (int i : ((RingRefs) value).rings) {
+                        ringSet.addAtomContainer(rings[i]);
+                    }
+                    value = ringSet;
+                } else if (value instanceof List) {
+                    value = new ArrayList<>((List<?>) value);
+                }
+                a.setProperty(e.getKey(), value);
+            }
+        }
+    }
+
+    private static final class BondState {
+
+        private final boolean[] flags;
+        private final Map<Object, Object> properties;
+
+        BondState(IBond b, Map<Object, Object> properties) {
+            this.flags = preparedFlags(b);
+            this.properties = properties;
+        }
+
+        void apply(IBond b) {
+            applyPreparedFlags(b, flags);
+            properties.forEach(b::setProperty);
+        }
+    }
+}
@@ -57,7 +57,12 @@ public enum Algorithm implements Comparable<Algorithm> {
     /**
      * CDK UIT MCS.
      */
-    CDKMCS(4, "CDK UIT MCS");
+    CDKMCS(4, "CDK UIT MCS"),
+    /**
+     * Engine chosen per pair by the
+     * {@link org.openscience.smsd.tools.EngineSelector}.
+     */
+    ADAPTIVE(5, "Engine chosen per pair by its features");
     private final int type;
     private final String description;
 
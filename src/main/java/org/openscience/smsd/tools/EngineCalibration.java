@@ -0,0 +1,330 @@
+/* Copyright (C) 2009-2020  Syed Asad Rahman <asad at ebi.ac.uk>
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.smsd.tools;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import org.openscience.cdk.Reaction;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IReaction;
+import org.openscience.cdk.io.MDLRXNV2000Reader;
+import org.openscience.cdk.tools.ILoggingTool;
+import org.openscience.cdk.tools.LoggingToolFactory;
+import org.openscience.smsd.Isomorphism;
+import org.openscience.smsd.algorithm.matchers.AtomBondMatcher;
+import org.openscience.smsd.algorithm.matchers.AtomMatcher;
+import org.openscience.smsd.algorithm.matchers.BondMatcher;
+import org.openscience.smsd.helper.MoleculeInitializer;
+import org.openscience.smsd.interfaces.Algorithm;
+
+/**
+ * Calibration harness of the {@link EngineSelector}: times every engine on
+ * the educt x product pairs of RXN files (e.g. the src/test/resources/rxn
+ * corpora) and writes the routing table.
+ * <pre>
+ * java org.openscience.smsd.tools.EngineCalibration [-t ms] [-b] [-o table] [-r report] dir|file.rxn ...
+ * </pre> A run is exact when its MCS size equals the largest one found for the
+ * pair. Per feature class the engine exact on the most pairs wins, ties going
+ * to the least total time (timeouts count as the timeout). A runner-up exact
+ * on every pair and fastest on at least a quarter of the pairs is raced
+ * against the winner.
+ * <p>
+ * The engines run one at a time and a timed out run is awaited (the engines
+ * can't be interrupted) before the next one is timed, so a pair takes as long
+ * as its slowest engine.
+ *
+ * @author Syed Asad Rahman <asad at ebi.ac.uk>
+ */
+public class EngineCalibration {
+
+    private final static ILoggingTool LOGGER
+            = LoggingToolFactory.createLoggingTool(EngineCalibration.class);
+    private static final Algorithm[] ENGINES = {
+        Algorithm.VFLibMCS, Algorithm.MCSPlus, Algorithm.CDKMCS, Algorithm.DEFAULT};
+
+    /*
+     * Runs of one feature class: per engine exact count, total ms, fastest
+     * count
+     */
+    private static class ClassStats {
+
+        int pairs;
+        final Map<Algorithm, Integer> exact = new EnumMap<>(Algorithm.class);
+        final Map<Algorithm, Long> millis = new EnumMap<>(Algorithm.class);
+        final Map<Algorithm, Integer> fastest = new EnumMap<>(Algorithm.class);
+    }
+
+    private final long timeout;
+    private final AtomMatcher am;
+    private final BondMatcher bm;
+    private final Map<String, ClassStats> stats;
+    private final ExecutorService executor;
+    private final PrintWriter report;
+
+    /**
+     *
+     * @param timeout ms allowed per engine run
+     * @param bondSensitive match bond orders (MAX) else topology (MIN/MIXTURE)
+     * @param report per run lines, may be null
+     */
+    public EngineCalibration(long timeout, boolean bondSensitive, PrintWriter report) {
+        this.timeout = timeout;
+        this.am = AtomBondMatcher.atomMatcher(false, false);
+        this.bm = AtomBondMatcher.bondMatcher(bondSensitive, false);
+        this.stats = new TreeMap<>();
+        this.report = report;
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "smsd-calibration");
+            t.setDaemon(true);
+            return t;
+        });
+        if (report != null) {
+            report.println("reaction\tpair\tclass\tengine\tms\tsize\tstatus");
+        }
+    }
+
+    /**
+     * Times the engines on all educt x product pairs of the reaction.
+     *
+     * @param reaction
+     */
+    public void measure(IReaction reaction) {
+        List<IAtomContainer> educts = new ArrayList<>();
+        List<IAtomContainer> products = new ArrayList<>();
+        for (IAtomContainer ac : reaction.getReactants().atomContainers()) {
+            educts.add(prepare(ac));
+        }
+        for (IAtomContainer ac : reaction.getProducts().atomContainers()) {
+            products.add(prepare(ac));
+        }
+        for (int i = 0; i < educts.size(); i++) {
+            for (int j = 0; j < products.size(); j++) {
+                IAtomContainer q = educts.get(i);
+                IAtomContainer t = products.get(j);
+                if (q == null || t == null || q.getAtomCount() < 2 || t.getAtomCount() < 2) {
+                    continue;
+                }
+                measure(reaction.getID(), i + ":" + j, q, t);
+            }
+        }
+    }
+
+    private void measure(String reactionID, String pair, IAtomContainer q, IAtomContainer t) {
+        String featureClass = EngineSelector.featureClass(q, t);
+        long[] ms = new long[ENGINES.length];
+        int[] size = new int[ENGINES.length];
+        int best = -1;
+        for (int e = 0; e < ENGINES.length; e++) {
+            Algorithm engine = ENGINES[e];
+            long start = System.nanoTime();
+            Future<Integer> run = executor.submit(() -> {
+                Isomorphism iso = new Isomorphism(ExtAtomContainerManipulator.cloneWithIDs(q),
+                        ExtAtomContainerManipulator.cloneWithIDs(t), engine, am, bm);
+                return iso.getMappingCount() > 0 ? iso.getFirstAtomMapping().getCount() : 0;
+            });
+            String status = "OK";
+            try {
+                size[e] = run.get(timeout, MILLISECONDS);
+                ms[e] = (System.nanoTime() - start) / 1000000L;
+            } catch (TimeoutException ex) {
+                size[e] = -1;
+                ms[e] = timeout;
+                status = "TIMEOUT";
+                /*
+                 * the engines can't be interrupted, wait for the run to end so
+                 * that it doesn't compete with the next engine for the CPU
+                 */
+                try {
+                    run.get();
+                } catch (ExecutionException ignore) {
+                    // failed after the timeout, still a TIMEOUT
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            } catch (ExecutionException ex) {
+                size[e] = -1;
+                ms[e] = (System.nanoTime() - start) / 1000000L;
+                status = "ERROR";
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            best = Math.max(best, size[e]);
+            if (report != null) {
+                report.println(reactionID + "\t" + pair + "\t" + featureClass + "\t" + engine
+                        + "\t" + ms[e] + "\t" + size[e] + "\t" + status);
+            }
+        }
+        ClassStats s = stats.computeIfAbsent(featureClass, k -> new ClassStats());
+        s.pairs++;
+        int fastest = -1;
+        for (int e = 0; e < ENGINES.length; e++) {
+            s.millis.merge(ENGINES[e], ms[e], Long::sum);
+            if (size[e] == best && best >= 0) {
+                s.exact.merge(ENGINES[e], 1, Integer::sum);
+                if (fastest < 0 || ms[e] < ms[fastest]) {
+                    fastest = e;
+                }
+            }
+        }
+        if (fastest >= 0) {
+            s.fastest.merge(ENGINES[fastest], 1, Integer::sum);
+        }
+    }
+
+    /**
+     * Routing table of the measured classes.
+     *
+     * @param raceDeadline ms, used if a class races two engines
+     * @return selector
+     */
+    public EngineSelector getSelector(long raceDeadline) {
+        Map<String, Algorithm[]> table = new TreeMap<>();
+        stats.forEach((featureClass, s) -> {
+            Algorithm[] ranked = Arrays.copyOf(ENGINES, ENGINES.length);
+            Arrays.sort(ranked, (a, b) -> {
+                int c = Integer.compare(s.exact.getOrDefault(b, 0), s.exact.getOrDefault(a, 0));
+                return c != 0 ? c : Long.compare(s.millis.getOrDefault(a, 0L), s.millis.getOrDefault(b, 0L));
+            });
+            Algorithm second = ranked[1];
+            if (s.exact.getOrDefault(second, 0) == s.pairs
+                    && 4 * s.fastest.getOrDefault(second, 0) >= s.pairs) {
+                table.put(featureClass, new Algorithm[]{ranked[0], second});
+            } else {
+                table.put(featureClass, new Algorithm[]{ranked[0]});
+            }
+        });
+        return new EngineSelector(table, Algorithm.VFLibMCS, raceDeadline);
+    }
+
+    /**
+     * Prints per class and engine: exact runs, total ms and fastest runs.
+     *
+     * @param out
+     */
+    public void printSummary(PrintWriter out) {
+        out.println("class\tpairs\tengine\texact\tms\tfastest");
+        stats.forEach((featureClass, s) -> {
+            for (Algorithm engine : ENGINES) {
+                out.println(featureClass + "\t" + s.pairs + "\t" + engine
+                        + "\t" + s.exact.getOrDefault(engine, 0)
+                        + "\t" + s.millis.getOrDefault(engine, 0L)
+                        + "\t" + s.fastest.getOrDefault(engine, 0));
+            }
+        });
+        out.flush();
+    }
+
+    private static IAtomContainer prepare(IAtomContainer ac) {
+        try {
+            ExtAtomContainerManipulator.percieveAtomTypesAndConfigureAtoms(ac);
+            ExtAtomContainerManipulator.aromatizeMolecule(ac);
+            IAtomContainer mol = ExtAtomContainerManipulator.removeHydrogensExceptSingleAndPreserveAtomID(ac);
+            MoleculeInitializer.initializeMolecule(mol);
+            return mol;
+        } catch (CDKException e) {
+            LOGGER.error(Level.WARNING, "Unable to prepare " + ac.getID(), e.getMessage());
+            return null;
+        }
+    }
+
+    private static void collect(File file, List<File> files) {
+        if (file.isDirectory()) {
+            File[] children = file.listFiles();
+            if (children != null) {
+                Arrays.sort(children);
+                for (File child : children) {
+                    collect(child, files);
+                }
+            }
+        } else if (file.getName().toLowerCase().endsWith(".rxn")) {
+            files.add(file);
+        }
+    }
+
+    /**
+     * @param args [-t ms] [-b] [-o table] [-r report] dir|file.rxn ...
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
+        long timeout = 60000;
+        boolean bondSensitive = false;
+        File tableFile = new File("smsd-engines.properties");
+        File reportFile = null;
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-t":
+                    timeout = Long.parseLong(args[++i]);
+                    break;
+                case "-b":
+                    bondSensitive = true;
+                    break;
+                case "-o":
+                    tableFile = new File(args[++i]);
+                    break;
+                case "-r":
+                    reportFile = new File(args[++i]);
+                    break;
+                default:
+                    collect(new File(args[i]), files);
+            }
+        }
+        try (PrintWriter report = reportFile == null ? null : new PrintWriter(reportFile, "UTF-8")) {
+            EngineCalibration calibration = new EngineCalibration(timeout, bondSensitive, report);
+            for (File file : files) {
+                try (MDLRXNV2000Reader reader = new MDLRXNV2000Reader(new FileReader(file))) {
+                    IReaction reaction = reader.read(new Reaction());
+                    reaction.setID(file.getName().replaceFirst("(?i)\\.rxn$", ""));
+                    calibration.measure(reaction);
+                } catch (CDKException | IOException | RuntimeException e) {
+                    LOGGER.error(Level.WARNING, "Skipping " + file, e.getMessage());
+                }
+            }
+            PrintWriter out = new PrintWriter(System.out);
+            calibration.printSummary(out);
+            calibration.getSelector(timeout).store(tableFile,
+                    "Engine routing measured on " + files.size() + " reactions");
+            out.println("Engine table written to " + tableFile.getAbsolutePath()
+                    + " (use -D" + EngineSelector.TABLE_PROPERTY + "=<file>)");
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,381 @@
+/* Copyright (C) 2009-2020  Syed Asad Rahman <asad at ebi.ac.uk>
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.smsd.tools;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import java.util.logging.Level;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IBond;
+import org.openscience.cdk.tools.ILoggingTool;
+import org.openscience.cdk.tools.LoggingToolFactory;
+import org.openscience.smsd.Isomorphism;
+import org.openscience.smsd.algorithm.matchers.AtomMatcher;
+import org.openscience.smsd.algorithm.matchers.BondMatcher;
+import org.openscience.smsd.interfaces.Algorithm;
+
+/**
+ * Routes an MCS pair to an engine by its feature class: size (largest heavy
+ * atom count), ring closures and symmetry (share of atoms with a repeated
+ * invariant). The routing table is a properties file
+ * <pre>
+ * default=VFLibMCS
+ * A2_R1_S0=MCSPlus
+ * A3_R2_S1=VFLibMCS,CDKMCS
+ * race.deadline=30000
+ * </pre> where a second engine is raced against the first (on copies of the
+ * molecules) and the first exact answer is kept; after the deadline the
+ * result of the first engine is awaited. Engines which can't be interrupted
+ * run to completion in the background when they lose the race; they keep their
+ * race slot until then, and with fewer than two free slots (one per processor)
+ * the pair is given to the first engine alone.
+ * <p>
+ * The table is read from the file named by the system property
+ * {@value #TABLE_PROPERTY}, else every pair goes to {@link Algorithm#VFLibMCS}
+ * as before. {@link EngineCalibration} writes tables from measured runs.
+ *
+ * @author Syed Asad Rahman <asad at ebi.ac.uk>
+ */
+public class EngineSelector {
+
+    private final static ILoggingTool LOGGER
+            = LoggingToolFactory.createLoggingTool(EngineSelector.class);
+
+    /**
+     * System property naming the routing table
+     */
+    public static final String TABLE_PROPERTY = "smsd.engine.table";
+    private static final String DEFAULT_KEY = "default";
+    private static final String DEADLINE_KEY = "race.deadline";
+    private static final ExecutorService RACE = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "smsd-engine-race");
+        t.setDaemon(true);
+        return t;
+    });
+    /*
+     * engines running in RACE, released when a run really ends
+     */
+    private static final Semaphore RACE_SLOTS
+            = new Semaphore(Runtime.getRuntime().availableProcessors());
+    private static volatile EngineSelector instance;
+
+    private final Map<String, Algorithm[]> table;
+    private final Algorithm[] fallback;
+    private final long raceDeadline;
+
+    /**
+     *
+     * @param table engines by feature class
+     * @param fallback engine of the classes not in the table
+     * @param raceDeadline ms to wait for the first exact answer of a race
+     */
+    public EngineSelector(Map<String, Algorithm[]> table, Algorithm fallback, long raceDeadline) {
+        this.table = new TreeMap<>(table);
+        this.fallback = new Algorithm[]{check(fallback)};
+        this.raceDeadline = raceDeadline;
+        this.table.values().forEach(engines -> {
+            for (Algorithm a : engines) {
+                check(a);
+            }
+        });
+    }
+
+    /**
+     * The selector configured by {@value #TABLE_PROPERTY}.
+     *
+     * @return selector
+     */
+    public static EngineSelector getInstance() {
+        EngineSelector selector = instance;
+        if (selector == null) {
+            synchronized (EngineSelector.class) {
+                selector = instance;
+                if (selector == null) {
+                    selector = fromSystemProperty();
+                    instance = selector;
+                }
+            }
+        }
+        return selector;
+    }
+
+    /**
+     * Replaces the selector used by the matcher.
+     *
+     * @param selector
+     */
+    public static synchronized void setInstance(EngineSelector selector) {
+        instance = selector;
+    }
+
+    private static EngineSelector fromSystemProperty() {
+        String path = System.getProperty(TABLE_PROPERTY);
+        if (path != null && !path.isEmpty()) {
+            try {
+                return load(new File(path));
+            } catch (IOException | IllegalArgumentException e) {
+                LOGGER.error(Level.SEVERE, "Unable to read engine table " + path, e.getMessage());
+            }
+        }
+        return new EngineSelector(new TreeMap<>(), Algorithm.VFLibMCS, 0);
+    }
+
+    /**
+     * Reads a routing table.
+     *
+     * @param file
+     * @return selector
+     * @throws IOException
+     */
+    public static EngineSelector load(File file) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            properties.load(in);
+        }
+        Map<String, Algorithm[]> table = new TreeMap<>();
+        Algorithm fallback = Algorithm.VFLibMCS;
+        long deadline = 0;
+        for (String key : properties.stringPropertyNames()) {
+            String value = properties.getProperty(key).trim();
+            if (key.equals(DEADLINE_KEY)) {
+                deadline = Long.parseLong(value);
+            } else if (key.equals(DEFAULT_KEY)) {
+                fallback = Algorithm.valueOf(value);
+            } else {
+                String[] names = value.split("\\s*,\\s*");
+                Algorithm[] engines = new Algorithm[Math.min(2, names.length)];
+                for (int i = 0; i < engines.length; i++) {
+                    engines[i] = Algorithm.valueOf(names[i]);
+                }
+                table.put(key, engines);
+            }
+        }
+        return new EngineSelector(table, fallback, deadline);
+    }
+
+    /**
+     * Writes the routing table.
+     *
+     * @param file
+     * @param comment
+     * @throws IOException
+     */
+    public void store(File file, String comment) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(DEFAULT_KEY, fallback[0].name());
+        properties.setProperty(DEADLINE_KEY, String.valueOf(raceDeadline));
+        table.forEach((key, engines) -> {
+            StringBuilder sb = new StringBuilder(engines[0].name());
+            for (int i = 1; i < engines.length; i++) {
+                sb.append(',').append(engines[i].name());
+            }
+            properties.setProperty(key, sb.toString());
+        });
+        try (OutputStream out = new FileOutputStream(file)) {
+            properties.store(out, comment);
+        }
+    }
+
+    /**
+     * Feature class of a pair, e.g. {@code A2_R1_S0}: A size bucket (&lt;=8,
+     * &lt;=16, &lt;=32, more heavy atoms), R ring closures (0, 1-2, 3+), S
+     * symmetric (half of the atoms share an invariant).
+     *
+     * @param query
+     * @param target
+     * @return feature class
+     */
+    public static String featureClass(IAtomContainer query, IAtomContainer target) {
+        int[] q = features(query);
+        int[] t = features(target);
+        int atoms = Math.max(q[0], t[0]);
+        int rings = Math.max(q[1], t[1]);
+        boolean symmetric = 2 * q[2] >= q[0] && q[0] > 1 || 2 * t[2] >= t[0] && t[0] > 1;
+        int a = atoms <= 8 ? 0 : atoms <= 16 ? 1 : atoms <= 32 ? 2 : 3;
+        int r = rings == 0 ? 0 : rings <= 2 ? 1 : 2;
+        return "A" + a + "_R" + r + "_S" + (symmetric ? 1 : 0);
+    }
+
+    /*
+     * heavy atoms, ring closures, atoms sharing an invariant with another atom
+     */
+    private static int[] features(IAtomContainer ac) {
+        int heavy = 0;
+        Set<String> invariants = new HashSet<>();
+        for (IAtom a : ac.atoms()) {
+            if ("H".equals(a.getSymbol())) {
+                continue;
+            }
+            heavy++;
+            Integer h = a.getImplicitHydrogenCount();
+            invariants.add(a.getSymbol() + ":" + ac.getConnectedBondsCount(a)
+                    + ":" + (h == null ? 0 : h) + ":" + a.isAromatic());
+        }
+        int heavyBonds = 0;
+        for (IBond b : ac.bonds()) {
+            if (!"H".equals(b.getBegin().getSymbol()) && !"H".equals(b.getEnd().getSymbol())) {
+                heavyBonds++;
+            }
+        }
+        int rings = heavy == 0 ? 0 : Math.max(0, heavyBonds - heavy + 1);
+        return new int[]{heavy, rings, heavy - invariants.size()};
+    }
+
+    /**
+     *
+     * @param query
+     * @param target
+     * @return engine(s) of the feature class of the pair, the second one (if
+     * any) is raced against the first
+     */
+    public Algorithm[] route(IAtomContainer query, IAtomContainer target) {
+        return table.getOrDefault(featureClass(query, target), fallback).clone();
+    }
+
+    /**
+     *
+     * @param query
+     * @param target
+     * @return engine for the pair
+     */
+    public Algorithm select(IAtomContainer query, IAtomContainer target) {
+        return route(query, target)[0];
+    }
+
+    /**
+     * Computes the MCS of the pair with the routed engine, racing two engines
+     * if the table says so.
+     *
+     * @param query
+     * @param target
+     * @param am
+     * @param bm
+     * @return MCS
+     * @throws CDKException
+     */
+    public Isomorphism isomorphism(IAtomContainer query, IAtomContainer target,
+            AtomMatcher am, BondMatcher bm) throws CDKException {
+        Algorithm[] engines = route(query, target);
+        if (engines.length < 2 || raceDeadline <= 0) {
+            return new Isomorphism(query, target, engines[0], am, bm);
+        }
+        IAtomContainer query2;
+        IAtomContainer target2;
+        try {
+            query2 = ExtAtomContainerManipulator.cloneWithIDs(query);
+            target2 = ExtAtomContainerManipulator.cloneWithIDs(target);
+        } catch (CloneNotSupportedException e) {
+            return new Isomorphism(query, target, engines[0], am, bm);
+        }
+        if (!RACE_SLOTS.tryAcquire(2)) {
+            return new Isomorphism(query, target, engines[0], am, bm);
+        }
+        CompletionService<Isomorphism> race = new ExecutorCompletionService<>(RACE);
+        Future<Isomorphism> first;
+        Future<Isomorphism> second;
+        try {
+            first = race.submit(() -> {
+                try {
+                    return new Isomorphism(query, target, engines[0], am, bm);
+                } finally {
+                    RACE_SLOTS.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            RACE_SLOTS.release(2);
+            throw e;
+        }
+        try {
+            second = race.submit(() -> {
+                try {
+                    return new Isomorphism(query2, target2, engines[1], am, bm);
+                } finally {
+                    RACE_SLOTS.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            RACE_SLOTS.release();
+            throw e;
+        }
+        long end = System.currentTimeMillis() + raceDeadline;
+        try {
+            for (int done = 0; done < 2; done++) {
+                Future<Isomorphism> f = race.poll(Math.max(0, end - System.currentTimeMillis()), MILLISECONDS);
+                if (f == null) {
+                    break;
+                }
+                try {
+                    Isomorphism winner = f.get();
+                    (f == first ? second : first).cancel(true);
+                    return winner;
+                } catch (ExecutionException e) {
+                    LOGGER.debug("Engine failed in race " + e.getCause());
+                }
+            }
+            second.cancel(true);
+            return first.get();
+        } catch (InterruptedException e) {
+            first.cancel(true);
+            second.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new CDKException("Interrupted MCS race");
+        } catch (ExecutionException e) {
+            throw new CDKException("MCS failed: " + e.getCause());
+        }
+    }
+
+    /**
+     * @return engines by feature class
+     */
+    public Map<String, Algorithm[]> getTable() {
+        Map<String, Algorithm[]> copy = new TreeMap<>();
+        table.forEach((key, engines) -> copy.put(key, engines.clone()));
+        return copy;
+    }
+
+    private static Algorithm check(Algorithm a) {
+        if (a == null || a == Algorithm.ADAPTIVE) {
+            throw new IllegalArgumentException("Not an engine: " + a);
+        }
+        return a;
+    }
+}
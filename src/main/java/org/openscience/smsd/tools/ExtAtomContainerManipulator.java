@@ -144,6 +144,17 @@ public class ExtAtomContainerManipulator extends AtomContainerManipulator implem
      * @return cleaned GraphAtomContainer
      */
     public synchronized static IAtomContainer checkAndCleanMolecule(IAtomContainer molecule_orignal) {
+        return cleanMolecule(molecule_orignal);
+    }
+
+    /**
+     * Same as {@link #checkAndCleanMolecule} without its lock, for a molecule
+     * which no other thread can see (e.g. a copy made by the caller).
+     *
+     * @param molecule_orignal
+     * @return cleaned GraphAtomContainer
+     */
+    public static IAtomContainer cleanMolecule(IAtomContainer molecule_orignal) {
         boolean isMarkush = false;
         IAtomContainer molecule = molecule_orignal;
         for (IAtom atom : molecule.atoms()) {
@@ -26,12 +26,14 @@ import static java.lang.System.out;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 import java.text.NumberFormat;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import static java.util.logging.Level.SEVERE;
+import static java.util.stream.Collectors.joining;
 import static org.openscience.cdk.CDKConstants.MAPPED;
 import org.openscience.cdk.exception.CDKException;
 import org.openscience.cdk.interfaces.IReaction;
@@ -46,10 +48,13 @@ import org.w3c.dom.Element;
 import uk.ac.ebi.reactionblast.fingerprints.PatternFingerprinter;
 import uk.ac.ebi.reactionblast.fingerprints.ReactionFingerprinter;
 import uk.ac.ebi.reactionblast.fingerprints.interfaces.IPatternFingerprinter;
+import uk.ac.ebi.reactionblast.mapping.cache.ReactionResultCache;
 import uk.ac.ebi.reactionblast.mechanism.BondChangeCalculator;
 import uk.ac.ebi.reactionblast.mechanism.MappingSolution;
 import uk.ac.ebi.reactionblast.mechanism.ReactionMechanismTool;
 import uk.ac.ebi.reactionblast.mechanism.helper.MoleculeMoleculePair;
+import uk.ac.ebi.reactionblast.tools.BlockedSimilarityMatrix;
+import uk.ac.ebi.reactionblast.tools.BlockedSimilarityMatrix.Neighbour;
 import static uk.ac.ebi.reactionblast.tools.ReactionSimilarityTool.getSimilarity;
 import uk.ac.ebi.reactionblast.tools.StandardizeReaction;
 
@@ -60,6 +65,8 @@ import uk.ac.ebi.reactionblast.tools.StandardizeReaction;
 public class Annotator extends Helper {
 
     static final String TAB = "\t";
+    private static final String[] SIMILARITY_TYPES = {"BC", "RC", "ST"};
+    private static final String[] SIMILARITY_FILES = {"_Bond_Change", "_Reaction_Centre", "_Structure_Similarity"};
     private static final ILoggingTool LOGGER
             = LoggingToolFactory.createLoggingTool(Annotator.class);
 
@@ -109,6 +116,12 @@ public class Annotator extends Helper {
     }
 
     /**
+     * Maps and annotates a reaction; a repeated reaction takes the mapping of
+     * the {@link ReactionResultCache} (if configured) instead of being mapped
+     * again and is annotated as a user defined mapping of it (same bond
+     * changes, algorithm USER_DEFINED). The user defined mappings (no
+     * remapping) are never looked up nor stored, neither are the mappings
+     * degraded by the memory budget.
      *
      * @param cdkReaction
      * @param reMap remap the reaction
@@ -120,6 +133,38 @@ public class Annotator extends Helper {
     protected static ReactionMechanismTool getReactionMechanismTool(IReaction cdkReaction,
             boolean reMap, boolean complexMappingFlag, boolean accept_no_change) throws Exception {
         ReactionMechanismTool rmt;
+        /*
+         Repeated reactions are annotated with the cached mapping
+         */
+        ReactionResultCache cache = ReactionResultCache.getInstance();
+        if (cache == null || !reMap) {
+            return mapReaction(cdkReaction, reMap, complexMappingFlag, accept_no_change);
+        }
+        IReaction input = cdkReaction.clone();
+        if (cache.project(cdkReaction, complexMappingFlag, accept_no_change)) {
+            try {
+                rmt = new ReactionMechanismTool(cdkReaction, false, true, false,
+                        complexMappingFlag, accept_no_change, new StandardizeReaction());
+                if (rmt.getSelectedSolution() != null) {
+                    return rmt;
+                }
+            } catch (Exception e) {
+                LOGGER.debug("Cached mapping failed " + e.getMessage());
+            }
+            LOGGER.warn("Cached mapping rejected, remapping " + cdkReaction.getID());
+            cdkReaction = input.clone();
+        }
+        rmt = mapReaction(cdkReaction, reMap, complexMappingFlag, accept_no_change);
+        if (rmt.getSelectedSolution() != null && !rmt.isDegradedMapping()) {
+            cache.store(input, rmt.getSelectedSolution().getReaction(),
+                    complexMappingFlag, accept_no_change);
+        }
+        return rmt;
+    }
+
+    private static ReactionMechanismTool mapReaction(IReaction cdkReaction,
+            boolean reMap, boolean complexMappingFlag, boolean accept_no_change) throws Exception {
+        ReactionMechanismTool rmt;
         /*
          Check if the reaction is already mapped
          */
@@ -175,69 +220,132 @@ public class Annotator extends Helper {
     }
 
     /**
+     * Writes the all-vs-all BC, RC and ST similarity matrices of the
+     * reactions, computed in tiles and streamed to the files.
+     * <p>
+     * The layout is the one of the former pairwise matrices: a blank first
+     * line, then one {@code "query" TAB "target" TAB score} line per pair with
+     * the score to two decimals as in the COMPARE output, and NA where either
+     * reaction has no annotation. As the scores are symmetric, each pair is
+     * written once (query before target in input order).
      *
-     * @param results
+     * @param ids reaction IDs
+     * @param annotations BC, RC and ST fingerprints of the reactions, see
+     * {@link #getSimilarityFingerprints(ReactionMechanismTool)}, null if a
+     * reaction failed
      * @param jobID
+     * @param threads
      * @throws IOException
+     * @throws CDKException
      */
-    private static void writeSimilarityMatrix(List<SimilarityResult> results, String jobID) throws IOException {
+    protected static void writeSimilarityMatrix(List<String> ids, List<IPatternFingerprinter[]> annotations,
+            String jobID, int threads) throws IOException, CDKException {
         String rootPath = new File(".").getCanonicalPath();
-        File bcMatrix = new File(rootPath, jobID + "_Bond_Change" + ".mat");
-        File rcMatrix = new File(rootPath, jobID + "_Reaction_Centre" + ".mat");
-        File stMatrix = new File(rootPath, jobID + "_Structure_Similarity" + ".mat");
-
-        FileWriter writerBC = new FileWriter(bcMatrix);
-        BufferedWriter bufferedWriterBC = new BufferedWriter(writerBC);
+        List<List<IPatternFingerprinter>> fingerprints = getSimilarityColumns(annotations);
+        NumberFormat myFormatter = NumberFormat.getInstance();
+        myFormatter.setMinimumFractionDigits(2);
+        myFormatter.setMaximumFractionDigits(2);
 
-        FileWriter writerRC = new FileWriter(rcMatrix);
-        BufferedWriter bufferedWriterRC = new BufferedWriter(writerRC);
+        for (int c = 0; c < SIMILARITY_TYPES.length; c++) {
+            File matrix = new File(rootPath, jobID + SIMILARITY_FILES[c] + ".mat");
+            BlockedSimilarityMatrix sm = new BlockedSimilarityMatrix(fingerprints.get(c));
+            try (BufferedWriter writer = new BufferedWriter(new FileWriter(matrix))) {
+                writer.newLine();
+                sm.forEachTile((rowStart, rowEnd, colStart, colEnd, scores) -> {
+                    int cols = colEnd - colStart;
+                    for (int i = rowStart; i < rowEnd; i++) {
+                        for (int j = Math.max(colStart, i + 1); j < colEnd; j++) {
+                            writer.write("\"" + ids.get(i) + "\"" + TAB + "\"" + ids.get(j) + "\"" + TAB
+                                    + (annotations.get(i) != null && annotations.get(j) != null
+                                    ? myFormatter.format(scores[(i - rowStart) * cols + j - colStart]) : "NA"));
+                            writer.newLine();
+                        }
+                    }
+                }, threads);
+            }
+        }
+    }
 
-        FileWriter writerST = new FileWriter(stMatrix);
-        BufferedWriter bufferedWriterST = new BufferedWriter(writerST);
+    /**
+     * Writes the top-k BC, RC and ST neighbours (score &gt;= threshold) of
+     * each reaction, reactions without annotation are left out.
+     *
+     * @param ids reaction IDs
+     * @param annotations BC, RC and ST fingerprints of the reactions, see
+     * {@link #getSimilarityFingerprints(ReactionMechanismTool)}, null if a
+     * reaction failed
+     * @param jobID
+     * @param k maximum number of neighbours per reaction
+     * @param threshold minimum similarity
+     * @param threads
+     * @throws IOException
+     * @throws CDKException
+     */
+    protected static void writeSimilarityNeighbours(List<String> ids, List<IPatternFingerprinter[]> annotations,
+            String jobID, int k, double threshold, int threads) throws IOException, CDKException {
+        String rootPath = new File(".").getCanonicalPath();
+        List<List<IPatternFingerprinter>> fingerprints = getSimilarityColumns(annotations);
+        NumberFormat myFormatter = NumberFormat.getInstance();
+        myFormatter.setMinimumFractionDigits(2);
+        myFormatter.setMaximumFractionDigits(2);
 
-        bufferedWriterBC.newLine();
-        try {
-            for (SimilarityResult s : results) {
-                if (s.getSimilarityReactions().containsKey("BC")) {
-                    bufferedWriterBC.write("\"" + s.getQuery() + "\"" + TAB + "\"" + s.getTarget() + "\"" + TAB + s.getSimilarityReactions().get("BC"));
-                    bufferedWriterBC.newLine();
-                } else {
-                    bufferedWriterBC.write("\"" + s.getQuery() + "\"" + TAB + "\"" + s.getTarget() + "\"" + TAB + "NA");
-                    bufferedWriterBC.newLine();
+        for (int c = 0; c < SIMILARITY_TYPES.length; c++) {
+            File top = new File(rootPath, jobID + SIMILARITY_FILES[c] + ".top");
+            BlockedSimilarityMatrix sm = new BlockedSimilarityMatrix(fingerprints.get(c));
+            List<List<Neighbour>> neighbours = sm.getTopNeighbours(k, threshold, threads);
+            try (BufferedWriter writer = new BufferedWriter(new FileWriter(top))) {
+                for (int i = 0; i < neighbours.size(); i++) {
+                    if (annotations.get(i) == null) {
+                        continue;
+                    }
+                    for (Neighbour n : neighbours.get(i)) {
+                        if (annotations.get(n.getIndex()) == null) {
+                            continue;
+                        }
+                        writer.write("\"" + ids.get(i) + "\"" + TAB + "\"" + ids.get(n.getIndex()) + "\"" + TAB
+                                + myFormatter.format(n.getScore()));
+                        writer.newLine();
+                    }
                 }
             }
-        } finally {
-            bufferedWriterBC.close();
         }
+    }
 
-        try {
-            for (SimilarityResult s : results) {
-                if (s.getSimilarityReactions().containsKey("RC")) {
-                    bufferedWriterRC.write("\"" + s.getQuery() + "\"" + TAB + "\"" + s.getTarget() + "\"" + TAB + s.getSimilarityReactions().get("RC"));
-                    bufferedWriterRC.newLine();
-                } else {
-                    bufferedWriterRC.write("\"" + s.getQuery() + "\"" + TAB + "\"" + s.getTarget() + "\"" + TAB + "NA");
-                    bufferedWriterRC.newLine();
-                }
-            }
-        } finally {
-            bufferedWriterRC.close();
+    /**
+     * BC, RC and ST fingerprints of the selected solution, all a similarity
+     * matrix needs of an annotated reaction.
+     *
+     * @param rmt annotated reaction, may be null
+     * @return fingerprints, null if the reaction has no selected solution
+     * @throws CDKException
+     */
+    protected static IPatternFingerprinter[] getSimilarityFingerprints(ReactionMechanismTool rmt) throws CDKException {
+        if (rmt == null || rmt.getSelectedSolution() == null) {
+            return null;
         }
+        BondChangeCalculator bcc = rmt.getSelectedSolution().getBondChangeCalculator();
+        IPatternFingerprinter fp = new PatternFingerprinter();
+        fp.add(bcc.getFormedCleavedWFingerprint());
+        fp.add(bcc.getOrderChangesWFingerprint());
+        fp.add(bcc.getStereoChangesWFingerprint());
+        return new IPatternFingerprinter[]{fp, bcc.getReactionCenterWFingerprint(),
+            new ReactionFingerprinter(bcc.getReaction()).getReactionStruturalFingerprint()};
+    }
 
-        try {
-            for (SimilarityResult s : results) {
-                if (s.getSimilarityReactions().containsKey("ST")) {
-                    bufferedWriterST.write("\"" + s.getQuery() + "\"" + TAB + "\"" + s.getTarget() + "\"" + TAB + s.getSimilarityReactions().get("ST"));
-                    bufferedWriterST.newLine();
-                } else {
-                    bufferedWriterST.write("\"" + s.getQuery() + "\"" + TAB + "\"" + s.getTarget() + "\"" + TAB + "NA");
-                    bufferedWriterST.newLine();
-                }
+    /*
+     * Fingerprints by similarity type, empty for the failed reactions
+     */
+    private static List<List<IPatternFingerprinter>> getSimilarityColumns(List<IPatternFingerprinter[]> annotations) {
+        List<List<IPatternFingerprinter>> fingerprints = new ArrayList<>();
+        for (int c = 0; c < SIMILARITY_TYPES.length; c++) {
+            fingerprints.add(new ArrayList<>(annotations.size()));
+        }
+        for (IPatternFingerprinter[] annotation : annotations) {
+            for (int c = 0; c < SIMILARITY_TYPES.length; c++) {
+                fingerprints.get(c).add(annotation == null ? new PatternFingerprinter() : annotation[c]);
             }
-        } finally {
-            bufferedWriterST.close();
         }
-
+        return fingerprints;
     }
 
     private void printRPAIRPatternAsText(MappingSolution s, StringBuilder sb) throws CloneNotSupportedException {
@@ -355,7 +463,7 @@ public class Annotator extends Helper {
         sb.append(NEW_LINE);
     }
 
-    private void printRPAIRPatternAsXML(MappingSolution s, org.w3c.dom.Document doc, org.w3c.dom.Element rootElement) {
+    private void printRPAIRPattern(MappingSolution s, ResultWriter writer) throws IOException {
 
         Map<Integer, IPatternFingerprinter> reactionCenterFormedCleavedFingerprint = s.getBondChangeCalculator().getReactionCenterFormedCleavedFingerprint();
         Map<Integer, IPatternFingerprinter> reactionCenterOrderChangeFingerprint = s.getBondChangeCalculator().getReactionCenterOrderChangeFingerprint();
@@ -366,114 +474,60 @@ public class Annotator extends Helper {
          */
         Set<Integer> levels = reactionCenterFormedCleavedFingerprint.keySet();
 
-        levels.stream().filter((i) -> !(i == -1)).forEachOrdered((i) -> {
-            //Start of Fingerprint elements
-            org.w3c.dom.Element rc = doc.createElement("ReactionCenters");
+        for (Integer i : levels) {
+            if (i == -1) {
+                continue;
+            }
             //Start of Fingerprint elements
-            rootElement.appendChild(rc);
-            //Start of BC as child node of Fingerprint elements
-            org.w3c.dom.Attr attr = doc.createAttribute("LEVEL");
-            attr.setValue(i + "");
-            rc.setAttributeNode(attr);
+            writer.startElement("ReactionCenters");
+            writer.attribute("LEVEL", i + "");
             if (reactionCenterFormedCleavedFingerprint.containsKey(i)) {
                 // FC elements
-                org.w3c.dom.Element fp_FORMED_CLEAVED = doc.createElement("FC");
-                fp_FORMED_CLEAVED.appendChild(doc.createTextNode(reactionCenterFormedCleavedFingerprint.get(i).getFeatures().toString()));
-                rc.appendChild(fp_FORMED_CLEAVED);
+                writer.element("FC", reactionCenterFormedCleavedFingerprint.get(i).getFeatures().toString());
             }
             if (reactionCenterOrderChangeFingerprint.containsKey(i)) {
                 // OC elements
-                org.w3c.dom.Element fp_ORDER_CHANGED = doc.createElement("OC");
-                fp_ORDER_CHANGED.appendChild(doc.createTextNode(reactionCenterOrderChangeFingerprint.get(i).getFeatures().toString()));
-                rc.appendChild(fp_ORDER_CHANGED);
+                writer.element("OC", reactionCenterOrderChangeFingerprint.get(i).getFeatures().toString());
             }
             if (reactionCenterStereoChangeFingerprint.containsKey(i)) {
                 // ST elements
-                org.w3c.dom.Element fp_STEREO_CHANGED = doc.createElement("ST");
-                fp_STEREO_CHANGED.appendChild(doc.createTextNode(reactionCenterStereoChangeFingerprint.get(i).getFeatures().toString()));
-                rc.appendChild(fp_STEREO_CHANGED);
+                writer.element("ST", reactionCenterStereoChangeFingerprint.get(i).getFeatures().toString());
             }
-        });
-
-        Collection<MoleculeMoleculePair> reactionTransform = s.getBondChangeCalculator().getReactionCentreTransformationPairs();
-
-        //Start of Fingerprint elements
-        org.w3c.dom.Element transform = doc.createElement("TRANSFORMATION");
-        rootElement.appendChild(transform);
-
-        //Start of RPAIR as child node of Fingerprint elements
-        org.w3c.dom.Attr attr = doc.createAttribute("LEVEL");
-        attr.setValue(1 + "");
-        transform.setAttributeNode(attr);
-
-        int index = 1;
-
-        for (MoleculeMoleculePair m : reactionTransform) {
-            // RAIR elements
-            org.w3c.dom.Element rpairMATCH = doc.createElement("MMP" + index);
-            rpairMATCH.appendChild(doc.createTextNode(m.getSmirks1()));
-            transform.appendChild(rpairMATCH);
-            index++;
+            writer.endElement();
         }
 
-        //Start of Fingerprint elements
-        transform = doc.createElement("TRANSFORMATION");
-        rootElement.appendChild(transform);
-
-        //Start of RPAIR as child node of Fingerprint elements
-        attr = doc.createAttribute("LEVEL");
-        attr.setValue(2 + "");
-        transform.setAttributeNode(attr);
-        index = 1;
-
-        for (MoleculeMoleculePair m : reactionTransform) {
-            // RAIR elements
-            org.w3c.dom.Element rpairMATCH = doc.createElement("MMP" + index);
-            rpairMATCH.appendChild(doc.createTextNode(m.getSmirks2()));
-            transform.appendChild(rpairMATCH);
-            index++;
-        }
-
-        //Start of Fingerprint elements
-        transform = doc.createElement("TRANSFORMATION");
-        rootElement.appendChild(transform);
-
-        //Start of RPAIR as child node of Fingerprint elements
-        attr = doc.createAttribute("LEVEL");
-        attr.setValue(3 + "");
-        transform.setAttributeNode(attr);
-        index = 1;
+        Collection<MoleculeMoleculePair> reactionTransform = s.getBondChangeCalculator().getReactionCentreTransformationPairs();
 
-        for (MoleculeMoleculePair m : reactionTransform) {
-            // RAIR elements
-            org.w3c.dom.Element rpairMATCH = doc.createElement("MMP" + index);
-            rpairMATCH.appendChild(doc.createTextNode(m.getSmirks3()));
-            transform.appendChild(rpairMATCH);
-            index++;
+        for (int level = 1; level <= 3; level++) {
+            //Start of RPAIR as child node of Fingerprint elements
+            writer.startElement("TRANSFORMATION");
+            writer.attribute("LEVEL", level + "");
+            int index = 1;
+            for (MoleculeMoleculePair m : reactionTransform) {
+                // RAIR elements
+                String smirks = level == 1 ? m.getSmirks1() : level == 2 ? m.getSmirks2() : m.getSmirks3();
+                writer.element("MMP" + index, smirks);
+                index++;
+            }
+            writer.endElement();
         }
 
         Map<String, Collection<String>> moleculeMoleculeTransformationPairs = s.getBondChangeCalculator().getMoleculeMoleculeTransformationPairs();
 
-        index = 1;
+        int index = 1;
         for (String m : moleculeMoleculeTransformationPairs.keySet()) {
 
             //Start of Fingerprint elements
-            org.w3c.dom.Element rpair = doc.createElement("RPAIR");
-            rootElement.appendChild(rpair);
-
-            //Start of RPAIR as child node of Fingerprint elements
-            attr = doc.createAttribute("COUNT");
-            attr.setValue(index + "");
-            rpair.setAttributeNode(attr);
+            writer.startElement("RPAIR");
+            writer.attribute("COUNT", index + "");
 
             // RAIR elements
-            org.w3c.dom.Element rpairMATCH = doc.createElement("MMP");
             Collection<String> mmp = moleculeMoleculeTransformationPairs.get(m);
             StringBuilder sb = new StringBuilder(m);
             sb.append("\t");
             sb.append(mmp);
-            rpairMATCH.appendChild(doc.createTextNode(sb.toString()));
-            rpair.appendChild(rpairMATCH);
+            writer.element("MMP", sb.toString());
+            writer.endElement();
             index++;
         }
     }
@@ -563,6 +617,11 @@ public class Annotator extends Helper {
             sb.append("//");
             sb.append(NEW_LINE);
             sb.append("SELECTED AAM MAPPING");
+            if (rmt.isDegradedMapping()) {
+                sb.append(" (DEGRADED: over the memory budget, models run: ")
+                        .append(rmt.getMappingModels().stream().map(Object::toString).collect(joining(", ")))
+                        .append(")");
+            }
             sb.append(NEW_LINE);
             //Start of Fingerprint elements
             try {
@@ -633,15 +692,38 @@ public class Annotator extends Helper {
      * @param rootElement
      */
     protected void annotateReactionAsXML(ReactionMechanismTool rmt, String reactionID, Document doc, Element rootElement) {
+        try {
+            annotateReaction(rmt, reactionID, new DOMResultWriter(doc, rootElement));
+        } catch (IOException ex) {
+            LOGGER.error(SEVERE, null, ex);
+        }
+    }
+
+    /**
+     * Writes the annotation of the reaction as one record of the writer. A
+     * writer shared by several threads is locked for the record.
+     *
+     * @param rmt
+     * @param reactionID
+     * @param writer
+     * @throws IOException
+     */
+    protected void annotateReaction(ReactionMechanismTool rmt, String reactionID, ResultWriter writer) throws IOException {
+        synchronized (writer) {
+            writer.startRecord(reactionID, "ANNOTATION");
+            try {
+                writeAnnotation(rmt, reactionID, writer);
+            } finally {
+                writer.endRecord();
+            }
+        }
+    }
+
+    private void writeAnnotation(ReactionMechanismTool rmt, String reactionID, ResultWriter writer) throws IOException {
         DecimalFormatSymbols instance = DecimalFormatSymbols.getInstance();
         instance.setExponentSeparator("E");//x10^
         DecimalFormat df = new DecimalFormat("##E00", instance);
 
-        NumberFormat myFormatter = NumberFormat.getInstance();
-        myFormatter.setMinimumFractionDigits(2);
-        myFormatter.setMaximumFractionDigits(2);
-        Element annot = doc.createElement("ANNOTATION");
-        rootElement.appendChild(annot);
         try {
             MappingSolution s = rmt.getSelectedSolution();
             if (s == null) {
@@ -651,54 +733,42 @@ public class Annotator extends Helper {
 
             if (REPORT_PATTERNS) {
                 //Start of Fingerprint elements
-                Element fp = doc.createElement("FINGERPRINTS");
-                annot.appendChild(fp);
+                writer.startElement("FINGERPRINTS");
                 //Start of BC as child node of Fingerprint elements
-                Attr attr = doc.createAttribute("BC");
-                attr.setValue("1");
-                fp.setAttributeNode(attr);
+                writer.attribute("BC", "1");
                 if (!s.getBondChangeCalculator().getFormedCleavedWFingerprint().getFeatures().isEmpty()) {
                     // fp_Reaction_Centre elements
-                    Element fp_Formed_Cleaved = doc.createElement("FORMED_CLEAVED");
-                    fp_Formed_Cleaved.appendChild(doc.createTextNode(s.getBondChangeCalculator()
-                            .getFormedCleavedWFingerprint().getFeatures().toString()));
-                    fp.appendChild(fp_Formed_Cleaved);
+                    writer.element("FORMED_CLEAVED", s.getBondChangeCalculator()
+                            .getFormedCleavedWFingerprint().getFeatures().toString());
                 }
                 if (!s.getBondChangeCalculator().getOrderChangesWFingerprint().getFeatures().isEmpty()) {
                     // fp_STEREO_CHANGED elements
-                    Element fp_ORDER_CHANGED = doc.createElement("ORDER_CHANGED");
-                    fp_ORDER_CHANGED.appendChild(doc.createTextNode(s.getBondChangeCalculator()
-                            .getOrderChangesWFingerprint().getFeatures().toString()));
-                    fp.appendChild(fp_ORDER_CHANGED);
+                    writer.element("ORDER_CHANGED", s.getBondChangeCalculator()
+                            .getOrderChangesWFingerprint().getFeatures().toString());
                 }
                 //
                 if (!s.getBondChangeCalculator().getStereoChangesWFingerprint().getFeatures().isEmpty()) {
                     // fp_STEREO_CHANGED elements
-                    Element fp_STEREO_CHANGED = doc.createElement("STEREO_CHANGED");
-                    fp_STEREO_CHANGED.appendChild(doc.createTextNode(s.getBondChangeCalculator()
-                            .getStereoChangesWFingerprint().getFeatures().toString()));
-                    fp.appendChild(fp_STEREO_CHANGED);
+                    writer.element("STEREO_CHANGED", s.getBondChangeCalculator()
+                            .getStereoChangesWFingerprint().getFeatures().toString());
                 }
+                writer.endElement();
                 //Start of Fingerprint elements
-                fp = doc.createElement("FINGERPRINTS");
-                annot.appendChild(fp);
+                writer.startElement("FINGERPRINTS");
                 //Start of RC as child node of Fingerprint elements
-                attr = doc.createAttribute("RC");
-                attr.setValue("2");
-                fp.setAttributeNode(attr);
+                writer.attribute("RC", "2");
                 /*
                  fp_Reaction_Centre elements
                  */
-                Element fp_Reaction_Centre = doc.createElement("CENTRE");
-                fp_Reaction_Centre.appendChild(doc.createTextNode(s.getBondChangeCalculator()
-                        .getReactionCenterWFingerprint().getFeatures().toString()));
-                fp.appendChild(fp_Reaction_Centre);
+                writer.element("CENTRE", s.getBondChangeCalculator()
+                        .getReactionCenterWFingerprint().getFeatures().toString());
+                writer.endElement();
 
                 /*
                  Call RPAIR type Transformations
                  */
                 if (REPORT_MMP) {
-                    printRPAIRPatternAsXML(s, doc, annot);
+                    printRPAIRPattern(s, writer);
                 }
             }
 
@@ -712,26 +782,29 @@ public class Annotator extends Helper {
                     | SmiFlavor.Stereo
             );
             //Start of Fingerprint elements
-            Element aam = doc.createElement("MAPPING");
-            annot.appendChild(aam);
+            writer.startElement("MAPPING");
 
             //Start of BEST SOL as child node of AAM elements
-            Attr attr = doc.createAttribute("STATUS");
-            attr.setValue("SELECTED");
-            aam.setAttributeNode(attr);
+            writer.attribute("STATUS", "SELECTED");
+            if (rmt.isDegradedMapping()) {
+                /*
+                 * over the memory budget, mapped by the models which fit
+                 */
+                writer.attribute("DEGRADED", "true");
+                writer.attribute("MODELS", rmt.getMappingModels().stream()
+                        .map(Object::toString).collect(joining(",")));
+            }
             // AAM elements
-            Element selected_AAM = doc.createElement("AAM");
-
-            //Start of Fingerprint elements
+            String selectedAAM = "";
             try {
                 IReaction reactionWithCompressUnChangedHydrogens = s.getBondChangeCalculator()
                         .getReactionWithCompressUnChangedHydrogens();
-                selected_AAM.appendChild(doc.createTextNode(smileGenerator.create(reactionWithCompressUnChangedHydrogens)));
+                selectedAAM = smileGenerator.create(reactionWithCompressUnChangedHydrogens);
             } catch (CDKException e) {
                 LOGGER.info("Error in creating reaction SMILES ");
                 LOGGER.error(SEVERE, null, e);
             }
-            aam.appendChild(selected_AAM);
+            writer.element("AAM", selectedAAM);
 
             //OLD RANK
             /*
@@ -740,53 +813,27 @@ public class Annotator extends Helper {
             if (REMAP) {
                 String reactant_atom_rank = s.getReactor().getInputRankLabelledAtomsProduct().toString();
                 String product_atom_rank = s.getReactor().getInputRankLabelledAtomsProduct().toString();
-
-                Element selected_AAM_RANK_R = doc.createElement("RANK_REACTANT");
-                selected_AAM_RANK_R.appendChild(doc.createTextNode(reactant_atom_rank));
-                aam.appendChild(selected_AAM_RANK_R);
-
-                Element selected_AAM_RANK_P = doc.createElement("RANK_PRODUCT");
-                selected_AAM_RANK_P.appendChild(doc.createTextNode(product_atom_rank));
-                aam.appendChild(selected_AAM_RANK_P);
+                writer.element("RANK_REACTANT", reactant_atom_rank);
+                writer.element("RANK_PRODUCT", product_atom_rank);
             }
+            writer.endElement();
 
             if (REPORT_ALL_MAPPINGS) {
                 for (MappingSolution m : rmt.getAllSolutions()) {
+                    String solutionAAM = smileGenerator.create(m.getBondChangeCalculator().getReactionWithCompressUnChangedHydrogens());
                     //Start of Fingerprint elements
-                    aam = doc.createElement("MAPPING");
-                    annot.appendChild(aam);
+                    writer.startElement("MAPPING");
                     //Start of BEST SOL as child node of AAM elements
-                    attr = doc.createAttribute("ALGORTIHM");
-                    attr.setValue(m.getAlgorithmID().description());
-                    aam.setAttributeNode(attr);
-                    // AAM elements
-                    Element solutionAAM = doc.createElement("AAM");
-                    solutionAAM.appendChild(doc.createTextNode(smileGenerator.create(m.getBondChangeCalculator().getReactionWithCompressUnChangedHydrogens())));
-                    aam.appendChild(solutionAAM);
-                    // AAM elements
-                    Element score = doc.createElement("SCORE");
-                    score.appendChild(doc.createTextNode((m.getTotalChanges()) + ""));
-                    aam.appendChild(score);
-                    // AAM elements
-                    score = doc.createElement("CHAOS");
-                    score.appendChild(doc.createTextNode(m.getTotalBondChanges() + ""));
-                    aam.appendChild(score);
-                    // AAM elements
-                    score = doc.createElement("FRAG");
-                    score.appendChild(doc.createTextNode(m.getTotalFragmentChanges() + " <=> " + m.getSmallestFragmentCount()));
-                    aam.appendChild(score);
-                    // AAM elements
-                    score = doc.createElement("SIGMA");
-                    score.appendChild(doc.createTextNode(m.getTotalCarbonBondChanges() + ""));
-                    aam.appendChild(score);
-                    // AAM elements
-                    score = doc.createElement("ENERGY");
-                    score.appendChild(doc.createTextNode(df.format(m.getBondEnergySum()) + ""));
-                    aam.appendChild(score);
+                    writer.attribute("ALGORTIHM", m.getAlgorithmID().description());
                     // AAM elements
-                    score = doc.createElement("DELTA");
-                    score.appendChild(doc.createTextNode(df.format(m.getEnergyDelta()) + ""));
-                    aam.appendChild(score);
+                    writer.element("AAM", solutionAAM);
+                    writer.element("SCORE", (m.getTotalChanges()) + "");
+                    writer.element("CHAOS", m.getTotalBondChanges() + "");
+                    writer.element("FRAG", m.getTotalFragmentChanges() + " <=> " + m.getSmallestFragmentCount());
+                    writer.element("SIGMA", m.getTotalCarbonBondChanges() + "");
+                    writer.element("ENERGY", df.format(m.getBondEnergySum()) + "");
+                    writer.element("DELTA", df.format(m.getEnergyDelta()) + "");
+                    writer.endElement();
                 }
             }
         } catch (CDKException ex) {
@@ -0,0 +1,916 @@
+/*
+ * Copyright (C) 2007-2020 Syed Asad Rahman <asad @ ebi.ac.uk>.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package uk.ac.ebi.aamtool;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.lang.ref.SoftReference;
+import static java.lang.System.nanoTime;
+import static java.lang.System.out;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.Files.move;
+import static java.nio.file.Files.write;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import java.util.ArrayList;
+import java.util.Arrays;
+import static java.util.Comparator.comparingDouble;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import static java.util.concurrent.Executors.newCachedThreadPool;
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import static java.util.concurrent.Executors.newSingleThreadExecutor;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import java.util.concurrent.TimeoutException;
+import static java.util.logging.Level.SEVERE;
+import org.openscience.cdk.Reaction;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.interfaces.IReaction;
+import org.openscience.cdk.tools.ILoggingTool;
+import org.openscience.cdk.tools.LoggingToolFactory;
+import uk.ac.ebi.reactionblast.mapping.helper.MappingCostModel;
+import uk.ac.ebi.reactionblast.mechanism.ReactionMechanismTool;
+import uk.ac.ebi.reactionblast.tools.ReactionSmilesReader;
+import uk.ac.ebi.reactionblast.tools.SVGReactionRenderer;
+import uk.ac.ebi.reactionblast.tools.rxnfile.IndexedMDLReader;
+import uk.ac.ebi.reactionblast.tools.rxnfile.MDLRXNV2000Reader;
+
+/**
+ * Checkpointed batch mapping of an RDF/RXN file, a directory of RXN files or a
+ * reaction SMILES file (one reaction per line, optionally followed by an ID).
+ * <p>
+ * Every finished reaction appends one line to {@code <job>.journal}:
+ * <pre>
+ * index  ID  status  elapsed(ms)  offset  length  predicted(ms)
+ * </pre> where offset/length locate its record in {@code <job>.parts}; the
+ * journals of earlier versions have no predicted time and are read as well.
+ * The first line of the journal holds the format, the mapping options and the
+ * size and modification time of the input; a journal of other settings or
+ * another input is refused, a journaled reaction whose ID is not the one of
+ * the input at its index is mapped again. A
+ * restarted job skips the journaled reactions (optionally retrying the
+ * failed, timed out, unmapped and degraded ones with the new settings) and,
+ * once every reaction has a status, assembles the output in input order.
+ * Reactions over the memory budget of
+ * {@link uk.ac.ebi.reactionblast.mapping.helper.MappingBudget} are mapped by
+ * fewer models and journaled as {@link Status#DEGRADED}. The output
+ * therefore does not depend on interruptions, retries or thread count.
+ * <p>
+ * The reactions are scheduled by the {@link MappingCostModel} estimate,
+ * largest first, so that the long mappings start early and the small ones fill
+ * the gaps. The predicted and actual times of a run are written to
+ * {@code <job>.cost} with the model fitted on them.
+ * <p>
+ * With {@link #setImageOutput(File)} each reaction mapped in a run is also
+ * drawn as an SVG thumbnail {@code <ID>_<n>.svg} in the image directory, n
+ * being its position in the input; the reactions journaled by an earlier run
+ * are not drawn again. The images are drawn by a thread of their own, a
+ * reaction which can't be drawn is logged and doesn't stop the batch.
+ *
+ * @contact Syed Asad Rahman, EMBL-EBI, Cambridge, UK.
+ * @author Syed Asad Rahman <asad @ ebi.ac.uk>
+ */
+public class BatchMapper extends Annotator implements Closeable {
+
+    private static final ILoggingTool LOGGER
+            = LoggingToolFactory.createLoggingTool(BatchMapper.class);
+    private static final String JOURNAL_HEADER = "#RDT-BATCH";
+    private static final int JOURNAL_FIELDS = 7;
+    /*
+     * journal lines written before the predicted time was added
+     */
+    private static final int JOURNAL_FIELDS_V1 = 6;
+
+    /**
+     * Final state of a reaction in the journal
+     */
+    public enum Status {
+
+        /**
+         * Mapped, record in the parts file
+         */
+        DONE,
+        /**
+         * Mapped by fewer models as it was over the memory budget, record in
+         * the parts file
+         */
+        DEGRADED,
+        /**
+         * Unable to read or map
+         */
+        FAILED,
+        /**
+         * Not mapped within the timeout
+         */
+        TIMEOUT,
+        /**
+         * No mapping solution
+         */
+        UNMAPPED;
+
+        /**
+         * @return true if the reaction has a record in the parts file
+         */
+        public boolean hasRecord() {
+            return this == DONE || this == DEGRADED;
+        }
+    }
+
+    /*
+     * Record of a mapped reaction
+     */
+    private static class Mapped {
+
+        final byte[] bytes;
+        final boolean degraded;
+        final IReaction reaction;
+
+        Mapped(byte[] bytes, boolean degraded, IReaction reaction) {
+            this.bytes = bytes;
+            this.degraded = degraded;
+            this.reaction = reaction;
+        }
+    }
+
+    /*
+     * Mapped reactions waiting to be drawn, the mapping waits beyond
+     */
+    private static final int IMAGE_QUEUE = 64;
+
+    /*
+     * Journal line of a reaction, the last line of an index wins
+     */
+    private static class Entry {
+
+        final String id;
+        final Status status;
+        final long offset;
+        final int length;
+
+        Entry(String id, Status status, long offset, int length) {
+            this.id = id;
+            this.status = status;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private final String format;
+    private final boolean complexMappingFlag;
+    private final boolean acceptNoChange;
+    private final long timeout;
+    private final File journalFile;
+    private final File partsFile;
+    private final File outputFile;
+    private final File costFile;
+    private final Map<Integer, Entry> journal;
+    private final FileChannel parts;
+    private final Writer journalWriter;
+    private final byte[] header;
+    private final byte[] footer;
+    /*
+     * ID, cost, predicted and actual ms of the reactions mapped in this run
+     */
+    private final List<Object[]> observations;
+    private MappingCostModel costModel;
+    private boolean costOrdered;
+    private File imageOutput;
+    private SVGReactionRenderer renderer;
+    private ExecutorService painter;
+    private Semaphore painting;
+    /*
+     * first line of the journal, null if not written yet
+     */
+    private String journalSettings;
+
+    /**
+     *
+     * @param job path prefix of the journal, parts and output files
+     * @param format XML, JSON or TEXT
+     * @param annotate report bond changes and reaction centres (ANNOTATE)
+     * @param complexMappingFlag complex mapping ..ring system etc.
+     * @param acceptNoChange accept transporter
+     * @param timeout seconds allowed per reaction, 0 for no limit
+     * @throws IOException if the job files can't be opened or the journal
+     * belongs to a job with another format or mode, the other settings and
+     * the input are checked by {@link #run(File, int, boolean)}
+     */
+    public BatchMapper(String job, String format, boolean annotate,
+            boolean complexMappingFlag, boolean acceptNoChange, long timeout) throws IOException {
+        super();
+        this.format = format.toUpperCase();
+        this.complexMappingFlag = complexMappingFlag;
+        this.acceptNoChange = acceptNoChange;
+        this.timeout = timeout;
+        this.REPORT_PATTERNS = annotate;
+        this.journalFile = new File(job + ".journal");
+        this.partsFile = new File(job + ".parts");
+        this.costFile = new File(job + ".cost");
+        this.observations = new ArrayList<>();
+        this.costModel = MappingCostModel.DEFAULT;
+        this.costOrdered = true;
+        switch (this.format) {
+            case "JSON":
+                this.outputFile = new File(job + ".jsonl");
+                this.header = new byte[0];
+                this.footer = new byte[0];
+                break;
+            case "TEXT":
+                this.outputFile = new File(job + ".txt");
+                this.header = new byte[0];
+                this.footer = new byte[0];
+                break;
+            case "XML":
+                this.outputFile = new File(job + ".xml");
+                ByteArrayOutputStream empty = new ByteArrayOutputStream();
+                new XMLResultWriter(empty).close();
+                byte[] bytes = empty.toByteArray();
+                String root = "<" + XMLResultWriter.ROOT + ">";
+                int split = new String(bytes, UTF_8).indexOf(root) + root.length();
+                this.header = Arrays.copyOfRange(bytes, 0, split);
+                this.footer = Arrays.copyOfRange(bytes, split, bytes.length);
+                break;
+            default:
+                throw new IOException("Unsupported batch format " + format);
+        }
+        String mode = JOURNAL_HEADER + "\t" + this.format + "\t" + (annotate ? "ANNOTATE" : "AAM");
+        this.journal = readJournal(mode);
+        this.parts = new RandomAccessFile(partsFile, "rw").getChannel();
+        /*
+         * drop a record written after the last journal line
+         */
+        long end = 0;
+        for (Entry e : journal.values()) {
+            if (e.status.hasRecord()) {
+                end = Math.max(end, e.offset + e.length);
+            }
+        }
+        parts.truncate(end);
+        this.journalWriter = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(journalFile, true), UTF_8));
+    }
+
+    /**
+     * Schedule the reactions largest estimated cost first (default) or in
+     * input order.
+     *
+     * @param costOrdered
+     */
+    public void setCostOrdered(boolean costOrdered) {
+        this.costOrdered = costOrdered;
+    }
+
+    /**
+     *
+     * @param costModel model converting the cost estimates into milliseconds
+     */
+    public void setCostModel(MappingCostModel costModel) {
+        this.costModel = costModel;
+    }
+
+    /**
+     * Draws the reactions mapped by the next runs as SVG thumbnails, with the
+     * reaction centres highlighted in ANNOTATE mode and the mapped
+     * substructures otherwise.
+     *
+     * @param directory image directory, created if missing
+     * @throws IOException if the directory can't be created
+     */
+    public void setImageOutput(File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create image directory " + directory);
+        }
+        this.imageOutput = directory;
+        this.renderer = new SVGReactionRenderer(REPORT_PATTERNS
+                ? SVGReactionRenderer.Style.REACTION_CENTRE : SVGReactionRenderer.Style.MAPPING, true);
+    }
+
+    /**
+     * Maps the reactions not yet in the journal and writes the output once
+     * every reaction has a status.
+     *
+     * @param input RDF/RXN file, directory of RXN files or reaction SMILES
+     * file
+     * @param threads reactions mapped at a time
+     * @param retry map the failed, timed out and unmapped reactions again
+     * @return true if the output was written
+     * @throws IOException if the journal was written with other settings or
+     * for another input
+     */
+    public boolean run(File input, int threads, boolean retry) throws IOException {
+        checkSettings(settings(input));
+        Source source = open(input);
+        try {
+            List<Integer> pending = new ArrayList<>();
+            for (int i = 0; i < source.size(); i++) {
+                Entry e = journal.get(i);
+                if (e != null && !matches(source, i, e)) {
+                    LOGGER.warn("Journaled reaction " + e.id + " is not reaction "
+                            + (i + 1) + " of the input, mapping it again");
+                    journal.remove(i);
+                    e = null;
+                }
+                if (e == null || (retry && e.status != Status.DONE)) {
+                    pending.add(i);
+                }
+            }
+            out.println("Batch: " + source.size() + " reactions, "
+                    + (source.size() - pending.size()) + " journaled, "
+                    + pending.size() + " to map");
+
+            ExecutorService workers = newFixedThreadPool(Math.max(1, threads));
+            ExecutorService mappers = newCachedThreadPool();
+            painter = imageOutput == null ? null : newSingleThreadExecutor();
+            painting = new Semaphore(IMAGE_QUEUE);
+            /*
+             * a timed out mapping can't be stopped, it keeps its permit until
+             * it ends so that no more than threads reactions are mapped at a
+             * time
+             */
+            Semaphore permits = new Semaphore(Math.max(1, threads));
+            try {
+                /*
+                 * the reactions parsed to order the batch are kept while
+                 * memory allows, the others are read again
+                 */
+                Map<Integer, SoftReference<IReaction>> parsed = new HashMap<>();
+                Map<Integer, Double> costs = costOrdered
+                        ? estimate(source, pending, workers, parsed) : new HashMap<>();
+                if (costOrdered) {
+                    pending.sort(comparingDouble((Integer index) -> costs.get(index)).reversed()
+                            .thenComparingInt(index -> index));
+                }
+                List<Future<?>> tasks = new ArrayList<>(pending.size());
+                for (int index : pending) {
+                    SoftReference<IReaction> reference = parsed.remove(index);
+                    tasks.add(workers.submit(() -> {
+                        process(source, index, reference == null ? null : reference.get(),
+                                costs.get(index), mappers, permits);
+                        return null;
+                    }));
+                }
+                await(tasks);
+                if (painter != null) {
+                    painter.shutdown();
+                    try {
+                        painter.awaitTermination(Long.MAX_VALUE, SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Batch interrupted", e);
+                    }
+                }
+            } finally {
+                workers.shutdownNow();
+                mappers.shutdownNow();
+                if (painter != null) {
+                    painter.shutdownNow();
+                }
+            }
+            reportCost();
+
+            Map<Status, Integer> summary = new TreeMap<>();
+            for (int i = 0; i < source.size(); i++) {
+                Entry e = journal.get(i);
+                if (e == null) {
+                    return false;
+                }
+                summary.merge(e.status, 1, Integer::sum);
+            }
+            out.println("Batch status " + summary);
+            assemble(source.size());
+            out.println("Output is presented in " + format.toLowerCase() + " format: " + outputFile.getAbsolutePath());
+            return true;
+        } finally {
+            source.close();
+        }
+    }
+
+    /**
+     * @return status of the reactions by index as in the journal
+     */
+    public synchronized Map<Integer, Status> getStatus() {
+        Map<Integer, Status> status = new TreeMap<>();
+        journal.forEach((index, e) -> status.put(index, e.status));
+        return status;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            journalWriter.close();
+        } finally {
+            parts.close();
+        }
+    }
+
+    /*
+     * Journal settings of this job on an input: format, mode, the mapping
+     * options and the size and modification time of the input
+     */
+    private String settings(File input) throws IOException {
+        long size = 0;
+        long modified = 0;
+        if (input.isDirectory()) {
+            File[] files = input.listFiles((dir, file) -> file.toLowerCase().endsWith(".rxn"));
+            if (files == null) {
+                throw new IOException("Unable to list " + input);
+            }
+            for (File file : files) {
+                size += file.length();
+                modified = Math.max(modified, file.lastModified());
+            }
+        } else {
+            size = input.length();
+            modified = input.lastModified();
+        }
+        return JOURNAL_HEADER + "\t" + format + "\t" + (REPORT_PATTERNS ? "ANNOTATE" : "AAM")
+                + "\tcomplex=" + complexMappingFlag + ",premap=" + !REMAP
+                + ",acceptNoChange=" + acceptNoChange + ",all=" + REPORT_ALL_MAPPINGS
+                + ",mmp=" + REPORT_MMP
+                + "\tinput=" + input.getName() + ",size=" + size + ",modified=" + modified;
+    }
+
+    /*
+     * Writes the settings of a new journal, or refuses a journal written with
+     * other settings; the journals of earlier versions only have the format
+     * and mode, which were checked on opening
+     */
+    private synchronized void checkSettings(String settings) throws IOException {
+        if (journalSettings == null) {
+            journalWriter.write(settings);
+            journalWriter.write('\n');
+            journalWriter.flush();
+            journalSettings = settings;
+        } else if (journalSettings.split("\t").length == 3) {
+            LOGGER.warn("Journal " + journalFile + " has no mapping options nor input, resuming as is");
+        } else if (!journalSettings.equals(settings)) {
+            throw new IOException("Journal " + journalFile
+                    + " was written with other settings or input (" + journalSettings + ")");
+        }
+    }
+
+    /*
+     * True if the journaled ID is the one of the input reaction, a reaction
+     * which can't be read only matches a failed entry
+     */
+    private static boolean matches(Source source, int index, Entry e) {
+        String id;
+        try {
+            id = source.id(index);
+        } catch (IOException | CDKException | RuntimeException ex) {
+            return e.status == Status.FAILED;
+        }
+        return id.replace('\t', ' ').equals(e.id);
+    }
+
+    /*
+     * Cost estimates of the pending reactions, 0 if unreadable (these fail
+     * fast); the parsed reactions are put in parsed
+     */
+    private Map<Integer, Double> estimate(Source source, List<Integer> pending,
+            ExecutorService workers, Map<Integer, SoftReference<IReaction>> parsed) throws IOException {
+        Map<Integer, Double> costs = new HashMap<>();
+        List<Future<?>> tasks = new ArrayList<>(pending.size());
+        for (int index : pending) {
+            tasks.add(workers.submit(() -> {
+                double cost;
+                try {
+                    IReaction reaction = source.read(index);
+                    cost = MappingCostModel.cost(reaction);
+                    synchronized (parsed) {
+                        parsed.put(index, new SoftReference<>(reaction));
+                    }
+                } catch (IOException | CDKException | RuntimeException e) {
+                    cost = 0.0;
+                }
+                synchronized (costs) {
+                    costs.put(index, cost);
+                }
+                return null;
+            }));
+        }
+        await(tasks);
+        return costs;
+    }
+
+    private static void await(List<Future<?>> tasks) throws IOException {
+        for (Future<?> task : tasks) {
+            try {
+                task.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Batch interrupted", e);
+            }
+        }
+    }
+
+    /*
+     * Maps a reaction, parsed (or null to read it) and its cost (or null to
+     * estimate it) may come from the scheduling pass
+     */
+    private void process(Source source, int index, IReaction parsed, Double estimate,
+            ExecutorService mappers, Semaphore permits) throws IOException {
+        long start = nanoTime();
+        IReaction reaction;
+        double cost;
+        try {
+            reaction = parsed == null ? source.read(index) : parsed;
+            cost = estimate == null ? MappingCostModel.cost(reaction) : estimate;
+        } catch (IOException | CDKException | RuntimeException e) {
+            LOGGER.error(SEVERE, "Unable to read reaction " + index, e.getMessage());
+            record(index, String.valueOf(index + 1), Status.FAILED, start, 0.0, null);
+            return;
+        }
+        double predicted = costModel.predict(cost);
+        String id = reaction.getID() == null ? String.valueOf(index + 1) : reaction.getID();
+        Future<Mapped> result;
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        start = nanoTime();
+        try {
+            result = mappers.submit(() -> {
+                try {
+                    return map(reaction);
+                } finally {
+                    permits.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+        try {
+            Mapped mapped = timeout > 0 ? result.get(timeout, SECONDS) : result.get();
+            byte[] bytes = mapped == null ? null : mapped.bytes;
+            Status status = mapped == null ? Status.UNMAPPED
+                    : mapped.degraded ? Status.DEGRADED : Status.DONE;
+            long elapsed = record(index, id, status, start, predicted, bytes);
+            synchronized (observations) {
+                observations.add(new Object[]{id, cost, predicted, elapsed});
+            }
+            if (mapped != null && painter != null) {
+                String name = id.replaceAll("[^A-Za-z0-9._-]", "_") + "_" + (index + 1);
+                painting.acquire();
+                painter.execute(() -> draw(name, mapped.reaction));
+            }
+        } catch (TimeoutException e) {
+            result.cancel(true);
+            record(index, id, Status.TIMEOUT, start, predicted, null);
+        } catch (ExecutionException e) {
+            LOGGER.error(SEVERE, "Unable to map reaction " + id, e.getCause());
+            record(index, id, Status.FAILED, start, predicted, null);
+        } catch (InterruptedException e) {
+            result.cancel(true);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /*
+     * The record of a mapped reaction, null if no mapping was selected
+     */
+    private Mapped map(IReaction reaction) throws Exception {
+        ReactionMechanismTool rmt = getReactionMechanismTool(reaction, REMAP,
+                complexMappingFlag, acceptNoChange);
+        if (rmt.getSelectedSolution() == null) {
+            return null;
+        }
+        return new Mapped(format(rmt, reaction), rmt.isDegradedMapping(),
+                imageOutput == null ? null
+                        : rmt.getSelectedSolution().getBondChangeCalculator().getReactionWithCompressUnChangedHydrogens());
+    }
+
+    /*
+     * Draws a mapped reaction, on the painter thread
+     */
+    private void draw(String name, IReaction reaction) {
+        try {
+            String svg = renderer.render(reaction, SVGReactionRenderer.THUMBNAIL_WIDTH,
+                    SVGReactionRenderer.THUMBNAIL_HEIGHT);
+            write(new File(imageOutput, name + ".svg").toPath(), svg.getBytes(UTF_8));
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error(SEVERE, "Unable to draw reaction " + name, e.getMessage());
+        } finally {
+            painting.release();
+        }
+    }
+
+    private byte[] format(ReactionMechanismTool rmt, IReaction reaction) throws Exception {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        switch (format) {
+            case "JSON":
+                try (ResultWriter writer = new JSONResultWriter(buffer)) {
+                    annotateReaction(rmt, reaction.getID(), writer);
+                }
+                return buffer.toByteArray();
+            case "TEXT":
+                StringBuilder sb = new StringBuilder();
+                annotateReactionAsText(rmt, reaction.getID() + "_AAM", sb);
+                return sb.toString().getBytes(UTF_8);
+            default:
+                try (ResultWriter writer = new XMLResultWriter(buffer)) {
+                    annotateReaction(rmt, reaction.getID(), writer);
+                }
+                byte[] document = buffer.toByteArray();
+                return Arrays.copyOfRange(document, header.length, document.length - footer.length);
+        }
+    }
+
+    /*
+     * The record is written before its journal line, a crash in between
+     * leaves a record which is truncated on restart
+     */
+    private synchronized long record(int index, String id, Status status, long start,
+            double predicted, byte[] bytes) throws IOException {
+        long offset = parts.size();
+        int length = 0;
+        if (bytes != null && status.hasRecord()) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            long position = offset;
+            while (buffer.hasRemaining()) {
+                position += parts.write(buffer, position);
+            }
+            parts.force(false);
+            length = bytes.length;
+        }
+        long elapsed = (nanoTime() - start) / 1000000L;
+        journalWriter.write(index + "\t" + id.replace('\t', ' ') + "\t" + status
+                + "\t" + elapsed + "\t" + offset + "\t" + length
+                + "\t" + Math.round(predicted) + "\n");
+        journalWriter.flush();
+        journal.put(index, new Entry(id, status, offset, length));
+        return elapsed;
+    }
+
+    /*
+     * Predicted vs actual times of the reactions mapped in this run
+     */
+    private void reportCost() throws IOException {
+        if (observations.isEmpty()) {
+            return;
+        }
+        double[] costs = new double[observations.size()];
+        double[] predicted = new double[observations.size()];
+        double[] actual = new double[observations.size()];
+        for (int i = 0; i < observations.size(); i++) {
+            costs[i] = (Double) observations.get(i)[1];
+            predicted[i] = (Double) observations.get(i)[2];
+            actual[i] = (Long) observations.get(i)[3];
+        }
+        MappingCostModel fitted = MappingCostModel.fit(costs, actual);
+        double rho = MappingCostModel.rankCorrelation(costs, actual);
+        try (PrintWriter pw = new PrintWriter(new OutputStreamWriter(
+                new FileOutputStream(costFile), UTF_8))) {
+            pw.println("#model\t" + costModel);
+            pw.println("#fitted\t" + fitted);
+            pw.println("#spearman\t" + String.format("%.3f", rho));
+            pw.println("ID\tcost\tpredicted_ms\tactual_ms");
+            for (int i = 0; i < observations.size(); i++) {
+                pw.println(observations.get(i)[0] + "\t" + String.format("%.1f", costs[i])
+                        + "\t" + Math.round(predicted[i]) + "\t" + Math.round(actual[i]));
+            }
+        }
+        out.println("Cost model: spearman " + String.format("%.3f", rho)
+                + ", fitted " + fitted + " (" + costFile.getAbsolutePath() + ")");
+    }
+
+    private synchronized void assemble(int size) throws IOException {
+        File tmp = new File(outputFile.getPath() + ".tmp");
+        try (OutputStream os = new FileOutputStream(tmp)) {
+            os.write(header);
+            for (int i = 0; i < size; i++) {
+                Entry e = journal.get(i);
+                if (!e.status.hasRecord()) {
+                    continue;
+                }
+                ByteBuffer buffer = ByteBuffer.allocate(e.length);
+                long position = e.offset;
+                while (buffer.hasRemaining()) {
+                    int n = parts.read(buffer, position);
+                    if (n < 0) {
+                        throw new IOException("Parts file truncated at reaction " + e.id);
+                    }
+                    position += n;
+                }
+                os.write(buffer.array());
+            }
+            os.write(footer);
+        }
+        move(tmp.toPath(), outputFile.toPath(), REPLACE_EXISTING);
+    }
+
+    /*
+     * A line counts only if it has every field and its newline, a torn last
+     * line is cut from the journal so that the next line starts cleanly
+     */
+    private Map<Integer, Entry> readJournal(String mode) throws IOException {
+        Map<Integer, Entry> entries = new TreeMap<>();
+        if (!journalFile.exists()) {
+            return entries;
+        }
+        truncateTornLine(journalFile);
+        long partsLength = partsFile.length();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(journalFile), UTF_8))) {
+            String line = reader.readLine();
+            if (line == null) {
+                return entries;
+            }
+            if (!line.equals(mode) && !line.startsWith(mode + "\t")) {
+                throw new IOException("Journal " + journalFile
+                        + " was written by another job (" + line + ")");
+            }
+            journalSettings = line;
+            while ((line = reader.readLine()) != null) {
+                String[] f = line.split("\t", -1);
+                if (f.length != JOURNAL_FIELDS && f.length != JOURNAL_FIELDS_V1) {
+                    LOGGER.debug("Skipping journal line " + line);
+                    continue;
+                }
+                try {
+                    Entry e = new Entry(f[1], Status.valueOf(f[2]),
+                            Long.parseLong(f[4]), Integer.parseInt(f[5]));
+                    Long.parseLong(f[3]);
+                    if (f.length == JOURNAL_FIELDS) {
+                        Long.parseLong(f[6]);
+                    }
+                    if (e.status.hasRecord() && e.offset + e.length > partsLength) {
+                        continue;
+                    }
+                    entries.put(Integer.parseInt(f[0]), e);
+                } catch (IllegalArgumentException ex) {
+                    LOGGER.debug("Skipping journal line " + line);
+                }
+            }
+        }
+        return entries;
+    }
+
+    /*
+     * Cuts the bytes after the last newline, left by a run killed while
+     * writing its journal
+     */
+    private static void truncateTornLine(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            long end = raf.length();
+            while (end > 0) {
+                raf.seek(end - 1);
+                if (raf.read() == '\n') {
+                    break;
+                }
+                end--;
+            }
+            if (end < raf.length()) {
+                LOGGER.debug("Dropping torn journal line of " + file);
+                raf.setLength(end);
+            }
+        }
+    }
+
+    /*
+     * Random access to the input reactions
+     */
+    interface Source extends Closeable {
+
+        int size();
+
+        IReaction read(int index) throws IOException, CDKException;
+
+        /*
+         * ID of a reaction as journaled, the index (from 1) if it has none
+         */
+        default String id(int index) throws IOException, CDKException {
+            IReaction reaction = read(index);
+            return reaction.getID() == null ? String.valueOf(index + 1) : reaction.getID();
+        }
+    }
+
+    static Source open(File input) throws IOException {
+        if (input.isDirectory()) {
+            File[] files = input.listFiles((dir, file) -> file.toLowerCase().endsWith(".rxn"));
+            if (files == null) {
+                throw new IOException("Unable to list " + input);
+            }
+            Arrays.sort(files);
+            return new Source() {
+                @Override
+                public int size() {
+                    return files.length;
+                }
+
+                @Override
+                public String id(int index) {
+                    return files[index].getName().replaceFirst("(?i)\\.rxn$", "");
+                }
+
+                @Override
+                public IReaction read(int index) throws IOException, CDKException {
+                    try (MDLRXNV2000Reader reader = new MDLRXNV2000Reader(new FileReader(files[index]))) {
+                        IReaction reaction = reader.read(new Reaction());
+                        reaction.setID(files[index].getName().replaceFirst("(?i)\\.rxn$", ""));
+                        return convertRoundTripRXNSMILES(reaction);
+                    }
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+        }
+        String name = input.getName().toLowerCase();
+        if (name.endsWith(".smi") || name.endsWith(".smiles") || name.endsWith(".txt")) {
+            List<String> lines = new ArrayList<>();
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(new FileInputStream(input), UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.trim().isEmpty() && !line.startsWith("#")) {
+                        lines.add(line.trim());
+                    }
+                }
+            }
+            return new Source() {
+                @Override
+                public int size() {
+                    return lines.size();
+                }
+
+                @Override
+                public IReaction read(int index) throws CDKException {
+                    return ReactionSmilesReader.parse(lines.get(index).split("\\s+", 2)[0], id(index));
+                }
+
+                @Override
+                public String id(int index) {
+                    String[] f = lines.get(index).split("\\s+", 2);
+                    return f.length > 1 ? f[1].trim() : "smiles_" + (index + 1);
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+        }
+        IndexedMDLReader reader = new IndexedMDLReader(input);
+        return new Source() {
+            @Override
+            public int size() {
+                return reader.size();
+            }
+
+            @Override
+            public IReaction read(int index) throws IOException, CDKException {
+                return convertRoundTripRXNSMILES(reader.readReaction(index));
+            }
+
+            @Override
+            public void close() throws IOException {
+                reader.close();
+            }
+        };
+    }
+}
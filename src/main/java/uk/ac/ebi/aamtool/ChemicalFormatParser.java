@@ -35,16 +35,13 @@ import org.openscience.cdk.AtomContainer;
 import org.openscience.cdk.Reaction;
 import org.openscience.cdk.exception.CDKException;
 import org.openscience.cdk.exception.InvalidSmilesException;
-import org.openscience.cdk.interfaces.IAtomContainer;
 import org.openscience.cdk.interfaces.IReaction;
 import org.openscience.cdk.io.CMLReader;
-import org.openscience.cdk.silent.SilentChemObjectBuilder;
-import org.openscience.cdk.smiles.SmiFlavor;
-import org.openscience.cdk.smiles.SmilesGenerator;
 import org.openscience.cdk.smiles.SmilesParser;
 import org.openscience.cdk.tools.ILoggingTool;
 import org.openscience.cdk.tools.LoggingToolFactory;
-import org.openscience.smsd.tools.ExtAtomContainerManipulator;
+import uk.ac.ebi.reactionblast.tools.ReactionSmilesReader;
+import static uk.ac.ebi.reactionblast.tools.ReactionSmilesReader.getParser;
 import uk.ac.ebi.reactionblast.tools.rxnfile.MDLRXNV2000Reader;
 
 /**
@@ -113,31 +110,11 @@ class ChemicalFormatParser {
     }
 
     protected static IReaction convertRoundTripRXNSMILES(IReaction ref_reaction) throws CDKException {
-        final SmilesGenerator sg = new SmilesGenerator(
-                SmiFlavor.AtomAtomMap
-                | SmiFlavor.UseAromaticSymbols
-                | SmiFlavor.Stereo);
-        String createSmilesFromReaction = sg.create(ref_reaction);
-        final SmilesParser smilesParser = new SmilesParser(SilentChemObjectBuilder.getInstance());
-        IReaction parseReactionSmiles = smilesParser.parseReactionSmiles(createSmilesFromReaction);
-        parseReactionSmiles.setID(ref_reaction.getID());
-        for (int i = 0; i < ref_reaction.getReactantCount(); i++) {
-            IAtomContainer atomContainer = parseReactionSmiles.getReactants().getAtomContainer(i);
-            String id = ref_reaction.getReactants().getAtomContainer(i).getID();
-            ExtAtomContainerManipulator.percieveAtomTypesAndConfigureAtoms(atomContainer);
-            atomContainer.setID(id);
-        }
-        for (int i = 0; i < ref_reaction.getProductCount(); i++) {
-            IAtomContainer atomContainer = parseReactionSmiles.getProducts().getAtomContainer(i);
-            String id = ref_reaction.getProducts().getAtomContainer(i).getID();
-            ExtAtomContainerManipulator.percieveAtomTypesAndConfigureAtoms(atomContainer);
-            atomContainer.setID(id);
-        }
-        return parseReactionSmiles;
+        return ReactionSmilesReader.convertRoundTripRXNSMILES(ref_reaction);
     }
 
     protected static List<IReaction> parseReactionSMILES(String reactionSmiles) {
-        SmilesParser sp = new SmilesParser(SilentChemObjectBuilder.getInstance());
+        SmilesParser sp = getParser();
         String[] smiles = reactionSmiles.split("\\s+");
         List<IReaction> reactions = new ArrayList<>();
         int smilesIndex = 1;
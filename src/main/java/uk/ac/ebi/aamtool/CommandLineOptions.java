@@ -51,7 +51,7 @@ public class CommandLineOptions {
         optionsAAM.addOption("m", "mappings", false, "Report all mappings");
         optionsAAM.addOption("u", "premap", false, "use user defined mappings");
         optionsAAM.addOption("p", "prefix", true, "Job prefix");
-        optionsAAM.addOption("f", "formatO", true, "Output format (TEXT/XML)");
+        optionsAAM.addOption("f", "formatO", true, "Output format (TEXT/XML/JSON/BOTH)");
         optionsAAM.addOption("c", "complexMode", false, "Use Rings etc. bit time comsuming");
         optionsAAM.addOption("b", "acceptNoChange", false, "Accept Transporter Reactions (no bond change)");
 
@@ -71,7 +71,7 @@ public class CommandLineOptions {
         optionsCompare.addOption("u", "premap", false, "use user defined mappings");
         optionsCompare.addOption("g", "image", false, "create png of the mapping");
         optionsCompare.addOption("p", "prefix", true, "Job prefix");
-        optionsCompare.addOption("f", "formatO", true, "Output format (TEXT/XML/BOTH)");
+        optionsCompare.addOption("f", "formatO", true, "Output format (TEXT/XML/JSON/BOTH)");
         optionsCompare.addOption("x", "patterns", false, "Report all matched molecular pairs (RPAIR type)");
         optionsCompare.addOption("c", "complexMode", false, "Use Rings etc. bit time comsuming");
         return optionsCompare;
@@ -90,6 +90,10 @@ public class CommandLineOptions {
         optionsCompare.addOption("T", "formatT", true, "Target Type (RXN/SMI)");
         optionsCompare.addOption("t", "target", true, "Target");
         optionsCompare.addOption("j", "job", true, "Task (COMPARE)");
+        optionsCompare.addOption("A", "allVsAll", true, "Compare all reactions of a file (RDF/RXN file, directory of RXN files or SMILES file .smi)");
+        optionsCompare.addOption("k", "top", true, "With -A, report the top k neighbours of each reaction instead of the matrices");
+        optionsCompare.addOption("s", "threshold", true, "With -k, minimum similarity of a neighbour (default 0)");
+        optionsCompare.addOption("n", "threads", true, "With -A, threads of the similarity calculation (default: processors)");
         optionsCompare.addOption("g", "image", false, "create png of the mapping");
         optionsCompare.addOption("p", "prefix", true, "Job prefix");
         optionsCompare.addOption("f", "formatO", true, "Output format (TEXT/XML/BOTH)");
@@ -98,4 +102,43 @@ public class CommandLineOptions {
         return optionsCompare;
     }
 
+    /**
+     *
+     * @return
+     */
+    protected Options createServerOptions() {
+        Options optionsServer = new Options();
+        optionsServer.addOption("h", "help", false, "Help page for command usage");
+        optionsServer.addOption("j", "job", true, "Task (SERVER)");
+        optionsServer.addOption("P", "port", true, "Loopback HTTP port (default 8765)");
+        optionsServer.addOption("n", "concurrency", true, "Reactions mapped at a time (default: processors)");
+        optionsServer.addOption("t", "timeout", true, "Seconds allowed per reaction, 0 for no limit (default 300)");
+        return optionsServer;
+    }
+
+    /**
+     *
+     * @return
+     */
+    protected Options createBatchOptions() {
+        Options optionsBatch = new Options();
+        optionsBatch.addOption("h", "help", false, "Help page for command usage");
+        optionsBatch.addOption("j", "job", true, "Task (BATCH)");
+        optionsBatch.addOption("i", "input", true, "Reactions (RDF/RXN file, directory of RXN files or SMILES file .smi)");
+        optionsBatch.addOption("f", "formatO", true, "Output format (TEXT/XML/JSON)");
+        optionsBatch.addOption("p", "prefix", true, "Job prefix");
+        optionsBatch.addOption("n", "threads", true, "Reactions mapped at a time (default: processors)");
+        optionsBatch.addOption("t", "timeout", true, "Seconds allowed per reaction (default: no limit)");
+        optionsBatch.addOption("r", "retry", false, "Retry failed, timed out and unmapped reactions of the journal");
+        optionsBatch.addOption("s", "schedule", true, "Schedule (COST: largest estimated cost first, INPUT: input order)");
+        optionsBatch.addOption("a", "annotate", false, "Report bond changes and reaction centres (ANNOTATE)");
+        optionsBatch.addOption("m", "mappings", false, "Report all mappings");
+        optionsBatch.addOption("x", "patterns", false, "Report all matched molecular pairs (RPAIR type)");
+        optionsBatch.addOption("g", "image", true, "Directory of SVG thumbnails of the mapped reactions");
+        optionsBatch.addOption("u", "premap", false, "use user defined mappings");
+        optionsBatch.addOption("c", "complexMode", false, "Use Rings etc. bit time comsuming");
+        optionsBatch.addOption("b", "acceptNoChange", false, "Accept Transporter Reactions (no bond change)");
+        return optionsBatch;
+    }
+
 }
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2007-2020 Syed Asad Rahman <asad @ ebi.ac.uk>.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package uk.ac.ebi.aamtool;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Appends the records to an element of a DOM document, used where the
+ * results are combined in one document (COMPARE).
+ *
+ * @contact Syed Asad Rahman, EMBL-EBI, Cambridge, UK.
+ * @author Syed Asad Rahman <asad @ ebi.ac.uk>
+ */
+public class DOMResultWriter extends ResultWriter {
+
+    private final Document doc;
+    private final Deque<Element> open;
+
+    /**
+     *
+     * @param doc
+     * @param parent element receiving the records
+     */
+    public DOMResultWriter(Document doc, Element parent) {
+        this.doc = doc;
+        this.open = new ArrayDeque<>();
+        this.open.push(parent);
+    }
+
+    @Override
+    void writeStartRecord(String id, String name) {
+        writeStartElement(name);
+    }
+
+    @Override
+    void writeStartElement(String name) {
+        Element element = doc.createElement(name);
+        open.peek().appendChild(element);
+        open.push(element);
+    }
+
+    @Override
+    public void attribute(String name, String value) {
+        open.peek().setAttribute(name, value);
+    }
+
+    @Override
+    public void element(String name, String text) {
+        Element element = doc.createElement(name);
+        element.appendChild(doc.createTextNode(text));
+        open.peek().appendChild(element);
+    }
+
+    @Override
+    void writeEndElement() {
+        open.pop();
+    }
+
+    @Override
+    void writeEndRecord() {
+        open.pop();
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2007-2020 Syed Asad Rahman <asad @ ebi.ac.uk>.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package uk.ac.ebi.aamtool;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Streams the results as JSON lines, one object per record:
+ * <pre>
+ * {"id":"R1","type":"ANNOTATION","items":[{"type":"MAPPING","STATUS":"SELECTED","AAM":"..."}]}
+ * </pre> Attributes and text elements become fields of their element, nested
+ * elements are listed in {@code items}.
+ *
+ * @contact Syed Asad Rahman, EMBL-EBI, Cambridge, UK.
+ * @author Syed Asad Rahman <asad @ ebi.ac.uk>
+ */
+public class JSONResultWriter extends ResultWriter {
+
+    private final Writer writer;
+    /*
+     * true if the items array of the open object has been started
+     */
+    private final Deque<Boolean> items;
+
+    /**
+     *
+     * @param file output file
+     * @throws IOException
+     */
+    public JSONResultWriter(File file) throws IOException {
+        this(new FileOutputStream(file));
+    }
+
+    /**
+     *
+     * @param out output stream, closed with the writer
+     */
+    public JSONResultWriter(OutputStream out) {
+        this.writer = new BufferedWriter(new OutputStreamWriter(out, UTF_8));
+        this.items = new ArrayDeque<>();
+    }
+
+    @Override
+    void writeStartRecord(String id, String name) throws IOException {
+        writer.write('{');
+        field("id", id);
+        writer.write(',');
+        field("type", name);
+        items.push(false);
+    }
+
+    @Override
+    void writeStartElement(String name) throws IOException {
+        nextItem();
+        writer.write('{');
+        field("type", name);
+        items.push(false);
+    }
+
+    @Override
+    public void attribute(String name, String value) throws IOException {
+        element(name, value);
+    }
+
+    @Override
+    public void element(String name, String text) throws IOException {
+        if (items.peek()) {
+            /*
+             * Fields can't follow the items, the value becomes an item
+             */
+            nextItem();
+            writer.write('{');
+            field("type", name);
+            writer.write(',');
+            field("value", text);
+            writer.write('}');
+        } else {
+            writer.write(',');
+            field(name, text);
+        }
+    }
+
+    @Override
+    void writeEndElement() throws IOException {
+        if (items.pop()) {
+            writer.write(']');
+        }
+        writer.write('}');
+    }
+
+    @Override
+    void writeEndRecord() throws IOException {
+        writeEndElement();
+        writer.write('\n');
+        writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            endRecord();
+        } finally {
+            writer.close();
+        }
+    }
+
+    private void nextItem() throws IOException {
+        if (items.peek()) {
+            writer.write(',');
+        } else {
+            items.pop();
+            items.push(true);
+            writer.write(",\"items\":[");
+        }
+    }
+
+    private void field(String name, String value) throws IOException {
+        quote(name);
+        writer.write(':');
+        if (value == null) {
+            writer.write("null");
+        } else {
+            quote(value);
+        }
+    }
+
+    private void quote(String s) throws IOException {
+        writer.write('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    writer.write("\\\"");
+                    break;
+                case '\\':
+                    writer.write("\\\\");
+                    break;
+                case '\n':
+                    writer.write("\\n");
+                    break;
+                case '\r':
+                    writer.write("\\r");
+                    break;
+                case '\t':
+                    writer.write("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        writer.write(String.format("\\u%04x", (int) c));
+                    } else {
+                        writer.write(c);
+                    }
+            }
+        }
+        writer.write('"');
+    }
+}
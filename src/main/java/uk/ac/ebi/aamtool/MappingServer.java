@@ -0,0 +1,343 @@
+/*
+ * Copyright (C) 2007-2020 Syed Asad Rahman <asad @ ebi.ac.uk>.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package uk.ac.ebi.aamtool;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import static java.util.concurrent.Executors.newCachedThreadPool;
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import java.util.concurrent.TimeoutException;
+import static java.util.logging.Level.SEVERE;
+import org.openscience.cdk.Reaction;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.interfaces.IReaction;
+import org.openscience.cdk.tools.ILoggingTool;
+import org.openscience.cdk.tools.LoggingToolFactory;
+import uk.ac.ebi.reactionblast.mechanism.ReactionMechanismTool;
+import uk.ac.ebi.reactionblast.tools.ReactionSmilesReader;
+import uk.ac.ebi.reactionblast.tools.rxnfile.MDLRXNV2000Reader;
+
+/**
+ * Long running mapping service on a loopback HTTP endpoint. The JVM, the CDK
+ * tables and the process wide caches stay warm between requests.
+ * <pre>
+ * POST /aam?format=SMI|RXN&amp;output=XML|JSON|TEXT      body: reaction
+ * POST /annotate?format=SMI|RXN&amp;output=XML|JSON|TEXT body: reaction
+ * GET  /status
+ * </pre> Optional flags: {@code id}, {@code complex}, {@code premap},
+ * {@code accept_no_change}, {@code mappings} (AAM) and {@code patterns}
+ * (ANNOTATE). The response is the document the command line writes for the
+ * same job. At most {@code concurrency} reactions are mapped at a time, further
+ * requests are rejected (503); a reaction not mapped within the timeout is
+ * abandoned (504). A timeout of 0 (or less) means no limit, as for the batch
+ * mode.
+ *
+ * @contact Syed Asad Rahman, EMBL-EBI, Cambridge, UK.
+ * @author Syed Asad Rahman <asad @ ebi.ac.uk>
+ */
+public class MappingServer implements Closeable {
+
+    private static final ILoggingTool LOGGER
+            = LoggingToolFactory.createLoggingTool(MappingServer.class);
+    private static final String WARM_UP_REACTION = "CC(=O)O.OCC>>CC(=O)OCC.O";
+    private static final int MAX_REQUEST_SIZE = 16 * 1024 * 1024;
+
+    private final HttpServer server;
+    private final ExecutorService io;
+    private final ExecutorService workers;
+    private final Semaphore permits;
+    private final long timeout;
+    private final CountDownLatch stopped;
+
+    /**
+     *
+     * @param port loopback port (0 for any free port)
+     * @param concurrency maximum number of reactions mapped at a time
+     * @param timeout seconds allowed per reaction, 0 for no limit
+     * @throws IOException
+     */
+    public MappingServer(int port, int concurrency, long timeout) throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.io = newCachedThreadPool();
+        this.workers = newFixedThreadPool(Math.max(1, concurrency));
+        this.permits = new Semaphore(Math.max(1, concurrency));
+        this.timeout = timeout;
+        this.stopped = new CountDownLatch(1);
+        this.server.setExecutor(io);
+        this.server.createContext("/aam", (HttpExchange exchange) -> handle(exchange, false));
+        this.server.createContext("/annotate", (HttpExchange exchange) -> handle(exchange, true));
+        this.server.createContext("/status", (HttpExchange exchange) -> {
+            int busy = Math.max(1, concurrency) - permits.availablePermits();
+            respond(exchange, 200, "text/plain", ("OK busy=" + busy + "\n").getBytes(UTF_8));
+        });
+    }
+
+    /**
+     * Maps a small reaction (class loading, atom type tables and JIT) and
+     * starts accepting requests.
+     */
+    public void start() {
+        try {
+            new Job(false, new HashMap<>()).run(ReactionSmilesReader.parse(WARM_UP_REACTION, "smiles"), "TEXT");
+        } catch (Exception e) {
+            LOGGER.error(SEVERE, "Warm up failed ", e.getMessage());
+        }
+        server.start();
+        System.out.println("Mapping server listening on http://"
+                + server.getAddress().getHostString() + ":" + getPort());
+    }
+
+    /**
+     * @return bound port
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Blocks until the server is closed.
+     *
+     * @throws InterruptedException
+     */
+    public void awaitTermination() throws InterruptedException {
+        stopped.await();
+    }
+
+    @Override
+    public void close() {
+        server.stop(1);
+        workers.shutdownNow();
+        io.shutdownNow();
+        stopped.countDown();
+    }
+
+    private void handle(HttpExchange exchange, boolean annotate) throws IOException {
+        try {
+            if (!"POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+                respond(exchange, 405, "text/plain", "POST a reaction\n".getBytes(UTF_8));
+                return;
+            }
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            String input = read(exchange.getRequestBody());
+            if (input == null) {
+                respond(exchange, 413, "text/plain", "Request too large\n".getBytes(UTF_8));
+                return;
+            }
+            IReaction reaction = parse(input, query.getOrDefault("format", "SMI"), query.get("id"));
+            if (reaction == null) {
+                respond(exchange, 400, "text/plain", "Unable to parse the reaction\n".getBytes(UTF_8));
+                return;
+            }
+            String output = query.getOrDefault("output", "XML").toUpperCase();
+            if (!permits.tryAcquire()) {
+                respond(exchange, 503, "text/plain", "Server busy\n".getBytes(UTF_8));
+                return;
+            }
+            Future<byte[]> result;
+            try {
+                result = workers.submit(() -> {
+                    try {
+                        return new Job(annotate, query).run(reaction, output);
+                    } finally {
+                        /*
+                         * released when the mapping really ends, an abandoned
+                         * reaction still counts against the limit
+                         */
+                        permits.release();
+                    }
+                });
+            } catch (RuntimeException e) {
+                permits.release();
+                throw e;
+            }
+            try {
+                byte[] body = timeout > 0 ? result.get(timeout, SECONDS) : result.get();
+                if (body == null) {
+                    respond(exchange, 422, "text/plain", "No mapping found\n".getBytes(UTF_8));
+                } else {
+                    respond(exchange, 200, contentType(output), body);
+                }
+            } catch (TimeoutException e) {
+                result.cancel(true);
+                respond(exchange, 504, "text/plain", ("Timed out after " + timeout + "s\n").getBytes(UTF_8));
+            } catch (ExecutionException e) {
+                LOGGER.error(SEVERE, "Mapping failed ", e.getCause());
+                respond(exchange, 500, "text/plain", ("Mapping failed: " + e.getCause() + "\n").getBytes(UTF_8));
+            } catch (InterruptedException e) {
+                result.cancel(true);
+                Thread.currentThread().interrupt();
+                respond(exchange, 503, "text/plain", "Interrupted\n".getBytes(UTF_8));
+            }
+        } catch (RuntimeException e) {
+            LOGGER.error(SEVERE, "Bad request ", e.getMessage());
+            respond(exchange, 400, "text/plain", ("Bad request: " + e.getMessage() + "\n").getBytes(UTF_8));
+        }
+    }
+
+    private static IReaction parse(String input, String format, String id) {
+        IReaction reaction = null;
+        switch (format.toUpperCase()) {
+            case "SMI":
+                String smiles = input.trim();
+                if (smiles.contains(">>") && !smiles.contains("\n")) {
+                    String[] f = smiles.split("\\s+", 2);
+                    try {
+                        reaction = ReactionSmilesReader.parse(f[0], f.length > 1 ? f[1].trim() : "smiles");
+                    } catch (CDKException e) {
+                        LOGGER.debug("ERROR in Reading Reaction " + e.getMessage());
+                    }
+                }
+                break;
+            case "RXN":
+                try (MDLRXNV2000Reader reader = new MDLRXNV2000Reader(new StringReader(input))) {
+                    IReaction rxn = reader.read(new Reaction());
+                    rxn.setID("rxn");
+                    reaction = ChemicalFormatParser.convertRoundTripRXNSMILES(rxn);
+                } catch (IOException | CDKException e) {
+                    LOGGER.debug("ERROR in Reading Reaction " + e.getMessage());
+                }
+                break;
+            default:
+                break;
+        }
+        if (reaction != null && id != null && !id.isEmpty()) {
+            reaction.setID(id);
+        }
+        return reaction;
+    }
+
+    private static String contentType(String output) {
+        switch (output) {
+            case "JSON":
+                return "application/x-ndjson";
+            case "TEXT":
+                return "text/plain; charset=UTF-8";
+            default:
+                return "application/xml";
+        }
+    }
+
+    private static String read(InputStream in) throws IOException {
+        try (InputStream body = in) {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            byte[] b = new byte[8192];
+            int n;
+            while ((n = body.read(b)) != -1) {
+                buffer.write(b, 0, n);
+                if (buffer.size() > MAX_REQUEST_SIZE) {
+                    return null;
+                }
+            }
+            return new String(buffer.toByteArray(), UTF_8);
+        }
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return query;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "true" : pair.substring(eq + 1);
+            query.put(URLDecoder.decode(key, UTF_8).toLowerCase(), URLDecoder.decode(value, UTF_8));
+        }
+        return query;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(body);
+        }
+    }
+
+    /*
+     * One request: the report flags are per job, as set by the command line
+     * for the AAM and ANNOTATE tasks
+     */
+    private static class Job extends Annotator {
+
+        private final boolean complexMappingFlag;
+        private final boolean acceptNoChange;
+
+        Job(boolean annotate, Map<String, String> query) {
+            super();
+            this.complexMappingFlag = Boolean.parseBoolean(query.get("complex"));
+            this.acceptNoChange = Boolean.parseBoolean(query.get("accept_no_change"));
+            this.REMAP = !Boolean.parseBoolean(query.get("premap"));
+            if (annotate) {
+                this.REPORT_PATTERNS = true;
+                this.REPORT_MMP = Boolean.parseBoolean(query.get("patterns"));
+            } else {
+                this.REPORT_ALL_MAPPINGS = Boolean.parseBoolean(query.get("mappings"));
+            }
+        }
+
+        /*
+         * null if no mapping was selected
+         */
+        byte[] run(IReaction reaction, String output) throws Exception {
+            ReactionMechanismTool rmt = getReactionMechanismTool(reaction, REMAP,
+                    complexMappingFlag, acceptNoChange);
+            if (rmt.getSelectedSolution() == null) {
+                return null;
+            }
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            switch (output) {
+                case "JSON":
+                    try (ResultWriter writer = new JSONResultWriter(buffer)) {
+                        annotateReaction(rmt, reaction.getID(), writer);
+                    }
+                    break;
+                case "TEXT":
+                    StringBuilder sb = new StringBuilder();
+                    annotateReactionAsText(rmt, reaction.getID() + "_AAM", sb);
+                    buffer.write(sb.toString().getBytes(UTF_8));
+                    break;
+                default:
+                    try (ResultWriter writer = new XMLResultWriter(buffer)) {
+                        annotateReaction(rmt, reaction.getID(), writer);
+                    }
+                    break;
+            }
+            return buffer.toByteArray();
+        }
+    }
+}
@@ -26,9 +26,14 @@ import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
 import java.io.Writer;
 import static java.lang.System.out;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import java.util.concurrent.Future;
 import static java.util.logging.Level.SEVERE;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -48,13 +53,16 @@ import org.apache.commons.cli.Options;
 import org.openscience.cdk.interfaces.IReaction;
 import org.openscience.cdk.tools.ILoggingTool;
 import org.openscience.cdk.tools.LoggingToolFactory;
-import org.w3c.dom.DOMException;
 import org.w3c.dom.Document;
 import static uk.ac.ebi.aamtool.Annotator.getReactionMechanismTool;
+import static uk.ac.ebi.aamtool.Annotator.getSimilarityFingerprints;
+import static uk.ac.ebi.aamtool.Annotator.writeSimilarityMatrix;
+import static uk.ac.ebi.aamtool.Annotator.writeSimilarityNeighbours;
 import static uk.ac.ebi.aamtool.ChemicalFormatParser.parseRXN;
 import static uk.ac.ebi.aamtool.Helper.displayBlankLines;
 import static uk.ac.ebi.aamtool.Helper.getHeader;
 import static uk.ac.ebi.aamtool.Helper.printHelp;
+import uk.ac.ebi.reactionblast.fingerprints.interfaces.IPatternFingerprinter;
 import uk.ac.ebi.reactionblast.mechanism.ReactionMechanismTool;
 
 /**
@@ -66,6 +74,7 @@ public class ReactionDecoder extends Annotator {
     private final static boolean DEBUG = false;
     private static final ILoggingTool LOGGER
             = LoggingToolFactory.createLoggingTool(ReactionDecoder.class);
+    private static final TransformerFactory TRANSFORMER_FACTORY = TransformerFactory.newInstance();
 
     /**
      * @param args the command line
@@ -76,6 +85,8 @@ public class ReactionDecoder extends Annotator {
             Options createAAMOptions = cmd.createAAMOptions();
             Options createCompareOptions = cmd.createCompareOptions();
             Options createAnnotateOptions = cmd.createAnnotateOptions();
+            Options createServerOptions = cmd.createServerOptions();
+            Options createBatchOptions = cmd.createBatchOptions();
 
             DefaultParser parser1 = new DefaultParser();
             CommandLine aamLine = parser1.parse(createAAMOptions, args, true);
@@ -83,6 +94,10 @@ public class ReactionDecoder extends Annotator {
             CommandLine compareLine = parser2.parse(createCompareOptions, args, true);
             DefaultParser parser3 = new DefaultParser();
             CommandLine annotateLine = parser3.parse(createAnnotateOptions, args, true);
+            DefaultParser parser4 = new DefaultParser();
+            CommandLine serverLine = parser4.parse(createServerOptions, args, true);
+            DefaultParser parser5 = new DefaultParser();
+            CommandLine batchLine = parser5.parse(createBatchOptions, args, true);
 
             /*
              * Print the Header
@@ -112,6 +127,11 @@ public class ReactionDecoder extends Annotator {
 
                 out.println("-- AAM --");
                 rxn.AAMTask(aamLine, createAAMOptions, complexMappingFlag, accept_no_change);
+            } else if (compareLine.hasOption('j') && compareLine.getOptionValue("j").equalsIgnoreCase("COMPARE")
+                    && compareLine.hasOption('A')) {
+
+                out.println("-- COMPARE ALL --");
+                rxn.AllVsAllTask(compareLine, complexMappingFlag, accept_no_change);
             } else if (compareLine.hasOption('j') && compareLine.getOptionValue("j").equalsIgnoreCase("COMPARE")
                     && compareLine.hasOption('Q') && compareLine.hasOption('q')
                     && compareLine.hasOption('T') && compareLine.hasOption('t')
@@ -127,6 +147,17 @@ public class ReactionDecoder extends Annotator {
                 out.println("-- ANNOTATE --");
                 rxn.AnnotateTask(annotateLine, createAnnotateOptions, complexMappingFlag, accept_no_change);
 
+            } else if (serverLine.hasOption('j') && serverLine.getOptionValue("j").equalsIgnoreCase("SERVER")
+                    && !serverLine.hasOption('h')) {
+
+                out.println("-- SERVER --");
+                ServerTask(serverLine);
+                return;
+            } else if (batchLine.hasOption('j') && batchLine.getOptionValue("j").equalsIgnoreCase("BATCH")
+                    && batchLine.hasOption('i') && batchLine.hasOption('f')) {
+
+                out.println("-- BATCH --");
+                BatchTask(batchLine);
             } else if (aamLine.hasOption('j') && aamLine.getOptionValue("j").equalsIgnoreCase("AAM")) {
                 out.println("-- AAM USAGE --");
                 printHelp(out, createAAMOptions);
@@ -136,12 +167,20 @@ public class ReactionDecoder extends Annotator {
             } else if (compareLine.hasOption('j') && compareLine.getOptionValue("j").equalsIgnoreCase("ANNOTATE")) {
                 out.println("-- REACTION ANNOTATION USAGE --");
                 printHelp(out, createAnnotateOptions);
+            } else if (serverLine.hasOption('j') && serverLine.getOptionValue("j").equalsIgnoreCase("SERVER")) {
+                out.println("-- MAPPING SERVER USAGE --");
+                printHelp(out, createServerOptions);
+            } else if (batchLine.hasOption('j') && batchLine.getOptionValue("j").equalsIgnoreCase("BATCH")) {
+                out.println("-- BATCH USAGE --");
+                printHelp(out, createBatchOptions);
             } else {
                 out.println("-- REACTION DECODER HELP --");
                 Map<String, Options> options = new TreeMap<>();
                 options.put("Atom-Atom Mapping (AAM-Tool)", createAAMOptions);
                 options.put("Reaction Annotation (RA-Tool)", createAnnotateOptions);
                 options.put("Reaction Comparison (RC-Tool)", createCompareOptions);
+                options.put("Mapping Server (AAM/ANNOTATE over HTTP)", createServerOptions);
+                options.put("Batch Mapping (resumable AAM/ANNOTATE)", createBatchOptions);
                 printHelp(options, 80, "EC-BLAST", "End of Help", 5, 3, true, out);
             }
         } catch (Exception ex) {
@@ -160,12 +199,142 @@ public class ReactionDecoder extends Annotator {
         super();
     }
 
+    /*
+     * Serves AAM/ANNOTATE requests until the JVM is stopped
+     */
+    private static void ServerTask(CommandLine serverLine) throws IOException, InterruptedException {
+        int port = Integer.parseInt(serverLine.getOptionValue("P", "8765"));
+        int concurrency = Integer.parseInt(serverLine.getOptionValue("n",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+        long timeout = Long.parseLong(serverLine.getOptionValue("t", "300"));
+        MappingServer server = new MappingServer(port, concurrency, timeout);
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+        server.start();
+        server.awaitTermination();
+    }
+
+    /*
+     * Maps a file of reactions, a rerun of the same job resumes from its
+     * journal
+     */
+    private static void BatchTask(CommandLine batchLine) throws IOException {
+        File input = new File(batchLine.getOptionValue("i"));
+        String name = input.getName().replaceFirst("\\.[^.]+$", "");
+        String job = batchLine.hasOption('p')
+                ? batchLine.getOptionValue("p") + "_ECBLAST_" + name + "_BATCH"
+                : "ECBLAST_" + name + "_BATCH";
+        int threads = Integer.parseInt(batchLine.getOptionValue("n",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+        long timeout = Long.parseLong(batchLine.getOptionValue("t", "0"));
+        try (BatchMapper mapper = new BatchMapper(job, batchLine.getOptionValue("f"),
+                batchLine.hasOption('a'), batchLine.hasOption('c'), batchLine.hasOption('b'), timeout)) {
+            mapper.REMAP = !batchLine.hasOption('u');
+            mapper.REPORT_ALL_MAPPINGS = batchLine.hasOption('m');
+            mapper.REPORT_MMP = batchLine.hasOption('x');
+            mapper.setCostOrdered(!batchLine.getOptionValue("s", "COST").equalsIgnoreCase("INPUT"));
+            if (batchLine.hasOption('g')) {
+                mapper.setImageOutput(new File(batchLine.getOptionValue("g")));
+            }
+            mapper.run(input, threads, batchLine.hasOption('r'));
+        }
+    }
+
+    /*
+     * Annotates the reactions of a file and writes their all-vs-all
+     * similarity matrices, or the top k neighbours of each reaction
+     */
+    private synchronized void AllVsAllTask(CommandLine compareLine,
+            boolean complexMappingFlag, boolean accept_no_change) throws IOException, CDKException {
+        File input = new File(compareLine.getOptionValue("A"));
+        String name = input.getName().replaceFirst("\\.[^.]+$", "");
+        if (compareLine.hasOption('p')) {
+            PREFIX = compareLine.getOptionValue("p");
+        }
+        if (compareLine.hasOption('u')) {
+            REMAP = false;
+        }
+        String jobID = !PREFIX.isEmpty()
+                ? PREFIX + "_ECBLAST_" + name + "_COMPARE"
+                : "ECBLAST_" + name + "_COMPARE";
+        int threads = Integer.parseInt(compareLine.getOptionValue("n",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+
+        /*
+         * the reactions are annotated on the pool, only their fingerprints
+         * are kept
+         */
+        List<String> ids = new ArrayList<>();
+        List<IPatternFingerprinter[]> annotations = new ArrayList<>();
+        ExecutorService executor = newFixedThreadPool(Math.max(1, threads));
+        try (BatchMapper.Source source = BatchMapper.open(input)) {
+            List<Future<Object[]>> tasks = new ArrayList<>(source.size());
+            for (int index = 0; index < source.size(); index++) {
+                int i = index;
+                tasks.add(executor.submit(() -> annotate(source, i, name,
+                        complexMappingFlag, accept_no_change)));
+            }
+            for (Future<Object[]> task : tasks) {
+                Object[] result = task.get();
+                ids.add((String) result[0]);
+                annotations.add((IPatternFingerprinter[]) result[1]);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Comparison interrupted", ex);
+        } catch (ExecutionException ex) {
+            throw new IOException(ex.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        if (compareLine.hasOption('k')) {
+            int k = Integer.parseInt(compareLine.getOptionValue("k"));
+            double threshold = Double.parseDouble(compareLine.getOptionValue("s", "0"));
+            writeSimilarityNeighbours(ids, annotations, jobID, k, threshold, threads);
+            out.println("Top " + k + " neighbours of " + ids.size() + " reactions saved: " + jobID + "_*.top");
+        } else {
+            writeSimilarityMatrix(ids, annotations, jobID, threads);
+            out.println("Similarity matrices of " + ids.size() + " reactions saved: " + jobID + "_*.mat");
+        }
+    }
+
+    /*
+     * ID and similarity fingerprints (null if it failed) of an input reaction
+     */
+    private Object[] annotate(BatchMapper.Source source, int index, String name,
+            boolean complexMappingFlag, boolean accept_no_change) {
+        String id = name + "_" + (index + 1);
+        IPatternFingerprinter[] fingerprints = null;
+        try {
+            IReaction reaction = source.read(index);
+            id = reaction.getID() == null ? id : reaction.getID();
+            fingerprints = getSimilarityFingerprints(
+                    getReactionMechanismTool(reaction, REMAP, complexMappingFlag, accept_no_change));
+        } catch (Exception ex) {
+            LOGGER.error(SEVERE, "Unable to annotate " + id, ex.getMessage());
+        }
+        return new Object[]{id, fingerprints};
+    }
+
+    private synchronized void StreamXMLToFile(ReactionMechanismTool rmt, String reactionID, String fileName) throws IOException {
+        File file = new File(fileName + ".xml");
+        try (ResultWriter writer = new XMLResultWriter(file)) {
+            annotateReaction(rmt, reactionID, writer);
+        }
+        out.println("Output is presented in xml format: " + file.getAbsolutePath());
+    }
+
+    private synchronized void StreamJSONToFile(ReactionMechanismTool rmt, String reactionID, String fileName) throws IOException {
+        File file = new File(fileName + ".jsonl");
+        try (ResultWriter writer = new JSONResultWriter(file)) {
+            annotateReaction(rmt, reactionID, writer);
+        }
+        out.println("Output is presented in json lines format: " + file.getAbsolutePath());
+    }
+
     private synchronized void FormatXMLToFile(Document doc, String fileName) throws TransformerConfigurationException, TransformerException {
 
         // write xml to file
-        TransformerFactory transformerFactory = TransformerFactory.newInstance();
-
-        Transformer transformer = transformerFactory.newTransformer();
+        Transformer transformer = TRANSFORMER_FACTORY.newTransformer();
         transformer.setOutputProperty(METHOD, "xml");
         transformer.setOutputProperty(ENCODING, "UTF-8");
         transformer.setOutputProperty(INDENT, "yes");
@@ -269,32 +438,17 @@ public class ReactionDecoder extends Annotator {
         boolean writeFiles = writeFiles(jobFileName, annotateReaction);
 
         if (writeFiles && aamLine.getOptionValue("f").equalsIgnoreCase("XML")) {
-            DocumentBuilderFactory docFactory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder docBuilder = docFactory.newDocumentBuilder();
-            // root element
-            org.w3c.dom.Document doc = docBuilder.newDocument();
-
-            org.w3c.dom.Element rootElement = doc.createElement("EC_BLAST");
-            doc.appendChild(rootElement);
-            annotateReactionAsXML(annotateReaction, jobFileName, doc, rootElement);
-            FormatXMLToFile(doc, jobFileName);
+            StreamXMLToFile(annotateReaction, reaction.getID(), jobFileName);
             out.println("XML File saved!");
 
+        } else if (writeFiles && aamLine.getOptionValue("f").equalsIgnoreCase("JSON")) {
+            StreamJSONToFile(annotateReaction, reaction.getID(), jobFileName);
         } else if (writeFiles && aamLine.getOptionValue("f").equalsIgnoreCase("TEXT")) {
             StringBuilder sb = new StringBuilder();
             annotateReactionAsText(annotateReaction, reaction.getID() + "_AAM", sb);
             FormatTextToFile(sb, jobFileName);
         } else if (writeFiles && aamLine.getOptionValue("f").equalsIgnoreCase("BOTH")) {
 
-            DocumentBuilderFactory docFactory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder docBuilder = docFactory.newDocumentBuilder();
-            // root element
-            org.w3c.dom.Document doc = docBuilder.newDocument();
-
-            org.w3c.dom.Element rootElement = doc.createElement("EC_BLAST");
-            doc.appendChild(rootElement);
-            annotateReactionAsXML(annotateReaction, jobFileName, doc, rootElement);
-
             StringBuilder sb = new StringBuilder();
             annotateReactionAsText(annotateReaction, jobFileName, sb);
 
@@ -302,7 +456,7 @@ public class ReactionDecoder extends Annotator {
              Write XML and TEXT file
              */
             FormatTextToFile(sb, jobFileName);
-            FormatXMLToFile(doc, jobFileName);
+            StreamXMLToFile(annotateReaction, reaction.getID(), jobFileName);
             out.println("XML File saved!");
 
         } else {
@@ -545,32 +699,17 @@ public class ReactionDecoder extends Annotator {
         boolean writeFiles = writeFiles(jobFileName, annotateReaction);
         try {
             if (writeFiles && annotateLine.getOptionValue("f").equalsIgnoreCase("XML")) {
-                DocumentBuilderFactory docFactory = DocumentBuilderFactory.newInstance();
-                DocumentBuilder docBuilder = docFactory.newDocumentBuilder();
-                // root element
-                org.w3c.dom.Document doc = docBuilder.newDocument();
-
-                org.w3c.dom.Element rootElement = doc.createElement("EC_BLAST");
-                doc.appendChild(rootElement);
-                annotateReactionAsXML(annotateReaction, jobFileName, doc, rootElement);
-                FormatXMLToFile(doc, jobFileName);
+                StreamXMLToFile(annotateReaction, reaction.getID(), jobFileName);
                 out.println("XML File saved!");
 
+            } else if (writeFiles && annotateLine.getOptionValue("f").equalsIgnoreCase("JSON")) {
+                StreamJSONToFile(annotateReaction, reaction.getID(), jobFileName);
             } else if (writeFiles && annotateLine.getOptionValue("f").equalsIgnoreCase("TEXT")) {
                 StringBuilder sb = new StringBuilder();
                 annotateReactionAsText(annotateReaction, reaction.getID() + "_AAM", sb);
                 FormatTextToFile(sb, jobFileName);
             } else if (writeFiles && annotateLine.getOptionValue("f").equalsIgnoreCase("BOTH")) {
 
-                DocumentBuilderFactory docFactory = DocumentBuilderFactory.newInstance();
-                DocumentBuilder docBuilder = docFactory.newDocumentBuilder();
-                // root element
-                org.w3c.dom.Document doc = docBuilder.newDocument();
-
-                org.w3c.dom.Element rootElement = doc.createElement("EC_BLAST");
-                doc.appendChild(rootElement);
-                annotateReactionAsXML(annotateReaction, jobFileName, doc, rootElement);
-
                 StringBuilder sb = new StringBuilder();
                 annotateReactionAsText(annotateReaction, jobFileName, sb);
 
@@ -578,7 +717,7 @@ public class ReactionDecoder extends Annotator {
              Write XML and TEXT file
                  */
                 FormatTextToFile(sb, jobFileName);
-                FormatXMLToFile(doc, jobFileName);
+                StreamXMLToFile(annotateReaction, reaction.getID(), jobFileName);
                 out.println("XML File saved!");
 
             } else {
@@ -587,10 +726,7 @@ public class ReactionDecoder extends Annotator {
                 printHelp(out, createAnnotateOptions);
             }
         } catch (IOException
-                | CloneNotSupportedException
-                | ParserConfigurationException
-                | TransformerException
-                | DOMException e) {
+                | CloneNotSupportedException e) {
             //System.out.println("Error " + e.getCause());
             //e.printStackTrace();
             LOGGER.error(SEVERE, null, e);
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2007-2020 Syed Asad Rahman <asad @ ebi.ac.uk>.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package uk.ac.ebi.aamtool;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Event based sink for the annotation results. A result (one reaction) is
+ * written as a record of nested elements and handed to the output as soon as
+ * the record is closed, hence a batch needs memory for one record only.
+ *
+ * A writer is not thread safe, threads sharing a writer synchronize on it for
+ * the duration of a record.
+ *
+ * @contact Syed Asad Rahman, EMBL-EBI, Cambridge, UK.
+ * @author Syed Asad Rahman <asad @ ebi.ac.uk>
+ */
+public abstract class ResultWriter implements Closeable {
+
+    private int depth = 0;
+
+    /**
+     * Starts a record (one result)
+     *
+     * @param id reaction ID
+     * @param name name of the record element
+     * @throws IOException
+     */
+    public void startRecord(String id, String name) throws IOException {
+        if (depth != 0) {
+            endRecord();
+        }
+        writeStartRecord(id, name);
+        depth = 1;
+    }
+
+    /**
+     * Starts a nested element, attributes follow
+     *
+     * @param name
+     * @throws IOException
+     */
+    public void startElement(String name) throws IOException {
+        writeStartElement(name);
+        depth++;
+    }
+
+    /**
+     * Attribute of the element just started
+     *
+     * @param name
+     * @param value
+     * @throws IOException
+     */
+    public abstract void attribute(String name, String value) throws IOException;
+
+    /**
+     * Element holding a text value only
+     *
+     * @param name
+     * @param text
+     * @throws IOException
+     */
+    public abstract void element(String name, String text) throws IOException;
+
+    /**
+     * Closes the current element
+     *
+     * @throws IOException
+     */
+    public void endElement() throws IOException {
+        if (depth > 1) {
+            writeEndElement();
+            depth--;
+        }
+    }
+
+    /**
+     * Closes the elements left open and the record, the record is flushed to
+     * the output.
+     *
+     * @throws IOException
+     */
+    public void endRecord() throws IOException {
+        while (depth > 1) {
+            endElement();
+        }
+        if (depth == 1) {
+            writeEndRecord();
+            depth = 0;
+        }
+    }
+
+    abstract void writeStartRecord(String id, String name) throws IOException;
+
+    abstract void writeStartElement(String name) throws IOException;
+
+    abstract void writeEndElement() throws IOException;
+
+    abstract void writeEndRecord() throws IOException;
+}
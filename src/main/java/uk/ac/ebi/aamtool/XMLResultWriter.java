@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2007-2020 Syed Asad Rahman <asad @ ebi.ac.uk>.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package uk.ac.ebi.aamtool;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Streams the results as XML (StAX) in the EC_BLAST schema of the DOM output:
+ * one {@code EC_BLAST} root and one child element per record, indented by two
+ * spaces.
+ *
+ * @contact Syed Asad Rahman, EMBL-EBI, Cambridge, UK.
+ * @author Syed Asad Rahman <asad @ ebi.ac.uk>
+ */
+public class XMLResultWriter extends ResultWriter {
+
+    private static final XMLOutputFactory FACTORY = XMLOutputFactory.newInstance();
+    static final String ROOT = "EC_BLAST";
+    private static final String INDENT = "  ";
+
+    private final Writer writer;
+    private final XMLStreamWriter xml;
+    /*
+     * true if the open element has child elements
+     */
+    private final Deque<Boolean> nested;
+
+    /**
+     *
+     * @param file output file
+     * @throws IOException
+     */
+    public XMLResultWriter(File file) throws IOException {
+        this(new FileOutputStream(file));
+    }
+
+    /**
+     *
+     * @param out output stream, closed with the writer
+     * @throws IOException
+     */
+    public XMLResultWriter(OutputStream out) throws IOException {
+        this.writer = new BufferedWriter(new OutputStreamWriter(out, UTF_8));
+        this.nested = new ArrayDeque<>();
+        try {
+            synchronized (FACTORY) {
+                this.xml = FACTORY.createXMLStreamWriter(writer);
+            }
+            xml.writeStartDocument("UTF-8", "1.0");
+            newLine(0);
+            xml.writeStartElement(ROOT);
+        } catch (XMLStreamException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    @Override
+    void writeStartRecord(String id, String name) throws IOException {
+        writeStartElement(name);
+    }
+
+    @Override
+    void writeStartElement(String name) throws IOException {
+        try {
+            if (!nested.isEmpty()) {
+                nested.pop();
+                nested.push(true);
+            }
+            newLine(nested.size() + 1);
+            xml.writeStartElement(name);
+            nested.push(false);
+        } catch (XMLStreamException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    @Override
+    public void attribute(String name, String value) throws IOException {
+        try {
+            xml.writeAttribute(name, value == null ? "" : value);
+        } catch (XMLStreamException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    @Override
+    public void element(String name, String text) throws IOException {
+        try {
+            if (!nested.isEmpty()) {
+                nested.pop();
+                nested.push(true);
+            }
+            newLine(nested.size() + 1);
+            xml.writeStartElement(name);
+            xml.writeCharacters(text == null ? "" : text);
+            xml.writeEndElement();
+        } catch (XMLStreamException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    @Override
+    void writeEndElement() throws IOException {
+        try {
+            if (nested.pop()) {
+                newLine(nested.size() + 1);
+            }
+            xml.writeEndElement();
+        } catch (XMLStreamException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    @Override
+    void writeEndRecord() throws IOException {
+        writeEndElement();
+        try {
+            xml.flush();
+        } catch (XMLStreamException ex) {
+            throw new IOException(ex);
+        }
+        writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            endRecord();
+            newLine(0);
+            xml.writeEndElement();
+            xml.writeEndDocument();
+            xml.close();
+            writer.write(System.lineSeparator());
+        } catch (XMLStreamException ex) {
+            throw new IOException(ex);
+        } finally {
+            writer.close();
+        }
+    }
+
+    private void newLine(int depth) throws XMLStreamException {
+        StringBuilder sb = new StringBuilder(System.lineSeparator());
+        for (int i = 0; i < depth; i++) {
+            sb.append(INDENT);
+        }
+        xml.writeCharacters(sb.toString());
+    }
+}
@@ -22,14 +22,20 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import static java.lang.Runtime.getRuntime;
 import static java.lang.System.out;
 import java.util.ArrayList;
 import static java.util.Arrays.asList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import java.util.concurrent.ThreadPoolExecutor;
 import static java.util.logging.Level.SEVERE;
 import org.openscience.cdk.Reaction;
 import org.openscience.cdk.exception.CDKException;
@@ -65,47 +71,17 @@ public class ECRgroupFrequency {
      * @param args
      */
     public ECRgroupFrequency(String[] args) {
+        this(args, getRuntime().availableProcessors());
+    }
+
+    /**
+     *
+     * @param args directories of EC directories of RXN files
+     * @param threads workers parsing and fingerprinting the reactions
+     */
+    public ECRgroupFrequency(String[] args, int threads) {
         out.println("------------------------------------------------------");
-        Map<String, MultiReactionContainer> reactionMap = new TreeMap<>();
-        for (String dir : args) {
-            File f = new File(dir);
-            if (f.isDirectory()) {
-                File[] files = f.listFiles();
-                //
-                if (DEBUG) {
-                    List<File> l = new ArrayList<>();
-                    l.addAll(asList(files));
-                    List<File> subList = l.subList(1, 100);
-                    files = subList.toArray(new File[subList.size()]);
-                }
-                for (File ec : files) {
-                    String ecNumber = ec.getName();
-                    if (ec.isDirectory()) {
-                        File[] listReactionFiles = ec.listFiles();
-                        for (File reactionFile : listReactionFiles) {
-                            String reactionName = reactionFile.getName().split("\\.")[0];
-                            MDLRXNV2000Reader mdlrxnV2000Reader;
-                            try {
-                                mdlrxnV2000Reader = new MDLRXNV2000Reader(new FileReader(reactionFile));
-                                Reaction reaction = mdlrxnV2000Reader.read(new Reaction());
-                                mdlrxnV2000Reader.close();
-                                if (reactionMap.containsKey(ecNumber)) {
-                                    reactionMap.get(ecNumber).addReaction(reaction, reactionName);
-                                } else {
-                                    MultiReactionContainer r = new MultiReactionContainer(ecNumber);
-                                    r.addReaction(reaction, reactionName);
-                                    reactionMap.put(ecNumber, r);
-                                }
-                            } catch (FileNotFoundException ex) {
-                                LOGGER.error(SEVERE, null, ex);
-                            } catch (CDKException | IOException ex) {
-                                LOGGER.error(SEVERE, null, ex);
-                            }
-                        }
-                    }
-                }
-            }
-        }
+        Map<String, MultiReactionContainer> reactionMap = readECReactions(args, threads);
 
         if (DEBUG) {
             out.println("Number of EC parsed " + reactionMap.size());
@@ -347,4 +323,92 @@ public class ECRgroupFrequency {
         out.println("------------------------------------------------------");
     }
 
+    /*
+     * Map-reduce over the reaction files: the workers parse and fingerprint
+     * the reactions, each one is reduced into the summary of its EC as soon
+     * as it is read and then dropped. The work queue is bounded, the walker
+     * runs the task itself when the workers are behind. The files of a
+     * reaction name are tried in input order until one of them is read, a
+     * broken first copy doesn't hide the later ones.
+     */
+    private static Map<String, MultiReactionContainer> readECReactions(String[] args, int threads) {
+        Map<String, MultiReactionContainer> reactionMap = new ConcurrentHashMap<>();
+        /*
+         * files of each reaction per EC, across all the input directories
+         */
+        Map<String, Map<String, List<File>>> names = new LinkedHashMap<>();
+        for (String dir : args) {
+            File f = new File(dir);
+            if (f.isDirectory()) {
+                File[] files = f.listFiles();
+                //
+                if (DEBUG) {
+                    List<File> l = new ArrayList<>();
+                    l.addAll(asList(files));
+                    List<File> subList = l.subList(1, 100);
+                    files = subList.toArray(new File[subList.size()]);
+                }
+                for (File ec : files) {
+                    String ecNumber = ec.getName();
+                    if (ec.isDirectory()) {
+                        File[] listReactionFiles = ec.listFiles();
+                        Map<String, List<File>> ecNames = names.computeIfAbsent(ecNumber, k -> new LinkedHashMap<>());
+                        for (File reactionFile : listReactionFiles) {
+                            String reactionName = reactionFile.getName().split("\\.")[0];
+                            ecNames.computeIfAbsent(reactionName, k -> new ArrayList<>()).add(reactionFile);
+                        }
+                    }
+                }
+            }
+        }
+        /*
+         * distinct patterns of this run, shared by the summaries
+         */
+        Map<String, String> patterns = new ConcurrentHashMap<>();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 0L, MILLISECONDS,
+                new ArrayBlockingQueue<>(4 * threads), new ThreadPoolExecutor.CallerRunsPolicy());
+        try {
+            for (Map.Entry<String, Map<String, List<File>>> ec : names.entrySet()) {
+                String ecNumber = ec.getKey();
+                for (Map.Entry<String, List<File>> reaction : ec.getValue().entrySet()) {
+                    executor.execute(() -> {
+                        for (File reactionFile : reaction.getValue()) {
+                            if (addReaction(reactionMap, ecNumber, reactionFile, reaction.getKey(), patterns)) {
+                                break;
+                            }
+                        }
+                    });
+                }
+            }
+        } finally {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(Long.MAX_VALUE, MILLISECONDS);
+            } catch (InterruptedException ex) {
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+        return new TreeMap<>(reactionMap);
+    }
+
+    /*
+     * true if the reaction was read and added
+     */
+    private static boolean addReaction(Map<String, MultiReactionContainer> reactionMap,
+            String ecNumber, File reactionFile, String reactionName, Map<String, String> patterns) {
+        try (MDLRXNV2000Reader mdlrxnV2000Reader = new MDLRXNV2000Reader(new FileReader(reactionFile))) {
+            Reaction reaction = mdlrxnV2000Reader.read(new Reaction());
+            FingerprintType fp = MultiReactionContainer.fingerprint(reaction, patterns);
+            boolean rGroup = MultiReactionContainer.isRGroupPresent(reaction);
+            reactionMap.computeIfAbsent(ecNumber, MultiReactionContainer::new)
+                    .addFingerprint(reactionName, fp, rGroup);
+            return true;
+        } catch (FileNotFoundException ex) {
+            LOGGER.error(SEVERE, null, ex);
+        } catch (CDKException | IOException ex) {
+            LOGGER.error(SEVERE, null, ex);
+        }
+        return false;
+    }
 }
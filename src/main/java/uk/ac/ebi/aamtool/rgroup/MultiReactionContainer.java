@@ -20,8 +20,10 @@ package uk.ac.ebi.aamtool.rgroup;
 
 import static uk.ac.ebi.aamtool.rgroup.ECRgroupFrequency.DEBUG;
 import static java.lang.System.out;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 import static java.util.logging.Level.SEVERE;
@@ -48,7 +50,6 @@ class MultiReactionContainer {
 
     private static final ILoggingTool LOGGER
             = LoggingToolFactory.createLoggingTool(MultiReactionContainer.class);
-
     private final Set<ReactionGroup> reaction;
     private final String enzyme;
     private boolean RGroup;
@@ -63,27 +64,50 @@ class MultiReactionContainer {
     }
 
     public void addReaction(IReaction r, String name) {
+        addFingerprint(name, fingerprint(r), isRGroupPresent(r));
+    }
+
+    /**
+     * Reduces the patterns of a reaction into the EC summary: the common and
+     * difference patterns are intersected, all the patterns are united.
+     *
+     * @param name reaction name, a reaction is counted once
+     * @param rfp patterns of the reaction, see {@link #fingerprint(IReaction)}
+     * @param rGroupPresent
+     */
+    synchronized void addFingerprint(String name, FingerprintType rfp, boolean rGroupPresent) {
         ReactionGroup rg = new ReactionGroup(name);
         if (!reaction.contains(rg)) {
-            calculateCommonFingerprint(r);
-
-            boolean local_r_group_finder = false;
-            List<IAtomContainer> allAtomContainers = getAllAtomContainers(r);
-            for (IAtomContainer a : allAtomContainers) {
-                if (isRGroupPresent(a)) {
-                    local_r_group_finder = true;
-                    break;
-                }
+            /*
+             if no reaction is present then add all the patterns
+             */
+            if (getReaction().isEmpty()) {
+                getCommonCommonFP().addAll(rfp.getCommonCommonFP());
+                getCommonDifferenceFP().addAll(rfp.getCommonDifferenceFP());
+            } else {
+                getCommonCommonFP().retainAll(rfp.getCommonCommonFP());
+                getCommonDifferenceFP().retainAll(rfp.getCommonDifferenceFP());
             }
-            rg.setRGroupPresent(local_r_group_finder);
-            if (!isRGroup() && local_r_group_finder) {
+            getAllFP().addAll(rfp.getAllPatternsFP());
+            rg.setRGroupPresent(rGroupPresent);
+            if (!isRGroup() && rGroupPresent) {
                 RGroup = true;
             }
             getReaction().add(rg);
         }
     }
 
-    private boolean isRGroupPresent(IAtomContainer ac) {
+    static boolean isRGroupPresent(IReaction r) {
+        List<IAtomContainer> allAtomContainers = getAllAtomContainers(r);
+        for (IAtomContainer a : allAtomContainers) {
+            if (isRGroupPresent(a)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isRGroupPresent(IAtomContainer ac) {
         for (IAtom a : ac.atoms()) {
             if (a instanceof IPseudoAtom) {
                 if (a.getSymbol().contains("R")) {
@@ -136,9 +160,52 @@ class MultiReactionContainer {
         return RGroup;
     }
 
-    private void calculateCommonFingerprint(IReaction reaction) {
-        Set<String> l = new HashSet<>();
-        Set<String> r = new HashSet<>();
+    /**
+     * Circular fragments (radius 1 to 3) of the reaction: common to both
+     * sides, present on one side only and all of them. Doesn't depend on the
+     * container, reactions can be fingerprinted in parallel.
+     *
+     * @param reaction
+     * @return patterns of the reaction
+     */
+    static FingerprintType fingerprint(IReaction reaction) {
+        return fingerprint(reaction, new HashMap<>());
+    }
+
+    /**
+     * Same as {@link #fingerprint(IReaction)}, each distinct pattern is kept
+     * once in {@code patterns} so that the summaries of all the ECs of a run
+     * share one instance of it. The map belongs to the run and is dropped
+     * with it.
+     *
+     * @param reaction
+     * @param patterns distinct patterns of the run, thread safe if shared
+     * @return patterns of the reaction
+     */
+    static FingerprintType fingerprint(IReaction reaction, Map<String, String> patterns) {
+        Set<String> all = new TreeSet<>();
+        Set<String> l = circularPatterns(reaction.getReactants().atomContainers(), all, patterns);
+        Set<String> r = circularPatterns(reaction.getProducts().atomContainers(), all, patterns);
+
+        Set<String> common = new HashSet<>(l);
+        common.retainAll(r);
+
+        if (DEBUG) {
+            out.println("intersection " + common);
+        }
+
+        Set<String> difference = new TreeSet<>(l);
+        difference.addAll(r);
+        difference.removeAll(common);
+        if (DEBUG) {
+            out.println("difference " + difference);
+        }
+        return new FingerprintType(common, difference, all);
+    }
+
+    private static Set<String> circularPatterns(Iterable<IAtomContainer> molecules, Set<String> all,
+            Map<String, String> shared) {
+        Set<String> patterns = new HashSet<>();
         SmilesGenerator sm = new SmilesGenerator(
                 SmiFlavor.Unique
                 | SmiFlavor.UseAromaticSymbols
@@ -149,88 +216,28 @@ class MultiReactionContainer {
                         Cycles.or(Cycles.relevant(),
                                 Cycles.essential())));
 
-        for (IAtomContainer a : reaction.getReactants().atomContainers()) {
-            IAtomContainer ac = null;
-            ac = removeHydrogensExceptSingleAndPreserveAtomID(a);
-            for (int i = 0; i < ac.getAtomCount(); i++) {
-                try {
-                    aromaticity.apply(ac);
-                    IAtomContainer circularFragment = getCircularFragment(ac, i, 1);
-                    String smiles = sm.create(circularFragment);
-                    l.add(smiles);
-                    getAllFP().add(smiles);
-                    circularFragment = getCircularFragment(ac, i, 2);
-                    smiles = sm.create(circularFragment);
-                    l.add(smiles);
-                    getAllFP().add(smiles);
-
-                    circularFragment = getCircularFragment(ac, i, 3);
-                    smiles = sm.create(circularFragment);
-                    l.add(smiles);
-                    getAllFP().add(smiles);
-
-                } catch (Exception ex) {
-                    LOGGER.error(SEVERE, null, ex);
-                }
+        for (IAtomContainer a : molecules) {
+            IAtomContainer ac = removeHydrogensExceptSingleAndPreserveAtomID(a);
+            try {
+                aromaticity.apply(ac);
+            } catch (Exception ex) {
+                LOGGER.error(SEVERE, null, ex);
+                continue;
             }
-        }
-
-        for (IAtomContainer a : reaction.getProducts().atomContainers()) {
-            IAtomContainer ac = null;
-            ac = removeHydrogensExceptSingleAndPreserveAtomID(a);
             for (int i = 0; i < ac.getAtomCount(); i++) {
                 try {
-                    aromaticity.apply(ac);
-                    IAtomContainer circularFragment = getCircularFragment(ac, i, 1);
-                    String smiles = sm.create(circularFragment);
-                    r.add(smiles);
-                    getAllFP().add(smiles);
-
-                    circularFragment = getCircularFragment(ac, i, 2);
-                    smiles = sm.create(circularFragment);
-                    r.add(smiles);
-                    getAllFP().add(smiles);
-
-                    circularFragment = getCircularFragment(ac, i, 3);
-                    smiles = sm.create(circularFragment);
-                    r.add(smiles);
-                    getAllFP().add(smiles);
-
+                    for (int radius = 1; radius <= 3; radius++) {
+                        IAtomContainer circularFragment = getCircularFragment(ac, i, radius);
+                        String smiles = shared.computeIfAbsent(sm.create(circularFragment), k -> k);
+                        patterns.add(smiles);
+                        all.add(smiles);
+                    }
                 } catch (Exception ex) {
                     LOGGER.error(SEVERE, null, ex);
                 }
             }
         }
-        Set<String> common = new HashSet<>(l);
-        boolean intersection = common.retainAll(r);
-
-        if (DEBUG) {
-            out.println("intersection " + common);
-        }
-
-        Set<String> difference = new TreeSet<>(l);
-        difference.addAll(r);
-        boolean removeAll = difference.removeAll(common);
-        if (DEBUG) {
-            out.println("difference " + difference);
-        }
-        /*
-         if no reaction is present then add all the patterns
-         */
-        if (getReaction().isEmpty()) {
-            getCommonCommonFP().addAll(common);
-        } else {
-            getCommonCommonFP().retainAll(common);
-        }
-
-        /*
-         if no reaction is present then add all the patterns
-         */
-        if (getReaction().isEmpty()) {
-            getCommonDifferenceFP().addAll(difference);
-        } else {
-            getCommonDifferenceFP().retainAll(difference);
-        }
+        return patterns;
     }
 
     /**
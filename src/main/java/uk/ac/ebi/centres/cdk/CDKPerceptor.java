@@ -17,11 +17,8 @@
  */
 package uk.ac.ebi.centres.cdk;
 
-import org.openscience.cdk.exception.CDKException;
-import static org.openscience.cdk.geometry.GeometryUtil.has2DCoordinates;
 import org.openscience.cdk.interfaces.IAtom;
 import org.openscience.cdk.interfaces.IAtomContainer;
-import org.openscience.cdk.layout.StructureDiagramGenerator;
 import org.openscience.cdk.tools.ILoggingTool;
 import org.openscience.cdk.tools.LoggingToolFactory;
 import uk.ac.ebi.centres.DefaultPerceptor;
@@ -35,6 +32,7 @@ import uk.ac.ebi.centres.priority.access.descriptor.PrimaryDescriptor;
 import uk.ac.ebi.centres.priority.descriptor.PairRule;
 import uk.ac.ebi.centres.priority.descriptor.RSRule;
 import uk.ac.ebi.centres.priority.descriptor.ZERule;
+import uk.ac.ebi.reactionblast.tools.LayoutCache;
 
 /**
  * @author John May
@@ -85,18 +83,7 @@ public class CDKPerceptor extends DefaultPerceptor<IAtom> {
             /*
             Check for 2D co-ordinates for EC-BLAST, must else it will fail!
              */
-            if (!has2DCoordinates(container)) {
-                try {
-                    /*
-                    Clone it else it will loose mol ID
-                     */
-                    IAtomContainer clone = container.clone();
-                    StructureDiagramGenerator sdg = new StructureDiagramGenerator(clone);
-                    sdg.generateCoordinates();
-                    container = sdg.getMolecule();
-                } catch (CDKException e) {
-                }
-            }
+            LayoutCache.layout(container);
             perceive(new CDKCentreProvider(container), new CDKManager(container));
         } catch (Exception e) {
             e.printStackTrace();
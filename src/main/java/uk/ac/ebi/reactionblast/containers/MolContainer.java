@@ -20,11 +20,17 @@ package uk.ac.ebi.reactionblast.containers;
 
 //~--- non-JDK imports --------------------------------------------------------
 import java.io.IOException;
+import java.util.ArrayList;
 import static java.util.Collections.synchronizedSortedMap;
 import static java.util.Collections.unmodifiableMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.TreeSet;
 import static java.util.logging.Level.SEVERE;
 
 import org.openscience.cdk.exception.CDKException;
@@ -42,6 +48,7 @@ import static org.openscience.smsd.tools.ExtAtomContainerManipulator.cloneWithID
 import static org.openscience.smsd.tools.ExtAtomContainerManipulator.percieveAtomTypesAndConfigureAtoms;
 import static org.openscience.smsd.tools.ExtAtomContainerManipulator.removeHydrogensExceptSingleAndPreserveAtomID;
 import uk.ac.ebi.reactionblast.interfaces.IMolContainer;
+import uk.ac.ebi.reactionblast.tools.labelling.CanonicalForm;
 
 //~--- classes ----------------------------------------------------------------
 /**
@@ -81,6 +88,11 @@ public class MolContainer implements IMolContainer {
      */
     private static MolContainer _instance = null;
     private static Map<String, IAtomContainer> molContainer = null;
+    /*
+     * canonical key -> IDs of the stored molecules and IDs without a key
+     */
+    private static Map<String, List<String>> canonicalIndex = null;
+    private static Set<String> unkeyed = null;
     private final static ILoggingTool LOGGER
             = createLoggingTool(MolContainer.class);
 
@@ -99,6 +111,8 @@ public class MolContainer implements IMolContainer {
     //~--- constructors -------------------------------------------------------
     private MolContainer() {
         molContainer = synchronizedSortedMap(new TreeMap<>());
+        canonicalIndex = new HashMap<>();
+        unkeyed = new TreeSet<>();
     }
 
     //~--- methods ------------------------------------------------------------
@@ -110,6 +124,8 @@ public class MolContainer implements IMolContainer {
     public synchronized void Clear() throws IOException {
         molContainer.clear();
         molContainer = synchronizedSortedMap(new TreeMap<String, IAtomContainer>());
+        canonicalIndex.clear();
+        unkeyed.clear();
     }
 
     /**
@@ -119,7 +135,7 @@ public class MolContainer implements IMolContainer {
      */
     @Override
     public synchronized void Erase(String key) throws IOException {
-        molContainer.remove(key);
+        unindex(key, molContainer.remove(key));
     }
 
     /**
@@ -130,7 +146,8 @@ public class MolContainer implements IMolContainer {
     @Override
     public synchronized void put(String key, IAtomContainer Value) throws IOException {
         try {
-            molContainer.put(key, Value);
+            unindex(key, molContainer.put(key, Value));
+            index(key, Value);
         } catch (Exception e) {
             LOGGER.debug(e);
         }
@@ -180,7 +197,8 @@ public class MolContainer implements IMolContainer {
     @Override
     public synchronized void add(String key, IAtomContainer value)
             throws IOException {
-        molContainer.put(key, value);
+        unindex(key, molContainer.put(key, value));
+        index(key, value);
     }
 
     /**
@@ -244,8 +262,42 @@ public class MolContainer implements IMolContainer {
         return false;
     }
 
+    /**
+     * Looks up the molecule by its canonical key. The graph match is only
+     * needed if several stored molecules share the key or if the key can't be
+     * generated.
+     *
+     * @param mol
+     * @return ID of the identical molecule or null
+     * @throws Exception
+     */
     @Override
     public synchronized String getMoleculeID(IAtomContainer mol) throws Exception {
+        IAtomContainer queryMol = prepare(mol);
+        String canonicalKey = getCanonicalKey(queryMol);
+
+        if (canonicalKey != null) {
+            List<String> candidates = canonicalIndex.get(canonicalKey);
+            if (candidates != null && candidates.size() == 1) {
+                return candidates.get(0);
+            } else if (candidates != null) {
+                for (String key : candidates) {
+                    if (isIdentical(queryMol, molContainer.get(key), true)) {
+                        return key;
+                    }
+                }
+            }
+        }
+        for (String key : unkeyed) {
+            if (isIdentical(queryMol, molContainer.get(key), true)) {
+                return key;
+            }
+        }
+        //System.LOGGER.debug("Error: Unable to Find AtomContainer ID!!!");
+        return null;
+    }
+
+    private IAtomContainer prepare(IAtomContainer mol) throws CDKException {
         IAtomContainer queryMol = removeHydrogensExceptSingleAndPreserveAtomID(mol);
         percieveAtomTypesAndConfigureAtoms(queryMol);
         CDKHydrogenAdder instance = CDKHydrogenAdder.getInstance(queryMol.getBuilder());
@@ -258,16 +310,40 @@ public class MolContainer implements IMolContainer {
         }
 
         aromatizeMolecule(queryMol);
+        return queryMol;
+    }
 
-        for (Map.Entry<String, IAtomContainer> map : molContainer.entrySet()) {
-            String key = map.getKey();
-            IAtomContainer tMol = map.getValue();
-            if (isIdentical(queryMol, tMol, true)) {
-                return key;
+    private String getCanonicalKey(IAtomContainer preparedMol) {
+        CanonicalForm form = CanonicalForm.create(preparedMol);
+        return form == null ? null : form.getKey();
+    }
+
+    private void index(String key, IAtomContainer value) {
+        String canonicalKey = null;
+        try {
+            canonicalKey = value == null ? null : getCanonicalKey(prepare(value));
+        } catch (Exception ex) {
+            LOGGER.debug("Unable to index " + key, ex.getMessage());
+        }
+        if (canonicalKey == null) {
+            unkeyed.add(key);
+        } else {
+            canonicalIndex.computeIfAbsent(canonicalKey, k -> new ArrayList<>()).add(key);
+        }
+    }
+
+    private void unindex(String key, IAtomContainer oldValue) {
+        if (oldValue == null) {
+            return;
+        }
+        unkeyed.remove(key);
+        Iterator<List<String>> it = canonicalIndex.values().iterator();
+        while (it.hasNext()) {
+            List<String> ids = it.next();
+            if (ids.remove(key) && ids.isEmpty()) {
+                it.remove();
             }
         }
-        //System.LOGGER.debug("Error: Unable to Find AtomContainer ID!!!");
-        return null;
     }
 
     @Override
@@ -22,10 +22,7 @@ import java.util.BitSet;
 import org.openscience.cdk.exception.CDKException;
 import org.openscience.cdk.fingerprint.CircularFingerprinter;
 import static org.openscience.cdk.fingerprint.CircularFingerprinter.CLASS_ECFP4;
-import static org.openscience.cdk.geometry.GeometryUtil.has2DCoordinates;
-import static org.openscience.cdk.graph.ConnectivityChecker.isConnected;
 import org.openscience.cdk.interfaces.IAtomContainer;
-import org.openscience.cdk.layout.StructureDiagramGenerator;
 import org.openscience.cdk.tools.ILoggingTool;
 import static org.openscience.cdk.tools.LoggingToolFactory.createLoggingTool;
 import uk.ac.ebi.reactionblast.fingerprints.interfaces.IFingerprintGenerator;
@@ -69,16 +66,9 @@ public class FingerprintGenerator implements IFingerprintGenerator {
      */
     @Override
     public synchronized BitSet getFingerprint(IAtomContainer mol) throws CDKException {
-        if (!has2DCoordinates(mol)) {
-            StructureDiagramGenerator structureDiagramGenerator = new StructureDiagramGenerator();
-            structureDiagramGenerator.setMolecule(mol, true);
-            if (isConnected(mol)) {
-                structureDiagramGenerator.generateCoordinates();
-                mol = structureDiagramGenerator.getMolecule();
-            } else {
-                LOGGER.debug("Disconnected components needs to be layout separately");
-            }
-        }
+        /*
+         * ECFP4 is computed without stereo perception, no layout needed
+         */
         return fingerprinter.getBitFingerprint(mol).asBitSet();
     }
 
@@ -0,0 +1,668 @@
+/*
+ * Copyright (C) 2007-2020 Syed Asad Rahman <asad @ ebi.ac.uk>.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package uk.ac.ebi.reactionblast.graphics.direct;
+
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import static java.awt.Color.BLACK;
+import static java.awt.Color.WHITE;
+import java.awt.Composite;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Image;
+import java.awt.Paint;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Arc2D;
+import java.awt.geom.Area;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Line2D;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
+import java.awt.geom.RoundRectangle2D;
+import java.awt.image.BufferedImage;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import java.awt.image.BufferedImageOp;
+import java.awt.image.ImageObserver;
+import java.awt.image.RenderedImage;
+import java.awt.image.renderable.RenderableImage;
+import java.text.AttributedCharacterIterator;
+import static java.util.Locale.ROOT;
+import java.util.Map;
+
+/**
+ * A {@link Graphics2D} which records the drawing operations used by the
+ * direct drawers (shapes, strokes, colours, transforms and text) as SVG
+ * elements. Each instance (and the copies made by {@link #create()}) writes to
+ * its own buffer and measures text on its own scratch image, hence several
+ * instances can draw concurrently. Raster images are not supported.
+ *
+ * @contact Syed Asad Rahman, EMBL-EBI, Cambridge, UK.
+ * @author Syed Asad Rahman <asad @ ebi.ac.uk>
+ */
+public class SVGGraphics2D extends Graphics2D {
+
+    private final StringBuilder body;
+    private final Graphics2D scratch;
+    private AffineTransform transform;
+    private Color color;
+    private Paint paint;
+    private Color background;
+    private Composite composite;
+    private Stroke stroke;
+    private Font font;
+    private Shape clip;
+
+    /**
+     *
+     */
+    public SVGGraphics2D() {
+        this(new StringBuilder(), new BufferedImage(1, 1, TYPE_INT_ARGB).createGraphics());
+        this.transform = new AffineTransform();
+        this.color = BLACK;
+        this.paint = BLACK;
+        this.background = WHITE;
+        this.composite = AlphaComposite.SrcOver;
+        this.stroke = new BasicStroke();
+        this.font = scratch.getFont();
+    }
+
+    private SVGGraphics2D(StringBuilder body, Graphics2D scratch) {
+        this.body = body;
+        this.scratch = scratch;
+    }
+
+    /**
+     * The recorded drawing as an SVG document.
+     *
+     * @param x left of the view box
+     * @param y top of the view box
+     * @param width
+     * @param height
+     * @return SVG document
+     */
+    public String getSVGDocument(double x, double y, double width, double height) {
+        StringBuilder svg = new StringBuilder(body.length() + 256);
+        svg.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        svg.append("<svg xmlns=\"http://www.w3.org/2000/svg\" version=\"1.1\"")
+                .append(" width=\"").append(number(width)).append('"')
+                .append(" height=\"").append(number(height)).append('"')
+                .append(" viewBox=\"").append(number(x)).append(' ').append(number(y)).append(' ')
+                .append(number(width)).append(' ').append(number(height)).append("\">\n");
+        svg.append(body);
+        svg.append("</svg>\n");
+        return svg.toString();
+    }
+
+    @Override
+    public void draw(Shape s) {
+        if (stroke instanceof BasicStroke) {
+            BasicStroke bs = (BasicStroke) stroke;
+            double scale = Math.sqrt(Math.abs(transform.getDeterminant()));
+            body.append("<path d=\"").append(path(s)).append("\" fill=\"none\"");
+            colour("stroke", color);
+            body.append(" stroke-width=\"").append(number(bs.getLineWidth() * scale)).append('"');
+            body.append(" stroke-linecap=\"").append(bs.getEndCap() == BasicStroke.CAP_ROUND ? "round"
+                    : bs.getEndCap() == BasicStroke.CAP_SQUARE ? "square" : "butt").append('"');
+            body.append(" stroke-linejoin=\"").append(bs.getLineJoin() == BasicStroke.JOIN_ROUND ? "round"
+                    : bs.getLineJoin() == BasicStroke.JOIN_BEVEL ? "bevel" : "miter").append('"');
+            float[] dash = bs.getDashArray();
+            if (dash != null && dash.length > 0) {
+                body.append(" stroke-dasharray=\"");
+                for (int i = 0; i < dash.length; i++) {
+                    body.append(i == 0 ? "" : ",").append(number(dash[i] * scale));
+                }
+                body.append('"');
+            }
+            body.append("/>\n");
+        } else {
+            fill(stroke.createStrokedShape(s));
+        }
+    }
+
+    @Override
+    public void fill(Shape s) {
+        body.append("<path d=\"").append(path(s)).append('"');
+        colour("fill", color);
+        if (s.getPathIterator(null).getWindingRule() == PathIterator.WIND_EVEN_ODD) {
+            body.append(" fill-rule=\"evenodd\"");
+        }
+        body.append("/>\n");
+    }
+
+    @Override
+    public void drawString(String str, float x, float y) {
+        if (str == null || str.isEmpty()) {
+            return;
+        }
+        double[] m = new double[6];
+        transform.getMatrix(m);
+        body.append("<text x=\"").append(number(x)).append("\" y=\"").append(number(y)).append('"');
+        body.append(" transform=\"matrix(");
+        for (int i = 0; i < m.length; i++) {
+            body.append(i == 0 ? "" : " ").append(number(m[i]));
+        }
+        body.append(")\"");
+        body.append(" font-family=\"").append(family(font)).append('"');
+        body.append(" font-size=\"").append(number(font.getSize2D())).append('"');
+        if (font.isBold()) {
+            body.append(" font-weight=\"bold\"");
+        }
+        if (font.isItalic()) {
+            body.append(" font-style=\"italic\"");
+        }
+        colour("fill", color);
+        body.append('>').append(escape(str)).append("</text>\n");
+    }
+
+    @Override
+    public void drawString(String str, int x, int y) {
+        drawString(str, (float) x, (float) y);
+    }
+
+    @Override
+    public void drawString(AttributedCharacterIterator iterator, int x, int y) {
+        drawString(iterator, (float) x, (float) y);
+    }
+
+    @Override
+    public void drawString(AttributedCharacterIterator iterator, float x, float y) {
+        StringBuilder sb = new StringBuilder();
+        for (char c = iterator.first(); c != AttributedCharacterIterator.DONE; c = iterator.next()) {
+            sb.append(c);
+        }
+        drawString(sb.toString(), x, y);
+    }
+
+    @Override
+    public void drawGlyphVector(GlyphVector g, float x, float y) {
+        fill(g.getOutline(x, y));
+    }
+
+    @Override
+    public boolean hit(Rectangle rect, Shape s, boolean onStroke) {
+        Shape shape = onStroke ? stroke.createStrokedShape(s) : s;
+        return transform.createTransformedShape(shape).intersects(rect);
+    }
+
+    @Override
+    public GraphicsConfiguration getDeviceConfiguration() {
+        return scratch.getDeviceConfiguration();
+    }
+
+    @Override
+    public void setComposite(Composite comp) {
+        this.composite = comp;
+    }
+
+    @Override
+    public void setPaint(Paint paint) {
+        this.paint = paint;
+        if (paint instanceof Color) {
+            this.color = (Color) paint;
+        }
+    }
+
+    @Override
+    public void setStroke(Stroke s) {
+        this.stroke = s;
+    }
+
+    @Override
+    public void setRenderingHint(RenderingHints.Key hintKey, Object hintValue) {
+        scratch.setRenderingHint(hintKey, hintValue);
+    }
+
+    @Override
+    public Object getRenderingHint(RenderingHints.Key hintKey) {
+        return scratch.getRenderingHint(hintKey);
+    }
+
+    @Override
+    public void setRenderingHints(Map<?, ?> hints) {
+        scratch.setRenderingHints(hints);
+    }
+
+    @Override
+    public void addRenderingHints(Map<?, ?> hints) {
+        scratch.addRenderingHints(hints);
+    }
+
+    @Override
+    public RenderingHints getRenderingHints() {
+        return scratch.getRenderingHints();
+    }
+
+    @Override
+    public void translate(int x, int y) {
+        transform.translate(x, y);
+    }
+
+    @Override
+    public void translate(double tx, double ty) {
+        transform.translate(tx, ty);
+    }
+
+    @Override
+    public void rotate(double theta) {
+        transform.rotate(theta);
+    }
+
+    @Override
+    public void rotate(double theta, double x, double y) {
+        transform.rotate(theta, x, y);
+    }
+
+    @Override
+    public void scale(double sx, double sy) {
+        transform.scale(sx, sy);
+    }
+
+    @Override
+    public void shear(double shx, double shy) {
+        transform.shear(shx, shy);
+    }
+
+    @Override
+    public void transform(AffineTransform tx) {
+        transform.concatenate(tx);
+    }
+
+    @Override
+    public void setTransform(AffineTransform tx) {
+        transform = new AffineTransform(tx);
+    }
+
+    @Override
+    public AffineTransform getTransform() {
+        return new AffineTransform(transform);
+    }
+
+    @Override
+    public Paint getPaint() {
+        return paint;
+    }
+
+    @Override
+    public Composite getComposite() {
+        return composite;
+    }
+
+    @Override
+    public void setBackground(Color color) {
+        this.background = color;
+    }
+
+    @Override
+    public Color getBackground() {
+        return background;
+    }
+
+    @Override
+    public Stroke getStroke() {
+        return stroke;
+    }
+
+    @Override
+    public void clip(Shape s) {
+        Shape device = transform.createTransformedShape(s);
+        if (clip == null) {
+            clip = device;
+        } else {
+            Area area = new Area(clip);
+            area.intersect(new Area(device));
+            clip = area;
+        }
+    }
+
+    @Override
+    public FontRenderContext getFontRenderContext() {
+        return scratch.getFontRenderContext();
+    }
+
+    @Override
+    public Graphics create() {
+        SVGGraphics2D copy = new SVGGraphics2D(body, scratch);
+        copy.transform = new AffineTransform(transform);
+        copy.color = color;
+        copy.paint = paint;
+        copy.background = background;
+        copy.composite = composite;
+        copy.stroke = stroke;
+        copy.font = font;
+        copy.clip = clip;
+        return copy;
+    }
+
+    @Override
+    public Color getColor() {
+        return color;
+    }
+
+    @Override
+    public void setColor(Color c) {
+        if (c != null) {
+            this.color = c;
+            this.paint = c;
+        }
+    }
+
+    @Override
+    public void setPaintMode() {
+    }
+
+    @Override
+    public void setXORMode(Color c1) {
+    }
+
+    @Override
+    public Font getFont() {
+        return font;
+    }
+
+    @Override
+    public void setFont(Font font) {
+        if (font != null) {
+            this.font = font;
+        }
+    }
+
+    @Override
+    public FontMetrics getFontMetrics(Font f) {
+        return scratch.getFontMetrics(f);
+    }
+
+    @Override
+    public Rectangle getClipBounds() {
+        if (clip == null) {
+            return null;
+        }
+        try {
+            return transform.createInverse().createTransformedShape(clip).getBounds();
+        } catch (NoninvertibleTransformException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void clipRect(int x, int y, int width, int height) {
+        clip(new Rectangle(x, y, width, height));
+    }
+
+    @Override
+    public void setClip(int x, int y, int width, int height) {
+        setClip(new Rectangle(x, y, width, height));
+    }
+
+    @Override
+    public Shape getClip() {
+        if (clip == null) {
+            return null;
+        }
+        try {
+            return transform.createInverse().createTransformedShape(clip);
+        } catch (NoninvertibleTransformException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void setClip(Shape clip) {
+        this.clip = clip == null ? null : transform.createTransformedShape(clip);
+    }
+
+    @Override
+    public void copyArea(int x, int y, int width, int height, int dx, int dy) {
+    }
+
+    @Override
+    public void drawLine(int x1, int y1, int x2, int y2) {
+        draw(new Line2D.Double(x1, y1, x2, y2));
+    }
+
+    @Override
+    public void fillRect(int x, int y, int width, int height) {
+        fill(new Rectangle(x, y, width, height));
+    }
+
+    @Override
+    public void clearRect(int x, int y, int width, int height) {
+        Color c = color;
+        color = background;
+        fillRect(x, y, width, height);
+        color = c;
+    }
+
+    @Override
+    public void drawRoundRect(int x, int y, int width, int height, int arcWidth, int arcHeight) {
+        draw(new RoundRectangle2D.Double(x, y, width, height, arcWidth, arcHeight));
+    }
+
+    @Override
+    public void fillRoundRect(int x, int y, int width, int height, int arcWidth, int arcHeight) {
+        fill(new RoundRectangle2D.Double(x, y, width, height, arcWidth, arcHeight));
+    }
+
+    @Override
+    public void drawOval(int x, int y, int width, int height) {
+        draw(new Ellipse2D.Double(x, y, width, height));
+    }
+
+    @Override
+    public void fillOval(int x, int y, int width, int height) {
+        fill(new Ellipse2D.Double(x, y, width, height));
+    }
+
+    @Override
+    public void drawArc(int x, int y, int width, int height, int startAngle, int arcAngle) {
+        draw(new Arc2D.Double(x, y, width, height, startAngle, arcAngle, Arc2D.OPEN));
+    }
+
+    @Override
+    public void fillArc(int x, int y, int width, int height, int startAngle, int arcAngle) {
+        fill(new Arc2D.Double(x, y, width, height, startAngle, arcAngle, Arc2D.PIE));
+    }
+
+    @Override
+    public void drawPolyline(int[] xPoints, int[] yPoints, int nPoints) {
+        draw(polygon(xPoints, yPoints, nPoints, false));
+    }
+
+    @Override
+    public void drawPolygon(int[] xPoints, int[] yPoints, int nPoints) {
+        draw(polygon(xPoints, yPoints, nPoints, true));
+    }
+
+    @Override
+    public void fillPolygon(int[] xPoints, int[] yPoints, int nPoints) {
+        fill(polygon(xPoints, yPoints, nPoints, true));
+    }
+
+    @Override
+    public boolean drawImage(Image img, AffineTransform xform, ImageObserver obs) {
+        return false;
+    }
+
+    @Override
+    public void drawImage(BufferedImage img, BufferedImageOp op, int x, int y) {
+    }
+
+    @Override
+    public void drawRenderedImage(RenderedImage img, AffineTransform xform) {
+    }
+
+    @Override
+    public void drawRenderableImage(RenderableImage img, AffineTransform xform) {
+    }
+
+    @Override
+    public boolean drawImage(Image img, int x, int y, ImageObserver observer) {
+        return false;
+    }
+
+    @Override
+    public boolean drawImage(Image img, int x, int y, int width, int height, ImageObserver observer) {
+        return false;
+    }
+
+    @Override
+    public boolean drawImage(Image img, int x, int y, Color bgcolor, ImageObserver observer) {
+        return false;
+    }
+
+    @Override
+    public boolean drawImage(Image img, int x, int y, int width, int height, Color bgcolor, ImageObserver observer) {
+        return false;
+    }
+
+    @Override
+    public boolean drawImage(Image img, int dx1, int dy1, int dx2, int dy2, int sx1, int sy1, int sx2, int sy2, ImageObserver observer) {
+        return false;
+    }
+
+    @Override
+    public boolean drawImage(Image img, int dx1, int dy1, int dx2, int dy2, int sx1, int sy1, int sx2, int sy2, Color bgcolor, ImageObserver observer) {
+        return false;
+    }
+
+    @Override
+    public void dispose() {
+    }
+
+    private static Shape polygon(int[] xPoints, int[] yPoints, int nPoints, boolean close) {
+        Path2D.Double p = new Path2D.Double();
+        for (int i = 0; i < nPoints; i++) {
+            if (i == 0) {
+                p.moveTo(xPoints[i], yPoints[i]);
+            } else {
+                p.lineTo(xPoints[i], yPoints[i]);
+            }
+        }
+        if (close && nPoints > 0) {
+            p.closePath();
+        }
+        return p;
+    }
+
+    /*
+     * Path data of the shape in device space
+     */
+    private String path(Shape s) {
+        StringBuilder d = new StringBuilder();
+        double[] c = new double[6];
+        for (PathIterator it = s.getPathIterator(transform); !it.isDone(); it.next()) {
+            switch (it.currentSegment(c)) {
+                case PathIterator.SEG_MOVETO:
+                    d.append('M').append(number(c[0])).append(' ').append(number(c[1]));
+                    break;
+                case PathIterator.SEG_LINETO:
+                    d.append('L').append(number(c[0])).append(' ').append(number(c[1]));
+                    break;
+                case PathIterator.SEG_QUADTO:
+                    d.append('Q').append(number(c[0])).append(' ').append(number(c[1])).append(' ')
+                            .append(number(c[2])).append(' ').append(number(c[3]));
+                    break;
+                case PathIterator.SEG_CUBICTO:
+                    d.append('C').append(number(c[0])).append(' ').append(number(c[1])).append(' ')
+                            .append(number(c[2])).append(' ').append(number(c[3])).append(' ')
+                            .append(number(c[4])).append(' ').append(number(c[5]));
+                    break;
+                case PathIterator.SEG_CLOSE:
+                    d.append('Z');
+                    break;
+                default:
+                    break;
+            }
+        }
+        return d.toString();
+    }
+
+    private void colour(String attribute, Color c) {
+        body.append(' ').append(attribute).append("=\"rgb(")
+                .append(c.getRed()).append(',').append(c.getGreen()).append(',').append(c.getBlue())
+                .append(")\"");
+        double opacity = c.getAlpha() / 255.0;
+        if (composite instanceof AlphaComposite) {
+            opacity *= ((AlphaComposite) composite).getAlpha();
+        }
+        if (opacity < 1.0) {
+            body.append(' ').append(attribute).append("-opacity=\"").append(number(opacity)).append('"');
+        }
+    }
+
+    /*
+     * Java logical font names mapped to the generic SVG families
+     */
+    private static String family(Font f) {
+        switch (f.getFamily()) {
+            case Font.SANS_SERIF:
+            case Font.DIALOG:
+            case Font.DIALOG_INPUT:
+                return "sans-serif";
+            case Font.SERIF:
+                return "serif";
+            case Font.MONOSPACED:
+                return "monospace";
+            default:
+                return escape(f.getFamily());
+        }
+    }
+
+    private static String number(double v) {
+        if (v == Math.rint(v) && Math.abs(v) < 1e9) {
+            return Long.toString((long) v);
+        }
+        return String.format(ROOT, "%.2f", v);
+    }
+
+    private static String escape(String s) {
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char ch = s.charAt(i);
+            switch (ch) {
+                case '<':
+                    sb.append("&lt;");
+                    break;
+                case '>':
+                    sb.append("&gt;");
+                    break;
+                case '&':
+                    sb.append("&amp;");
+                    break;
+                case '"':
+                    sb.append("&quot;");
+                    break;
+                default:
+                    sb.append(ch);
+            }
+        }
+        return sb.toString();
+    }
+}
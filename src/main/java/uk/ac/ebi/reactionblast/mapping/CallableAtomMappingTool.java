@@ -43,6 +43,7 @@ import static org.openscience.cdk.tools.LoggingToolFactory.createLoggingTool;
 import uk.ac.ebi.reactionblast.interfaces.IStandardizer;
 import uk.ac.ebi.reactionblast.mapping.cache.ThreadSafeCache;
 import uk.ac.ebi.reactionblast.mapping.graph.MCSSolution;
+import uk.ac.ebi.reactionblast.mapping.helper.MappingBudget;
 import uk.ac.ebi.reactionblast.mapping.interfaces.IMappingAlgorithm;
 import static uk.ac.ebi.reactionblast.mapping.interfaces.IMappingAlgorithm.MAX;
 import static uk.ac.ebi.reactionblast.mapping.interfaces.IMappingAlgorithm.MIN;
@@ -88,6 +89,7 @@ public class CallableAtomMappingTool implements Serializable {
         }
     }
     private Map<IMappingAlgorithm, Reactor> solution = null;
+    private boolean degraded = false;
 
     /**
      * Takes a standardizer to standardize the reaction before mapping.
@@ -116,6 +118,19 @@ public class CallableAtomMappingTool implements Serializable {
          * Mapping cache initialized
          */
         ThreadSafeCache<String, MCSSolution> mappingcache = ThreadSafeCache.getInstance();
+        /*
+         * Reactions over the memory budget are mapped by the models which
+         * fit (local first), without the pairs over budget
+         */
+        MappingBudget budget = MappingBudget.fromSystemProperty();
+        int available = checkComplex ? 4 : 3;
+        int models = available;
+        long pairLimit = 0L;
+        if (budget != null) {
+            pairLimit = budget.getLimit();
+            models = budget.models(reaction, available);
+            degraded = models < available || MappingBudget.largestPair(reaction) > pairLimit;
+        }
 
         ExecutorService executor;
         executor = Executors.newSingleThreadExecutor();
@@ -138,72 +153,76 @@ public class CallableAtomMappingTool implements Serializable {
                 LOGGER.debug("ERROR: in AtomMappingTool: " + e.getMessage());
                 LOGGER.error(e);
             }
-            MappingThread minThread = new MappingThread("IMappingAlgorithm.MIN", cleanedReaction1, MIN, removeHydrogen);
+            MappingThread minThread = new MappingThread("IMappingAlgorithm.MIN", cleanedReaction1, MIN, removeHydrogen, pairLimit);
             cs.submit(minThread);
             jobCounter++;
-            /*
-             * MAX Algorithm
-             */
-            LOGGER.info(NEW_LINE + "|++++++++++++++++++++++++++++|");
-            LOGGER.info("a) Global Model: ");
-            if (DEBUG) {
-                out.println(NEW_LINE + "-----------------------------------" + NEW_LINE);
-                out.println(NEW_LINE + "STEP 1: Global Model Standardize Reactions" + NEW_LINE);
-            }
-            IReaction cleanedReaction2 = null;
-            try {
-                cleanedReaction2 = standardizer.standardize(reaction);
-            } catch (Exception e) {
-                LOGGER.debug("ERROR: in AtomMappingTool: " + e.getMessage());
-                LOGGER.error(e);
-            }
-            if (DEBUG) {
-                out.println(NEW_LINE + "STEP a: Calling Mapping Models" + NEW_LINE);
-            }
-            MappingThread maxThread = new MappingThread("IMappingAlgorithm.MAX", cleanedReaction2, MAX, removeHydrogen);
-            cs.submit(maxThread);
-            jobCounter++;
-
-            /*
-             * MIXTURE Algorithm
-             */
-            LOGGER.info(NEW_LINE + "|++++++++++++++++++++++++++++|");
-            LOGGER.info("c) Mixture Model: ");
-            if (DEBUG) {
-                out.println(NEW_LINE + "-----------------------------------" + NEW_LINE);
-                out.println(NEW_LINE + "STEP c: Mixture Model Standardize Reactions" + NEW_LINE);
-            }
-            IReaction cleanedReaction3 = null;
-            try {
-                cleanedReaction3 = standardizer.standardize(reaction);
-            } catch (Exception e) {
-                LOGGER.debug("ERROR: in AtomMappingTool: " + e.getMessage());
-                LOGGER.error(e);
+            if (models > 1) {
+                /*
+                 * MAX Algorithm
+                 */
+                LOGGER.info(NEW_LINE + "|++++++++++++++++++++++++++++|");
+                LOGGER.info("a) Global Model: ");
+                if (DEBUG) {
+                    out.println(NEW_LINE + "-----------------------------------" + NEW_LINE);
+                    out.println(NEW_LINE + "STEP 1: Global Model Standardize Reactions" + NEW_LINE);
+                }
+                IReaction cleanedReaction2 = null;
+                try {
+                    cleanedReaction2 = standardizer.standardize(reaction);
+                } catch (Exception e) {
+                    LOGGER.debug("ERROR: in AtomMappingTool: " + e.getMessage());
+                    LOGGER.error(e);
+                }
+                if (DEBUG) {
+                    out.println(NEW_LINE + "STEP a: Calling Mapping Models" + NEW_LINE);
+                }
+                MappingThread maxThread = new MappingThread("IMappingAlgorithm.MAX", cleanedReaction2, MAX, removeHydrogen, pairLimit);
+                cs.submit(maxThread);
+                jobCounter++;
             }
-            MappingThread maxMixtureThread = new MappingThread("IMappingAlgorithm.MIXTURE", cleanedReaction3, MIXTURE, removeHydrogen);
-            cs.submit(maxMixtureThread);
-            jobCounter++;
-
-            if (checkComplex) {/*
-             * RINGS Minimization
+            if (models > 2) {
+                /*
+                 * MIXTURE Algorithm
                  */
                 LOGGER.info(NEW_LINE + "|++++++++++++++++++++++++++++|");
-                LOGGER.info("d) Rings Model: ");
+                LOGGER.info("c) Mixture Model: ");
                 if (DEBUG) {
                     out.println(NEW_LINE + "-----------------------------------" + NEW_LINE);
-                    out.println(NEW_LINE + "STEP d: Rings Model Standardize Reactions" + NEW_LINE);
+                    out.println(NEW_LINE + "STEP c: Mixture Model Standardize Reactions" + NEW_LINE);
                 }
-                IReaction cleanedReaction4 = null;
+                IReaction cleanedReaction3 = null;
                 try {
-                    cleanedReaction4 = standardizer.standardize(reaction);
+                    cleanedReaction3 = standardizer.standardize(reaction);
                 } catch (Exception e) {
                     LOGGER.debug("ERROR: in AtomMappingTool: " + e.getMessage());
                     LOGGER.error(e);
                 }
-                MappingThread ringThread = new MappingThread("IMappingAlgorithm.RINGS", cleanedReaction4, RINGS, removeHydrogen);
-                cs.submit(ringThread);
+                MappingThread maxMixtureThread = new MappingThread("IMappingAlgorithm.MIXTURE", cleanedReaction3, MIXTURE, removeHydrogen, pairLimit);
+                cs.submit(maxMixtureThread);
                 jobCounter++;
             }
+            if (models > 3) {
+                if (checkComplex) {/*
+                 * RINGS Minimization
+                     */
+                    LOGGER.info(NEW_LINE + "|++++++++++++++++++++++++++++|");
+                    LOGGER.info("d) Rings Model: ");
+                    if (DEBUG) {
+                        out.println(NEW_LINE + "-----------------------------------" + NEW_LINE);
+                        out.println(NEW_LINE + "STEP d: Rings Model Standardize Reactions" + NEW_LINE);
+                    }
+                    IReaction cleanedReaction4 = null;
+                    try {
+                        cleanedReaction4 = standardizer.standardize(reaction);
+                    } catch (Exception e) {
+                        LOGGER.debug("ERROR: in AtomMappingTool: " + e.getMessage());
+                        LOGGER.error(e);
+                    }
+                    MappingThread ringThread = new MappingThread("IMappingAlgorithm.RINGS", cleanedReaction4, RINGS, removeHydrogen, pairLimit);
+                    cs.submit(ringThread);
+                    jobCounter++;
+                }
+            }
 
             /*
              * Collect the results
@@ -239,6 +258,14 @@ public class CallableAtomMappingTool implements Serializable {
 
     }
 
+    /**
+     * @return true if the reaction was over the memory budget and mapped by
+     * fewer models
+     */
+    public boolean isDegraded() {
+        return degraded;
+    }
+
     /**
      * @return the solution
      */
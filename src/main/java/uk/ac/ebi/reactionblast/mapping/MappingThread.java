@@ -23,6 +23,7 @@ import java.util.concurrent.Callable;
 import org.openscience.cdk.interfaces.IReaction;
 import org.openscience.cdk.tools.ILoggingTool;
 import static org.openscience.cdk.tools.LoggingToolFactory.createLoggingTool;
+import uk.ac.ebi.reactionblast.mapping.graph.GraphMatcher;
 import uk.ac.ebi.reactionblast.mapping.interfaces.IMappingAlgorithm;
 
 /**
@@ -36,6 +37,7 @@ class MappingThread implements Callable<Reactor> {
     private final IReaction cleanedReaction;
     private final IMappingAlgorithm algorithm;
     private final boolean removeHydrogen;
+    private final long pairLimit;
 
     /**
      *
@@ -43,20 +45,24 @@ class MappingThread implements Callable<Reactor> {
      * @param removeHydrogen true (map without hydrogen, for faster mapping)
      * else false for complete with Hydrogen
      * @param algorithm
+     * @param pairLimit bytes, pairs with a larger compatibility graph are not
+     * matched (0 for no limit)
      *
      * @return Mapped Object
      */
     MappingThread(String message, IReaction cleanedReaction, 
-            IMappingAlgorithm algorithm, boolean removeHydrogen) {
+            IMappingAlgorithm algorithm, boolean removeHydrogen, long pairLimit) {
         this.cleanedReaction = cleanedReaction;
         this.algorithm = algorithm;
         this.removeHydrogen = removeHydrogen;
+        this.pairLimit = pairLimit;
         LOGGER.info("|++++++++++++++++++++++++++++|");
         LOGGER.info("|Atom Atom Mapping Tool Initialized for " + message);
     }
 
     @Override
     public Reactor call() throws Exception {
+        GraphMatcher.setPairLimit(pairLimit);
         try {
             Reactor reactor;
             reactor = new Reactor(cleanedReaction, removeHydrogen, algorithm);
@@ -64,6 +70,8 @@ class MappingThread implements Callable<Reactor> {
             return reactor;
         } catch (Exception ex) {
             throw ex;
+        } finally {
+            GraphMatcher.setPairLimit(0L);
         }
     }
 }
@@ -42,14 +42,16 @@ import org.openscience.cdk.interfaces.IBond;
 import org.openscience.cdk.interfaces.IMapping;
 import org.openscience.cdk.interfaces.IReaction;
 import static org.openscience.cdk.interfaces.IReaction.Direction.BIDIRECTIONAL;
-import org.openscience.cdk.layout.StructureDiagramGenerator;
 import org.openscience.cdk.smiles.SmilesGenerator;
 import static org.openscience.cdk.smiles.SmilesGenerator.generic;
 import static org.openscience.cdk.tools.manipulator.AtomContainerSetManipulator.getTotalFormalCharge;
 import uk.ac.ebi.reactionblast.mapping.algorithm.CalculationProcess;
 import uk.ac.ebi.reactionblast.mapping.container.MoleculeMoleculeMapping;
+import uk.ac.ebi.reactionblast.mapping.container.helper.MolMapping;
 import uk.ac.ebi.reactionblast.mapping.helper.AbstractReactor;
+import uk.ac.ebi.reactionblast.mapping.helper.ReactionPartitioner;
 import uk.ac.ebi.reactionblast.mapping.interfaces.IMappingAlgorithm;
+import uk.ac.ebi.reactionblast.tools.LayoutCache;
 import static uk.ac.ebi.reactionblast.tools.ExtReactionManipulatorTool.deepClone;
 import static java.lang.Integer.parseInt;
 import static java.lang.Math.max;
@@ -58,7 +60,6 @@ import static java.lang.String.valueOf;
 import static java.util.Arrays.sort;
 import static java.util.Collections.synchronizedList;
 
-import static org.openscience.cdk.geometry.GeometryUtil.has2DCoordinates;
 import org.openscience.cdk.silent.SilentChemObjectBuilder;
 import org.openscience.cdk.smiles.SmiFlavor;
 import static org.openscience.cdk.smiles.SmilesGenerator.unique;
@@ -385,6 +386,22 @@ public class Reactor extends AbstractReactor implements Serializable {
 
         try {
             IReaction reactionCopy = copyReaction(reactionWithUniqueSTOICHIOMETRY, partialMapping);
+            if (ReactionPartitioner.isEnabled()) {
+                ReactionPartitioner partitioner = new ReactionPartitioner(reactionCopy);
+                if (partitioner.isPartitioned()) {
+                    try {
+                        calculatePartitionedMapping(reactionCopy, partitioner);
+                        return;
+                    } catch (Exception ex) {
+                        /*
+                         * not left unmapped, the whole reaction is mapped instead
+                         */
+                        LOGGER.error(SEVERE, "Partitioned mapping failed for "
+                                + reactionCopy.getID() + ", mapping the whole reaction", ex);
+                        reactionCopy = copyReaction(reactionWithUniqueSTOICHIOMETRY, partialMapping);
+                    }
+                }
+            }
             CalculationProcess calP
                     = new CalculationProcess(partialMapping, reactionCopy, getAlgorithm());
             delta = calP.getDelta();
@@ -396,6 +413,50 @@ public class Reactor extends AbstractReactor implements Serializable {
         }
     }
 
+    /*
+     * Maps the components of the reaction independently and merges their
+     * mappings with the identity mapping of the spectators. The components
+     * are mapped one after the other: each mapping already runs its models
+     * in parallel, inside the pools of the callers.
+     */
+    private synchronized void calculatePartitionedMapping(IReaction reactionCopy,
+            ReactionPartitioner partitioner) throws Exception {
+        List<IReaction> components = partitioner.getComponents();
+        LOGGER.debug("Mapping " + components.size() + " components and "
+                + partitioner.getSpectatorCount() + " spectators of " + reactionCopy.getID());
+        IReaction coreMappedReaction = reactionCopy.getBuilder().newInstance(IReaction.class);
+        partitioner.addSpectatorMappings(coreMappedReaction);
+        MoleculeMoleculeMapping molMapping = new MoleculeMoleculeMapping();
+        int componentDelta = 0;
+
+        List<CalculationProcess> processes = new ArrayList<>(components.size());
+        for (IReaction component : components) {
+            try {
+                processes.add(new CalculationProcess(partialMapping, component, getAlgorithm()));
+            } catch (Exception ex) {
+                throw new CDKException("Unable to map reaction component " + component.getID(), ex);
+            }
+        }
+        for (CalculationProcess calP : processes) {
+            componentDelta += calP.getDelta();
+            for (IMapping mapping : calP.getMappedReaction().mappings()) {
+                coreMappedReaction.addMapping(mapping);
+            }
+            MoleculeMoleculeMapping componentMapping = calP.getReactionBlastMolMapping();
+            if (componentMapping != null) {
+                for (Map.Entry<String, List<MolMapping>> e : componentMapping.getEntrySet()) {
+                    List<MolMapping> merged = molMapping.isPresent(e.getKey())
+                            ? new ArrayList<>(molMapping.getMolMappings(e.getKey())) : new ArrayList<>();
+                    merged.addAll(e.getValue());
+                    molMapping.setMolMappings(e.getKey(), merged);
+                }
+            }
+        }
+        delta = componentDelta;
+        reactionWithUniqueSTOICHIOMETRY = getMapping(coreMappedReaction);
+        setReactionBlastMolMapping(molMapping);
+    }
+
     private synchronized IReaction getMapping(IReaction coreMappedReaction) throws IOException, CDKException, CloneNotSupportedException {
 
         IReaction mappedReaction = deepClone(reactionWithUniqueSTOICHIOMETRY);
@@ -1157,18 +1218,7 @@ public class Reactor extends AbstractReactor implements Serializable {
         /*
         Generate 2D Diagram without cloning
          */
-        if (!has2DCoordinates(cloneMolecule)) {
-            try {
-                /*
-                Clone it else it will loose mol ID
-                 */
-                StructureDiagramGenerator sdg = new StructureDiagramGenerator();
-                sdg.setMolecule(cloneMolecule, false);
-                sdg.generateCoordinates();
-            } catch (CDKException e) {
-                LOGGER.error(SEVERE, "Error in 2D Generation ", e.getMessage());
-            }
-        }
+        LayoutCache.layout(cloneMolecule);
 
         /*
         Set the IDs to -1 very IMP
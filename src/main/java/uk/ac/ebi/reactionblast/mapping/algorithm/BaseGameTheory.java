@@ -22,6 +22,7 @@ import java.io.IOException;
 import java.io.Serializable;
 import static java.lang.String.valueOf;
 import static java.lang.System.out;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Calendar;
@@ -34,6 +35,7 @@ import static java.util.Calendar.YEAR;
 import java.util.Collection;
 import java.util.GregorianCalendar;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.logging.Level;
@@ -79,6 +81,41 @@ public abstract class BaseGameTheory extends Debugger implements IGameTheory, Se
     private final static ILoggingTool LOGGER
             = createLoggingTool(BaseGameTheory.class);
     private static final long serialVersionUID = 1698688633678282L;
+    private final List<Long> roundTimes = new ArrayList<>();
+    private transient long roundStart;
+
+    /**
+     * Marks the start of a selection round (winner search and matrix update).
+     */
+    protected synchronized void startRound() {
+        roundStart = System.nanoTime();
+    }
+
+    /**
+     * Marks the end of the round started by {@link #startRound()}.
+     */
+    protected synchronized void endRound() {
+        roundTimes.add((System.nanoTime() - roundStart) / 1000000L);
+        if (DEBUG) {
+            out.println("Round " + roundTimes.size() + " took " + roundTimes.get(roundTimes.size() - 1) + " ms");
+        }
+    }
+
+    /**
+     * @return number of selection rounds run so far
+     */
+    @Override
+    public synchronized int getRoundCount() {
+        return roundTimes.size();
+    }
+
+    /**
+     * @return time of each selection round in ms
+     */
+    @Override
+    public synchronized List<Long> getRoundTimes() {
+        return new ArrayList<>(roundTimes);
+    }
 
     /**
      * Checks if a PseudoAtom is present
@@ -363,6 +400,12 @@ public abstract class BaseGameTheory extends Debugger implements IGameTheory, Se
         for (MCSSolution solution : mcsSolutions) {
             if (solution.getQueryPosition() == queryPosition
                     && solution.getTargetPosition() == targetPosition) {
+                /*
+                 * Pair pruned as unrelated, kept unmapped
+                 */
+                if (solution.isPruned()) {
+                    return solution;
+                }
                 if (solution.getAtomAtomMapping().isEmpty()) {
                     Set<String> atomMaps = new HashSet<>();
 
@@ -609,7 +652,7 @@ public abstract class BaseGameTheory extends Debugger implements IGameTheory, Se
 
         AtomAtomMapping atomAtomMappingNew = new AtomAtomMapping(compound1, compound2);
         mappingsByIndex.entrySet().forEach((m) -> {
-            atomAtomMappingNew.put(compound1.getAtom(m.getKey()), compound2.getAtom(m.getValue()));
+            atomAtomMappingNew.put(m.getKey().intValue(), m.getValue().intValue());
         });
         MCSSolution mcsSolution = new MCSSolution(queryPosition, targetPosition, compound1, compound2, atomAtomMappingNew);
         mcsSolution.setEnergy(oldSolution.getEnergy());
@@ -21,7 +21,9 @@ package uk.ac.ebi.reactionblast.mapping.algorithm;
 
 import java.io.Serializable;
 import static java.lang.System.getProperty;
+import java.util.ArrayList;
 import static java.util.Collections.synchronizedSortedMap;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 
@@ -53,6 +55,7 @@ public class CalculationProcess extends CaseHandler implements Serializable {
     private final boolean removeHydrogen;
     private int delta = 0;
     private MoleculeMoleculeMapping reactionBlastMolMapping;
+    private List<Long> roundTimes = new ArrayList<>();
     private final IMappingAlgorithm algorithm;
 
     /**
@@ -148,6 +151,8 @@ public class CalculationProcess extends CaseHandler implements Serializable {
                 System.out.println("=====DONE AGORITHM====" + theory);
             }
             this.reactionBlastMolMapping = gameTheory.getReactionMolMapping();
+            this.roundTimes = gameTheory.getRoundTimes();
+            LOGGER.debug(theory + " mapped in " + gameTheory.getRoundCount() + " rounds " + roundTimes + " ms");
             EDSH.Clear();
 
             return gameTheory.getDelta();
@@ -170,4 +175,11 @@ public class CalculationProcess extends CaseHandler implements Serializable {
     public synchronized MoleculeMoleculeMapping getReactionBlastMolMapping() {
         return reactionBlastMolMapping;
     }
+
+    /**
+     * @return time of each selection round of the game theory in ms
+     */
+    public synchronized List<Long> getRoundTimes() {
+        return new ArrayList<>(roundTimes);
+    }
 }
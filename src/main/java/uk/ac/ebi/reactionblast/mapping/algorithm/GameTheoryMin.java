@@ -133,10 +133,12 @@ final class GameTheoryMin extends BaseGameTheory {
     }
 
     private synchronized void GenerateIsoMorphismMapping() throws Exception {
+        startRound();
 
         winner.searchWinners(educts, products, mh);
 
-        if (winner.getFlag()) {
+        boolean winners = winner.getFlag();
+        if (winners) {
 
             if (DEBUG) {
                 System.out.println("**********Updated Mapping**************");
@@ -149,83 +151,91 @@ final class GameTheoryMin extends BaseGameTheory {
             if (DEBUG) {
                 System.out.println("**********Generate Mapping**************");
             }
+        }
+        endRound();
+        if (winners) {
             GenerateMapping(false);
         }
     }
 
     private synchronized void GenerateMapping(boolean flag) throws Exception {
         boolean ruleMatchingFlag = flag;
-        this.counter++;
-        if (DEBUG) {
-            System.out.println("**********Orignal Matrix**************");
-            printMatrixAtomContainer(mh, eductList, productList);
-            printSimMatrix(mh, eductList, productList);
-            printCliqueMatrix(mh, eductList, productList);
-//            printStereoMatrix(mh, eductList, productList);
-//            printFragmentMatrix(mh, eductList, productList);
-//            printEnergyMatrix(mh, eductList, productList);
-        }
-        boolean conditionmet = false;
-        if (!ruleMatchingFlag) {
+        boolean winners;
+        do {
+            startRound();
+            this.counter++;
             if (DEBUG) {
-                out.println("CHECK Rule Based Mapping Handler Match");
+                System.out.println("**********Orignal Matrix**************");
+                printMatrixAtomContainer(mh, eductList, productList);
+                printSimMatrix(mh, eductList, productList);
+                printCliqueMatrix(mh, eductList, productList);
+                // printStereoMatrix(mh, eductList, productList);
+                // printFragmentMatrix(mh, eductList, productList);
+                // printEnergyMatrix(mh, eductList, productList);
             }
-            RuleBasedMappingHandler ruleBasedMappingHandler = new RuleBasedMappingHandler(mh, eductList, productList);
-            if (ruleBasedMappingHandler.isMatchFound()) {
+            boolean conditionmet = false;
+            if (!ruleMatchingFlag) {
                 if (DEBUG) {
-                    out.println("Rule Based Mapping Handler Match Found");
+                    out.println("CHECK Rule Based Mapping Handler Match");
+                }
+                RuleBasedMappingHandler ruleBasedMappingHandler = new RuleBasedMappingHandler(mh, eductList, productList);
+                if (ruleBasedMappingHandler.isMatchFound()) {
+                    if (DEBUG) {
+                        out.println("Rule Based Mapping Handler Match Found");
+                    }
+                    mh = Selector.modifyMatrix(ruleBasedMappingHandler.getMatrixHolder());
+                    conditionmet = true;
+                }
+                ruleMatchingFlag = true;
+                if (DEBUG) {
+                    out.println("DONE CHECK Rule Based Mapping Handler");
                 }
-                mh = Selector.modifyMatrix(ruleBasedMappingHandler.getMatrixHolder());
-                conditionmet = true;
-            }
-            ruleMatchingFlag = true;
-            if (DEBUG) {
-                out.println("DONE CHECK Rule Based Mapping Handler");
             }
-        }
 
-        if (!conditionmet && counter <= 5) {
-            if (DEBUG) {
-                out.println("call counter " + counter);
-                out.println("Subgraph/Exact Match Test");
-            }
-            MinSelection select
-                    = new MinSelection(mh, eductList, productList);
-            if (select.isSubAndCompleteMatchFlag()) {
+            if (!conditionmet && counter <= 5) {
                 if (DEBUG) {
-                    out.println("Subgraph/Exact Match");
+                    out.println("call counter " + counter);
+                    out.println("Subgraph/Exact Match Test");
+                }
+                MinSelection select
+                        = new MinSelection(mh, eductList, productList);
+                if (select.isSubAndCompleteMatchFlag()) {
+                    if (DEBUG) {
+                        out.println("Subgraph/Exact Match");
+                    }
+                    mh = select.getUpdatedHolder();
                 }
-                mh = select.getUpdatedHolder();
             }
-        }
 
-        if (DEBUG) {
-            out.println("**********Modified Matrix**************");
-//            printMatrixAtomContainer(mh, eductList, productList);
-            printSimMatrix(mh, eductList, productList);
-            printCliqueMatrix(mh, eductList, productList);
-//            printStereoMatrix(mh, eductList, productList);
-//            printFragmentMatrix(mh, eductList, productList);
-//            printEnergyMatrix(mh, eductList, productList);
-        }
-        winner.searchWinners(educts, products, mh);
-        if (DEBUG) {
-            printFlagMatrix(winner, eductList, productList);
-        }
-        if (winner.getFlag()) {
             if (DEBUG) {
-                out.println("**********Updated Mapping**************");
+                out.println("**********Modified Matrix**************");
+                // printMatrixAtomContainer(mh, eductList, productList);
+                printSimMatrix(mh, eductList, productList);
+                printCliqueMatrix(mh, eductList, productList);
+                // printStereoMatrix(mh, eductList, productList);
+                // printFragmentMatrix(mh, eductList, productList);
+                // printEnergyMatrix(mh, eductList, productList);
             }
-            UpdateMapping();
+            winner.searchWinners(educts, products, mh);
             if (DEBUG) {
-                out.println("**********Updated Matrix**************");
+                printFlagMatrix(winner, eductList, productList);
             }
-            UpdateMatrix(mh, removeHydrogen);
-            if (DEBUG) {
-                out.println("**********Generate Mapping**************");
+            winners = winner.getFlag();
+            if (winners) {
+                if (DEBUG) {
+                    out.println("**********Updated Mapping**************");
+                }
+                UpdateMapping();
+                if (DEBUG) {
+                    out.println("**********Updated Matrix**************");
+                }
+                UpdateMatrix(mh, removeHydrogen);
+                if (DEBUG) {
+                    out.println("**********Generate Mapping**************");
+                }
             }
-            GenerateMapping(ruleMatchingFlag);
-        }
+            endRound();
+        } while (winners);
     }
 
     private synchronized void UpdateMapping() throws Exception {
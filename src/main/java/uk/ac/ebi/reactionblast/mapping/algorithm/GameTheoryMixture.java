@@ -133,63 +133,73 @@ final class GameTheoryMixture extends BaseGameTheory {
 //~--- methods ------------------------------------------------------------
 
     private synchronized void GenerateIsoMorphismMapping() throws Exception {
+        startRound();
 
         winner.searchWinners(educts, products, mh);
 
-        if (winner.getFlag()) {
+        boolean winners = winner.getFlag();
+        if (winners) {
 
 //            System.out.println("**********Updated Mapping**************");
             UpdateMapping();
 //            System.out.println("**********Updated Matrix**************");
             UpdateMatrix(mh, removeHydrogen);
 //            System.out.println("**********Generate Mapping**************");
+        }
+        endRound();
+        if (winners) {
             GenerateMapping(false);
         }
     }
 
     private synchronized void GenerateMapping(boolean flag) throws Exception {
         boolean ruleMatchingFlag = flag;
-        if (DEBUG) {
-            printMatrixAtomContainer(mh, eductList, productList);
-            out.println("**********Orignal Matrix**************");
-            printSimMatrix(mh, eductList, productList);
-            printCliqueMatrix(mh, eductList, productList);
-//        printStereoMatrix(mh, eductList, productList);
-//        printFragmentMatrix(mh, eductList, productList);
-//        printEnergyMatrix(mh, eductList, productList);
-        }
+        boolean winners;
+        do {
+            startRound();
+            if (DEBUG) {
+                printMatrixAtomContainer(mh, eductList, productList);
+                out.println("**********Orignal Matrix**************");
+                printSimMatrix(mh, eductList, productList);
+                printCliqueMatrix(mh, eductList, productList);
+                // printStereoMatrix(mh, eductList, productList);
+                // printFragmentMatrix(mh, eductList, productList);
+                // printEnergyMatrix(mh, eductList, productList);
+            }
 
-        if (!ruleMatchingFlag) {//First map the biggest fragment the call rules
-            RuleBasedMappingHandler ruleBasedMappingHandler
-                    = new RuleBasedMappingHandler(mh, eductList, productList);
-            if (ruleBasedMappingHandler.isMatchFound()) {
-                if (DEBUG) {
-                    out.println("Rule Based Mapping Handler Match Found");
+            if (!ruleMatchingFlag) {//First map the biggest fragment the call rules
+                RuleBasedMappingHandler ruleBasedMappingHandler
+                        = new RuleBasedMappingHandler(mh, eductList, productList);
+                if (ruleBasedMappingHandler.isMatchFound()) {
+                    if (DEBUG) {
+                        out.println("Rule Based Mapping Handler Match Found");
+                    }
+                    mh = Selector.modifyMatrix(ruleBasedMappingHandler.getMatrixHolder());
                 }
-                mh = Selector.modifyMatrix(ruleBasedMappingHandler.getMatrixHolder());
+                ruleMatchingFlag = true;
             }
-            ruleMatchingFlag = true;
-        }
-
-        winner.searchWinners(educts, products, mh);
-        if (DEBUG) {
-            printFlagMatrix(winner, eductList, productList);
-        }
-        if (winner.getFlag()) {
 
+            winner.searchWinners(educts, products, mh);
             if (DEBUG) {
-                System.out.println("**********Updated Mapping**************");
+                printFlagMatrix(winner, eductList, productList);
             }
-            UpdateMapping();
-            if (DEBUG) {
-                System.out.println("**********Updated Matrix**************");
-            }
-            UpdateMatrix(mh, removeHydrogen);
-            if (DEBUG) {
-                System.out.println("**********Generate Mapping**************");
+            winners = winner.getFlag();
+            if (winners) {
+
+                if (DEBUG) {
+                    System.out.println("**********Updated Mapping**************");
+                }
+                UpdateMapping();
+                if (DEBUG) {
+                    System.out.println("**********Updated Matrix**************");
+                }
+                UpdateMatrix(mh, removeHydrogen);
+                if (DEBUG) {
+                    System.out.println("**********Generate Mapping**************");
+                }
             }
-            GenerateMapping(ruleMatchingFlag);
-        }
+            endRound();
+        } while (winners);
     }
 
     private synchronized void UpdateMapping() throws Exception {
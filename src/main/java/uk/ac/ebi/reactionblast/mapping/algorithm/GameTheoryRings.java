@@ -136,6 +136,7 @@ final class GameTheoryRings extends BaseGameTheory {
 //~--- methods ------------------------------------------------------------
 
     private synchronized void GenerateIsoMorphismMapping() throws Exception {
+        startRound();
 
         RuleBasedMappingHandler ph
                 = new RuleBasedMappingHandler(mh, eductList, productList);
@@ -148,7 +149,8 @@ final class GameTheoryRings extends BaseGameTheory {
 
         winner.searchWinners(educts, products, mh);
 
-        if (winner.getFlag()) {
+        boolean winners = winner.getFlag();
+        if (winners) {
 
             if (DEBUG) {
                 System.out.println("**********Updated Mapping**************");
@@ -161,51 +163,59 @@ final class GameTheoryRings extends BaseGameTheory {
             if (DEBUG) {
                 System.out.println("**********Generate Mapping**************");
             }
+        }
+        endRound();
+        if (winners) {
             GenerateMapping();
         }
     }
 
     private synchronized void GenerateMapping() throws Exception {
-        if (DEBUG) {
-            System.out.println("GenerateMapping");
-        }
-        if (DEBUG) {
-            out.println("**********Orignal Matrix**************");
-            printMatrixAtomContainer(mh, eductList, productList);
-            printSimMatrix(mh, eductList, productList);
-            printCliqueMatrix(mh, eductList, productList);
-//            printStereoMatrix(mh, eductList, productList);
-//            printFragmentMatrix(mh, eductList, productList);
-//            printEnergyMatrix(mh, eductList, productList);
-        }
-
-        RuleBasedMappingHandler ruleBasedMappingHandler = new RuleBasedMappingHandler(mh, eductList, productList);
-        if (ruleBasedMappingHandler.isMatchFound()) {
-//            System.out.println("RuleBasedMappingHandler Match");
-            mh = Selector.modifyMatrix(ruleBasedMappingHandler.getMatrixHolder());
-//            printSimMatrix(mh, eductList, productList);
-        }
-
-        winner.searchWinners(educts, products, mh);
-
-        if (DEBUG) {
-            printFlagMatrix(winner, eductList, productList);
-        }
-        if (winner.getFlag()) {
-
+        boolean winners;
+        do {
+            startRound();
             if (DEBUG) {
-                System.out.println("**********Updated Mapping**************");
+                System.out.println("GenerateMapping");
             }
-            UpdateMapping();
             if (DEBUG) {
-                System.out.println("**********Updated Matrix**************");
+                out.println("**********Orignal Matrix**************");
+                printMatrixAtomContainer(mh, eductList, productList);
+                printSimMatrix(mh, eductList, productList);
+                printCliqueMatrix(mh, eductList, productList);
+                // printStereoMatrix(mh, eductList, productList);
+                // printFragmentMatrix(mh, eductList, productList);
+                // printEnergyMatrix(mh, eductList, productList);
             }
-            UpdateMatrix(mh, removeHydrogen);
+
+            RuleBasedMappingHandler ruleBasedMappingHandler = new RuleBasedMappingHandler(mh, eductList, productList);
+            if (ruleBasedMappingHandler.isMatchFound()) {
+                // System.out.println("RuleBasedMappingHandler Match");
+                mh = Selector.modifyMatrix(ruleBasedMappingHandler.getMatrixHolder());
+                // printSimMatrix(mh, eductList, productList);
+            }
+
+            winner.searchWinners(educts, products, mh);
+
             if (DEBUG) {
-                System.out.println("**********Generate Mapping**************");
+                printFlagMatrix(winner, eductList, productList);
             }
-            GenerateMapping();
-        }
+            winners = winner.getFlag();
+            if (winners) {
+
+                if (DEBUG) {
+                    System.out.println("**********Updated Mapping**************");
+                }
+                UpdateMapping();
+                if (DEBUG) {
+                    System.out.println("**********Updated Matrix**************");
+                }
+                UpdateMatrix(mh, removeHydrogen);
+                if (DEBUG) {
+                    System.out.println("**********Generate Mapping**************");
+                }
+            }
+            endRound();
+        } while (winners);
     }
 
     private synchronized void UpdateMapping() throws Exception {
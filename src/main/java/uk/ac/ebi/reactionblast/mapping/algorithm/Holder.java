@@ -20,7 +20,6 @@ package uk.ac.ebi.reactionblast.mapping.algorithm;
 
 import java.io.IOException;
 import java.io.Serializable;
-import static java.lang.System.arraycopy;
 import static java.lang.System.out;
 import java.util.ArrayList;
 import java.util.BitSet;
@@ -33,7 +32,7 @@ import uk.ac.ebi.reactionblast.mapping.container.helper.MolMapping;
 import uk.ac.ebi.reactionblast.mapping.helper.Debugger;
 import uk.ac.ebi.reactionblast.mapping.interfaces.BestMatch;
 import uk.ac.ebi.reactionblast.mapping.interfaces.IMappingAlgorithm;
-import uk.ac.ebi.reactionblast.tools.EBIMatrix;
+import uk.ac.ebi.reactionblast.tools.ScoreMatrix;
 import static java.util.Collections.synchronizedList;
 import org.openscience.cdk.tools.ILoggingTool;
 import static org.openscience.cdk.tools.LoggingToolFactory.createLoggingTool;
@@ -52,13 +51,13 @@ public class Holder extends Debugger implements Cloneable, Serializable {
      Final methods
      */
     private final List<MolMapping> mappingMolPair;
-    private final EBIMatrix stereoMatrix;
-    private final EBIMatrix cliqueMatrix;
-    private final EBIMatrix graphSimilarityMatrix;
-    private final EBIMatrix fragmentMatrix;
-    private final EBIMatrix energyMatrix;
-    private final EBIMatrix carbonOverlapMatrix;
-    private final EBIMatrix fpSimMatrixWithoutHydrogen;
+    private final ScoreMatrix stereoMatrix;
+    private final ScoreMatrix cliqueMatrix;
+    private final ScoreMatrix graphSimilarityMatrix;
+    private final ScoreMatrix fragmentMatrix;
+    private final ScoreMatrix energyMatrix;
+    private final ScoreMatrix carbonOverlapMatrix;
+    private final ScoreMatrix fpSimMatrixWithoutHydrogen;
     private final int row;
     private final int coloumn;
 
@@ -119,66 +118,67 @@ public class Holder extends Debugger implements Cloneable, Serializable {
     public Holder(int row, int column) {
         this.row = row;
         this.coloumn = column;
-        this.graphSimilarityMatrix = new EBIMatrix(row, column);
-        this.stereoMatrix = new EBIMatrix(row, column);
-        this.cliqueMatrix = new EBIMatrix(row, column);
-        this.fragmentMatrix = new EBIMatrix(row, column);
-        this.carbonOverlapMatrix = new EBIMatrix(row, column);
-        this.fpSimMatrixWithoutHydrogen = new EBIMatrix(row, column);
-        this.energyMatrix = new EBIMatrix(row, column);
+        this.graphSimilarityMatrix = new ScoreMatrix(row, column);
+        this.stereoMatrix = new ScoreMatrix(row, column);
+        this.cliqueMatrix = new ScoreMatrix(row, column);
+        this.fragmentMatrix = new ScoreMatrix(row, column);
+        this.carbonOverlapMatrix = new ScoreMatrix(row, column);
+        this.fpSimMatrixWithoutHydrogen = new ScoreMatrix(row, column);
+        this.energyMatrix = new ScoreMatrix(row, column);
+        this.mappingMolPair = synchronizedList(new ArrayList<>());
+    }
+
+    /*
+     * Copy sharing the score arrays of the source until either side writes
+     */
+    private Holder(Holder source) {
+        this.row = source.row;
+        this.coloumn = source.coloumn;
+        this.graphSimilarityMatrix = source.graphSimilarityMatrix.copyOnWrite();
+        this.stereoMatrix = source.stereoMatrix.copyOnWrite();
+        this.cliqueMatrix = source.cliqueMatrix.copyOnWrite();
+        this.fragmentMatrix = source.fragmentMatrix.copyOnWrite();
+        this.carbonOverlapMatrix = source.carbonOverlapMatrix.copyOnWrite();
+        this.fpSimMatrixWithoutHydrogen = source.fpSimMatrixWithoutHydrogen.copyOnWrite();
+        this.energyMatrix = source.energyMatrix.copyOnWrite();
         this.mappingMolPair = synchronizedList(new ArrayList<>());
-        if (DEBUG) {
-            out.println("initialize the Matrix");
-        }
-        initialize();
     }
 
     /**
      * @return the stereoMatrix
      */
-    public synchronized EBIMatrix getStereoMatrix() {
+    public synchronized ScoreMatrix getStereoMatrix() {
         return stereoMatrix;
     }
 
     /**
      * @return the cliqueMatrix
      */
-    public synchronized EBIMatrix getCliqueMatrix() {
+    public synchronized ScoreMatrix getCliqueMatrix() {
         return cliqueMatrix;
     }
 
     /**
      * @return the graphSimilarityMatrix
      */
-    public synchronized EBIMatrix getGraphSimilarityMatrix() {
+    public synchronized ScoreMatrix getGraphSimilarityMatrix() {
         return graphSimilarityMatrix;
     }
 
     /**
      * @return the fragmentMatrix
      */
-    public synchronized EBIMatrix getFragmentMatrix() {
+    public synchronized ScoreMatrix getFragmentMatrix() {
         return fragmentMatrix;
     }
 
     /**
      * @return the energyMatrix
      */
-    public synchronized EBIMatrix getEnergyMatrix() {
+    public synchronized ScoreMatrix getEnergyMatrix() {
         return energyMatrix;
     }
 
-    private void initialize() {
-//        System.out.println("\nInitialize Matrix with Zero\n");
-        graphSimilarityMatrix.initMatrix(0.0);
-        stereoMatrix.initMatrix(0.0);
-        cliqueMatrix.initMatrix(0.0);
-        fragmentMatrix.initMatrix(0.0);
-        fpSimMatrixWithoutHydrogen.initMatrix(0.0);
-        energyMatrix.initMatrix(0.0);
-        carbonOverlapMatrix.initMatrix(0.0);
-    }
-
     private void setFingerprint() {
         for (int i = 0; i < eductCounter.size(); i++) {
             for (int j = 0; j < productCounter.size(); j++) {
@@ -217,7 +217,7 @@ public class Holder extends Debugger implements Cloneable, Serializable {
     /**
      * @return the fpSimMatrixWithoutHydrogen
      */
-    public synchronized EBIMatrix getFPSimilarityMatrix() {
+    public synchronized ScoreMatrix getFPSimilarityMatrix() {
         return fpSimMatrixWithoutHydrogen;
     }
 
@@ -236,64 +236,21 @@ public class Holder extends Debugger implements Cloneable, Serializable {
     }
 
     /**
-     * Cloned EBIMatrix Objects
+     * Clone sharing the score matrices copy-on-write, a matrix is duplicated
+     * only when the clone or this holder modifies it.
      *
      * @return
      * @throws CloneNotSupportedException
      */
     @Override
     public synchronized Object clone() throws CloneNotSupportedException {
-        Holder mhClone = new Holder(this.row, this.coloumn);
+        Holder mhClone = new Holder(this);
         mhClone.setTheory(this.getTheory());
-
-        double[][] arrayCopy = this.getGraphSimilarityMatrix().getArrayCopy();
-        EBIMatrix matrix = mhClone.getGraphSimilarityMatrix();
-        setData(arrayCopy, matrix, row, coloumn);
-
-        arrayCopy = this.getFragmentMatrix().getArrayCopy();
-        matrix = mhClone.getFragmentMatrix();
-        setData(arrayCopy, matrix, row, coloumn);
-
-        arrayCopy = this.getStereoMatrix().getArrayCopy();
-        matrix = mhClone.getStereoMatrix();
-        setData(arrayCopy, matrix, row, coloumn);
-
-        arrayCopy = this.getCliqueMatrix().getArrayCopy();
-        matrix = mhClone.getCliqueMatrix();
-        setData(arrayCopy, matrix, row, coloumn);
-
-        arrayCopy = this.getEnergyMatrix().getArrayCopy();
-        matrix = mhClone.getEnergyMatrix();
-        setData(arrayCopy, matrix, row, coloumn);
-
-        arrayCopy = this.getCarbonOverlapMatrix().getArrayCopy();
-        matrix = mhClone.getCarbonOverlapMatrix();
-        setData(arrayCopy, matrix, row, coloumn);
-
-        arrayCopy = this.getFPSimilarityMatrix().getArrayCopy();
-        matrix = mhClone.getFPSimilarityMatrix();
-        setData(arrayCopy, matrix, row, coloumn);
-
         mhClone.structureInformation = this.getReactionContainer();
         mhClone.bestMatchContainer = this.getBestMatchContainer();
         return mhClone;
     }
 
-    /**
-     * Make a deep duplicate of a matrix
-     *
-     * @param sourceData
-     * @param sinkMatrix
-     * @param rows
-     * @param coloumns
-     */
-    private void setData(double[][] sourceData, EBIMatrix sinkMatrix, int rows, int coloumns) {
-        double[][] newDataMatrix = sinkMatrix.getArray();
-        for (int i = 0; i < rows; i++) {
-            arraycopy(sourceData[i], 0, newDataMatrix[i], 0, coloumns);
-        }
-    }
-
     /**
      * @return the bestMatchContainer
      */
@@ -318,7 +275,7 @@ public class Holder extends Debugger implements Cloneable, Serializable {
     /**
      * @return the carbonOverlapMatrix
      */
-    public EBIMatrix getCarbonOverlapMatrix() {
+    public ScoreMatrix getCarbonOverlapMatrix() {
         return carbonOverlapMatrix;
     }
 }
@@ -36,7 +36,7 @@ import java.util.Map;
 
 import org.openscience.cdk.interfaces.IAtomContainer;
 import uk.ac.ebi.reactionblast.mapping.algorithm.Holder;
-import uk.ac.ebi.reactionblast.tools.EBIMatrix;
+import uk.ac.ebi.reactionblast.tools.ScoreMatrix;
 import static java.util.Collections.synchronizedList;
 
 /**
@@ -48,11 +48,11 @@ public class ChooseWinner extends Selector implements Serializable {
 
     private final static boolean DEBUG = false;
     private static final long serialVersionUID = 0x296558709L;
-    private EBIMatrix stereoMatrix;
-    private EBIMatrix energyMatrix;
-    private EBIMatrix carbonOverlapMatrix;
+    private ScoreMatrix stereoMatrix;
+    private ScoreMatrix energyMatrix;
+    private ScoreMatrix carbonOverlapMatrix;
 
-    private EBIMatrix similarityMatrix = null;
+    private ScoreMatrix similarityMatrix = null;
     private List<Cell> crossMappingTracer = null;
     private Map<Integer, IAtomContainer> educts = null;
     private Map<Integer, IAtomContainer> products = null;
@@ -75,35 +75,35 @@ public class ChooseWinner extends Selector implements Serializable {
     /**
      * @return the stereoMatrix
      */
-    public EBIMatrix getStereoMatrix() {
+    public ScoreMatrix getStereoMatrix() {
         return stereoMatrix;
     }
 
     /**
      * @param stereoMatrix the stereoMatrix to set
      */
-    public void setStereoMatrix(EBIMatrix stereoMatrix) {
+    public void setStereoMatrix(ScoreMatrix stereoMatrix) {
         this.stereoMatrix = stereoMatrix;
     }
 
     /**
      * @return the energyMatrix
      */
-    public EBIMatrix getEnergyMatrix() {
+    public ScoreMatrix getEnergyMatrix() {
         return energyMatrix;
     }
 
     /**
      * @return the energyMatrix
      */
-    public EBIMatrix getCarbonOverlapMatrix() {
+    public ScoreMatrix getCarbonOverlapMatrix() {
         return carbonOverlapMatrix;
     }
 
     /**
      * @param energyMatrix the energyMatrix to set
      */
-    public void setEnergyMatrix(EBIMatrix energyMatrix) {
+    public void setEnergyMatrix(ScoreMatrix energyMatrix) {
         this.energyMatrix = energyMatrix;
     }
 
@@ -135,6 +135,12 @@ public class ChooseWinner extends Selector implements Serializable {
             boolean maxValueJ;
 
             for (int i = 0; i < rowSize; i++) {
+                /*
+                 * Rows without a positive similarity can't hold a winner
+                 */
+                if (!(similarityMatrix.getRowMax(i) > MIN_VALUE)) {
+                    continue;
+                }
                 for (int j = 0; j < colSize; j++) {
 
                     double similarity = similarityMatrix.getValue(i, j);
@@ -222,14 +228,7 @@ public class ChooseWinner extends Selector implements Serializable {
     }
 
     private synchronized boolean checkStatusFlag() {
-        for (int i = 0; i < rowSize; i++) {
-            for (int j = 0; j < colSize; j++) {
-                if (similarityMatrix.getValue(i, j) > MIN_VALUE) {
-                    return true;
-                }
-            }
-        }
-        return false;
+        return rowSize > 0 && colSize > 0 && similarityMatrix.getMax() > MIN_VALUE;
     }
 
     private synchronized void setWinOverFlags() {
@@ -283,7 +282,7 @@ public class ChooseWinner extends Selector implements Serializable {
     /**
      * @param carbonOverlapMatrix the carbonOverlapMatrix to set
      */
-    public void setCarbonOverlapMatrix(EBIMatrix carbonOverlapMatrix) {
+    public void setCarbonOverlapMatrix(ScoreMatrix carbonOverlapMatrix) {
         this.carbonOverlapMatrix = carbonOverlapMatrix;
     }
 
@@ -84,6 +84,12 @@ public class MaxSelection extends Selector implements IResult {
         boolean maxValueJ;
 
         for (int i = 0; i < rowSize; i++) {
+            /*
+             * Only cells with a clique are considered, skip empty rows
+             */
+            if (!(mHolder.getCliqueMatrix().getRowMax(i) > 0.0)) {
+                continue;
+            }
             IAtomContainer ac1 = this.mHolder.getReactionContainer().getEduct(i);
             for (int j = 0; j < colSize; j++) {
                 IAtomContainer ac2 = this.mHolder.getReactionContainer().getProduct(j);
@@ -23,7 +23,7 @@ import java.io.Serializable;
 import org.openscience.cdk.exception.CDKException;
 import uk.ac.ebi.reactionblast.mapping.algorithm.Holder;
 import uk.ac.ebi.reactionblast.mapping.container.ReactionContainer;
-import uk.ac.ebi.reactionblast.tools.EBIMatrix;
+import uk.ac.ebi.reactionblast.tools.ScoreMatrix;
 
 /**
  * @contact Syed Asad Rahman, EMBL-EBI, Cambridge, UK.
@@ -86,15 +86,10 @@ public abstract class Selector implements Serializable {
 
         double queryColScore = mh.getCliqueMatrix().getValue(IndexI, IndexJ);
         if (queryColScore > 0) {
-            for (int col = 0; col < colSize; col++) {
-                if (flagMatrix[IndexI][col] && col != IndexJ) {
-//                    int pSize = mh.getReactionContainer().getProduct(col).getAtomCount();
-                    double colCSize = mh.getCliqueMatrix().getValue(IndexI, col);
-                    if (queryColScore < colCSize) { //&& colCSize < pSize) {
-                        return false;
-                    }
-                }
-            }
+            /*
+             * No other flagged column of this row may have a larger clique
+             */
+            return !(mh.getCliqueMatrix().getRowMax(IndexI, flagMatrix[IndexI], IndexJ) > queryColScore);
         }
         return true;
     }
@@ -111,15 +106,10 @@ public abstract class Selector implements Serializable {
     protected synchronized boolean isMajorSubgraphRow(Holder mh, int IndexI, int IndexJ) throws IOException, CDKException {
         double queryRowScore = mh.getCliqueMatrix().getValue(IndexI, IndexJ);
         if (queryRowScore > 0) {
-            for (int row = 0; row < rowSize; row++) {
-                if (flagMatrix[row][IndexJ] && row != IndexI) {
-                    int eSize = mh.getReactionContainer().getEduct(row).getAtomCount();
-                    double rowRSize = mh.getCliqueMatrix().getValue(row, IndexJ);
-                    if (queryRowScore < rowRSize) {//&& rowRSize == eSize) {
-                        return false;
-                    }
-                }
-            }
+            /*
+             * No other flagged row of this column may have a larger clique
+             */
+            return !(mh.getCliqueMatrix().getColumnMax(IndexJ, flagMatrix, IndexI) > queryRowScore);
         }
         return true;
     }
@@ -228,7 +218,7 @@ public abstract class Selector implements Serializable {
      * @param IndexJ
      * @return
      */
-    protected synchronized boolean isMinorSubgraphColumn(EBIMatrix similarityMatrix, int IndexI, int IndexJ) {
+    protected synchronized boolean isMinorSubgraphColumn(ScoreMatrix similarityMatrix, int IndexI, int IndexJ) {
         boolean flag = true;
         double queryColScore = similarityMatrix.getValue(IndexI, IndexJ);
         if (queryColScore > 0.) {
@@ -251,7 +241,7 @@ public abstract class Selector implements Serializable {
      * @param IndexJ
      * @return
      */
-    protected synchronized boolean isMinorSubgraphRow(EBIMatrix similarityMatrix, int IndexI, int IndexJ) {
+    protected synchronized boolean isMinorSubgraphRow(ScoreMatrix similarityMatrix, int IndexI, int IndexJ) {
         boolean flag = true;
         double queryRowScore = similarityMatrix.getValue(IndexI, IndexJ);
         if (queryRowScore > 0.) {
@@ -274,18 +264,11 @@ public abstract class Selector implements Serializable {
      * @param IndexJ
      * @return
      */
-    protected synchronized boolean isMajorSubgraphColumn(EBIMatrix similarityMatrix, int IndexI, int IndexJ) {
+    protected synchronized boolean isMajorSubgraphColumn(ScoreMatrix similarityMatrix, int IndexI, int IndexJ) {
 
         double queryColumnscore = similarityMatrix.getValue(IndexI, IndexJ);
         if (queryColumnscore > 0) {
-            for (int col = 0; col < colSize; col++) {
-                if (flagMatrix[IndexI][col] && col != IndexJ) {
-                    double colCSize = similarityMatrix.getValue(IndexI, col);
-                    if (queryColumnscore < colCSize) {
-                        return false;
-                    }
-                }
-            }
+            return !(similarityMatrix.getRowMax(IndexI, flagMatrix[IndexI], IndexJ) > queryColumnscore);
         }
         return true;
     }
@@ -297,17 +280,10 @@ public abstract class Selector implements Serializable {
      * @param IndexJ
      * @return
      */
-    protected synchronized boolean isMajorSubgraphRow(EBIMatrix similarityMatrix, int IndexI, int IndexJ) {
+    protected synchronized boolean isMajorSubgraphRow(ScoreMatrix similarityMatrix, int IndexI, int IndexJ) {
         double queryRowScore = similarityMatrix.getValue(IndexI, IndexJ);
         if (queryRowScore > 0) {
-            for (int row = 0; row < rowSize; row++) {
-                if (flagMatrix[row][IndexJ] && row != IndexI) {
-                    double rowRSize = similarityMatrix.getValue(row, IndexJ);
-                    if (queryRowScore < rowRSize) {
-                        return false;
-                    }
-                }
-            }
+            return !(similarityMatrix.getColumnMax(IndexJ, flagMatrix, IndexI) > queryRowScore);
         }
         return true;
     }
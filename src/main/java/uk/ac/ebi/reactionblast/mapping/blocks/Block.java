@@ -44,6 +44,8 @@ public class Block implements Comparable<Block> {
 
     private String signatureString;
 
+    private int[] labels;
+
     private Point2d centerPoint;
 
     private Rectangle2D bounds;
@@ -188,6 +190,12 @@ public class Block implements Comparable<Block> {
      * @return
      */
     public int[] getLabels() {
+        if (BlockSignatures.isBounded()) {
+            if (labels == null) {
+                canonicalise();
+            }
+            return labels;
+        }
         return getSubgraphSignature().getCanonicalLabels();
     }
 
@@ -209,11 +217,25 @@ public class Block implements Comparable<Block> {
      */
     public String getSignatureString() {
         if (signatureString == null) {
-            signatureString = getSubgraphSignature().toCanonicalString();
+            if (BlockSignatures.isBounded()) {
+                canonicalise();
+            } else {
+                signatureString = getSubgraphSignature().toCanonicalString();
+            }
         }
         return signatureString;
     }
 
+    /*
+     * labels and signature with a cost cap, see BlockSignatures
+     */
+    private void canonicalise() {
+        BlockSignatures.BlockSignature signature
+                = BlockSignatures.canonicalise(atomContainer, getAtoms());
+        labels = signature.getLabels();
+        signatureString = signature.getSignature();
+    }
+
     /**
      *
      * @return
@@ -90,10 +90,8 @@ public class BlockList implements Comparable<BlockList> {
         for (int blockIndex = 0; blockIndex < blocks.size(); blockIndex++) {
             int permutedBlockIndex = blockPermutation[blockIndex];
             Block block = blocks.get(permutedBlockIndex);
-            SubgraphMoleculeSignature subgraphSignature
-                    = block.getSubgraphSignature();
-//            System.out.println("sig = " + subgraphSignature.toCanonicalString());
-            int[] labels = subgraphSignature.getCanonicalLabels();
+//            System.out.println("sig = " + block.getSignatureString());
+            int[] labels = block.getLabels();
             for (int labelIndex = 0; labelIndex < labels.length; labelIndex++) {
                 int x = blockStart + labels[labelIndex];
 //                System.out.println("blockIndex = " + blockIndex
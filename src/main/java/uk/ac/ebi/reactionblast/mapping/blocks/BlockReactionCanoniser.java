@@ -37,6 +37,9 @@ import uk.ac.ebi.reactionblast.tools.labelling.AtomContainerPrinter;
 import uk.ac.ebi.reactionblast.tools.labelling.ICanonicalReactionLabeller;
 
 /**
+ * Canonical atom order of a mapped reaction by the blocks of mapped atoms.
+ * With {@link BlockSignatures#BOUNDED_PROPERTY} set, the block labels are
+ * computed with a cost cap and cached.
  *
  * @author asad
  */
@@ -0,0 +1,565 @@
+/*
+ * Copyright (C) 2007-2020 Syed Asad Rahman <asad @ ebi.ac.uk>.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package uk.ac.ebi.reactionblast.mapping.blocks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IBond;
+import org.openscience.cdk.tools.ILoggingTool;
+import static org.openscience.cdk.tools.LoggingToolFactory.createLoggingTool;
+
+/**
+ * Bounded cost canonical labelling of blocks.
+ * <p>
+ * The atoms of a block are first split into classes by refinement of their
+ * neighbourhoods (element and charge, then the sorted bond labels and classes
+ * of the neighbours until the classes are stable). Atoms left in the same
+ * class are, for molecules, nearly always symmetry equivalent and the
+ * signature search walks through all their orderings, so the product of the
+ * factorials of the class sizes is taken as the cost of the block. Blocks
+ * within the cap get the exact {@link SubgraphMoleculeSignature} labels;
+ * above it, the first class with more than one atom is split on its lowest
+ * atom index and refined again until every atom has a class of its own, which
+ * gives the labels without any permutation search. These labels are
+ * deterministic for a given atom order but not canonical: when the atoms left
+ * in a class are not symmetry equivalent, another order of the same block may
+ * be labelled differently.
+ * <p>
+ * The results are cached under an invariant of the block which doesn't depend
+ * on the atom order (the refined class and symbol of each atom and the edges
+ * between the classes), so the same block in another reaction or another
+ * order is not labelled again. Both blocks are split down to one atom per
+ * class as for the fallback, a cached block lends its labels through these
+ * classes and they are kept only if they relabel the new block onto the
+ * stored form (symbols and edges in label order); a block which fails the
+ * check is labelled and cached next to the others with the same invariant.
+ * Once a block over the cap is cached, the other atom orders of it which pass
+ * the check therefore share its form.
+ * <p>
+ * The mode is enabled by the system property {@value #BOUNDED_PROPERTY}, the
+ * cap is read from {@value #COST_CAP_PROPERTY}.
+ *
+ * @contact Syed Asad Rahman, EMBL-EBI, Cambridge, UK.
+ * @author Syed Asad Rahman <asad @ ebi.ac.uk>
+ */
+public class BlockSignatures {
+
+    private final static boolean DEBUG = false;
+    private final static ILoggingTool LOGGER
+            = createLoggingTool(BlockSignatures.class);
+
+    /**
+     * System property enabling the bounded cost labelling (true/false)
+     */
+    public static final String BOUNDED_PROPERTY = "reactionblast.blocks.bounded";
+
+    /**
+     * System property with the largest number of equivalent orderings
+     * searched exactly
+     */
+    public static final String COST_CAP_PROPERTY = "reactionblast.blocks.costcap";
+
+    /**
+     * Default cost cap, the orderings of seven equivalent atoms
+     */
+    public static final long DEFAULT_COST_CAP = 5040L;
+
+    private static final int CACHE_SIZE = 4096;
+
+    private static final Map<String, List<Entry>> CACHE
+            = new LinkedHashMap<String, List<Entry>>(256, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, List<Entry>> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    /*
+     * A labelled block: its labels by individualised class and its
+     * relabelled form
+     */
+    private static class Entry {
+
+        final int[] labels;
+        final String form;
+        final String signature;
+
+        Entry(int[] discrete, int[] labels, String form, String signature) {
+            this.labels = new int[labels.length];
+            for (int i = 0; i < discrete.length; i++) {
+                this.labels[discrete[i]] = labels[i];
+            }
+            this.form = form;
+            this.signature = signature;
+        }
+
+        /*
+         * Gives each atom of a block with the same invariant the label of the
+         * stored atom with the same individualised class, null unless that
+         * relabels the block onto the stored form
+         */
+        int[] match(int[] discrete, String[] symbols, List<int[]> edges) {
+            int[] candidate = new int[labels.length];
+            for (int i = 0; i < discrete.length; i++) {
+                candidate[i] = labels[discrete[i]];
+            }
+            return form(candidate, symbols, edges).equals(form) ? candidate : null;
+        }
+    }
+
+    private static long hits;
+    private static long misses;
+    private static long fallbacks;
+
+    private BlockSignatures() {
+    }
+
+    /**
+     *
+     * @return true if blocks are labelled with a cost cap
+     */
+    public static boolean isBounded() {
+        return Boolean.getBoolean(BOUNDED_PROPERTY);
+    }
+
+    /**
+     *
+     * @return cost cap set by {@value #COST_CAP_PROPERTY} or the default
+     */
+    public static long getCostCap() {
+        String value = System.getProperty(COST_CAP_PROPERTY);
+        if (value == null || value.trim().isEmpty()) {
+            return DEFAULT_COST_CAP;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            LOGGER.warn("Ignoring block cost cap " + value);
+            return DEFAULT_COST_CAP;
+        }
+    }
+
+    /**
+     * Canonical labels and signature of the block atoms.
+     *
+     * @param atomContainer container of the block
+     * @param blockAtoms atoms of the block
+     * @return labels (in the container order of the block atoms) and signature
+     */
+    public static BlockSignature canonicalise(IAtomContainer atomContainer, List<IAtom> blockAtoms) {
+        List<IAtom> atoms = new ArrayList<>(blockAtoms);
+        atoms.sort(Comparator.comparingInt(atomContainer::indexOf));
+        int n = atoms.size();
+        Map<IAtom, Integer> local = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            local.put(atoms.get(i), i);
+        }
+        String[] symbols = new String[n];
+        for (int i = 0; i < n; i++) {
+            symbols[i] = vertexSymbol(atoms.get(i));
+        }
+        List<int[]> edges = new ArrayList<>();
+        for (IBond bond : atomContainer.bonds()) {
+            Integer a = local.get(bond.getBegin());
+            Integer b = local.get(bond.getEnd());
+            if (a != null && b != null) {
+                edges.add(new int[]{Math.min(a, b), Math.max(a, b), edgeColor(bond)});
+            }
+        }
+        int[][] adjacent = new int[n][];
+        int[][] colors = new int[n][];
+        int[] degree = new int[n];
+        for (int[] e : edges) {
+            degree[e[0]]++;
+            degree[e[1]]++;
+        }
+        for (int i = 0; i < n; i++) {
+            adjacent[i] = new int[degree[i]];
+            colors[i] = new int[degree[i]];
+            degree[i] = 0;
+        }
+        for (int[] e : edges) {
+            adjacent[e[0]][degree[e[0]]] = e[1];
+            colors[e[0]][degree[e[0]]++] = e[2];
+            adjacent[e[1]][degree[e[1]]] = e[0];
+            colors[e[1]][degree[e[1]]++] = e[2];
+        }
+
+        String[] sorted = symbols.clone();
+        Arrays.sort(sorted);
+        int[] classes = new int[n];
+        for (int i = 0; i < n; i++) {
+            classes[i] = Arrays.binarySearch(sorted, symbols[i]);
+            while (classes[i] > 0 && sorted[classes[i] - 1].equals(symbols[i])) {
+                classes[i]--;
+            }
+        }
+        refine(classes, adjacent, colors);
+        String key = invariant(classes, symbols, edges);
+        int[] discrete = individualise(classes.clone(), adjacent, colors);
+
+        List<Entry> candidates;
+        synchronized (CACHE) {
+            List<Entry> entries = CACHE.get(key);
+            candidates = entries == null ? null : new ArrayList<>(entries);
+        }
+        if (candidates != null) {
+            for (Entry entry : candidates) {
+                int[] labels = entry.match(discrete, symbols, edges);
+                if (labels != null) {
+                    synchronized (CACHE) {
+                        hits++;
+                    }
+                    return new BlockSignature(labels, entry.signature);
+                }
+            }
+        }
+        synchronized (CACHE) {
+            misses++;
+        }
+
+        BlockSignature signature = label(atomContainer, atoms, symbols, edges,
+                classes, discrete);
+        Entry entry = new Entry(discrete, signature.labels,
+                form(signature.labels, symbols, edges), signature.signature);
+        synchronized (CACHE) {
+            CACHE.computeIfAbsent(key, k -> new ArrayList<>(1)).add(entry);
+        }
+        return signature;
+    }
+
+    private static BlockSignature label(IAtomContainer atomContainer, List<IAtom> atoms,
+            String[] symbols, List<int[]> edges, int[] classes, int[] discrete) {
+        int n = atoms.size();
+        long cap = getCostCap();
+        if (cost(classes, cap) <= cap) {
+            SubgraphMoleculeSignature exact
+                    = new SubgraphMoleculeSignature(atomContainer, atoms, -1);
+            return new BlockSignature(exact.getCanonicalLabels(), exact.toCanonicalString());
+        }
+
+        synchronized (CACHE) {
+            fallbacks++;
+        }
+        if (DEBUG) {
+            System.out.println("Block of " + n + " atoms over the cost cap " + cap);
+        }
+        return new BlockSignature(discrete, form(discrete, symbols, edges));
+    }
+
+    /*
+     * Splits the first class with more than one atom on its lowest index and
+     * refines again until every atom has a class of its own. The atoms left
+     * in a class have the same refined invariant, so the result is
+     * deterministic for an atom order but not canonical unless the atoms of
+     * the class are symmetry equivalent.
+     */
+    private static int[] individualise(int[] classes, int[][] adjacent, int[][] colors) {
+        int n = classes.length;
+        int cell;
+        while ((cell = firstNonTrivialCell(classes)) >= 0) {
+            int individual = -1;
+            for (int i = 0; i < n; i++) {
+                if (classes[i] == cell) {
+                    if (individual < 0) {
+                        individual = i;
+                    } else {
+                        classes[i] = cell + 1;
+                    }
+                }
+            }
+            refine(classes, adjacent, colors);
+        }
+        return classes;
+    }
+
+    /*
+     * The block relabelled: symbols in label order and the sorted edges
+     */
+    private static String form(int[] labels, String[] symbols, List<int[]> edges) {
+        int n = symbols.length;
+        String[] canonicalSymbols = new String[n];
+        for (int i = 0; i < n; i++) {
+            canonicalSymbols[labels[i]] = symbols[i];
+        }
+        List<int[]> canonicalEdges = new ArrayList<>(edges.size());
+        for (int[] e : edges) {
+            int a = labels[e[0]];
+            int b = labels[e[1]];
+            canonicalEdges.add(new int[]{Math.min(a, b), Math.max(a, b), e[2]});
+        }
+        canonicalEdges.sort((e1, e2) -> e1[0] != e2[0] ? Integer.compare(e1[0], e2[0])
+                : Integer.compare(e1[1], e2[1]));
+        StringBuilder sb = new StringBuilder();
+        for (String symbol : canonicalSymbols) {
+            sb.append(symbol).append(',');
+        }
+        sb.append('|');
+        for (int[] e : canonicalEdges) {
+            sb.append(e[0]).append('-').append(e[1]).append(':').append(e[2]).append(',');
+        }
+        return sb.toString();
+    }
+
+    /*
+     * Independent of the atom order: the refined class and symbol of each
+     * atom and the edges between classes, both sorted
+     */
+    private static String invariant(int[] classes, String[] symbols, List<int[]> edges) {
+        String[] atoms = new String[classes.length];
+        for (int i = 0; i < atoms.length; i++) {
+            atoms[i] = classes[i] + symbols[i];
+        }
+        Arrays.sort(atoms);
+        StringBuilder key = new StringBuilder();
+        for (String atom : atoms) {
+            key.append(atom).append(',');
+        }
+        key.append('|');
+        List<int[]> classEdges = new ArrayList<>(edges.size());
+        for (int[] e : edges) {
+            int a = classes[e[0]];
+            int b = classes[e[1]];
+            classEdges.add(new int[]{Math.min(a, b), Math.max(a, b), e[2]});
+        }
+        classEdges.sort((e1, e2) -> e1[0] != e2[0] ? Integer.compare(e1[0], e2[0])
+                : e1[1] != e2[1] ? Integer.compare(e1[1], e2[1]) : Integer.compare(e1[2], e2[2]));
+        for (int[] e : classEdges) {
+            key.append(e[0]).append('-').append(e[1]).append(':').append(e[2]).append(',');
+        }
+        return key.toString();
+    }
+
+    /*
+     * Splits the classes by the sorted (bond color, class) pairs of the
+     * neighbours until they are stable. A class is numbered by the count of
+     * atoms in lower classes, so the classes keep their relative order.
+     */
+    private static void refine(int[] classes, int[][] adjacent, int[][] colors) {
+        int n = classes.length;
+        Integer[] order = new Integer[n];
+        long[][] keys = new long[n][];
+        int count = countClasses(classes);
+        while (true) {
+            for (int i = 0; i < n; i++) {
+                order[i] = i;
+                long[] key = new long[adjacent[i].length];
+                for (int j = 0; j < key.length; j++) {
+                    key[j] = ((long) classes[adjacent[i][j]] << 4) | colors[i][j];
+                }
+                Arrays.sort(key);
+                keys[i] = key;
+            }
+            Comparator<Integer> byKey = (a, b) -> {
+                if (classes[a] != classes[b]) {
+                    return Integer.compare(classes[a], classes[b]);
+                }
+                return compare(keys[a], keys[b]);
+            };
+            Arrays.sort(order, byKey);
+            int[] refined = new int[n];
+            for (int i = 0; i < n; i++) {
+                refined[order[i]] = i > 0 && byKey.compare(order[i - 1], order[i]) == 0
+                        ? refined[order[i - 1]] : i;
+            }
+            System.arraycopy(refined, 0, classes, 0, n);
+            int refinedCount = countClasses(classes);
+            if (refinedCount == count) {
+                return;
+            }
+            count = refinedCount;
+        }
+    }
+
+    private static int compare(long[] a, long[] b) {
+        for (int i = 0; i < Math.min(a.length, b.length); i++) {
+            if (a[i] != b[i]) {
+                return Long.compare(a[i], b[i]);
+            }
+        }
+        return Integer.compare(a.length, b.length);
+    }
+
+    private static int countClasses(int[] classes) {
+        boolean[] seen = new boolean[classes.length];
+        int count = 0;
+        for (int c : classes) {
+            if (!seen[c]) {
+                seen[c] = true;
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static int firstNonTrivialCell(int[] classes) {
+        int[] size = new int[classes.length];
+        for (int c : classes) {
+            size[c]++;
+        }
+        for (int c = 0; c < size.length; c++) {
+            if (size[c] > 1) {
+                return c;
+            }
+        }
+        return -1;
+    }
+
+    /*
+     * product of the factorials of the class sizes, saturated above the cap
+     */
+    private static long cost(int[] classes, long cap) {
+        int[] size = new int[classes.length];
+        for (int c : classes) {
+            size[c]++;
+        }
+        long cost = 1;
+        for (int s : size) {
+            for (int k = 2; k <= s; k++) {
+                cost *= k;
+                if (cost > cap) {
+                    return cap + 1;
+                }
+            }
+        }
+        return cost;
+    }
+
+    /**
+     * Symbol of an atom as used by {@link SubgraphAtomSignature}.
+     *
+     * @param atom
+     * @return element symbol and charge
+     */
+    static String vertexSymbol(IAtom atom) {
+        Integer charge = atom.getFormalCharge();
+        if (charge == null || charge == 0) {
+            return atom.getSymbol();
+        }
+        return atom.getSymbol() + charge;
+    }
+
+    /**
+     * Color of a bond as used by {@link SubgraphAtomSignature}.
+     *
+     * @param bond
+     * @return color of the edge label
+     */
+    static int edgeColor(IBond bond) {
+        if (bond.isAromatic()) {
+            return 5;
+        } else if (bond.isInRing()) {
+            return 6;
+        }
+        if (bond.getOrder() == null) {
+            return 1;
+        }
+        switch (bond.getOrder()) {
+            case DOUBLE:
+                return 2;
+            case TRIPLE:
+                return 3;
+            case QUADRUPLE:
+                return 4;
+            default:
+                return 1;
+        }
+    }
+
+    /**
+     *
+     * @return number of blocks found in the cache
+     */
+    public static long getHits() {
+        synchronized (CACHE) {
+            return hits;
+        }
+    }
+
+    /**
+     *
+     * @return number of blocks labelled
+     */
+    public static long getMisses() {
+        synchronized (CACHE) {
+            return misses;
+        }
+    }
+
+    /**
+     *
+     * @return number of blocks labelled without the exact search
+     */
+    public static long getFallbacks() {
+        synchronized (CACHE) {
+            return fallbacks;
+        }
+    }
+
+    /**
+     * Empties the cache.
+     */
+    public static void clear() {
+        synchronized (CACHE) {
+            CACHE.clear();
+            hits = 0;
+            misses = 0;
+            fallbacks = 0;
+        }
+    }
+
+    /**
+     * Canonical labels and signature string of a block.
+     */
+    public static class BlockSignature {
+
+        private final int[] labels;
+        private final String signature;
+
+        BlockSignature(int[] labels, String signature) {
+            this.labels = labels;
+            this.signature = signature;
+        }
+
+        /**
+         *
+         * @return canonical position of each block atom, in container order
+         */
+        public int[] getLabels() {
+            return labels.clone();
+        }
+
+        /**
+         *
+         * @return canonical signature string
+         */
+        public String getSignature() {
+            return signature;
+        }
+    }
+}
@@ -0,0 +1,426 @@
+/*
+ * Copyright (C) 2007-2020 Syed Asad Rahman <asad @ ebi.ac.uk>.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package uk.ac.ebi.reactionblast.mapping.cache;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import static java.util.logging.Level.SEVERE;
+import static org.openscience.cdk.CDKConstants.ATOM_ATOM_MAPPING;
+import static org.openscience.cdk.CDKConstants.MAPPED;
+import org.openscience.cdk.aromaticity.Aromaticity;
+import static org.openscience.cdk.aromaticity.ElectronDonation.daylight;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.graph.Cycles;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IAtomContainerSet;
+import org.openscience.cdk.interfaces.IMapping;
+import org.openscience.cdk.interfaces.IReaction;
+import org.openscience.cdk.smiles.SmiFlavor;
+import org.openscience.cdk.smiles.SmilesGenerator;
+import org.openscience.cdk.tools.ILoggingTool;
+import static org.openscience.cdk.tools.LoggingToolFactory.createLoggingTool;
+import static org.openscience.cdk.tools.manipulator.AtomContainerManipulator.suppressHydrogens;
+import org.openscience.smsd.tools.ExtAtomContainerManipulator;
+
+/**
+ * Persistent cache of the selected atom-atom mapping of a reaction, keyed by
+ * a canonical form which ignores the order of the components, the order of
+ * the atoms and any input atom-atom mapping.
+ * <p>
+ * Each molecule is reduced to its heavy atoms (hydrogens folded into the
+ * implicit counts) with Daylight aromaticity and labelled by its unique
+ * isomeric SMILES (stereo and isotopes, as the stereo changes of a mapping
+ * differ between stereoisomers), as in the {@link uk.ac.ebi.reactionblast.tools.labelling}
+ * canonisers. The components of each side are sorted by SMILES, the canonical
+ * index of an atom is its rank in its molecule plus the heavy atoms of the
+ * molecules before it. A mapping is stored as the canonical index pairs of
+ * the mapped heavy atoms and re-projected onto the atoms of a repeated
+ * reaction. A reaction whose mapped copy no longer has the isomeric form of
+ * the input is not stored.
+ * <p>
+ * The cache is an append-only file, one reaction per line
+ * <pre>
+ * format;options;key  reactant:product,reactant:product,...
+ * </pre> named by the system property {@value #CACHE_PROPERTY}; there is no
+ * cache if unset. The format version and the mapping options (complex
+ * mapping, accept no change) are part of the key, so a mapping is only reused
+ * with the settings it was computed with and the lines of another format are
+ * ignored. Reactions with stoichiometric coefficients other than one or
+ * explicit hydrogens in the input are not cached.
+ * <p>
+ * Only the selected mapping is stored, a repeated reaction is annotated as a
+ * user defined mapping of it: the bond changes are those of the mapped
+ * reaction, the algorithm reported is {@code USER_DEFINED} and the other
+ * models are not reported.
+ *
+ * @contact Syed Asad Rahman, EMBL-EBI, Cambridge, UK.
+ * @author Syed Asad Rahman <asad @ ebi.ac.uk>
+ */
+public class ReactionResultCache {
+
+    private final static ILoggingTool LOGGER
+            = createLoggingTool(ReactionResultCache.class);
+
+    /**
+     * System property naming the cache file
+     */
+    public static final String CACHE_PROPERTY = "reactionblast.result.cache";
+    /*
+     * version of the key and of the mapping pairs
+     */
+    private static final String FORMAT = "2";
+    private static volatile ReactionResultCache instance;
+    private static volatile boolean configured = false;
+
+    private final File file;
+    private final Map<String, int[][]> mappings;
+    private long hits;
+    private long misses;
+
+    /**
+     * Opens (or creates) a cache file.
+     *
+     * @param file
+     * @throws IOException
+     */
+    public ReactionResultCache(File file) throws IOException {
+        this.file = file;
+        this.mappings = new HashMap<>();
+        if (file.exists()) {
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(new FileInputStream(file), UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] f = line.split("\t");
+                    if (f.length != 2 || !f[0].startsWith(FORMAT + ";")) {
+                        continue;
+                    }
+                    try {
+                        mappings.put(f[0], decode(f[1]));
+                    } catch (NumberFormatException e) {
+                        LOGGER.debug("Skipping cache line " + line);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The cache named by {@value #CACHE_PROPERTY}.
+     *
+     * @return cache, null if none is configured
+     */
+    public static ReactionResultCache getInstance() {
+        if (!configured) {
+            synchronized (ReactionResultCache.class) {
+                if (!configured) {
+                    String path = System.getProperty(CACHE_PROPERTY);
+                    if (path != null && !path.isEmpty()) {
+                        try {
+                            instance = new ReactionResultCache(new File(path));
+                        } catch (IOException e) {
+                            LOGGER.error(SEVERE, "Unable to read reaction cache " + path, e.getMessage());
+                        }
+                    }
+                    configured = true;
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Replaces the cache used by the annotator.
+     *
+     * @param cache null to disable
+     */
+    public static synchronized void setInstance(ReactionResultCache cache) {
+        instance = cache;
+        configured = true;
+    }
+
+    /**
+     * Sets the cached mapping (if any) on the reaction: the atom-atom
+     * mapping numbers and the mapping objects, replacing the ones of the
+     * input.
+     *
+     * @param reaction
+     * @param complex complex mapping (ring systems)
+     * @param acceptNoChange accept reactions without bond changes
+     * @return true if the reaction was found and mapped
+     */
+    public boolean project(IReaction reaction, boolean complex, boolean acceptNoChange) {
+        Frame frame = Frame.of(reaction);
+        if (frame == null || !frame.complete) {
+            return false;
+        }
+        int[][] pairs;
+        synchronized (this) {
+            pairs = mappings.get(key(frame, complex, acceptNoChange));
+            if (pairs == null) {
+                misses++;
+                return false;
+            }
+            hits++;
+        }
+        while (reaction.getMappingCount() > 0) {
+            reaction.removeMapping(0);
+        }
+        for (IAtom atom : frame.reactantAtoms) {
+            atom.removeProperty(ATOM_ATOM_MAPPING);
+        }
+        for (IAtom atom : frame.productAtoms) {
+            atom.removeProperty(ATOM_ATOM_MAPPING);
+        }
+        int label = 1;
+        for (int[] pair : pairs) {
+            IAtom r = frame.reactantAtoms.get(pair[0]);
+            IAtom p = frame.productAtoms.get(pair[1]);
+            r.setProperty(ATOM_ATOM_MAPPING, label);
+            p.setProperty(ATOM_ATOM_MAPPING, label);
+            reaction.addMapping(reaction.getBuilder().newInstance(IMapping.class, r, p));
+            label++;
+        }
+        reaction.setFlag(MAPPED, true);
+        return true;
+    }
+
+    /**
+     * Stores the mapping of a reaction under the key of the input reaction.
+     * Only mappings of every reactant heavy atom are stored.
+     *
+     * @param input reaction as read
+     * @param mapped the same reaction with the selected mapping
+     * @param complex complex mapping (ring systems)
+     * @param acceptNoChange accept reactions without bond changes
+     * @return true if stored
+     */
+    public boolean store(IReaction input, IReaction mapped, boolean complex, boolean acceptNoChange) {
+        Frame in = Frame.of(input);
+        Frame out = Frame.of(mapped);
+        if (in == null || !in.complete || out == null || !in.key.equals(out.key)) {
+            return false;
+        }
+        String key = key(in, complex, acceptNoChange);
+        List<int[]> pairs = new ArrayList<>();
+        boolean[] seen = new boolean[out.reactantAtoms.size()];
+        for (IMapping m : mapped.mappings()) {
+            Integer r = out.reactantIndex.get((IAtom) m.getChemObject(0));
+            Integer p = out.productIndex.get((IAtom) m.getChemObject(1));
+            if (r != null && p != null && !seen[r]) {
+                seen[r] = true;
+                pairs.add(new int[]{r, p});
+            }
+        }
+        if (pairs.size() != seen.length) {
+            return false;
+        }
+        int[][] value = pairs.toArray(new int[0][]);
+        synchronized (this) {
+            if (mappings.containsKey(key)) {
+                return false;
+            }
+            try (BufferedWriter writer = new BufferedWriter(
+                    new OutputStreamWriter(new FileOutputStream(file, true), UTF_8))) {
+                writer.write(key + "\t" + encode(value) + "\n");
+            } catch (IOException e) {
+                LOGGER.error(SEVERE, "Unable to write reaction cache " + file, e.getMessage());
+                return false;
+            }
+            mappings.put(key, value);
+        }
+        return true;
+    }
+
+    /**
+     * @return cached reactions
+     */
+    public synchronized int size() {
+        return mappings.size();
+    }
+
+    /**
+     * @return reactions mapped from the cache
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return cacheable reactions not in the cache
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ReactionResultCache{" + file + ", size=" + mappings.size()
+                + ", hits=" + hits + ", misses=" + misses + "}";
+    }
+
+    private static String key(Frame frame, boolean complex, boolean acceptNoChange) {
+        return FORMAT + ";" + (complex ? "c" : "-") + (acceptNoChange ? "a" : "-") + ";" + frame.key;
+    }
+
+    private static String encode(int[][] pairs) {
+        StringBuilder sb = new StringBuilder();
+        for (int[] pair : pairs) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(pair[0]).append(':').append(pair[1]);
+        }
+        return sb.toString();
+    }
+
+    private static int[][] decode(String value) {
+        if (value.isEmpty()) {
+            return new int[0][];
+        }
+        String[] tokens = value.split(",");
+        int[][] pairs = new int[tokens.length][2];
+        for (int i = 0; i < tokens.length; i++) {
+            int colon = tokens[i].indexOf(':');
+            pairs[i][0] = Integer.parseInt(tokens[i].substring(0, colon));
+            pairs[i][1] = Integer.parseInt(tokens[i].substring(colon + 1));
+        }
+        return pairs;
+    }
+
+    /*
+     * Canonical key and atom order of a reaction
+     */
+    private static class Frame {
+
+        final String key;
+        final List<IAtom> reactantAtoms = new ArrayList<>();
+        final List<IAtom> productAtoms = new ArrayList<>();
+        final Map<IAtom, Integer> reactantIndex = new IdentityHashMap<>();
+        final Map<IAtom, Integer> productIndex = new IdentityHashMap<>();
+        /*
+         * every atom of the reaction has a canonical index
+         */
+        final boolean complete;
+
+        private Frame(String key, List<Component> reactants, List<Component> products, boolean complete) {
+            this.key = key;
+            this.complete = complete;
+            for (Component c : reactants) {
+                for (IAtom a : c.atoms) {
+                    reactantIndex.put(a, reactantAtoms.size());
+                    reactantAtoms.add(a);
+                }
+            }
+            for (Component c : products) {
+                for (IAtom a : c.atoms) {
+                    productIndex.put(a, productAtoms.size());
+                    productAtoms.add(a);
+                }
+            }
+        }
+
+        static Frame of(IReaction reaction) {
+            try {
+                List<Component> reactants = components(reaction, reaction.getReactants(), true);
+                List<Component> products = components(reaction, reaction.getProducts(), false);
+                if (reactants == null || products == null) {
+                    return null;
+                }
+                StringBuilder key = new StringBuilder();
+                boolean complete = true;
+                for (Component c : reactants) {
+                    key.append(key.length() == 0 ? "" : ".").append(c.smiles);
+                    complete &= c.complete;
+                }
+                key.append(">>");
+                int start = key.length();
+                for (Component c : products) {
+                    key.append(key.length() == start ? "" : ".").append(c.smiles);
+                    complete &= c.complete;
+                }
+                return new Frame(key.toString(), reactants, products, complete);
+            } catch (CDKException | CloneNotSupportedException e) {
+                LOGGER.debug("No canonical form of " + reaction.getID() + " " + e.getMessage());
+                return null;
+            }
+        }
+
+        private static List<Component> components(IReaction reaction, IAtomContainerSet set,
+                boolean reactants) throws CDKException, CloneNotSupportedException {
+            List<Component> components = new ArrayList<>();
+            for (IAtomContainer ac : set.atomContainers()) {
+                Double coefficient = reactants ? reaction.getReactantCoefficient(ac)
+                        : reaction.getProductCoefficient(ac);
+                if (coefficient != null && coefficient != 1.0) {
+                    return null;
+                }
+                components.add(new Component(ac));
+            }
+            components.sort((a, b) -> a.smiles.compareTo(b.smiles));
+            return components;
+        }
+    }
+
+    /*
+     * Heavy atoms of a molecule in canonical order
+     */
+    private static class Component {
+
+        final String smiles;
+        final IAtom[] atoms;
+        final boolean complete;
+
+        Component(IAtomContainer ac) throws CDKException, CloneNotSupportedException {
+            IAtomContainer clone = ac.clone();
+            Map<IAtom, IAtom> original = new IdentityHashMap<>();
+            for (int i = 0; i < ac.getAtomCount(); i++) {
+                original.put(clone.getAtom(i), ac.getAtom(i));
+            }
+            ExtAtomContainerManipulator.setNullHCountToZero(clone);
+            IAtomContainer heavy = suppressHydrogens(clone);
+            new Aromaticity(daylight(), Cycles.or(Cycles.all(), Cycles.relevant())).apply(heavy);
+            int[] order = new int[heavy.getAtomCount()];
+            this.smiles = new SmilesGenerator(SmiFlavor.Unique | SmiFlavor.Isomeric | SmiFlavor.UseAromaticSymbols)
+                    .create(heavy, order);
+            this.atoms = new IAtom[order.length];
+            for (int i = 0; i < order.length; i++) {
+                IAtom atom = original.get(heavy.getAtom(i));
+                if (atom == null) {
+                    throw new CDKException("Atom not in the input molecule");
+                }
+                atoms[order[i]] = atom;
+            }
+            this.complete = atoms.length == ac.getAtomCount();
+        }
+    }
+}
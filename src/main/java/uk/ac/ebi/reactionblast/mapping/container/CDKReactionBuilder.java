@@ -55,7 +55,6 @@ import org.openscience.smsd.algorithm.matchers.AtomMatcher;
 import org.openscience.smsd.algorithm.matchers.BondMatcher;
 import uk.ac.ebi.reactionblast.fingerprints.FingerprintGenerator;
 import uk.ac.ebi.reactionblast.fingerprints.interfaces.IFingerprintGenerator;
-import static uk.ac.ebi.reactionblast.fingerprints.tools.Similarity.getTanimotoSimilarity;
 import uk.ac.ebi.reactionblast.tools.AtomContainerSetComparator;
 import uk.ac.ebi.reactionblast.tools.BasicDebugger;
 import static org.openscience.smsd.tools.ExtAtomContainerManipulator.aromatizeMolecule;
@@ -63,6 +62,8 @@ import static org.openscience.smsd.tools.ExtAtomContainerManipulator.cloneWithID
 import static org.openscience.smsd.tools.ExtAtomContainerManipulator.fixDativeBonds;
 import static org.openscience.smsd.tools.ExtAtomContainerManipulator.percieveAtomTypesAndConfigureAtoms;
 import static org.openscience.smsd.tools.ExtAtomContainerManipulator.removeHydrogens;
+import static org.openscience.smsd.tools.ExtAtomContainerManipulator.removeHydrogensExceptSingleAndPreserveAtomID;
+import uk.ac.ebi.reactionblast.tools.labelling.CanonicalForm;
 
 /**
  * @contact Syed Asad Rahman, EMBL-EBI, Cambridge, UK.
@@ -79,6 +80,11 @@ public class CDKReactionBuilder extends BasicDebugger implements Serializable {
     private final Map<String, Double> stoichiometryMap;
     private final Map<String, BitSet> fingerprintMap;
     private final Map<String, IAtomContainer> moleculeMap;
+    /*
+     * Molecule registry: canonical key -> ID and fingerprint -> IDs
+     */
+    private final Map<String, String> canonicalKeyMap;
+    private final Map<BitSet, List<String>> fingerprintIndex;
 
     /**
      *
@@ -89,6 +95,8 @@ public class CDKReactionBuilder extends BasicDebugger implements Serializable {
         stoichiometryMap = synchronizedMap(new HashMap<>());
         fingerprintMap = synchronizedMap(new HashMap<>());
         moleculeMap = synchronizedMap(new HashMap<>());
+        canonicalKeyMap = synchronizedMap(new HashMap<>());
+        fingerprintIndex = synchronizedMap(new HashMap<>());
     }
 
     @Override
@@ -312,6 +320,8 @@ public class CDKReactionBuilder extends BasicDebugger implements Serializable {
         }
         fingerprintMap.clear();
         moleculeMap.clear();
+        canonicalKeyMap.clear();
+        fingerprintIndex.clear();
         stoichiometryMap.clear();
 
         if (DEBUG) {
@@ -353,20 +363,11 @@ public class CDKReactionBuilder extends BasicDebugger implements Serializable {
                     }
                     //Loop for Unique Mol ID Creation
                     if (!fingerprint_Present_Mol.isEmpty()) {
-                        if (!isValuePresent(fingerprint_Present_Mol)) {
+                        String canonicalKey = getCanonicalKey(molecule);
+                        String presentID = getRegisteredMoleculeID(canonicalKey, fingerprint_Present_Mol, molecule);
+                        if (presentID != null) {
                             if (molID == null) {
-                                moleculeCounter += 1;
-                                int val = moleculeCounter + 100000;
-                                String Temp = Integer.toString(val);
-                                molID = Temp.replaceFirst("1", "M");
-                                molecule.setID(molID);
-                            }
-                            fingerprintMap.put(molID, fingerprint_Present_Mol);
-                            moleculeMap.put(molID, molecule);
-                        } else if (isValuePresent(fingerprint_Present_Mol)
-                                && isAtomContainerPresent(getMoleculeID(fingerprint_Present_Mol), molecule)) {
-                            if (molID == null) {
-                                molID = getMoleculeID(fingerprint_Present_Mol);
+                                molID = presentID;
                                 molecule.setID(molID);
                             }
                         } else {
@@ -377,8 +378,7 @@ public class CDKReactionBuilder extends BasicDebugger implements Serializable {
                                 molID = Temp.replaceFirst("1", "M");
                                 molecule.setID(molID);
                             }
-                            fingerprintMap.put(molID, fingerprint_Present_Mol);
-                            moleculeMap.put(molID, molecule);
+                            register(molID, canonicalKey, fingerprint_Present_Mol, molecule);
                         }
                     } else {
                         LOGGER.debug("error: Fingerprint can't be generated for this molecule " + SmilesGenerator.generic().create(molecule));
@@ -453,41 +453,54 @@ public class CDKReactionBuilder extends BasicDebugger implements Serializable {
     }
 
     /**
+     * Canonical key (unique isomeric SMILES) of the hydrogen suppressed
+     * molecule, null if it can't be generated.
      *
-     * @param value
-     * @throws java.io.IOException
+     * @param molecule
      * @return
      */
-    private boolean isValuePresent(BitSet value) throws IOException, Exception {
-        for (BitSet bitset : fingerprintMap.values()) {
-            if (getTanimotoSimilarity(value, bitset) == 1.0) {
-                return true;
-            }
-        }
-        return false;
+    private String getCanonicalKey(IAtomContainer molecule) {
+        CanonicalForm form = CanonicalForm.create(removeHydrogensExceptSingleAndPreserveAtomID(molecule));
+        return form == null ? null : form.getKey();
     }
 
     /**
+     * ID of an already registered molecule identical to this one. Equal
+     * canonical keys identify the molecule directly, the graph match is only
+     * run for molecules sharing the fingerprint but not the key (e.g. a
+     * different Kekule form).
      *
-     * @param bitset
-     * @return
-     * @throws java.io.IOException
+     * @param canonicalKey
+     * @param fingerprint
+     * @param molecule
+     * @return registered ID or null
+     * @throws Exception
      */
-    private String getMoleculeID(BitSet bitset) throws IOException {
-        String Key = null;
-        for (Map.Entry<String, BitSet> map : fingerprintMap.entrySet()) {
-            String key = map.getKey();
-            try {
-                if (getTanimotoSimilarity(map.getValue(), bitset) == 1.0) {
-                    Key = key;
-                    break;
+    private String getRegisteredMoleculeID(String canonicalKey, BitSet fingerprint, IAtomContainer molecule) throws Exception {
+        if (canonicalKey != null) {
+            String id = canonicalKeyMap.get(canonicalKey);
+            if (id != null) {
+                return id;
+            }
+        }
+        List<String> candidates = fingerprintIndex.get(fingerprint);
+        if (candidates != null) {
+            for (String id : candidates) {
+                if (isAtomContainerPresent(id, molecule)) {
+                    return id;
                 }
-            } catch (Exception ex) {
-                LOGGER.error(SEVERE, null, ex);
             }
         }
-        //System.LOGGER.debug("Error: Unable to Find AtomContainer ID!!!");
-        return Key;
+        return null;
+    }
+
+    private void register(String molID, String canonicalKey, BitSet fingerprint, IAtomContainer molecule) {
+        fingerprintMap.put(molID, fingerprint);
+        moleculeMap.put(molID, molecule);
+        fingerprintIndex.computeIfAbsent(fingerprint, k -> new ArrayList<>()).add(molID);
+        if (canonicalKey != null) {
+            canonicalKeyMap.putIfAbsent(canonicalKey, molID);
+        }
     }
 
     /**
@@ -47,6 +47,8 @@ import org.openscience.smsd.AtomAtomMapping;
 import uk.ac.ebi.reactionblast.mapping.algorithm.Holder;
 import uk.ac.ebi.reactionblast.mapping.container.ReactionContainer;
 import uk.ac.ebi.reactionblast.mapping.helper.Debugger;
+import uk.ac.ebi.reactionblast.mapping.helper.MappingBudget;
+import uk.ac.ebi.reactionblast.tools.labelling.CanonicalForm;
 import static java.util.Collections.synchronizedCollection;
 import java.util.List;
 import java.util.concurrent.Executors;
@@ -65,6 +67,50 @@ public class GraphMatcher extends Debugger {
     private final static ILoggingTool LOGGER
             = createLoggingTool(GraphMatcher.class);
 
+    /**
+     * System property enabling the default {@link PairPruner} (true/false)
+     */
+    public static final String PRUNE_PROPERTY = "reactionblast.mapping.prune";
+
+    private static volatile PairPruner pairPruner
+            = Boolean.getBoolean(PRUNE_PROPERTY) ? new PairPruner() : null;
+
+    /**
+     * Enable pruning of chemically unrelated educt/product pairs before the
+     * MCS jobs are scheduled, pass null to compute all pairs (default unless
+     * {@value #PRUNE_PROPERTY} is set).
+     *
+     * @param pruner
+     */
+    public static void setPairPruner(PairPruner pruner) {
+        pairPruner = pruner;
+    }
+
+    /**
+     *
+     * @return pair pruner or null if pruning is disabled
+     */
+    public static PairPruner getPairPruner() {
+        return pairPruner;
+    }
+
+    private static final ThreadLocal<Long> PAIR_LIMIT = new ThreadLocal<>();
+
+    /**
+     * Limit (bytes) of the compatibility graph of a pair matched by the
+     * calling thread, see {@link MappingBudget#pairEstimate}; the pairs over
+     * the limit are reported as empty mappings. Pass 0 to clear the limit.
+     *
+     * @param bytes
+     */
+    public static void setPairLimit(long bytes) {
+        if (bytes > 0) {
+            PAIR_LIMIT.set(bytes);
+        } else {
+            PAIR_LIMIT.remove();
+        }
+    }
+
     /**
      *
      * @param mh
@@ -79,6 +125,7 @@ public class GraphMatcher extends Debugger {
             System.out.println("Matcher Class for " + mh.getTheory());
         }
         Set<Combination> jobReplicatorList = new TreeSet<>();
+        Set<Combination> prunedPairs = new TreeSet<>();
         int taskCounter = 0;
 
         try {
@@ -115,28 +162,87 @@ public class GraphMatcher extends Debugger {
                 return unmodifiableCollection(mcsSolutions);
             }
 
+            /*
+             * Skip unrelated pairs, these are reported as empty mappings
+             */
+            PairPruner pruner = pairPruner;
+            if (pruner != null) {
+                int before = jobReplicatorList.size();
+                Set<Combination> kept = pruner.prune(reactionStructureInformation, jobReplicatorList);
+                for (Combination c : jobReplicatorList) {
+                    if (!kept.contains(c)) {
+                        prunedPairs.add(c);
+                    }
+                }
+                jobReplicatorList = kept;
+                if (DEBUG) {
+                    System.out.println("pruned jobReplicatorList " + before + " -> " + jobReplicatorList.size());
+                }
+            }
+
+            /*
+             * Skip the pairs over the memory budget, these are reported as
+             * empty mappings
+             */
+            Long pairLimit = PAIR_LIMIT.get();
+            if (pairLimit != null) {
+                Set<Combination> kept = new TreeSet<>();
+                for (Combination c : jobReplicatorList) {
+                    if (MappingBudget.pairEstimate(reactionStructureInformation.getEduct(c.getRowIndex()),
+                            reactionStructureInformation.getProduct(c.getColIndex())) > pairLimit) {
+                        prunedPairs.add(c);
+                    } else {
+                        kept.add(c);
+                    }
+                }
+                jobReplicatorList = kept;
+            }
+
             Map<Combination, Set<Combination>> jobMap = new TreeMap<>();
 
+            /*
+             * Group the jobs by canonical structure pair, equivalent pairs
+             * (2 ATP -> 2 ADP, or the same pair in the opposite direction)
+             * are solved once and projected.
+             */
+            Map<Integer, CanonicalForm> eductForms = new TreeMap<>();
+            Map<Integer, CanonicalForm> productForms = new TreeMap<>();
+            Map<String, Combination> jobByStructure = new TreeMap<>();
+
             for (Combination c : jobReplicatorList) {
                 int substrateIndex = c.getRowIndex();
                 int productIndex = c.getColIndex();
                 IAtomContainer educt = reactionStructureInformation.getEduct(substrateIndex);
                 IAtomContainer product = reactionStructureInformation.getProduct(productIndex);
+                CanonicalForm eductForm = eductForms.computeIfAbsent(substrateIndex, k -> CanonicalForm.create(educt));
+                CanonicalForm productForm = productForms.computeIfAbsent(productIndex, k -> CanonicalForm.create(product));
 
                 boolean flag = false;
-                for (Combination k : jobMap.keySet()) {
-                    IAtomContainer eductJob = reactionStructureInformation.getEduct(k.getRowIndex());
-                    IAtomContainer productJob = reactionStructureInformation.getProduct(k.getColIndex());
-
-                    if (eductJob == educt
-                            && productJob == product) {
-                        if (eductJob.getAtomCount() == educt.getAtomCount()
-                                && productJob.getAtomCount() == (product.getAtomCount())) {
+                if (eductForm != null && productForm != null) {
+                    String forward = eductForm.getKey() + ">>" + productForm.getKey();
+                    String reverse = productForm.getKey() + ">>" + eductForm.getKey();
+                    Combination k = jobByStructure.get(forward);
+                    if (k != null
+                            && eductForms.get(k.getRowIndex()).isEquivalent(
+                                    reactionStructureInformation.getEduct(k.getRowIndex()), eductForm, educt)
+                            && productForms.get(k.getColIndex()).isEquivalent(
+                                    reactionStructureInformation.getProduct(k.getColIndex()), productForm, product)) {
+                        jobMap.get(k).add(c);
+                        flag = true;
+                    } else {
+                        k = jobByStructure.get(reverse);
+                        if (k != null
+                                && eductForms.get(k.getRowIndex()).isEquivalent(
+                                        reactionStructureInformation.getEduct(k.getRowIndex()), productForm, product)
+                                && productForms.get(k.getColIndex()).isEquivalent(
+                                        reactionStructureInformation.getProduct(k.getColIndex()), eductForm, educt)) {
                             jobMap.get(k).add(c);
                             flag = true;
-                            break;
                         }
                     }
+                    if (!flag) {
+                        jobByStructure.put(forward, c);
+                    }
                 }
 
                 if (!flag) {
@@ -145,6 +251,10 @@ public class GraphMatcher extends Debugger {
                 }
             }
 
+            if (DEBUG) {
+                System.out.println("unique jobs " + jobMap.size() + " of " + jobReplicatorList.size());
+            }
+
             /*
              * Assign the threads
              *
@@ -369,12 +479,32 @@ public class GraphMatcher extends Debugger {
                                     + " Number of Atom Mapped replicatedMCS " + replicatedMCS.getAtomAtomMapping().getCount());
                         }
                         mcsSolutions.add(replicatedMCS);
+                        /*
+                         * Project the solution on the structurally equivalent pairs
+                         */
+                        if (replicatedMCS != null) {
+                            for (Combination equivalent : jobMap.get(c)) {
+                                MCSSolution projectedMCS = projectMappingOnEquivalentPair(mh, c, equivalent,
+                                        eductForms, productForms, replicatedMCS);
+                                if (projectedMCS != null) {
+                                    mcsSolutions.add(projectedMCS);
+                                }
+                            }
+                        }
                     }
                 }
                 return referenceKey;
             }).filter((removeKey) -> (removeKey != null)).forEach((removeKey) -> {
                 jobMap.remove(removeKey);
             });
+            for (Combination c : prunedPairs) {
+                IAtomContainer educt = reactionStructureInformation.getEduct(c.getRowIndex());
+                IAtomContainer product = reactionStructureInformation.getProduct(c.getColIndex());
+                MCSSolution empty = new MCSSolution(c.getRowIndex(), c.getColIndex(),
+                        educt, product, new AtomAtomMapping(educt, product));
+                empty.setPruned(true);
+                mcsSolutions.add(empty);
+            }
             jobReplicatorList.clear();
             gc();
 
@@ -450,6 +580,62 @@ public class GraphMatcher extends Debugger {
         return null;
     }
 
+    /**
+     * Projects the mapping of a solved pair on a structurally equivalent
+     * pair, either in the same or in the opposite direction.
+     *
+     * @param mh
+     * @param solved
+     * @param equivalent
+     * @param eductForms
+     * @param productForms
+     * @param mcs solution on the solved pair
+     * @return
+     */
+    static MCSSolution projectMappingOnEquivalentPair(Holder mh, Combination solved, Combination equivalent,
+            Map<Integer, CanonicalForm> eductForms, Map<Integer, CanonicalForm> productForms, MCSSolution mcs) {
+        try {
+            ReactionContainer reactionStructureInformation = mh.getReactionContainer();
+            IAtomContainer q = reactionStructureInformation.getEduct(equivalent.getRowIndex());
+            IAtomContainer t = reactionStructureInformation.getProduct(equivalent.getColIndex());
+
+            CanonicalForm solvedEduct = eductForms.get(solved.getRowIndex());
+            CanonicalForm solvedProduct = productForms.get(solved.getColIndex());
+            CanonicalForm eductForm = eductForms.get(equivalent.getRowIndex());
+            CanonicalForm productForm = productForms.get(equivalent.getColIndex());
+
+            boolean forward = solvedEduct.getKey().equals(eductForm.getKey())
+                    && solvedProduct.getKey().equals(productForm.getKey());
+
+            AtomAtomMapping atomAtomMappingNew = new AtomAtomMapping(q, t);
+            for (Map.Entry<Integer, Integer> m : mcs.getAtomAtomMapping().getMappingsByIndex().entrySet()) {
+                int i, j;
+                if (forward) {
+                    i = eductForm.getAtomIndex(solvedEduct.getRank(m.getKey()));
+                    j = productForm.getAtomIndex(solvedProduct.getRank(m.getValue()));
+                } else {
+                    i = eductForm.getAtomIndex(solvedProduct.getRank(m.getValue()));
+                    j = productForm.getAtomIndex(solvedEduct.getRank(m.getKey()));
+                }
+                atomAtomMappingNew.put(i, j);
+            }
+
+            if (DEBUG) {
+                System.out.println("Projected " + solved + " on " + equivalent
+                        + (forward ? " " : " (reverse) ") + atomAtomMappingNew.getCount());
+            }
+            MCSSolution projected = new MCSSolution(equivalent.getRowIndex(), equivalent.getColIndex(),
+                    q, t, atomAtomMappingNew);
+            projected.setEnergy(mcs.getEnergy());
+            projected.setFragmentSize(mcs.getFragmentSize());
+            projected.setStereoScore(mcs.getStereoScore());
+            return projected;
+        } catch (IOException | CDKException ex) {
+            LOGGER.error(SEVERE, null, ex);
+        }
+        return null;
+    }
+
     private static IAtom getAtomByID(IAtomContainer ac, IAtom atom) {
         if (atom.getID() == null) {
             return null;
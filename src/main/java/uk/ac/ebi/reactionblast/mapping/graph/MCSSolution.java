@@ -29,7 +29,7 @@ import org.openscience.smsd.AtomAtomMapping;
  */
 public class MCSSolution implements Serializable {
 
-    private static final long serialVersionUID = 0xc678991ddf0L;
+    private static final long serialVersionUID = 0xc678991ddf1L;
     private final IAtomContainer queryContainer;
     private final int targetPosition;
     private final IAtomContainer targetContainer;
@@ -38,6 +38,7 @@ public class MCSSolution implements Serializable {
     private Integer stereoScore;
     private Integer fragmentSize;
     private Double energy;
+    private boolean pruned;
 
     /**
      *
@@ -59,6 +60,20 @@ public class MCSSolution implements Serializable {
         this.stereoScore = null;
     }
 
+    /**
+     * @return true if the pair was pruned as unrelated and left unmapped
+     */
+    public synchronized boolean isPruned() {
+        return pruned;
+    }
+
+    /**
+     * @param pruned true if the pair was pruned before the MCS
+     */
+    public synchronized void setPruned(boolean pruned) {
+        this.pruned = pruned;
+    }
+
     /**
      * @return the stereoScore
      */
@@ -56,7 +56,7 @@ import org.openscience.smsd.algorithm.matchers.AtomBondMatcher;
 import org.openscience.smsd.algorithm.matchers.AtomMatcher;
 import org.openscience.smsd.algorithm.matchers.BondMatcher;
 import org.openscience.smsd.helper.MoleculeInitializer;
-import org.openscience.smsd.interfaces.Algorithm;
+import org.openscience.smsd.tools.EngineSelector;
 import org.openscience.smsd.tools.ExtAtomContainerManipulator;
 import uk.ac.ebi.reactionblast.mapping.cache.ThreadSafeCache;
 import uk.ac.ebi.reactionblast.mapping.interfaces.IMappingAlgorithm;
@@ -588,7 +588,7 @@ public class MCSThread implements Callable<MCSSolution> {
                     solution);
 
         } else {
-            isomorphism = new Isomorphism(ac1, ac2, Algorithm.VFLibMCS, am, bm);
+            isomorphism = EngineSelector.getInstance().isomorphism(ac1, ac2, am, bm);
             mcs = addMCSSolution(key, ThreadSafeCache.getInstance(), isomorphism);
         }
 
@@ -752,7 +752,7 @@ public class MCSThread implements Callable<MCSSolution> {
 
         AtomAtomMapping atomAtomMappingNew = new AtomAtomMapping(compound1, compound2);
         mappingsByIndex.entrySet().forEach((m) -> {
-            atomAtomMappingNew.put(compound1.getAtom(m.getKey()), compound2.getAtom(m.getValue()));
+            atomAtomMappingNew.put(m.getKey().intValue(), m.getValue().intValue());
         });
         MCSSolution mcsSolution = new MCSSolution(queryPosition, targetPosition, compound1, compound2, atomAtomMappingNew);
         mcsSolution.setEnergy(oldSolution.getEnergy());
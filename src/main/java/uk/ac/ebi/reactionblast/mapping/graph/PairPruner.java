@@ -0,0 +1,266 @@
+/*
+ * Copyright (C) 2003-2020 Syed Asad Rahman <asad @ ebi.ac.uk>.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package uk.ac.ebi.reactionblast.mapping.graph;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import static java.util.logging.Level.SEVERE;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.tools.ILoggingTool;
+import static org.openscience.cdk.tools.LoggingToolFactory.createLoggingTool;
+import static uk.ac.ebi.reactionblast.fingerprints.tools.Similarity.getTanimotoSimilarity;
+import uk.ac.ebi.reactionblast.mapping.container.ReactionContainer;
+
+/**
+ * Removes chemically unrelated educt/product pairs before the MCS jobs are
+ * scheduled by the {@link GraphMatcher}. A pair is kept if the ECFP4
+ * fingerprints stored in the {@link ReactionContainer} are at least
+ * {@code tanimotoThreshold} similar and the heavy atom element overlap is at
+ * least {@code elementOverlapThreshold}.
+ *
+ * As a fallback every heavy element of every educt (and product) remains
+ * reachable: if none of the kept pairs of a molecule contains an element, the
+ * best scoring partner carrying that element is put back. Hence every atom can
+ * still be mapped by the game theory models.
+ *
+ * @contact Syed Asad Rahman, EMBL-EBI, Cambridge, UK.
+ * @author Syed Asad Rahman <asad @ ebi.ac.uk>
+ */
+public class PairPruner implements Serializable {
+
+    private final static boolean DEBUG = false;
+    private final static ILoggingTool LOGGER
+            = createLoggingTool(PairPruner.class);
+    private static final long serialVersionUID = 0x1f3a9b7c2d5eL;
+
+    private final double tanimotoThreshold;
+    private final double elementOverlapThreshold;
+    private final int minimumPairCount;
+
+    /**
+     * Default pruner, Tanimoto 0.1, element overlap 0.5 and applied only to
+     * reactions with at least 16 educt/product pairs.
+     */
+    public PairPruner() {
+        this(0.1, 0.5, 16);
+    }
+
+    /**
+     *
+     * @param tanimotoThreshold minimum ECFP4 Tanimoto similarity of a pair
+     * @param elementOverlapThreshold minimum fraction of the heavy atoms of the
+     * smaller molecule that can be paired by element with the other molecule
+     * @param minimumPairCount pruning is skipped if fewer candidate pairs are
+     * present
+     */
+    public PairPruner(double tanimotoThreshold, double elementOverlapThreshold, int minimumPairCount) {
+        this.tanimotoThreshold = tanimotoThreshold;
+        this.elementOverlapThreshold = elementOverlapThreshold;
+        this.minimumPairCount = minimumPairCount;
+    }
+
+    /**
+     * @return the tanimotoThreshold
+     */
+    public double getTanimotoThreshold() {
+        return tanimotoThreshold;
+    }
+
+    /**
+     * @return the elementOverlapThreshold
+     */
+    public double getElementOverlapThreshold() {
+        return elementOverlapThreshold;
+    }
+
+    /**
+     * @return the minimumPairCount
+     */
+    public int getMinimumPairCount() {
+        return minimumPairCount;
+    }
+
+    /**
+     * Returns the subset of candidate pairs worth an MCS job.
+     *
+     * @param reactionContainer
+     * @param candidates educt/product combinations
+     * @return kept combinations
+     * @throws IOException
+     * @throws CDKException
+     */
+    public Set<Combination> prune(ReactionContainer reactionContainer, Set<Combination> candidates)
+            throws IOException, CDKException {
+        if (candidates.size() < minimumPairCount) {
+            return candidates;
+        }
+
+        Map<Integer, Map<String, Integer>> eductElements = new HashMap<>();
+        Map<Integer, Map<String, Integer>> productElements = new HashMap<>();
+        Map<Combination, Double> scores = new TreeMap<>();
+        Set<Combination> kept = new TreeSet<>();
+
+        for (Combination c : candidates) {
+            int substrateIndex = c.getRowIndex();
+            int productIndex = c.getColIndex();
+            Map<String, Integer> e = eductElements.get(substrateIndex);
+            if (e == null) {
+                e = getElementCount(reactionContainer.getEduct(substrateIndex));
+                eductElements.put(substrateIndex, e);
+            }
+            Map<String, Integer> p = productElements.get(productIndex);
+            if (p == null) {
+                p = getElementCount(reactionContainer.getProduct(productIndex));
+                productElements.put(productIndex, p);
+            }
+
+            double overlap = getElementOverlap(e, p);
+            double fpSim = getFingerprintSimilarity(
+                    reactionContainer.getFingerPrintofEduct(substrateIndex),
+                    reactionContainer.getFingerPrintofProduct(productIndex));
+            /*
+             * Fingerprint similarity ranks the pairs, element overlap breaks ties
+             */
+            scores.put(c, fpSim + overlap / 1000.0);
+            if (overlap > 0.0
+                    && fpSim >= tanimotoThreshold
+                    && overlap >= elementOverlapThreshold) {
+                kept.add(c);
+            }
+        }
+
+        /*
+         * Fallback: every element present in a molecule must be covered by at least one pair
+         */
+        for (Map.Entry<Integer, Map<String, Integer>> educt : eductElements.entrySet()) {
+            for (String element : educt.getValue().keySet()) {
+                if (!isCovered(kept, educt.getKey(), true, element, productElements)) {
+                    Combination best = getBestPartner(candidates, scores, educt.getKey(), true, element, productElements);
+                    if (best != null) {
+                        kept.add(best);
+                    }
+                }
+            }
+        }
+        for (Map.Entry<Integer, Map<String, Integer>> product : productElements.entrySet()) {
+            for (String element : product.getValue().keySet()) {
+                if (!isCovered(kept, product.getKey(), false, element, eductElements)) {
+                    Combination best = getBestPartner(candidates, scores, product.getKey(), false, element, eductElements);
+                    if (best != null) {
+                        kept.add(best);
+                    }
+                }
+            }
+        }
+
+        if (DEBUG) {
+            System.out.println("Pruned pairs " + candidates.size() + " -> " + kept.size());
+        }
+        return kept;
+    }
+
+    private boolean isCovered(Set<Combination> kept, int index, boolean educt,
+            String element, Map<Integer, Map<String, Integer>> partnerElements) {
+        for (Combination c : kept) {
+            int self = educt ? c.getRowIndex() : c.getColIndex();
+            int partner = educt ? c.getColIndex() : c.getRowIndex();
+            if (self == index && partnerElements.get(partner).containsKey(element)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Combination getBestPartner(Set<Combination> candidates, Map<Combination, Double> scores,
+            int index, boolean educt, String element, Map<Integer, Map<String, Integer>> partnerElements) {
+        Combination best = null;
+        double bestScore = -1.0;
+        for (Combination c : candidates) {
+            int self = educt ? c.getRowIndex() : c.getColIndex();
+            int partner = educt ? c.getColIndex() : c.getRowIndex();
+            if (self == index
+                    && partnerElements.get(partner).containsKey(element)
+                    && scores.get(c) > bestScore) {
+                best = c;
+                bestScore = scores.get(c);
+            }
+        }
+        return best;
+    }
+
+    private double getFingerprintSimilarity(BitSet a, BitSet b) {
+        if (a == null || b == null || a.isEmpty() || b.isEmpty()) {
+            return 0.0;
+        }
+        try {
+            return getTanimotoSimilarity(a, b);
+        } catch (Exception ex) {
+            LOGGER.error(SEVERE, " error in calculating fingerprint ", ex.getMessage());
+        }
+        return 0.0;
+    }
+
+    private static Map<String, Integer> getElementCount(IAtomContainer ac) {
+        Map<String, Integer> elements = new TreeMap<>();
+        if (ac == null) {
+            return elements;
+        }
+        for (IAtom a : ac.atoms()) {
+            if (a.getSymbol().equals("H")) {
+                continue;
+            }
+            elements.merge(a.getSymbol(), 1, Integer::sum);
+        }
+        /*
+         * Hydrogen only molecules (H2, H+) are paired by their hydrogens
+         */
+        if (elements.isEmpty() && !ac.isEmpty()) {
+            elements.put("H", ac.getAtomCount());
+        }
+        return elements;
+    }
+
+    /*
+     * Fraction of the heavy atoms of the smaller molecule which have an element partner
+     */
+    private static double getElementOverlap(Map<String, Integer> e, Map<String, Integer> p) {
+        int eCount = e.values().stream().mapToInt(Integer::intValue).sum();
+        int pCount = p.values().stream().mapToInt(Integer::intValue).sum();
+        int smaller = Math.min(eCount, pCount);
+        if (smaller == 0) {
+            return 0.0;
+        }
+        int common = 0;
+        for (Map.Entry<String, Integer> entry : e.entrySet()) {
+            Integer other = p.get(entry.getKey());
+            if (other != null) {
+                common += Math.min(entry.getValue(), other);
+            }
+        }
+        return (double) common / smaller;
+    }
+}
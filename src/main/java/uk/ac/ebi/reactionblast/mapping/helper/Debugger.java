@@ -36,7 +36,7 @@ import uk.ac.ebi.reactionblast.mapping.algorithm.checks.ChooseWinner;
 import uk.ac.ebi.reactionblast.mapping.container.ReactionContainer;
 import uk.ac.ebi.reactionblast.tools.BasicDebugger;
 import uk.ac.ebi.reactionblast.tools.CDKSMILES;
-import uk.ac.ebi.reactionblast.tools.EBIMatrix;
+import uk.ac.ebi.reactionblast.tools.ScoreMatrix;
 import uk.ac.ebi.reactionblast.tools.ImageGenerator;
 import static java.lang.System.getProperty;
 import static java.text.NumberFormat.getInstance;
@@ -201,7 +201,7 @@ public abstract class Debugger extends BasicDebugger {
      * @param PdMap
      */
     protected void printStereoMatrix(Holder mh, List<String> EdMap, List<String> PdMap) {
-        EBIMatrix StereoMatrix = mh.getStereoMatrix();
+        ScoreMatrix StereoMatrix = mh.getStereoMatrix();
 
         out.println();
         out.println("********* MATRIX **********");
@@ -247,7 +247,7 @@ public abstract class Debugger extends BasicDebugger {
      * @param PdMap
      */
     protected void printFragmentMatrix(Holder mh, List<String> EdMap, List<String> PdMap) {
-        EBIMatrix fragmentMatrix = mh.getFragmentMatrix();
+        ScoreMatrix fragmentMatrix = mh.getFragmentMatrix();
 
         out.println();
         out.println("********* MATRIX **********");
@@ -293,7 +293,7 @@ public abstract class Debugger extends BasicDebugger {
      * @param PdMap
      */
     protected void printCarbonMatrix(Holder mh, List<String> EdMap, List<String> PdMap) {
-        EBIMatrix carbonMatrix = mh.getCarbonOverlapMatrix();
+        ScoreMatrix carbonMatrix = mh.getCarbonOverlapMatrix();
 
         out.println();
         out.println("********* MATRIX **********");
@@ -337,7 +337,7 @@ public abstract class Debugger extends BasicDebugger {
      * @param PdMap
      */
     protected void printEnergyMatrix(Holder mh, List<String> EdMap, List<String> PdMap) {
-        EBIMatrix energyMatrixProfile = mh.getEnergyMatrix();
+        ScoreMatrix energyMatrixProfile = mh.getEnergyMatrix();
 
         out.println();
         out.println("********* MATRIX **********");
@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2007-2020 Syed Asad Rahman <asad @ ebi.ac.uk>.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package uk.ac.ebi.reactionblast.mapping.helper;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IReaction;
+import org.openscience.cdk.tools.ILoggingTool;
+import static org.openscience.cdk.tools.LoggingToolFactory.createLoggingTool;
+
+/**
+ * Memory budget of mapping one reaction. The need is estimated up front from
+ * the educt x product pairs: the compatibility graph of a pair has a node per
+ * pair of atoms of the same element and up to an edge per pair of nodes, the
+ * MCS solutions and the game theory matrices grow with the atom and pair
+ * counts. The models of a reaction share the MCS cache and keep their
+ * solutions until the best one is selected, so each model is counted at the
+ * full estimate.
+ * <p>
+ * The budget only counts the reaction itself, not the process heap, so the
+ * reactions mapped at the same time don't push each other over budget and the
+ * outcome doesn't depend on the load. Everything is decided before the mapping
+ * starts: a reaction over budget is mapped in degraded mode by as many models
+ * as fit (the local model at least, then global, mixture and rings) and the
+ * pairs whose compatibility graph alone exceeds the budget are not matched.
+ * The budget, in MB, is set by the system property {@value #BUDGET_PROPERTY};
+ * there is no budget if unset.
+ *
+ * @contact Syed Asad Rahman, EMBL-EBI, Cambridge, UK.
+ * @author Syed Asad Rahman <asad @ ebi.ac.uk>
+ */
+public class MappingBudget {
+
+    private final static ILoggingTool LOGGER
+            = createLoggingTool(MappingBudget.class);
+
+    /**
+     * System property with the budget of a reaction in MB
+     */
+    public static final String BUDGET_PROPERTY = "reactionblast.mapping.budget";
+
+    private static final long MB = 1024L * 1024L;
+    private static final long BYTES_PER_EDGE = 16;
+    private static final long BYTES_PER_NODE = 64;
+    private static final long BYTES_PER_CELL = 8 * 8;
+
+    private final long limit;
+
+    /**
+     *
+     * @param limit budget in bytes
+     */
+    public MappingBudget(long limit) {
+        this.limit = limit;
+    }
+
+    /**
+     * The budget configured by {@value #BUDGET_PROPERTY}.
+     *
+     * @return budget, null if none is set
+     */
+    public static MappingBudget fromSystemProperty() {
+        String value = System.getProperty(BUDGET_PROPERTY);
+        if (value == null || value.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            long mb = Long.parseLong(value.trim());
+            return mb > 0 ? new MappingBudget(mb * MB) : null;
+        } catch (NumberFormatException e) {
+            LOGGER.warn("Ignoring memory budget " + value);
+            return null;
+        }
+    }
+
+    /**
+     * Estimated memory (bytes) of mapping the reaction with one model.
+     *
+     * @param reaction
+     * @return bytes
+     */
+    public static long estimate(IReaction reaction) {
+        return estimate(reaction, Long.MAX_VALUE);
+    }
+
+    /**
+     * Estimated memory (bytes) of mapping the reaction with one model, the
+     * pairs whose compatibility graph exceeds the pair limit are not matched
+     * and not counted.
+     *
+     * @param reaction
+     * @param pairLimit bytes
+     * @return bytes
+     */
+    public static long estimate(IReaction reaction, long pairLimit) {
+        long largestGraph = 0;
+        long rest = 0;
+        int educts = reaction.getReactantCount();
+        int products = reaction.getProductCount();
+        for (IAtomContainer educt : reaction.getReactants().atomContainers()) {
+            Map<String, Integer> e = heavyElements(educt);
+            for (IAtomContainer product : reaction.getProducts().atomContainers()) {
+                long nodes = nodes(e, heavyElements(product));
+                long graph = graph(nodes);
+                if (graph > pairLimit) {
+                    continue;
+                }
+                largestGraph = Math.max(largestGraph, graph);
+                rest += nodes * BYTES_PER_NODE;
+            }
+        }
+        rest += (long) educts * products * BYTES_PER_CELL;
+        return largestGraph + rest;
+    }
+
+    /**
+     * Estimated memory (bytes) of the compatibility graph of a pair.
+     *
+     * @param educt
+     * @param product
+     * @return bytes
+     */
+    public static long pairEstimate(IAtomContainer educt, IAtomContainer product) {
+        return graph(nodes(heavyElements(educt), heavyElements(product)));
+    }
+
+    /**
+     *
+     * @param reaction
+     * @return estimate (bytes) of the largest compatibility graph of the
+     * reaction
+     */
+    public static long largestPair(IReaction reaction) {
+        long largest = 0;
+        for (IAtomContainer educt : reaction.getReactants().atomContainers()) {
+            for (IAtomContainer product : reaction.getProducts().atomContainers()) {
+                largest = Math.max(largest, pairEstimate(educt, product));
+            }
+        }
+        return largest;
+    }
+
+    private static long nodes(Map<String, Integer> e, Map<String, Integer> p) {
+        long nodes = 0;
+        for (Map.Entry<String, Integer> entry : e.entrySet()) {
+            nodes += (long) entry.getValue() * p.getOrDefault(entry.getKey(), 0);
+        }
+        return nodes;
+    }
+
+    private static long graph(long nodes) {
+        return nodes * (nodes - 1) / 2 * BYTES_PER_EDGE;
+    }
+
+    private static Map<String, Integer> heavyElements(IAtomContainer ac) {
+        Map<String, Integer> elements = new HashMap<>();
+        for (IAtom atom : ac.atoms()) {
+            if (!atom.getSymbol().equals("H")) {
+                elements.merge(atom.getSymbol(), 1, Integer::sum);
+            }
+        }
+        return elements;
+    }
+
+    /**
+     * Number of mapping models which fit in the budget, each is counted at
+     * the estimate without the pairs over budget.
+     *
+     * @param reaction
+     * @param available models the reaction would be mapped by
+     * @return models to run, at least one
+     */
+    public int models(IReaction reaction, int available) {
+        long estimate = Math.max(1L, estimate(reaction, limit));
+        int models = (int) Math.max(1L, Math.min(available, limit / estimate));
+        if (models < available) {
+            LOGGER.info("Reaction " + reaction.getID() + " estimated at " + estimate / MB
+                    + " MB per model, " + models + " of " + available
+                    + " models fit in the budget of " + limit / MB + " MB");
+        }
+        return models;
+    }
+
+    /**
+     * @return budget in bytes
+     */
+    public long getLimit() {
+        return limit;
+    }
+
+    @Override
+    public String toString() {
+        return "MappingBudget{" + limit / MB + " MB}";
+    }
+}
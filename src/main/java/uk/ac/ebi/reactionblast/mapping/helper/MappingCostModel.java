@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2007-2020 Syed Asad Rahman <asad @ ebi.ac.uk>.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package uk.ac.ebi.reactionblast.mapping.helper;
+
+import static java.lang.Math.exp;
+import static java.lang.Math.log;
+import static java.lang.Math.pow;
+import static java.lang.Math.sqrt;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IBond;
+import org.openscience.cdk.interfaces.IReaction;
+
+/**
+ * Cheap estimate of the mapping cost of a reaction from its parsed structure.
+ * The matcher solves one MCS per educt x product pair, the cost is the sum of
+ * the pair weights where a molecule weighs its heavy atom count inflated by
+ * its ring closures and by its symmetry (atoms sharing an invariant, which
+ * multiply the equivalent MCS solutions).
+ * <p>
+ * The model converts the cost into milliseconds as
+ * {@code scale * cost^exponent}, the coefficients are fitted by
+ * {@link #fit(double[], double[])} on observed mapping times.
+ *
+ * @contact Syed Asad Rahman, EMBL-EBI, Cambridge, UK.
+ * @author Syed Asad Rahman <asad @ ebi.ac.uk>
+ */
+public class MappingCostModel {
+
+    private static final double RING_WEIGHT = 0.5;
+    private static final double SYMMETRY_WEIGHT = 1.0;
+
+    /**
+     * Uncalibrated model
+     */
+    public static final MappingCostModel DEFAULT = new MappingCostModel(0.01, 1.0);
+
+    private final double scale;
+    private final double exponent;
+
+    /**
+     *
+     * @param scale milliseconds per cost unit
+     * @param exponent
+     */
+    public MappingCostModel(double scale, double exponent) {
+        this.scale = scale;
+        this.exponent = exponent;
+    }
+
+    /**
+     * Cost of mapping the reaction (arbitrary units).
+     *
+     * @param reaction
+     * @return cost
+     */
+    public static double cost(IReaction reaction) {
+        List<Double> educts = new ArrayList<>();
+        List<Double> products = new ArrayList<>();
+        for (IAtomContainer ac : reaction.getReactants().atomContainers()) {
+            educts.add(weight(ac));
+        }
+        for (IAtomContainer ac : reaction.getProducts().atomContainers()) {
+            products.add(weight(ac));
+        }
+        double cost = 0.0;
+        for (double e : educts) {
+            for (double p : products) {
+                cost += e * p;
+            }
+        }
+        return cost;
+    }
+
+    /**
+     * Weight of a molecule in the pair cost
+     *
+     * @param ac
+     * @return heavy atoms x (1 + rings) x (1 + symmetry) terms
+     */
+    public static double weight(IAtomContainer ac) {
+        int heavy = 0;
+        Set<String> invariants = new HashSet<>();
+        for (IAtom a : ac.atoms()) {
+            if ("H".equals(a.getSymbol())) {
+                continue;
+            }
+            heavy++;
+            Integer h = a.getImplicitHydrogenCount();
+            invariants.add(a.getSymbol() + ":" + ac.getConnectedBondsCount(a)
+                    + ":" + (h == null ? 0 : h) + ":" + a.isAromatic());
+        }
+        if (heavy == 0) {
+            return 0.0;
+        }
+        int heavyBonds = 0;
+        for (IBond b : ac.bonds()) {
+            if (!"H".equals(b.getBegin().getSymbol()) && !"H".equals(b.getEnd().getSymbol())) {
+                heavyBonds++;
+            }
+        }
+        int rings = Math.max(0, heavyBonds - heavy + 1);
+        double symmetry = 1.0 - (double) invariants.size() / heavy;
+        return heavy * (1.0 + RING_WEIGHT * rings) * (1.0 + SYMMETRY_WEIGHT * symmetry);
+    }
+
+    /**
+     *
+     * @param reaction
+     * @return predicted mapping time (ms)
+     */
+    public double predict(IReaction reaction) {
+        return predict(cost(reaction));
+    }
+
+    /**
+     *
+     * @param cost
+     * @return predicted mapping time (ms)
+     */
+    public double predict(double cost) {
+        return cost <= 0.0 ? 0.0 : scale * pow(cost, exponent);
+    }
+
+    /**
+     * @return milliseconds per cost unit
+     */
+    public double getScale() {
+        return scale;
+    }
+
+    /**
+     * @return exponent of the cost
+     */
+    public double getExponent() {
+        return exponent;
+    }
+
+    /**
+     * Least squares fit of {@code log(ms) = log(scale) + exponent * log(cost)}
+     * on the observations with a positive cost and time.
+     *
+     * @param costs
+     * @param millis observed mapping times
+     * @return fitted model, {@link #DEFAULT} if there are less than two
+     * distinct observations
+     */
+    public static MappingCostModel fit(double[] costs, double[] millis) {
+        int n = 0;
+        double sx = 0, sy = 0, sxx = 0, sxy = 0;
+        for (int i = 0; i < costs.length; i++) {
+            if (costs[i] > 0 && millis[i] > 0) {
+                double x = log(costs[i]);
+                double y = log(millis[i]);
+                sx += x;
+                sy += y;
+                sxx += x * x;
+                sxy += x * y;
+                n++;
+            }
+        }
+        if (n < 2 || n * sxx - sx * sx <= 0) {
+            return DEFAULT;
+        }
+        double slope = (n * sxy - sx * sy) / (n * sxx - sx * sx);
+        double intercept = (sy - slope * sx) / n;
+        return new MappingCostModel(exp(intercept), slope);
+    }
+
+    /**
+     * Spearman rank correlation, the measure that matters for ordering the
+     * work.
+     *
+     * @param a
+     * @param b
+     * @return correlation in [-1, 1], 0 for less than two values
+     */
+    public static double rankCorrelation(double[] a, double[] b) {
+        int n = a.length;
+        if (n < 2) {
+            return 0.0;
+        }
+        double[] ra = ranks(a);
+        double[] rb = ranks(b);
+        double mean = (n + 1) / 2.0;
+        double cov = 0, va = 0, vb = 0;
+        for (int i = 0; i < n; i++) {
+            cov += (ra[i] - mean) * (rb[i] - mean);
+            va += (ra[i] - mean) * (ra[i] - mean);
+            vb += (rb[i] - mean) * (rb[i] - mean);
+        }
+        return va == 0 || vb == 0 ? 0.0 : cov / sqrt(va * vb);
+    }
+
+    /*
+     * 1-based ranks, ties get their average rank
+     */
+    private static double[] ranks(double[] values) {
+        Integer[] order = new Integer[values.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (x, y) -> Double.compare(values[x], values[y]));
+        double[] ranks = new double[values.length];
+        for (int i = 0; i < order.length;) {
+            int j = i;
+            while (j + 1 < order.length && values[order[j + 1]] == values[order[i]]) {
+                j++;
+            }
+            double rank = (i + j) / 2.0 + 1.0;
+            for (int k = i; k <= j; k++) {
+                ranks[order[k]] = rank;
+            }
+            i = j + 1;
+        }
+        return ranks;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ms = %.4g * cost^%.3f", scale, exponent);
+    }
+}
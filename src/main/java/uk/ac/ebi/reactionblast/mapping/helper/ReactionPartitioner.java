@@ -0,0 +1,355 @@
+/*
+ * Copyright (C) 2007-2020 Syed Asad Rahman <asad @ ebi.ac.uk>.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package uk.ac.ebi.reactionblast.mapping.helper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IBond;
+import org.openscience.cdk.interfaces.IMapping;
+import org.openscience.cdk.interfaces.IReaction;
+import org.openscience.cdk.smiles.SmiFlavor;
+import org.openscience.cdk.smiles.SmilesGenerator;
+import org.openscience.cdk.tools.ILoggingTool;
+import static org.openscience.cdk.tools.LoggingToolFactory.createLoggingTool;
+
+/**
+ * Splits a reaction into sub-reactions which can be mapped independently.
+ * <p>
+ * Spectators (an educt with an identical product, by unique SMILES) are
+ * paired off first and mapped atom by atom onto their copy. The remaining
+ * molecules are the nodes of a bipartite graph where an educt and a product
+ * are linked if they share a heavy element and a bond type (elements and
+ * order) or if one of them has no heavy bond. Each connected component is a
+ * sub-reaction; molecules without heavy atoms join the largest one. A split
+ * is only kept if every component is balanced in heavy atoms, else all the
+ * non-spectator molecules form one component.
+ * <p>
+ * The spectator test is by identity of the molecules only: a molecule which
+ * is consumed and regenerated (e.g. an exchange reaction, a catalyst or a
+ * label transfer between copies) is taken as a spectator and mapped onto its
+ * own copy, so the atoms it really exchanges are not reported. Such reactions
+ * should be mapped without the partitioning.
+ * <p>
+ * The partitioning is enabled by the system property
+ * {@value #PARTITION_PROPERTY}.
+ *
+ * @contact Syed Asad Rahman, EMBL-EBI, Cambridge, UK.
+ * @author Syed Asad Rahman <asad @ ebi.ac.uk>
+ */
+public class ReactionPartitioner {
+
+    private final static boolean DEBUG = false;
+    private final static ILoggingTool LOGGER
+            = createLoggingTool(ReactionPartitioner.class);
+
+    /**
+     * System property enabling the partitioning (true/false). Molecules
+     * found unchanged on both sides are mapped onto themselves, which misses
+     * the exchanges of molecules that are consumed and regenerated.
+     */
+    public static final String PARTITION_PROPERTY = "reactionblast.mapping.partition";
+
+    private final IReaction reaction;
+    private final List<IAtomContainer[]> spectators;
+    private final List<IReaction> components;
+
+    /**
+     *
+     * @return true if reactions are partitioned before mapping
+     */
+    public static boolean isEnabled() {
+        return Boolean.getBoolean(PARTITION_PROPERTY);
+    }
+
+    /**
+     *
+     * @param reaction reaction with unique atom IDs on either side
+     */
+    public ReactionPartitioner(IReaction reaction) {
+        this.reaction = reaction;
+        this.spectators = new ArrayList<>();
+        this.components = new ArrayList<>();
+
+        List<IAtomContainer> educts = new ArrayList<>();
+        List<IAtomContainer> products = new ArrayList<>();
+        reaction.getReactants().atomContainers().forEach(educts::add);
+        reaction.getProducts().atomContainers().forEach(products::add);
+        findSpectators(educts, products);
+        partition(educts, products);
+        if (DEBUG) {
+            System.out.println("Spectators " + spectators.size() + ", components " + components.size());
+        }
+    }
+
+    /**
+     *
+     * @return true if the reaction has spectators or more than one component
+     */
+    public boolean isPartitioned() {
+        return !spectators.isEmpty() || components.size() > 1;
+    }
+
+    /**
+     *
+     * @return number of educt/product pairs left unchanged by the reaction
+     */
+    public int getSpectatorCount() {
+        return spectators.size();
+    }
+
+    /**
+     * The sub-reactions share the molecules of the reaction.
+     *
+     * @return sub-reactions to be mapped
+     */
+    public List<IReaction> getComponents() {
+        return components;
+    }
+
+    /**
+     * Adds the identity mapping of the spectators to the reaction.
+     *
+     * @param mappedReaction
+     */
+    public void addSpectatorMappings(IReaction mappedReaction) {
+        for (IAtomContainer[] pair : spectators) {
+            try {
+                int[] e = outputOrder(pair[0]);
+                int[] p = outputOrder(pair[1]);
+                for (int i = 0; i < e.length; i++) {
+                    IAtom eAtom = pair[0].getAtom(e[i]);
+                    IAtom pAtom = pair[1].getAtom(p[i]);
+                    mappedReaction.addMapping(mappedReaction.getBuilder()
+                            .newInstance(IMapping.class, eAtom, pAtom));
+                }
+            } catch (CDKException ex) {
+                LOGGER.error("Unable to map spectator " + pair[0].getID(), ex.getMessage());
+            }
+        }
+    }
+
+    /*
+     * pairs off identical educts and products
+     */
+    private void findSpectators(List<IAtomContainer> educts, List<IAtomContainer> products) {
+        Map<String, List<IAtomContainer>> productsBySMILES = new HashMap<>();
+        for (IAtomContainer product : products) {
+            String smiles = smiles(product);
+            if (smiles != null) {
+                productsBySMILES.computeIfAbsent(smiles, k -> new ArrayList<>()).add(product);
+            }
+        }
+        for (IAtomContainer educt : new ArrayList<>(educts)) {
+            String smiles = smiles(educt);
+            List<IAtomContainer> copies = smiles == null ? null : productsBySMILES.get(smiles);
+            if (copies != null && !copies.isEmpty()) {
+                IAtomContainer product = copies.remove(0);
+                spectators.add(new IAtomContainer[]{educt, product});
+                educts.remove(educt);
+                products.remove(product);
+            }
+        }
+    }
+
+    private void partition(List<IAtomContainer> educts, List<IAtomContainer> products) {
+        if (educts.isEmpty() && products.isEmpty()) {
+            return;
+        }
+        List<IAtomContainer> nodes = new ArrayList<>(educts);
+        nodes.addAll(products);
+        int[] parent = new int[nodes.size()];
+        for (int i = 0; i < parent.length; i++) {
+            parent[i] = i;
+        }
+        List<Set<String>> elements = new ArrayList<>();
+        List<Set<String>> bonds = new ArrayList<>();
+        for (IAtomContainer ac : nodes) {
+            elements.add(heavyElements(ac));
+            bonds.add(heavyBonds(ac));
+        }
+        for (int i = 0; i < educts.size(); i++) {
+            for (int j = educts.size(); j < nodes.size(); j++) {
+                if (isPlausible(elements.get(i), bonds.get(i), elements.get(j), bonds.get(j))) {
+                    union(parent, i, j);
+                }
+            }
+        }
+
+        /*
+         * molecules without heavy atoms join the largest component
+         */
+        int largest = -1;
+        for (int i = 0; i < nodes.size(); i++) {
+            if (!elements.get(i).isEmpty()
+                    && (largest < 0 || nodes.get(i).getAtomCount() > nodes.get(largest).getAtomCount())) {
+                largest = i;
+            }
+        }
+        for (int i = 0; i < nodes.size(); i++) {
+            if (elements.get(i).isEmpty() && largest >= 0) {
+                union(parent, i, largest);
+            }
+        }
+
+        Map<Integer, List<Integer>> members = new TreeMap<>();
+        for (int i = 0; i < nodes.size(); i++) {
+            members.computeIfAbsent(find(parent, i), k -> new ArrayList<>()).add(i);
+        }
+        boolean balanced = true;
+        for (List<Integer> component : members.values()) {
+            Map<String, Integer> balance = new HashMap<>();
+            for (int i : component) {
+                int sign = i < educts.size() ? 1 : -1;
+                for (IAtom atom : nodes.get(i).atoms()) {
+                    if (!atom.getSymbol().equals("H")) {
+                        balance.merge(atom.getSymbol(), sign, Integer::sum);
+                    }
+                }
+            }
+            if (balance.values().stream().anyMatch(v -> v != 0)) {
+                balanced = false;
+                break;
+            }
+        }
+        if (!balanced) {
+            List<Integer> all = new ArrayList<>();
+            for (int i = 0; i < nodes.size(); i++) {
+                all.add(i);
+            }
+            members.clear();
+            members.put(0, all);
+        }
+        for (List<Integer> component : members.values()) {
+            IReaction subReaction = reaction.getBuilder().newInstance(IReaction.class);
+            for (int i : component) {
+                IAtomContainer ac = nodes.get(i);
+                if (i < educts.size()) {
+                    subReaction.addReactant(ac, reaction.getReactantCoefficient(ac));
+                } else {
+                    subReaction.addProduct(ac, reaction.getProductCoefficient(ac));
+                }
+            }
+            subReaction.setID(reaction.getID());
+            subReaction.setDirection(reaction.getDirection());
+            components.add(subReaction);
+        }
+    }
+
+    private static boolean isPlausible(Set<String> e1, Set<String> b1, Set<String> e2, Set<String> b2) {
+        if (e1.isEmpty() || e2.isEmpty()) {
+            return false;
+        }
+        boolean element = false;
+        for (String e : e1) {
+            if (e2.contains(e)) {
+                element = true;
+                break;
+            }
+        }
+        if (!element) {
+            return false;
+        }
+        if (b1.isEmpty() || b2.isEmpty()) {
+            return true;
+        }
+        for (String b : b1) {
+            if (b2.contains(b)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Set<String> heavyElements(IAtomContainer ac) {
+        Set<String> elements = new HashSet<>();
+        for (IAtom atom : ac.atoms()) {
+            if (!atom.getSymbol().equals("H")) {
+                elements.add(atom.getSymbol());
+            }
+        }
+        return elements;
+    }
+
+    private static Set<String> heavyBonds(IAtomContainer ac) {
+        Set<String> bonds = new HashSet<>();
+        for (IBond bond : ac.bonds()) {
+            String a = bond.getBegin().getSymbol();
+            String b = bond.getEnd().getSymbol();
+            if (a.equals("H") || b.equals("H")) {
+                continue;
+            }
+            String order = bond.isAromatic() ? ":" : String.valueOf(bond.getOrder());
+            bonds.add(a.compareTo(b) <= 0 ? a + order + b : b + order + a);
+        }
+        return bonds;
+    }
+
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    private static void union(int[] parent, int i, int j) {
+        int a = find(parent, i);
+        int b = find(parent, j);
+        if (a != b) {
+            parent[Math.max(a, b)] = Math.min(a, b);
+        }
+    }
+
+    private static SmilesGenerator generator() {
+        return new SmilesGenerator(SmiFlavor.Unique | SmiFlavor.UseAromaticSymbols | SmiFlavor.Stereo);
+    }
+
+    private static String smiles(IAtomContainer ac) {
+        if (ac.getAtomCount() == 0) {
+            return null;
+        }
+        try {
+            return generator().create(ac);
+        } catch (CDKException ex) {
+            LOGGER.debug("No unique SMILES for " + ac.getID() + " " + ex.getMessage());
+            return null;
+        }
+    }
+
+    /*
+     * atom indices in the order of the unique SMILES
+     */
+    private static int[] outputOrder(IAtomContainer ac) throws CDKException {
+        int[] order = new int[ac.getAtomCount()];
+        generator().create(ac, order);
+        int[] atoms = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            atoms[order[i]] = i;
+        }
+        return atoms;
+    }
+}
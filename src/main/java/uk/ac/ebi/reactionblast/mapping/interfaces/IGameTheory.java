@@ -20,6 +20,7 @@ package uk.ac.ebi.reactionblast.mapping.interfaces;
 
 import java.io.IOException;
 import java.util.Collection;
+import java.util.List;
 import uk.ac.ebi.reactionblast.mapping.algorithm.Holder;
 import uk.ac.ebi.reactionblast.mapping.container.MoleculeMoleculeMapping;
 import uk.ac.ebi.reactionblast.mapping.graph.MCSSolution;
@@ -67,4 +68,14 @@ public interface IGameTheory {
      * @throws Exception
      */
     public void UpdateMatrix(Collection<MCSSolution> mcsSolutions, Holder mh, boolean removeHydrogen) throws Exception;
+
+    /**
+     * @return number of selection rounds run to map the reaction
+     */
+    public int getRoundCount();
+
+    /**
+     * @return time of each selection round in ms
+     */
+    public List<Long> getRoundTimes();
 }
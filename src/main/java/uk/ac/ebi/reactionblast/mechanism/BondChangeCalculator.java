@@ -69,8 +69,8 @@ import uk.ac.ebi.reactionblast.mechanism.helper.AtomAtomMappingContainer;
 import uk.ac.ebi.reactionblast.mechanism.helper.AtomStereoChangeInformation;
 import uk.ac.ebi.reactionblast.mechanism.helper.BondChange;
 import uk.ac.ebi.reactionblast.mechanism.helper.MoleculeMoleculePair;
+import uk.ac.ebi.reactionblast.mechanism.helper.ReactionCenterDescriptors;
 import uk.ac.ebi.reactionblast.mechanism.helper.ReactionCenterFragment;
-import static uk.ac.ebi.reactionblast.mechanism.helper.Utility.getCircularSMILES;
 import uk.ac.ebi.reactionblast.mechanism.interfaces.AbstractChangeCalculator;
 import static uk.ac.ebi.reactionblast.mechanism.interfaces.ECBLAST_BOND_CHANGE_FLAGS.BOND_CLEAVED;
 import static uk.ac.ebi.reactionblast.mechanism.interfaces.ECBLAST_BOND_CHANGE_FLAGS.BOND_FORMED;
@@ -1041,6 +1041,7 @@ public class BondChangeCalculator extends AbstractChangeCalculator implements IC
         try {
 
             BondEnergies be = getInstance();
+            ReactionCenterDescriptors descriptors = new ReactionCenterDescriptors();
             int rEnergy = 0;
             int pEnergy = 0;
 
@@ -1101,8 +1102,8 @@ public class BondChangeCalculator extends AbstractChangeCalculator implements IC
                             if (DEBUG) {
                                 System.out.println("Educt CircularFingerprints START");
                             }
-                            reactionCenterFragmentList.addAll(getCircularReactionPatternFingerprints(moleculeR, atomR1, REACTANT));
-                            setCircularFingerprints(mappedReaction.getID(), moleculeR, atomR1, reactionCenterStereoChangeFingerprint);
+                            reactionCenterFragmentList.addAll(descriptors.getFragments(moleculeR, atomR1, REACTANT));
+                            descriptors.addFingerprints(mappedReaction.getID(), moleculeR, atomR1, reactionCenterStereoChangeFingerprint);
                             if (DEBUG) {
                                 System.out.println("Educt CircularFingerprints END");
                             }
@@ -1124,8 +1125,8 @@ public class BondChangeCalculator extends AbstractChangeCalculator implements IC
                             if (DEBUG) {
                                 System.out.println("Product CircularFingerprints START");
                             }
-                            reactionCenterFragmentList.addAll(getCircularReactionPatternFingerprints(moleculeP, atomP1, PRODUCT));
-                            setCircularFingerprints(mappedReaction.getID(), moleculeP, atomP1, reactionCenterStereoChangeFingerprint);
+                            reactionCenterFragmentList.addAll(descriptors.getFragments(moleculeP, atomP1, PRODUCT));
+                            descriptors.addFingerprints(mappedReaction.getID(), moleculeP, atomP1, reactionCenterStereoChangeFingerprint);
                             if (DEBUG) {
                                 System.out.println("Product CircularFingerprints END");
                             }
@@ -1168,8 +1169,8 @@ public class BondChangeCalculator extends AbstractChangeCalculator implements IC
                     if (moleculeR.getAtomCount() > 1) {
 
                         if (!atomR1.getSymbol().equals("H")) {
-                            reactionCenterFragmentList.addAll(getCircularReactionPatternFingerprints(moleculeR, atomR1, REACTANT));
-                            setCircularFingerprints(mappedReaction.getID(), moleculeR, atomR1, reactionCenterStereoChangeFingerprint);
+                            reactionCenterFragmentList.addAll(descriptors.getFragments(moleculeR, atomR1, REACTANT));
+                            descriptors.addFingerprints(mappedReaction.getID(), moleculeR, atomR1, reactionCenterStereoChangeFingerprint);
                         }
                     }
                 }
@@ -1186,8 +1187,8 @@ public class BondChangeCalculator extends AbstractChangeCalculator implements IC
                     if (moleculeP.getAtomCount() > 1) {
 
                         if (!atomP1.getSymbol().equals("H")) {
-                            reactionCenterFragmentList.addAll(getCircularReactionPatternFingerprints(moleculeP, atomP1, PRODUCT));
-                            setCircularFingerprints(mappedReaction.getID(), moleculeP, atomP1, reactionCenterStereoChangeFingerprint);
+                            reactionCenterFragmentList.addAll(descriptors.getFragments(moleculeP, atomP1, PRODUCT));
+                            descriptors.addFingerprints(mappedReaction.getID(), moleculeP, atomP1, reactionCenterStereoChangeFingerprint);
                         }
                     }
                 }
@@ -1243,14 +1244,14 @@ public class BondChangeCalculator extends AbstractChangeCalculator implements IC
 
             for (IAtom atom : reactantAtoms) {
                 IAtomContainer relevantAtomContainer = getRelevantAtomContainer(reactants, atom);
-                reactionCenterFragmentList.addAll(getCircularReactionPatternFingerprints(relevantAtomContainer, atom, REACTANT));
-                setCircularFingerprints(mappedReaction.getID(), relevantAtomContainer, atom, reactionCenterOrderChangeFingerprint);
+                reactionCenterFragmentList.addAll(descriptors.getFragments(relevantAtomContainer, atom, REACTANT));
+                descriptors.addFingerprints(mappedReaction.getID(), relevantAtomContainer, atom, reactionCenterOrderChangeFingerprint);
             }
 
             for (IAtom atom : productAtoms) {
                 IAtomContainer relevantAtomContainer = getRelevantAtomContainer(products, atom);
-                reactionCenterFragmentList.addAll(getCircularReactionPatternFingerprints(relevantAtomContainer, atom, PRODUCT));
-                setCircularFingerprints(mappedReaction.getID(), relevantAtomContainer, atom, reactionCenterOrderChangeFingerprint);
+                reactionCenterFragmentList.addAll(descriptors.getFragments(relevantAtomContainer, atom, PRODUCT));
+                descriptors.addFingerprints(mappedReaction.getID(), relevantAtomContainer, atom, reactionCenterOrderChangeFingerprint);
             }
 
             if (DEBUG) {
@@ -1314,12 +1315,12 @@ public class BondChangeCalculator extends AbstractChangeCalculator implements IC
                                 System.out.println("Bond formed, cleaved changes 1 - 1 - 1 FP");
                             }
                             if (!atomP1.getSymbol().equals("H")) {
-                                reactionCenterFragmentList.addAll(getCircularReactionPatternFingerprints(moleculeP, atomP1, PRODUCT));
-                                setCircularFingerprints(mappedReaction.getID(), moleculeP, atomP1, reactionCenterFormedCleavedFingerprint);
+                                reactionCenterFragmentList.addAll(descriptors.getFragments(moleculeP, atomP1, PRODUCT));
+                                descriptors.addFingerprints(mappedReaction.getID(), moleculeP, atomP1, reactionCenterFormedCleavedFingerprint);
                             }
                             if (!atomP2.getSymbol().equals("H")) {
-                                reactionCenterFragmentList.addAll(getCircularReactionPatternFingerprints(moleculeP, atomP2, PRODUCT));
-                                setCircularFingerprints(mappedReaction.getID(), moleculeP, atomP2, reactionCenterFormedCleavedFingerprint);
+                                reactionCenterFragmentList.addAll(descriptors.getFragments(moleculeP, atomP2, PRODUCT));
+                                descriptors.addFingerprints(mappedReaction.getID(), moleculeP, atomP2, reactionCenterFormedCleavedFingerprint);
                             }
 
                             if (DEBUG) {
@@ -1370,12 +1371,12 @@ public class BondChangeCalculator extends AbstractChangeCalculator implements IC
                             IAtom atomE1 = bondR.getAtom(0);
                             IAtom atomE2 = bondR.getAtom(1);
                             if (!atomE1.getSymbol().equals("H")) {
-                                reactionCenterFragmentList.addAll(getCircularReactionPatternFingerprints(moleculeE, atomE1, REACTANT));
-                                setCircularFingerprints(mappedReaction.getID(), moleculeE, atomE1, reactionCenterFormedCleavedFingerprint);
+                                reactionCenterFragmentList.addAll(descriptors.getFragments(moleculeE, atomE1, REACTANT));
+                                descriptors.addFingerprints(mappedReaction.getID(), moleculeE, atomE1, reactionCenterFormedCleavedFingerprint);
                             }
                             if (!atomE2.getSymbol().equals("H")) {
-                                reactionCenterFragmentList.addAll(getCircularReactionPatternFingerprints(moleculeE, atomE2, REACTANT));
-                                setCircularFingerprints(mappedReaction.getID(), moleculeE, atomE2, reactionCenterFormedCleavedFingerprint);
+                                reactionCenterFragmentList.addAll(descriptors.getFragments(moleculeE, atomE2, REACTANT));
+                                descriptors.addFingerprints(mappedReaction.getID(), moleculeE, atomE2, reactionCenterFormedCleavedFingerprint);
                             }
 
                             IAtomContainer reactant = getAtomContainer(bondR, mappedReaction.getReactants());
@@ -1422,8 +1423,8 @@ public class BondChangeCalculator extends AbstractChangeCalculator implements IC
                             esp = PRODUCT;
                         }
                         if (!atom.getSymbol().equals("H")) {
-                            reactionCenterFragmentList.addAll(getCircularReactionPatternFingerprints(relevantAtomContainer, atom, esp));
-                            setCircularFingerprints(mappedReaction.getID(), relevantAtomContainer, atom, reactionCenterFormedCleavedFingerprint);
+                            reactionCenterFragmentList.addAll(descriptors.getFragments(relevantAtomContainer, atom, esp));
+                            descriptors.addFingerprints(mappedReaction.getID(), relevantAtomContainer, atom, reactionCenterFormedCleavedFingerprint);
                         }
                     }
                 }
@@ -1447,22 +1448,22 @@ public class BondChangeCalculator extends AbstractChangeCalculator implements IC
 
                 if (relevantAtomContainer1 != null) {
                     for (int i = 0; i < 3; i++) {
-                        String circularSMILES = getCircularSMILES(relevantAtomContainer1, sourceAtom, i, true);
+                        String circularSMILES = descriptors.getSMILES(relevantAtomContainer1, sourceAtom, i);
                         reactionCenterWFingerprint.add(new Feature(circularSMILES, 1.0));
                     }
                 }
 
                 if (relevantAtomContainer2 != null) {
                     for (int i = 0; i < 3; i++) {
-                        String circularSMILES = getCircularSMILES(relevantAtomContainer2, sinkAtom, i, true);
+                        String circularSMILES = descriptors.getSMILES(relevantAtomContainer2, sinkAtom, i);
                         reactionCenterWFingerprint.add(new Feature(circularSMILES, 1.0));
                     }
                 }
 
                 if (relevantAtomContainer1 != null && relevantAtomContainer2 != null) {
                     for (int i = 1; i < 4; i++) {
-                        String circularSMILESSource = getCircularSMILES(relevantAtomContainer1, sourceAtom, i, true);
-                        String circularSMILESSink = getCircularSMILES(relevantAtomContainer2, sinkAtom, i, true);
+                        String circularSMILESSource = descriptors.getSMILES(relevantAtomContainer1, sourceAtom, i);
+                        String circularSMILESSink = descriptors.getSMILES(relevantAtomContainer2, sinkAtom, i);
                         StringBuilder level = new StringBuilder();
                         level.append(circularSMILESSource).append(">>").append(circularSMILESSink);
                         reactionCenterWFingerprint.add(new Feature(level.toString(), 1.0));
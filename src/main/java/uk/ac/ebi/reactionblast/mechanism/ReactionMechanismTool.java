@@ -25,6 +25,7 @@ import static java.lang.System.out;
 import java.util.ArrayList;
 import java.util.Collection;
 import static java.util.Collections.unmodifiableCollection;
+import static java.util.Collections.unmodifiableList;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
@@ -81,6 +82,8 @@ public class ReactionMechanismTool implements Serializable {
     private MappingSolution selectedMapping;
     private Collection<MappingSolution> allSolutions;
     private final boolean accept_no_change;
+    private boolean degradedMapping = false;
+    private List<IMappingAlgorithm> mappingModels = new ArrayList<>();
 
     /**
      *
@@ -229,6 +232,8 @@ public class ReactionMechanismTool implements Serializable {
                 CallableAtomMappingTool amt = new CallableAtomMappingTool(reaction, standardizer,
                         onlyCoreMappingByMCS, checkComplex);
                 Map<IMappingAlgorithm, Reactor> solutions = amt.getSolutions();
+                degradedMapping = amt.isDegraded();
+                mappingModels = new ArrayList<>(solutions.keySet());
 
                 if (DEBUG) {
                     System.out.println("!!!!Calculating Best Mapping Model!!!!");
@@ -368,11 +373,12 @@ public class ReactionMechanismTool implements Serializable {
             boolean generate2D,
             boolean generate3D
     ) throws Exception {
-        if (reactor.getMappingCount() > 500 & reactor.getMappingCount() < 1000) {
+        int mappingCount = reactor == null ? reaction.getMappingCount() : reactor.getMappingCount();
+        if (mappingCount > 500 & mappingCount < 1000) {
             System.err.println("wolla...are after something big?...so many atoms to compute bond changes!");
             System.err.println("...Let me try..hold on your horses!");
         }
-        if (reactor.getMappingCount() > 1000) {
+        if (mappingCount > 1000) {
             System.err.println("...wolla...are after something big?...!");
             System.err.println("...This might drive me bit crazy ... have to compute so many atoms for bond changes...!");
             System.err.println("...Let me try..hold on your horses!");
@@ -773,6 +779,23 @@ public class ReactionMechanismTool implements Serializable {
         return this.selectedMapping.toString();
     }
 
+    /**
+     *
+     * @return true if the reaction was over the memory budget and mapped by
+     * fewer models
+     */
+    public boolean isDegradedMapping() {
+        return degradedMapping;
+    }
+
+    /**
+     *
+     * @return the mapping models run on the reaction
+     */
+    public List<IMappingAlgorithm> getMappingModels() {
+        return unmodifiableList(mappingModels);
+    }
+
     /**
      *
      * @return
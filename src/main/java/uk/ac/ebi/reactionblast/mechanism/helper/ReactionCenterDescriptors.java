@@ -0,0 +1,292 @@
+/*
+ * Copyright (C) 2007-2020 Syed Asad Rahman <asad @ ebi.ac.uk>.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package uk.ac.ebi.reactionblast.mechanism.helper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IBond;
+import org.openscience.cdk.tools.ILoggingTool;
+import org.openscience.cdk.tools.LoggingToolFactory;
+import uk.ac.ebi.reactionblast.fingerprints.Feature;
+import uk.ac.ebi.reactionblast.fingerprints.PatternFingerprinter;
+import uk.ac.ebi.reactionblast.fingerprints.interfaces.IPatternFingerprinter;
+import uk.ac.ebi.reactionblast.mechanism.interfaces.EnumSubstrateProduct;
+import static org.openscience.smsd.tools.ExtAtomContainerManipulator.cloneWithIDs;
+import static uk.ac.ebi.reactionblast.mechanism.helper.Utility.getSMILES;
+
+/**
+ * Circular descriptors of the reaction centre atoms. Each molecule is viewed
+ * once (adjacency and atom invariants) and the environment of an atom is grown
+ * sphere by sphere from the previous level, level -1 being the connected
+ * component of the atom. The canonical SMILES of a level is generated once
+ * per distinct set of atoms, as the environments of neighbouring reaction
+ * centre atoms and the whole components are shared.
+ * <p>
+ * The molecules must not change while the descriptors are in use; the
+ * fragments returned carry their SMILES and don't refer to the molecules.
+ *
+ * @contact Syed Asad Rahman, EMBL-EBI, Cambridge, UK.
+ * @author Syed Asad Rahman <asad @ ebi.ac.uk>
+ */
+public class ReactionCenterDescriptors {
+
+    private static final ILoggingTool LOGGER
+            = LoggingToolFactory.createLoggingTool(ReactionCenterDescriptors.class);
+
+    /**
+     * Levels of the reaction centre fragments and fingerprints
+     */
+    public static final int[] LEVELS = {0, 1, 2, -1};
+
+    private final Map<IAtomContainer, MoleculeView> views;
+
+    /**
+     *
+     */
+    public ReactionCenterDescriptors() {
+        this.views = new IdentityHashMap<>();
+    }
+
+    /**
+     * Canonical SMILES (without atom-atom mapping) of the circular fragment,
+     * same as {@link Utility#getCircularSMILES}
+     *
+     * @param mol
+     * @param atom
+     * @param level sphere radius, -1 for the connected component
+     * @return SMILES
+     * @throws CDKException if the atom isn't part of the molecule
+     * @throws CloneNotSupportedException
+     */
+    public synchronized String getSMILES(IAtomContainer mol, IAtom atom, int level)
+            throws CDKException, CloneNotSupportedException {
+        MoleculeView view = view(mol);
+        return view.smiles(view.sphere(view.root(atom), level));
+    }
+
+    /**
+     * Reaction centre fragments of the atom at the {@link #LEVELS}, with the
+     * SMILES shared with {@link #addFingerprints}.
+     *
+     * @param mol
+     * @param atom
+     * @param type
+     * @return fragments
+     * @throws CDKException if the atom isn't part of the molecule
+     * @throws CloneNotSupportedException
+     */
+    public synchronized List<ReactionCenterFragment> getFragments(IAtomContainer mol, IAtom atom,
+            EnumSubstrateProduct type) throws CDKException, CloneNotSupportedException {
+        MoleculeView view = view(mol);
+        int root = view.root(atom);
+        List<ReactionCenterFragment> fragments = new ArrayList<>(LEVELS.length);
+        for (int level : LEVELS) {
+            fragments.add(new ReactionCenterFragment(view.smiles(view.sphere(root, level)), level, type));
+        }
+        return fragments;
+    }
+
+    /**
+     * Adds the circular SMILES of the atom at the {@link #LEVELS} to the
+     * fingerprints by level.
+     *
+     * @param rid reaction ID
+     * @param mol
+     * @param atom
+     * @param patternFP
+     * @throws CDKException if the atom isn't part of the molecule
+     * @throws CloneNotSupportedException
+     */
+    public synchronized void addFingerprints(String rid, IAtomContainer mol, IAtom atom,
+            Map<Integer, IPatternFingerprinter> patternFP) throws CDKException, CloneNotSupportedException {
+        MoleculeView view = view(mol);
+        int root = view.root(atom);
+        for (int level : LEVELS) {
+            if (!patternFP.containsKey(level)) {
+                IPatternFingerprinter fp = new PatternFingerprinter();
+                fp.setFingerprintID(rid + ":" + "Signature: " + level);
+                patternFP.put(level, fp);
+            }
+            patternFP.get(level).add(new Feature(view.smiles(view.sphere(root, level)), 1.0));
+        }
+    }
+
+    private MoleculeView view(IAtomContainer mol) {
+        return views.computeIfAbsent(mol, MoleculeView::new);
+    }
+
+    /*
+     * Shared view of a molecule: adjacency, spheres by root atom and SMILES
+     * by atom set
+     */
+    private static class MoleculeView {
+
+        private final IAtomContainer mol;
+        private final Map<IAtom, Integer> index;
+        private final int[][] neighbours;
+        private final Map<Integer, List<BitSet>> spheres;
+        private final Map<BitSet, String> smiles;
+        private int[] components;
+
+        MoleculeView(IAtomContainer mol) {
+            this.mol = mol;
+            int n = mol.getAtomCount();
+            this.index = new HashMap<>(2 * n);
+            for (int i = 0; i < n; i++) {
+                index.put(mol.getAtom(i), i);
+            }
+            int[] degree = new int[n];
+            for (IBond b : mol.bonds()) {
+                Integer u = index.get(b.getBegin());
+                Integer v = index.get(b.getEnd());
+                if (u != null && v != null) {
+                    degree[u]++;
+                    degree[v]++;
+                }
+            }
+            this.neighbours = new int[n][];
+            for (int i = 0; i < n; i++) {
+                neighbours[i] = new int[degree[i]];
+                degree[i] = 0;
+            }
+            for (IBond b : mol.bonds()) {
+                Integer u = index.get(b.getBegin());
+                Integer v = index.get(b.getEnd());
+                if (u != null && v != null) {
+                    neighbours[u][degree[u]++] = v;
+                    neighbours[v][degree[v]++] = u;
+                }
+            }
+            this.spheres = new HashMap<>();
+            this.smiles = new HashMap<>();
+        }
+
+        /*
+         * Index of the atom, matched by ID if the atom belongs to a copy of
+         * the molecule
+         */
+        int root(IAtom atom) throws CDKException {
+            Integer i = index.get(atom);
+            if (i != null) {
+                return i;
+            }
+            if (atom.getID() != null) {
+                for (int j = 0; j < mol.getAtomCount(); j++) {
+                    if (atom.getID().equalsIgnoreCase(mol.getAtom(j).getID())) {
+                        return j;
+                    }
+                }
+            }
+            throw new CDKException("Atom " + atom.getSymbol() + atom.getID() + " not found in " + mol.getID());
+        }
+
+        /*
+         * Atoms within the radius of the root, grown from the previous level
+         */
+        BitSet sphere(int root, int level) {
+            List<BitSet> levels = spheres.computeIfAbsent(root, k -> {
+                List<BitSet> l = new ArrayList<>();
+                BitSet s = new BitSet();
+                s.set(root);
+                l.add(s);
+                return l;
+            });
+            if (level < 0) {
+                return component(root);
+            }
+            while (levels.size() <= level) {
+                BitSet previous = levels.get(levels.size() - 1);
+                if (levels.size() > 1 && previous.equals(levels.get(levels.size() - 2))) {
+                    levels.add(previous);
+                    continue;
+                }
+                BitSet next = (BitSet) previous.clone();
+                for (int i = previous.nextSetBit(0); i >= 0; i = previous.nextSetBit(i + 1)) {
+                    for (int j : neighbours[i]) {
+                        next.set(j);
+                    }
+                }
+                levels.add(next.equals(previous) ? previous : next);
+            }
+            return levels.get(level);
+        }
+
+        /*
+         * Connected component of the atom, shared by all its atoms
+         */
+        BitSet component(int root) {
+            if (components == null) {
+                components = new int[neighbours.length];
+                Arrays.fill(components, -1);
+            }
+            if (components[root] < 0) {
+                int[] queue = new int[neighbours.length];
+                int head = 0, tail = 0;
+                queue[tail++] = root;
+                components[root] = root;
+                while (head < tail) {
+                    int i = queue[head++];
+                    for (int j : neighbours[i]) {
+                        if (components[j] < 0) {
+                            components[j] = root;
+                            queue[tail++] = j;
+                        }
+                    }
+                }
+            }
+            int label = components[root];
+            return spheres.computeIfAbsent(-1 - label, k -> {
+                BitSet s = new BitSet();
+                for (int i = 0; i < components.length; i++) {
+                    if (components[i] == label) {
+                        s.set(i);
+                    }
+                }
+                List<BitSet> l = new ArrayList<>(1);
+                l.add(s);
+                return l;
+            }).get(0);
+        }
+
+        String smiles(BitSet atoms) throws CloneNotSupportedException {
+            String s = smiles.get(atoms);
+            if (s == null) {
+                IAtomContainer fragment = cloneWithIDs(mol);
+                List<IAtom> remove = new ArrayList<>();
+                for (int i = 0; i < fragment.getAtomCount(); i++) {
+                    if (!atoms.get(i)) {
+                        remove.add(fragment.getAtom(i));
+                    }
+                }
+                remove.forEach(fragment::removeAtom);
+                s = getSMILES(fragment, true);
+                smiles.put(atoms, s);
+            }
+            return s;
+        }
+    }
+}
@@ -649,25 +649,7 @@ public abstract class Utility extends MatrixPrinter implements Serializable {
             IAtomContainer molOrignal,
             IAtom atom, Map<Integer, IPatternFingerprinter> patternFP)
             throws Exception, CloneNotSupportedException {
-        IAtomContainer clone = molOrignal.clone();
-        for (int i = 0; i < 3; i++) {
-            if (!patternFP.containsKey(i)) {
-                IPatternFingerprinter fp = new PatternFingerprinter();
-                fp.setFingerprintID(rid + ":" + "Signature: " + i);
-                patternFP.put(i, fp);
-            }
-            String circularSMILES = getCircularSMILES(clone, atom, i, true);
-            patternFP.get(i).add(new Feature(circularSMILES, 1.0));
-        }
-        if (!patternFP.containsKey(-1)) {
-            IPatternFingerprinter fp = new PatternFingerprinter();
-            fp.setFingerprintID(rid + ":" + "Signature: " + -1);
-            patternFP.put(-1, fp);
-        }
-
-        String circularSMILES = getCircularSMILES(clone, atom, -1, true);
-        patternFP.get(-1).add(new Feature(circularSMILES, 1.0));
-
+        new ReactionCenterDescriptors().addFingerprints(rid, molOrignal, atom, patternFP);
     }
 
     /**
@@ -683,17 +665,6 @@ public abstract class Utility extends MatrixPrinter implements Serializable {
             IAtom atom,
             EnumSubstrateProduct type)
             throws Exception, CloneNotSupportedException {
-        List<ReactionCenterFragment> fragmentsRC = new ArrayList<>();
-        IAtomContainer clone = molOrignal.clone();
-        for (int i = 0; i < 3; i++) {
-            String smiles = getCircularSMILES(clone, atom, i, true);
-            ReactionCenterFragment reactionCenterFragment = new ReactionCenterFragment(smiles, i, type);
-//            System.out.println(reactionCenterFragment + " smiles " + smiles);
-            fragmentsRC.add(reactionCenterFragment);
-        }
-        String smiles = getCircularSMILES(clone, atom, -1, true);
-        ReactionCenterFragment reactionCenterFragment = new ReactionCenterFragment(smiles, -1, type);
-        fragmentsRC.add(reactionCenterFragment);
-        return fragmentsRC;
+        return new ReactionCenterDescriptors().getFragments(molOrignal, atom, type);
     }
 }
@@ -0,0 +1,470 @@
+/*
+ * Copyright (C) 2007-2020 Syed Asad Rahman <asad @ ebi.ac.uk>.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package uk.ac.ebi.reactionblast.tools;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.tools.ILoggingTool;
+import static org.openscience.cdk.tools.LoggingToolFactory.createLoggingTool;
+import uk.ac.ebi.reactionblast.fingerprints.interfaces.IPatternFingerprinter;
+
+/**
+ * All-vs-all similarity of one kind of reaction fingerprint (BC, RC or ST).
+ * The score is the weighted Tanimoto of
+ * {@link ReactionSimilarityTool#getSimilarity(IPatternFingerprinter, IPatternFingerprinter)}
+ * computed on sparse copies of the weighted hashed fingerprints.
+ *
+ * The upper triangle of the matrix is cut into tiles of
+ * {@code blockSize x blockSize} reactions so that the fingerprints of both
+ * blocks stay in cache, the tiles are computed on a thread pool. The matrix is
+ * either streamed tile by tile or reduced to the top-k neighbours of each
+ * reaction, it is never held in memory.
+ *
+ * @contact Syed Asad Rahman, EMBL-EBI, Cambridge, UK.
+ * @author Syed Asad Rahman <asad @ ebi.ac.uk>
+ */
+public class BlockedSimilarityMatrix {
+
+    private static final ILoggingTool LOGGER
+            = createLoggingTool(BlockedSimilarityMatrix.class);
+    private static final boolean DEBUG = false;
+
+    /**
+     * Receives the tiles of the matrix
+     */
+    public interface TileHandler {
+
+        /**
+         * Called once per tile of the upper triangle (rowStart &lt;= colStart),
+         * calls are serialised by the matrix.
+         *
+         * @param rowStart first row (inclusive)
+         * @param rowEnd last row (exclusive)
+         * @param colStart first column (inclusive)
+         * @param colEnd last column (exclusive)
+         * @param scores row-major scores of the tile
+         * @throws IOException
+         */
+        void tile(int rowStart, int rowEnd, int colStart, int colEnd, double[] scores) throws IOException;
+    }
+
+    /**
+     * Neighbour of a reaction
+     */
+    public static class Neighbour implements Comparable<Neighbour> {
+
+        private final int index;
+        private final double score;
+
+        Neighbour(int index, double score) {
+            this.index = index;
+            this.score = score;
+        }
+
+        /**
+         * @return index of the neighbour
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * @return similarity score
+         */
+        public double getScore() {
+            return score;
+        }
+
+        @Override
+        public int compareTo(Neighbour o) {
+            int c = Double.compare(o.score, score);
+            return c != 0 ? c : Integer.compare(index, o.index);
+        }
+
+        @Override
+        public String toString() {
+            return index + ":" + score;
+        }
+    }
+
+    private final int size;
+    private final int blockSize;
+    /*
+     * Sparse fingerprints: features of row i are at offsets[i]..offsets[i+1]
+     */
+    private final int[] offsets;
+    private final int[] indices;
+    private final double[] values;
+    private final double[] squares;
+    private final boolean nonNegative;
+
+    /**
+     *
+     * @param fingerprints fingerprints of the reactions, all of the same size
+     * @throws CDKException if the fingerprint sizes differ
+     */
+    public BlockedSimilarityMatrix(List<IPatternFingerprinter> fingerprints) throws CDKException {
+        this(fingerprints, 256);
+    }
+
+    /**
+     *
+     * @param fingerprints fingerprints of the reactions, all of the same size
+     * @param blockSize number of reactions per tile side
+     * @throws CDKException if the fingerprint sizes differ
+     */
+    public BlockedSimilarityMatrix(List<IPatternFingerprinter> fingerprints, int blockSize) throws CDKException {
+        this.size = fingerprints.size();
+        this.blockSize = Math.max(1, blockSize);
+        this.offsets = new int[size + 1];
+        this.squares = new double[size];
+
+        int fingerprintSize = -1;
+        int nonZero = 0;
+        boolean positive = true;
+        List<int[]> sparseIndices = new ArrayList<>(size);
+        List<double[]> sparseValues = new ArrayList<>(size);
+        for (IPatternFingerprinter fp : fingerprints) {
+            if (fingerprintSize == -1) {
+                fingerprintSize = fp.getFingerprintSize();
+            } else if (fingerprintSize != fp.getFingerprintSize()) {
+                throw new CDKException("Features vectors must be of the same length");
+            }
+            double[] v = fp.getWeightedHashedFingerPrint();
+            int n = 0;
+            for (double d : v) {
+                if (d != 0.0) {
+                    n++;
+                }
+            }
+            int[] idx = new int[n];
+            double[] val = new double[n];
+            n = 0;
+            for (int f = 0; f < v.length; f++) {
+                if (v[f] != 0.0) {
+                    idx[n] = f;
+                    val[n] = v[f];
+                    positive &= v[f] > 0.0;
+                    n++;
+                }
+            }
+            sparseIndices.add(idx);
+            sparseValues.add(val);
+            nonZero += n;
+        }
+
+        this.indices = new int[nonZero];
+        this.values = new double[nonZero];
+        int k = 0;
+        for (int i = 0; i < size; i++) {
+            offsets[i] = k;
+            int[] idx = sparseIndices.get(i);
+            double[] val = sparseValues.get(i);
+            double a2 = 0.0;
+            for (int f = 0; f < idx.length; f++) {
+                indices[k] = idx[f];
+                values[k] = val[f];
+                a2 += val[f] * val[f];
+                k++;
+            }
+            squares[i] = a2;
+        }
+        offsets[size] = k;
+        this.nonNegative = positive;
+    }
+
+    /**
+     * @return number of reactions
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     *
+     * @param i
+     * @param j
+     * @return similarity of the reactions i and j
+     */
+    public double getScore(int i, int j) {
+        double a2 = squares[i];
+        double b2 = squares[j];
+        if (a2 <= 0.0 || b2 <= 0.0) {
+            return 0.0;
+        }
+        double ab = dot(i, j);
+        return ab / (a2 + b2 - ab);
+    }
+
+    /**
+     * Streams the upper triangle (diagonal included) of the matrix tile by
+     * tile to the handler.
+     *
+     * @param handler
+     * @param threads
+     * @throws IOException
+     */
+    public void forEachTile(TileHandler handler, int threads) throws IOException {
+        run(threads, (rowStart, colStart) -> {
+            int rowEnd = Math.min(size, rowStart + blockSize);
+            int colEnd = Math.min(size, colStart + blockSize);
+            int cols = colEnd - colStart;
+            double[] scores = new double[(rowEnd - rowStart) * cols];
+            for (int i = rowStart; i < rowEnd; i++) {
+                int row = (i - rowStart) * cols;
+                for (int j = colStart; j < colEnd; j++) {
+                    scores[row + j - colStart] = getScore(i, j);
+                }
+            }
+            synchronized (handler) {
+                handler.tile(rowStart, rowEnd, colStart, colEnd, scores);
+            }
+        });
+    }
+
+    /**
+     * Top-k neighbours of every reaction with a score of at least threshold,
+     * the reaction itself excluded.
+     *
+     * @param k maximum number of neighbours per reaction
+     * @param threshold minimum score
+     * @param threads
+     * @return neighbours of each reaction, best first
+     * @throws IOException
+     */
+    public List<List<Neighbour>> getTopNeighbours(int k, double threshold, int threads) throws IOException {
+        final TopK[] best = new TopK[size];
+        for (int i = 0; i < size; i++) {
+            best[i] = new TopK(k);
+        }
+        if (k > 0) {
+            run(threads, (rowStart, colStart) -> {
+                int rowEnd = Math.min(size, rowStart + blockSize);
+                int colEnd = Math.min(size, colStart + blockSize);
+                for (int i = rowStart; i < rowEnd; i++) {
+                    TopK rowBest = new TopK(k);
+                    for (int j = Math.max(colStart, i + 1); j < colEnd; j++) {
+                        if (!isCandidate(i, j, threshold)) {
+                            continue;
+                        }
+                        double score = getScore(i, j);
+                        if (score >= threshold) {
+                            rowBest.offer(j, score);
+                            synchronized (best[j]) {
+                                best[j].offer(i, score);
+                            }
+                        }
+                    }
+                    synchronized (best[i]) {
+                        best[i].addAll(rowBest);
+                    }
+                }
+            });
+        }
+        List<List<Neighbour>> neighbours = new ArrayList<>(size);
+        for (TopK t : best) {
+            neighbours.add(t.toList());
+        }
+        return neighbours;
+    }
+
+    /*
+     * Upper bound of the Tanimoto score from the norms: ab <= |a||b|
+     */
+    private boolean isCandidate(int i, int j, double threshold) {
+        if (threshold <= 0.0 || !nonNegative) {
+            return true;
+        }
+        double a2 = squares[i];
+        double b2 = squares[j];
+        if (a2 <= 0.0 || b2 <= 0.0) {
+            return false;
+        }
+        double ab = Math.sqrt(a2 * b2);
+        return ab / (a2 + b2 - ab) >= threshold;
+    }
+
+    private double dot(int i, int j) {
+        int p = offsets[i];
+        int pEnd = offsets[i + 1];
+        int q = offsets[j];
+        int qEnd = offsets[j + 1];
+        double ab = 0.0;
+        while (p < pEnd && q < qEnd) {
+            int a = indices[p];
+            int b = indices[q];
+            if (a == b) {
+                ab += values[p++] * values[q++];
+            } else if (a < b) {
+                p++;
+            } else {
+                q++;
+            }
+        }
+        return ab;
+    }
+
+    private interface TileJob {
+
+        void compute(int rowStart, int colStart) throws IOException;
+    }
+
+    private void run(int threads, TileJob job) throws IOException {
+        List<Callable<Void>> tiles = new ArrayList<>();
+        for (int rowStart = 0; rowStart < size; rowStart += blockSize) {
+            for (int colStart = rowStart; colStart < size; colStart += blockSize) {
+                final int r = rowStart;
+                final int c = colStart;
+                tiles.add(() -> {
+                    job.compute(r, c);
+                    return null;
+                });
+            }
+        }
+        if (DEBUG) {
+            System.out.println("Similarity tiles " + tiles.size() + " of " + size + " reactions");
+        }
+        if (tiles.isEmpty()) {
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, tiles.size())));
+        try {
+            for (Future<Void> f : executor.invokeAll(tiles)) {
+                f.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while computing the similarity matrix", ex);
+        } catch (ExecutionException ex) {
+            LOGGER.debug("Similarity tile failed " + ex.getCause());
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            throw new IOException(ex.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /*
+     * Bounded min-heap of (index, score), the worst kept neighbour at the root
+     */
+    private static class TopK {
+
+        private final int k;
+        private final int[] ids;
+        private final double[] scores;
+        private int count;
+
+        TopK(int k) {
+            this.k = Math.max(0, k);
+            this.ids = new int[this.k];
+            this.scores = new double[this.k];
+            this.count = 0;
+        }
+
+        void offer(int id, double score) {
+            if (k == 0) {
+                return;
+            }
+            if (count < k) {
+                ids[count] = id;
+                scores[count] = score;
+                siftUp(count++);
+            } else if (worse(0, score, id)) {
+                ids[0] = id;
+                scores[0] = score;
+                siftDown(0);
+            }
+        }
+
+        void addAll(TopK other) {
+            for (int i = 0; i < other.count; i++) {
+                offer(other.ids[i], other.scores[i]);
+            }
+        }
+
+        List<Neighbour> toList() {
+            if (count == 0) {
+                return Collections.emptyList();
+            }
+            Neighbour[] n = new Neighbour[count];
+            for (int i = 0; i < count; i++) {
+                n[i] = new Neighbour(ids[i], scores[i]);
+            }
+            Arrays.sort(n);
+            return Arrays.asList(n);
+        }
+
+        /*
+         * true if the entry at position p ranks below (score, id)
+         */
+        private boolean worse(int p, double score, int id) {
+            return scores[p] < score || (scores[p] == score && ids[p] > id);
+        }
+
+        private void siftUp(int p) {
+            while (p > 0) {
+                int parent = (p - 1) / 2;
+                if (!worse(p, scores[parent], ids[parent])) {
+                    break;
+                }
+                swap(p, parent);
+                p = parent;
+            }
+        }
+
+        private void siftDown(int p) {
+            while (true) {
+                int l = 2 * p + 1;
+                int r = l + 1;
+                int min = p;
+                if (l < count && worse(l, scores[min], ids[min])) {
+                    min = l;
+                }
+                if (r < count && worse(r, scores[min], ids[min])) {
+                    min = r;
+                }
+                if (min == p) {
+                    break;
+                }
+                swap(p, min);
+                p = min;
+            }
+        }
+
+        private void swap(int a, int b) {
+            int id = ids[a];
+            ids[a] = ids[b];
+            ids[b] = id;
+            double s = scores[a];
+            scores[a] = scores[b];
+            scores[b] = s;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2007-2020 Syed Asad Rahman <asad @ ebi.ac.uk>.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package uk.ac.ebi.reactionblast.tools;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import static java.util.logging.Level.SEVERE;
+import javax.vecmath.Point2d;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.layout.NonplanarBonds;
+import org.openscience.cdk.layout.StructureDiagramGenerator;
+import org.openscience.cdk.tools.ILoggingTool;
+import static org.openscience.cdk.tools.LoggingToolFactory.createLoggingTool;
+import uk.ac.ebi.reactionblast.tools.labelling.CanonicalForm;
+
+/**
+ * 2D coordinate policy of the pipeline: usable input coordinates are kept,
+ * otherwise the layout of the {@link StructureDiagramGenerator} is computed
+ * once per canonical structure and copied onto later molecules with the same
+ * canonical SMILES (cofactors such as ATP or NAD(P)H are laid out once per
+ * process).
+ *
+ * @contact Syed Asad Rahman, EMBL-EBI, Cambridge, UK.
+ * @author Syed Asad Rahman <asad @ ebi.ac.uk>
+ */
+public class LayoutCache {
+
+    private static final ILoggingTool LOGGER
+            = createLoggingTool(LayoutCache.class);
+    private static final boolean DEBUG = false;
+    private static final int MAX_ENTRIES = 4096;
+
+    /*
+     * canonical SMILES -> coordinates in canonical rank order
+     */
+    private static final Map<String, Point2d[]> CACHE
+            = new LinkedHashMap<String, Point2d[]>(256, 0.75f, true) {
+        private static final long serialVersionUID = 0x6a2d4f1c83e5L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Point2d[]> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    /**
+     * True if every atom has 2D coordinates and the coordinates are not
+     * collapsed onto one point (as in MOL blocks written without a layout).
+     *
+     * @param ac
+     * @return
+     */
+    public static boolean hasUsable2DCoordinates(IAtomContainer ac) {
+        if (ac.getAtomCount() == 0) {
+            return true;
+        }
+        double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+        for (IAtom a : ac.atoms()) {
+            Point2d p = a.getPoint2d();
+            if (p == null) {
+                return false;
+            }
+            minX = Math.min(minX, p.x);
+            minY = Math.min(minY, p.y);
+            maxX = Math.max(maxX, p.x);
+            maxY = Math.max(maxY, p.y);
+        }
+        return ac.getAtomCount() == 1 || maxX > minX || maxY > minY;
+    }
+
+    /**
+     * Sets 2D coordinates on the molecule (in place) unless it already has
+     * usable ones.
+     *
+     * @param ac
+     * @return true if new coordinates were assigned
+     */
+    public static boolean layout(IAtomContainer ac) {
+        if (ac == null || hasUsable2DCoordinates(ac)) {
+            return false;
+        }
+        CanonicalForm form = CanonicalForm.create(ac);
+        if (form != null) {
+            Point2d[] coordinates;
+            synchronized (CACHE) {
+                coordinates = CACHE.get(form.getKey());
+            }
+            if (coordinates != null && coordinates.length == ac.getAtomCount()) {
+                for (int i = 0; i < ac.getAtomCount(); i++) {
+                    ac.getAtom(i).setPoint2d(new Point2d(coordinates[form.getRank(i)]));
+                }
+                try {
+                    NonplanarBonds.assign(ac);
+                } catch (IllegalArgumentException e) {
+                    LOGGER.debug("Unable to assign wedges " + e.getMessage());
+                }
+                if (DEBUG) {
+                    System.out.println("Layout reused for " + form.getKey());
+                }
+                return true;
+            }
+        }
+        try {
+            StructureDiagramGenerator sdg = new StructureDiagramGenerator();
+            sdg.setMolecule(ac, false);
+            sdg.generateCoordinates();
+        } catch (CDKException | IllegalArgumentException e) {
+            LOGGER.error(SEVERE, "Error in 2D Generation ", e.getMessage());
+            return false;
+        }
+        if (form != null) {
+            Point2d[] coordinates = new Point2d[ac.getAtomCount()];
+            for (int i = 0; i < ac.getAtomCount(); i++) {
+                Point2d p = ac.getAtom(i).getPoint2d();
+                if (p == null) {
+                    return true;
+                }
+                coordinates[form.getRank(i)] = new Point2d(p);
+            }
+            synchronized (CACHE) {
+                CACHE.put(form.getKey(), coordinates);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the molecule if it has usable 2D coordinates else a laid out
+     * clone.
+     *
+     * @param ac
+     * @return molecule with 2D coordinates
+     */
+    public static IAtomContainer getMoleculeWithLayout(IAtomContainer ac) {
+        if (ac == null || hasUsable2DCoordinates(ac)) {
+            return ac;
+        }
+        try {
+            IAtomContainer clone = ac.clone();
+            layout(clone);
+            return clone;
+        } catch (CloneNotSupportedException e) {
+            LOGGER.error(SEVERE, "Unable to clone " + ac.getID(), e.getMessage());
+        }
+        return ac;
+    }
+
+    /**
+     * @return number of cached layouts
+     */
+    public static int size() {
+        synchronized (CACHE) {
+            return CACHE.size();
+        }
+    }
+
+    /**
+     * Drops the cached layouts
+     */
+    public static void clear() {
+        synchronized (CACHE) {
+            CACHE.clear();
+        }
+    }
+
+    private LayoutCache() {
+    }
+}
@@ -40,17 +40,7 @@ public class LayoutCheck {
      * @return
      */
     public static IAtomContainer getMoleculeWithLayoutCheck(IAtomContainer mol) {
-        if (!has2DCoordinates(mol)) {
-            try {
-                StructureDiagramGenerator sdg = new StructureDiagramGenerator(new AtomContainer(mol));
-                sdg.generateCoordinates();
-                mol = sdg.getMolecule();
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-        }
-
-        return mol;
+        return LayoutCache.getMoleculeWithLayout(mol);
     }
 
     /**
@@ -0,0 +1,371 @@
+/*
+ * Copyright (C) 2007-2020 Syed Asad Rahman <asad @ ebi.ac.uk>.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package uk.ac.ebi.reactionblast.tools;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IReaction;
+import org.openscience.cdk.silent.SilentChemObjectBuilder;
+import org.openscience.cdk.smiles.SmiFlavor;
+import org.openscience.cdk.smiles.SmilesGenerator;
+import org.openscience.cdk.smiles.SmilesParser;
+import org.openscience.cdk.tools.ILoggingTool;
+import static org.openscience.cdk.tools.LoggingToolFactory.createLoggingTool;
+import static org.openscience.smsd.tools.ExtAtomContainerManipulator.percieveAtomTypesAndConfigureAtoms;
+import uk.ac.ebi.reactionblast.interfaces.IStandardizer;
+
+/**
+ * Reads reaction SMILES, one reaction per line ("SMILES [ID]", blank lines
+ * and lines starting with # are skipped).
+ * <p>
+ * Each thread keeps its own {@link SmilesParser} and standardizer, so the
+ * lines are parsed and standardized in parallel without sharing any lock.
+ * The entries come back in input order; a line which fails is reported with
+ * its line number and error, the other lines are not affected. A file is
+ * streamed: the lines are read in slices, at most a few slices per thread
+ * ahead of the consumer. The reactions are prepared as on the command line,
+ * by a round trip through mapped SMILES.
+ *
+ * @contact Syed Asad Rahman, EMBL-EBI, Cambridge, UK.
+ * @author Syed Asad Rahman <asad @ ebi.ac.uk>
+ */
+public class ReactionSmilesReader {
+
+    private final static boolean DEBUG = false;
+    private final static ILoggingTool LOGGER
+            = createLoggingTool(ReactionSmilesReader.class);
+
+    private static final int SLICE_SIZE = 64;
+    /*
+     * slices per thread read ahead of the consumer
+     */
+    private static final int LOOKAHEAD = 2;
+
+    private static final ThreadLocal<SmilesParser> PARSER
+            = ThreadLocal.withInitial(() -> new SmilesParser(SilentChemObjectBuilder.getInstance()));
+
+    private static final ThreadLocal<IStandardizer> STANDARDIZER
+            = ThreadLocal.withInitial(StandardizeReaction::new);
+
+    private final int threads;
+    private final boolean standardize;
+
+    /**
+     *
+     * @param threads number of parser threads
+     * @param standardize standardize the parsed reactions
+     */
+    public ReactionSmilesReader(int threads, boolean standardize) {
+        this.threads = Math.max(1, threads);
+        this.standardize = standardize;
+    }
+
+    /**
+     * The SMILES parser of the calling thread.
+     *
+     * @return parser, reused by later calls from the same thread
+     */
+    public static SmilesParser getParser() {
+        return PARSER.get();
+    }
+
+    /**
+     * Parses a reaction SMILES as the command line does: the reaction is
+     * written as mapped SMILES, parsed again and its atoms typed, see
+     * {@link #convertRoundTripRXNSMILES(IReaction)}. If the round trip fails
+     * the atoms of the parsed reaction are typed.
+     *
+     * @param smiles reaction SMILES
+     * @param id reaction ID
+     * @return reaction
+     * @throws CDKException if the SMILES is invalid
+     */
+    public static IReaction parse(String smiles, String id) throws CDKException {
+        IReaction reaction = getParser().parseReactionSmiles(smiles);
+        try {
+            reaction = convertRoundTripRXNSMILES(reaction);
+        } catch (CDKException e) {
+            LOGGER.debug("Round trip of " + id + " failed " + e.getMessage());
+            for (IAtomContainer ac : reaction.getReactants().atomContainers()) {
+                percieveAtomTypesAndConfigureAtoms(ac);
+            }
+            for (IAtomContainer ac : reaction.getProducts().atomContainers()) {
+                percieveAtomTypesAndConfigureAtoms(ac);
+            }
+        }
+        reaction.setID(id);
+        return reaction;
+    }
+
+    /**
+     * Writes the reaction as SMILES (atom-atom mapping, aromatic symbols and
+     * stereo) and parses it again with the parser of the calling thread, the
+     * atoms are typed and the molecule IDs kept.
+     *
+     * @param reaction
+     * @return reaction parsed from its SMILES
+     * @throws CDKException
+     */
+    public static IReaction convertRoundTripRXNSMILES(IReaction reaction) throws CDKException {
+        SmilesGenerator sg = new SmilesGenerator(
+                SmiFlavor.AtomAtomMap
+                | SmiFlavor.UseAromaticSymbols
+                | SmiFlavor.Stereo);
+        IReaction parsed = getParser().parseReactionSmiles(sg.create(reaction));
+        parsed.setID(reaction.getID());
+        for (int i = 0; i < reaction.getReactantCount(); i++) {
+            IAtomContainer ac = parsed.getReactants().getAtomContainer(i);
+            percieveAtomTypesAndConfigureAtoms(ac);
+            ac.setID(reaction.getReactants().getAtomContainer(i).getID());
+        }
+        for (int i = 0; i < reaction.getProductCount(); i++) {
+            IAtomContainer ac = parsed.getProducts().getAtomContainer(i);
+            percieveAtomTypesAndConfigureAtoms(ac);
+            ac.setID(reaction.getProducts().getAtomContainer(i).getID());
+        }
+        return parsed;
+    }
+
+    /**
+     * Reads all the reactions of a file.
+     *
+     * @param file reaction SMILES file
+     * @return one entry per reaction line, in file order
+     * @throws IOException
+     */
+    public List<Entry> read(File file) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        read(file, entries::add);
+        return entries;
+    }
+
+    /**
+     * Streams the reactions of a file to the consumer, which is called on
+     * the calling thread in file order.
+     *
+     * @param file reaction SMILES file
+     * @param consumer
+     * @throws IOException
+     */
+    public void read(File file, Consumer<Entry> consumer) throws IOException {
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), UTF_8))) {
+            read(reader, consumer);
+        }
+    }
+
+    /**
+     * Streams the reactions of a reader to the consumer, which is called on
+     * the calling thread in input order.
+     *
+     * @param reader reaction SMILES lines
+     * @param consumer
+     * @throws IOException
+     */
+    public void read(BufferedReader reader, Consumer<Entry> consumer) throws IOException {
+        read(reader::readLine, consumer);
+    }
+
+    /**
+     * Reads the reactions of the lines.
+     *
+     * @param lines reaction SMILES lines
+     * @return one entry per reaction line, in input order
+     * @throws IOException if interrupted
+     */
+    public List<Entry> read(List<String> lines) throws IOException {
+        Iterator<String> iterator = lines.iterator();
+        List<Entry> entries = new ArrayList<>(lines.size());
+        read(() -> iterator.hasNext() ? iterator.next() : null, entries::add);
+        if (DEBUG) {
+            long failed = entries.stream().filter(e -> !e.isParsed()).count();
+            System.out.println("Reaction SMILES " + entries.size() + ", failed " + failed);
+        }
+        return entries;
+    }
+
+    /*
+     * Next line, null at the end
+     */
+    private interface Lines {
+
+        String next() throws IOException;
+    }
+
+    /*
+     * The slices are parsed on the pool and handed over in order, reading
+     * stops while the window of slices in flight is full
+     */
+    private void read(Lines lines, Consumer<Entry> consumer) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        Deque<Future<List<Entry>>> window = new ArrayDeque<>();
+        try {
+            int first = 1;
+            List<String> slice = new ArrayList<>(SLICE_SIZE);
+            String line;
+            while ((line = lines.next()) != null) {
+                slice.add(line);
+                if (slice.size() == SLICE_SIZE) {
+                    window.add(executor.submit(parse(slice, first)));
+                    first += slice.size();
+                    slice = new ArrayList<>(SLICE_SIZE);
+                    if (window.size() >= LOOKAHEAD * threads) {
+                        deliver(window.poll(), consumer);
+                    }
+                }
+            }
+            if (!slice.isEmpty()) {
+                window.add(executor.submit(parse(slice, first)));
+            }
+            while (!window.isEmpty()) {
+                deliver(window.poll(), consumer);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Callable<List<Entry>> parse(List<String> slice, int first) {
+        return () -> {
+            List<Entry> entries = new ArrayList<>(slice.size());
+            for (int i = 0; i < slice.size(); i++) {
+                Entry entry = read(slice.get(i), first + i);
+                if (entry != null) {
+                    entries.add(entry);
+                }
+            }
+            return entries;
+        };
+    }
+
+    private static void deliver(Future<List<Entry>> slice, Consumer<Entry> consumer) throws IOException {
+        try {
+            slice.get().forEach(consumer);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading reaction SMILES", ex);
+        } catch (ExecutionException ex) {
+            throw new IOException(ex.getCause());
+        }
+    }
+
+    /*
+     * null for blank and comment lines
+     */
+    private Entry read(String line, int lineNumber) {
+        String trimmed = line.trim();
+        if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+            return null;
+        }
+        String[] f = trimmed.split("\\s+", 2);
+        String id = f.length > 1 ? f[1].trim() : "smiles_" + lineNumber;
+        try {
+            IReaction reaction = parse(f[0], id);
+            if (standardize) {
+                reaction = STANDARDIZER.get().standardize(reaction);
+            }
+            return new Entry(lineNumber, id, reaction, null);
+        } catch (Exception ex) {
+            LOGGER.debug("Line " + lineNumber + " " + id + ": " + ex.getMessage());
+            String error = ex.getMessage() == null ? ex.getClass().getSimpleName() : ex.getMessage();
+            return new Entry(lineNumber, id, null, error);
+        }
+    }
+
+    /**
+     * Result of one reaction line.
+     */
+    public static class Entry {
+
+        private final int line;
+        private final String id;
+        private final IReaction reaction;
+        private final String error;
+
+        Entry(int line, String id, IReaction reaction, String error) {
+            this.line = line;
+            this.id = id;
+            this.reaction = reaction;
+            this.error = error;
+        }
+
+        /**
+         *
+         * @return line number in the input (from 1)
+         */
+        public int getLine() {
+            return line;
+        }
+
+        /**
+         *
+         * @return reaction ID
+         */
+        public String getId() {
+            return id;
+        }
+
+        /**
+         *
+         * @return reaction, null if the line failed
+         */
+        public IReaction getReaction() {
+            return reaction;
+        }
+
+        /**
+         *
+         * @return error message, null if the line was parsed
+         */
+        public String getError() {
+            return error;
+        }
+
+        /**
+         *
+         * @return true if the line was parsed
+         */
+        public boolean isParsed() {
+            return reaction != null;
+        }
+
+        @Override
+        public String toString() {
+            return "Entry{" + "line=" + line + ", id=" + id
+                    + (error == null ? "" : ", error=" + error) + '}';
+        }
+    }
+}
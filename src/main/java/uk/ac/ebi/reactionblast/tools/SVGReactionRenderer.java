@@ -0,0 +1,299 @@
+/*
+ * Copyright (C) 2007-2020 Syed Asad Rahman <asad @ ebi.ac.uk>.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package uk.ac.ebi.reactionblast.tools;
+
+import static java.awt.Color.GREEN;
+import static java.awt.Color.RED;
+import static java.awt.Color.WHITE;
+import static java.awt.GraphicsEnvironment.isHeadless;
+import java.awt.geom.Rectangle2D;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import static java.lang.System.setProperty;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.Files.write;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import java.util.concurrent.Future;
+import static java.util.logging.Level.SEVERE;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IReaction;
+import org.openscience.cdk.tools.ILoggingTool;
+import static org.openscience.cdk.tools.LoggingToolFactory.createLoggingTool;
+import uk.ac.ebi.reactionblast.graphics.direct.DirectMoleculeDrawer;
+import uk.ac.ebi.reactionblast.graphics.direct.DirectRBLastReactionDrawer;
+import uk.ac.ebi.reactionblast.graphics.direct.Highlighter;
+import uk.ac.ebi.reactionblast.graphics.direct.Params;
+import uk.ac.ebi.reactionblast.graphics.direct.RootSystem;
+import uk.ac.ebi.reactionblast.graphics.direct.SVGGraphics2D;
+import static uk.ac.ebi.reactionblast.graphics.direct.SignatureRootFinder.findRootSystems;
+import uk.ac.ebi.reactionblast.graphics.direct.SimpleHighlighter;
+import uk.ac.ebi.reactionblast.graphics.direct.awtlayout.LeftToRightAWTReactionLayout;
+import uk.ac.ebi.reactionblast.graphics.direct.layout.LeftToRightReactionLayout;
+import uk.ac.ebi.reactionblast.mapping.helper.RBlastReaction;
+
+/**
+ * Renders mapped reactions as SVG with the direct drawers. Unlike the
+ * synchronized {@link ImageGenerator} methods, every call builds its own
+ * drawer, layouts and {@link SVGGraphics2D}, so reactions can be rendered
+ * concurrently; {@link #renderAll} writes a batch of images (e.g. thumbnails)
+ * to a directory or a zip archive using a pool of threads.
+ *
+ * @contact Syed Asad Rahman, EMBL-EBI, Cambridge, UK.
+ * @author Syed Asad Rahman <asad @ ebi.ac.uk>
+ */
+public class SVGReactionRenderer {
+
+    private static final ILoggingTool LOGGER
+            = createLoggingTool(SVGReactionRenderer.class);
+
+    /**
+     *
+     */
+    public final static int THUMBNAIL_WIDTH = 400;
+
+    /**
+     *
+     */
+    public final static int THUMBNAIL_HEIGHT = 200;
+
+    static {
+        setProperty("java.awt.headless", "true");
+        LOGGER.debug("Headless enabled: " + isHeadless());
+    }
+
+    /**
+     * What is highlighted on the reaction
+     */
+    public enum Style {
+
+        /**
+         * Mapped substructures, as in the AAM images
+         */
+        MAPPING,
+        /**
+         * Reaction centre atoms (red) and their neighbours (green)
+         */
+        REACTION_CENTRE
+    }
+
+    private final Style style;
+    private final boolean shouldCrop;
+
+    /**
+     *
+     */
+    public SVGReactionRenderer() {
+        this(Style.MAPPING, true);
+    }
+
+    /**
+     *
+     * @param style
+     * @param shouldCrop crop the view box to the drawn bounds
+     */
+    public SVGReactionRenderer(Style style, boolean shouldCrop) {
+        this.style = style;
+        this.shouldCrop = shouldCrop;
+    }
+
+    /**
+     * Renders a mapped reaction.
+     *
+     * @param reaction
+     * @param width
+     * @param height
+     * @return SVG document
+     */
+    public String render(IReaction reaction, int width, int height) {
+        RBlastReaction rblReaction = new RBlastReaction(reaction, true);
+        DirectRBLastReactionDrawer drawer
+                = new DirectRBLastReactionDrawer(newParams(),
+                        new LeftToRightReactionLayout(),
+                        new LeftToRightAWTReactionLayout());
+        if (style == Style.REACTION_CENTRE) {
+            addReactionCentreHighlights(reaction, rblReaction, drawer);
+        }
+
+        SVGGraphics2D g = new SVGGraphics2D();
+        g.setColor(WHITE);
+        g.fillRect(0, 0, width, height);
+        Rectangle2D finalBounds
+                = drawer.drawRBlastReaction(rblReaction, width, height, g);
+        g.dispose();
+        if (shouldCrop && finalBounds != null
+                && (finalBounds.getWidth() != width
+                || finalBounds.getHeight() != height)) {
+            return g.getSVGDocument(finalBounds.getX(), finalBounds.getY(),
+                    finalBounds.getWidth(), finalBounds.getHeight());
+        }
+        return g.getSVGDocument(0, 0, width, height);
+    }
+
+    /**
+     * Renders the reactions in parallel, one {@code <id>.svg} per reaction. If
+     * the output name ends with {@code .zip} the images are written as entries
+     * of a zip archive else into the directory (created if missing).
+     *
+     * @param reactions reactions by ID, entries are written in map order to
+     * the archive
+     * @param output directory or zip file
+     * @param width
+     * @param height
+     * @param threads
+     * @return number of images written
+     * @throws IOException
+     */
+    public int renderAll(Map<String, IReaction> reactions, File output,
+            int width, int height, int threads) throws IOException {
+        boolean zip = output.getName().toLowerCase().endsWith(".zip");
+        if (!zip && !output.exists() && !output.mkdirs()) {
+            throw new IOException("Unable to create directory " + output);
+        }
+        ExecutorService executor = newFixedThreadPool(Math.max(1, threads));
+        try (OutputStream out = zip
+                ? new BufferedOutputStream(new FileOutputStream(output)) : null;
+                ZipOutputStream archive = zip ? new ZipOutputStream(out) : null) {
+            List<Future<Boolean>> results = new ArrayList<>(reactions.size());
+            for (Map.Entry<String, IReaction> e : reactions.entrySet()) {
+                String name = e.getKey() + ".svg";
+                IReaction reaction = e.getValue();
+                results.add(executor.submit(() -> {
+                    String svg;
+                    try {
+                        svg = render(reaction, width, height);
+                    } catch (RuntimeException ex) {
+                        LOGGER.error(SEVERE, "Unable to render " + name, ex.getMessage());
+                        return false;
+                    }
+                    byte[] bytes = svg.getBytes(UTF_8);
+                    if (archive != null) {
+                        synchronized (archive) {
+                            archive.putNextEntry(new ZipEntry(name));
+                            archive.write(bytes);
+                            archive.closeEntry();
+                        }
+                    } else {
+                        write(new File(output, name).toPath(), bytes);
+                    }
+                    return true;
+                }));
+            }
+            int written = 0;
+            for (Future<Boolean> f : results) {
+                try {
+                    if (f.get()) {
+                        written++;
+                    }
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Rendering interrupted", ex);
+                } catch (ExecutionException ex) {
+                    if (ex.getCause() instanceof IOException) {
+                        throw (IOException) ex.getCause();
+                    }
+                    LOGGER.error(SEVERE, "Unable to render ", ex.getCause());
+                }
+            }
+            return written;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Renders the reactions as thumbnails of {@link #THUMBNAIL_WIDTH} x
+     * {@link #THUMBNAIL_HEIGHT}.
+     *
+     * @param reactions reactions by ID
+     * @param output directory or zip file
+     * @param threads
+     * @return number of images written
+     * @throws IOException
+     */
+    public int renderThumbnails(Map<String, IReaction> reactions, File output,
+            int threads) throws IOException {
+        return renderAll(reactions, output, THUMBNAIL_WIDTH, THUMBNAIL_HEIGHT, threads);
+    }
+
+    private Params newParams() {
+        Params params = new Params();
+        params.drawMappings = false;
+        params.drawAtomID = false;
+        params.drawLonePairs = false;
+        params.drawMoleculeID = true;
+        params.drawSubgraphBoxes = false;
+        params.highlightSubgraphs = style == Style.MAPPING;
+        params.drawSubgraphMappingLines = false;
+        params.highlightsBelow = false;
+        params.highlightsAbove = true;
+        params.drawAromaticCircles = true;
+        params.highlightAlpha = 0.25f;
+        params.drawRS = true;
+        params.labelYGap = 25;
+        params.borderY = 40;
+        params.borderX = 40;
+        params.arrowGap = 30;
+        params.arrowLength = 60;
+        params.drawArrowFilled = true;
+        params.drawFatArrow = true;
+        params.shouldCrop = shouldCrop;
+        params.leftToRightMoleculeLabelFontSize = 10;
+        if (style == Style.REACTION_CENTRE) {
+            params.drawLabelPanel = true;
+            params.useCircularHighlight = false;
+            params.drawBondStereoChanges = false;
+            params.drawBondFormedCleavedMarks = true;
+            params.drawBondOrderChangedMarks = true;
+        }
+        return params;
+    }
+
+    private static void addReactionCentreHighlights(IReaction reaction,
+            RBlastReaction rblReaction, DirectRBLastReactionDrawer drawer) {
+        Map<IAtomContainer, List<RootSystem>> rootSystems
+                = findRootSystems(rblReaction);
+        DirectMoleculeDrawer moleculeDrawer
+                = drawer.getReactionDrawer().getMoleculeDrawer();
+        moleculeDrawer.getHighlighters().clear();
+        for (List<RootSystem> rootSystemList : rootSystems.values()) {
+            for (RootSystem rootSystem : rootSystemList) {
+                IAtomContainer rootContainer
+                        = reaction.getBuilder().newInstance(IAtomContainer.class);
+                rootSystem.getRoots().forEach(rootContainer::addAtom);
+                IAtomContainer neighbourContainer
+                        = reaction.getBuilder().newInstance(IAtomContainer.class);
+                rootSystem.getLeaves().forEach(neighbourContainer::addAtom);
+                Highlighter highlighter = new SimpleHighlighter(drawer.getParams());
+                highlighter.addHighlights(rootContainer, RED);
+                highlighter.addHighlights(neighbourContainer, GREEN);
+                moleculeDrawer.addHighlighter(highlighter);
+            }
+        }
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright (C) 2007-2020 Syed Asad Rahman <asad @ ebi.ac.uk>.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package uk.ac.ebi.reactionblast.tools;
+
+import java.io.Serializable;
+import static java.lang.System.arraycopy;
+import java.util.Arrays;
+import org.openscience.cdk.tools.ILoggingTool;
+import static org.openscience.cdk.tools.LoggingToolFactory.createLoggingTool;
+
+/**
+ * Dense score matrix stored as one row-major {@code double[]}. Unlike
+ * {@link EBIMatrix} it holds no monitors and is meant for thread confined use
+ * (one mapping run). Copies made by {@link #copyOnWrite()} share the data
+ * until either side is modified.
+ *
+ * The row and column scans run over the flat array without bounds checks per
+ * cell so that the JIT can unroll and vectorise them.
+ *
+ * @contact Syed Asad Rahman, EMBL-EBI, Cambridge, UK.
+ * @author Syed Asad Rahman <asad @ ebi.ac.uk>
+ */
+public class ScoreMatrix implements Serializable {
+
+    private static final long serialVersionUID = 0x3c0e5a91d7b4L;
+    private static final ILoggingTool LOGGER
+            = createLoggingTool(ScoreMatrix.class);
+
+    private final int rows;
+    private final int columns;
+    private double[] data;
+    private boolean shared;
+
+    /**
+     * Matrix of rows x columns initialised with 0.0
+     *
+     * @param rows
+     * @param columns
+     */
+    public ScoreMatrix(int rows, int columns) {
+        this.rows = rows;
+        this.columns = columns;
+        this.data = new double[rows * columns];
+        this.shared = false;
+    }
+
+    private ScoreMatrix(ScoreMatrix source) {
+        this.rows = source.rows;
+        this.columns = source.columns;
+        this.data = source.data;
+        this.shared = true;
+        source.shared = true;
+    }
+
+    /**
+     * Copy sharing the data with this matrix, the data is duplicated by the
+     * first of the two to be modified.
+     *
+     * @return copy of this matrix
+     */
+    public ScoreMatrix copyOnWrite() {
+        return new ScoreMatrix(this);
+    }
+
+    private void detach() {
+        if (shared) {
+            data = data.clone();
+            shared = false;
+        }
+    }
+
+    /**
+     *
+     * @param v default value for the Matrix cells
+     */
+    public void initMatrix(double v) {
+        if (shared) {
+            data = new double[rows * columns];
+            shared = false;
+        }
+        Arrays.fill(data, v);
+    }
+
+    /**
+     * Get a single element.
+     *
+     * @param i Row index.
+     * @param j Column index.
+     * @return matrix(i,j) or -1.0 if out of bounds
+     */
+    public double getValue(int i, int j) {
+        if (i < 0 || i >= rows || j < 0 || j >= columns) {
+            LOGGER.debug("Error: Array of out bound");
+            return -1.0d;
+        }
+        return data[i * columns + j];
+    }
+
+    /**
+     *
+     * @param row
+     * @param col
+     * @param value
+     * @return true if the cell was set
+     */
+    public boolean setValue(int row, int col, double value) {
+        if (row < 0 || row >= rows || col < 0 || col >= columns) {
+            LOGGER.error("Array out of Bound " + row + "," + col);
+            return false;
+        }
+        detach();
+        data[row * columns + col] = value;
+        return true;
+    }
+
+    /**
+     * Set a single element.
+     *
+     * @param i Row index.
+     * @param j Column index.
+     * @param s value
+     */
+    public void set(int i, int j, double s) {
+        setValue(i, j, s);
+    }
+
+    /**
+     * @return number of rows
+     */
+    public int getRowDimension() {
+        return rows;
+    }
+
+    /**
+     * @return number of columns
+     */
+    public int getColumnDimension() {
+        return columns;
+    }
+
+    /**
+     * @return copy of the matrix as a two-dimensional array
+     */
+    public double[][] getArrayCopy() {
+        double[][] copy = new double[rows][columns];
+        for (int i = 0; i < rows; i++) {
+            arraycopy(data, i * columns, copy[i], 0, columns);
+        }
+        return copy;
+    }
+
+    /**
+     * @return copy of the row-major data
+     */
+    public double[] getRowPackedCopy() {
+        return data.clone();
+    }
+
+    /**
+     * @param i row index
+     * @return largest value of the row
+     */
+    public double getRowMax(int i) {
+        double max = Double.NEGATIVE_INFINITY;
+        for (int k = i * columns, end = k + columns; k < end; k++) {
+            max = Math.max(max, data[k]);
+        }
+        return max;
+    }
+
+    /**
+     * @param i row index
+     * @return smallest value of the row
+     */
+    public double getRowMin(int i) {
+        double min = Double.POSITIVE_INFINITY;
+        for (int k = i * columns, end = k + columns; k < end; k++) {
+            min = Math.min(min, data[k]);
+        }
+        return min;
+    }
+
+    /**
+     * @param j column index
+     * @return largest value of the column
+     */
+    public double getColumnMax(int j) {
+        double max = Double.NEGATIVE_INFINITY;
+        for (int k = j; k < data.length; k += columns) {
+            max = Math.max(max, data[k]);
+        }
+        return max;
+    }
+
+    /**
+     * @param j column index
+     * @return smallest value of the column
+     */
+    public double getColumnMin(int j) {
+        double min = Double.POSITIVE_INFINITY;
+        for (int k = j; k < data.length; k += columns) {
+            min = Math.min(min, data[k]);
+        }
+        return min;
+    }
+
+    /**
+     * @return largest value of the matrix
+     */
+    public double getMax() {
+        double max = Double.NEGATIVE_INFINITY;
+        for (double v : data) {
+            max = Math.max(max, v);
+        }
+        return max;
+    }
+
+    /**
+     * Largest value of the row over the columns flagged in the mask, the
+     * column {@code skip} excluded.
+     *
+     * @param i row index
+     * @param mask flags of the row
+     * @param skip column to be excluded
+     * @return largest value or -Infinity if no column is flagged
+     */
+    public double getRowMax(int i, boolean[] mask, int skip) {
+        double max = Double.NEGATIVE_INFINITY;
+        int offset = i * columns;
+        for (int j = 0; j < columns; j++) {
+            if (mask[j] && j != skip) {
+                max = Math.max(max, data[offset + j]);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Largest value of the column over the rows flagged in the mask, the row
+     * {@code skip} excluded.
+     *
+     * @param j column index
+     * @param mask flag matrix, mask[row][j] is read
+     * @param skip row to be excluded
+     * @return largest value or -Infinity if no row is flagged
+     */
+    public double getColumnMax(int j, boolean[][] mask, int skip) {
+        double max = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < rows; i++) {
+            if (mask[i][j] && i != skip) {
+                max = Math.max(max, data[i * columns + j]);
+            }
+        }
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < columns; j++) {
+                sb.append(data[i * columns + j]).append('\t');
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+}
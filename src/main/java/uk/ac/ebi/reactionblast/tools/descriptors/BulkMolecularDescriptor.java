@@ -0,0 +1,402 @@
+/*
+ * Copyright (C) 2007-2020 Syed Asad Rahman <asad @ ebi.ac.uk>.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package uk.ac.ebi.reactionblast.tools.descriptors;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.tools.ILoggingTool;
+import org.openscience.cdk.tools.LoggingToolFactory;
+
+/**
+ * Descriptors of many molecules at once. Each task copies its molecule, which
+ * is cleaned, atom typed and aromatised once through
+ * {@link CDKMolecularDescriptor#ofCopy} without the shared locks of the
+ * single molecule path, and all the requested descriptors are evaluated on it
+ * without perceiving the aromaticity again. The Lipinski failures reuse the
+ * values of the row when they are requested too. The molecules are read in
+ * chunks and spread over a pool of threads; the values are returned per
+ * descriptor as a column of doubles in input order, NaN where a molecule
+ * failed. The input molecules are not modified.
+ *
+ * @contact Syed Asad Rahman, EMBL-EBI, Cambridge, UK.
+ * @author Syed Asad Rahman <asad @ ebi.ac.uk>
+ */
+public class BulkMolecularDescriptor {
+
+    private final static boolean DEBUG = false;
+    private static final ILoggingTool LOGGER
+            = LoggingToolFactory.createLoggingTool(BulkMolecularDescriptor.class);
+
+    private static final int CHUNK_SIZE = 1024;
+
+    /**
+     * Descriptors available in bulk
+     */
+    public enum Descriptor {
+
+        HBOND_ACCEPTORS("HBondAcceptors"),
+        HBOND_DONORS("HBondDonors"),
+        XLOGP("XLogP"),
+        TPSA("TPSA"),
+        CPSA("CPSA"),
+        ZAGREB_INDEX("ZagrebIndex"),
+        APOL("APol"),
+        FRAGMENT_COMPLEXITY("FragmentComplexity"),
+        PETITJEAN_NUMBER("PetitjeanNumber"),
+        VADJMA("VAdjMa"),
+        MOLECULAR_WEIGHT("MolecularWeight"),
+        ROTATABLE_BONDS("RotatableBonds"),
+        LARGEST_PI_SYSTEM("LargestPiSystem"),
+        ECCENTRIC_CONNECTIVITY_INDEX("EccentricConnectivityIndex"),
+        TOTAL_CHARGE("TotalCharge"),
+        HEAVY_ATOM_COUNT("HeavyAtomCount"),
+        COVALENT_COUNT("CovalentCount"),
+        LIPINSKI_FAILURES("LipinskiFailures");
+
+        private final String label;
+
+        Descriptor(String label) {
+            this.label = label;
+        }
+
+        /**
+         *
+         * @return column name
+         */
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    private final List<Descriptor> descriptors;
+    private final int threads;
+    private final LipinskiRuleOfFiveDescriptor lipinski;
+
+    /**
+     *
+     * @param descriptors descriptors to compute, one column each
+     * @param threads size of the pool
+     */
+    public BulkMolecularDescriptor(List<Descriptor> descriptors, int threads) {
+        this.descriptors = new ArrayList<>(descriptors);
+        this.threads = Math.max(1, threads);
+        this.lipinski = new LipinskiRuleOfFiveDescriptor();
+    }
+
+    /**
+     *
+     * @param descriptors descriptors to compute, one column each
+     */
+    public BulkMolecularDescriptor(List<Descriptor> descriptors) {
+        this(descriptors, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Computes the descriptors of the molecules.
+     *
+     * @param molecules molecules, read once in order
+     * @return one column per descriptor
+     * @throws CDKException if interrupted
+     */
+    public DescriptorTable calculate(Iterator<IAtomContainer> molecules) throws CDKException {
+        DescriptorTable table = new DescriptorTable(descriptors);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<IAtomContainer> chunk = new ArrayList<>(CHUNK_SIZE);
+            while (molecules.hasNext()) {
+                chunk.add(molecules.next());
+                if (chunk.size() == CHUNK_SIZE || !molecules.hasNext()) {
+                    calculate(executor, chunk, table);
+                    chunk.clear();
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new CDKException("Interrupted while computing descriptors", ex);
+        } finally {
+            executor.shutdownNow();
+        }
+        if (DEBUG) {
+            System.out.println("Descriptors of " + table.size() + " molecules, "
+                    + table.getFailures() + " failed");
+        }
+        return table;
+    }
+
+    /**
+     * Computes the descriptors of the molecules.
+     *
+     * @param molecules
+     * @return one column per descriptor
+     * @throws CDKException if interrupted
+     */
+    public DescriptorTable calculate(Iterable<IAtomContainer> molecules) throws CDKException {
+        return calculate(molecules.iterator());
+    }
+
+    private void calculate(ExecutorService executor, List<IAtomContainer> chunk,
+            DescriptorTable table) throws InterruptedException {
+        List<Callable<double[]>> jobs = new ArrayList<>(chunk.size());
+        for (IAtomContainer molecule : chunk) {
+            jobs.add(() -> calculate(molecule));
+        }
+        int row = table.size();
+        table.grow(row + chunk.size());
+        List<Future<double[]>> rows = executor.invokeAll(jobs);
+        for (int i = 0; i < rows.size(); i++) {
+            double[] values;
+            try {
+                values = rows.get(i).get();
+            } catch (ExecutionException ex) {
+                LOGGER.debug("Descriptors failed for " + chunk.get(i).getID() + " " + ex.getCause());
+                values = null;
+            }
+            table.set(row + i, chunk.get(i).getID(), values);
+        }
+    }
+
+    /*
+     * all the descriptors of one molecule, prepared once on a copy; the
+     * Lipinski failures come last, from the values already in the row
+     */
+    private double[] calculate(IAtomContainer molecule) throws CDKException {
+        CDKMolecularDescriptor cmd = CDKMolecularDescriptor.ofCopy(molecule);
+        double[] values = new double[descriptors.size()];
+        int lipinskiColumn = -1;
+        for (int i = 0; i < values.length; i++) {
+            if (descriptors.get(i) == Descriptor.LIPINSKI_FAILURES) {
+                lipinskiColumn = i;
+            } else {
+                values[i] = value(cmd, descriptors.get(i));
+            }
+        }
+        if (lipinskiColumn >= 0) {
+            values[lipinskiColumn] = lipinski.calculate(
+                    value(cmd, Descriptor.XLOGP, values),
+                    (int) value(cmd, Descriptor.HBOND_ACCEPTORS, values),
+                    (int) value(cmd, Descriptor.HBOND_DONORS, values),
+                    value(cmd, Descriptor.MOLECULAR_WEIGHT, values),
+                    (int) value(cmd, Descriptor.ROTATABLE_BONDS, values));
+        }
+        return values;
+    }
+
+    /*
+     * the value in the row if the descriptor was requested, else computed
+     */
+    private double value(CDKMolecularDescriptor cmd, Descriptor descriptor, double[] values) throws CDKException {
+        int c = descriptors.indexOf(descriptor);
+        return c < 0 ? value(cmd, descriptor) : values[c];
+    }
+
+    private double value(CDKMolecularDescriptor cmd, Descriptor descriptor) throws CDKException {
+        switch (descriptor) {
+            case HBOND_ACCEPTORS:
+                return cmd.getHBondAcceptors(false);
+            case HBOND_DONORS:
+                return cmd.getHBondDoners(false);
+            case XLOGP:
+                return cmd.getXlogP(false);
+            case TPSA:
+                return cmd.getTPSADescriptor(false);
+            case CPSA:
+                return cmd.getCPSADescriptor();
+            case ZAGREB_INDEX:
+                return cmd.getZagrebIndexDescriptor();
+            case APOL:
+                return cmd.getAPolDescriptor();
+            case FRAGMENT_COMPLEXITY:
+                return cmd.getFragmentComplexityDescriptor();
+            case PETITJEAN_NUMBER:
+                return cmd.getPetitjeanNumberDescriptor();
+            case VADJMA:
+                return cmd.getVAdjMaDescriptor();
+            case MOLECULAR_WEIGHT:
+                return cmd.getMolecularWeight();
+            case ROTATABLE_BONDS:
+                return cmd.getRotatableBondsCountDescriptor(true, false);
+            case LARGEST_PI_SYSTEM:
+                return cmd.getLargestPiSystemDescriptor(false);
+            case ECCENTRIC_CONNECTIVITY_INDEX:
+                return cmd.getEccentricConnectivityIndexDescriptor();
+            case TOTAL_CHARGE:
+                return cmd.getTotalCharge();
+            case HEAVY_ATOM_COUNT:
+                return cmd.getHeavyAtomCount();
+            case COVALENT_COUNT:
+                return cmd.getCovalentCount();
+            default:
+                throw new CDKException("Unknown descriptor " + descriptor);
+        }
+    }
+
+    /**
+     * Descriptor values in columns, one row per molecule in input order.
+     */
+    public static class DescriptorTable {
+
+        private final List<Descriptor> descriptors;
+        private double[][] columns;
+        private String[] ids;
+        private int size;
+        private int failures;
+
+        DescriptorTable(List<Descriptor> descriptors) {
+            this.descriptors = descriptors;
+            this.columns = new double[descriptors.size()][CHUNK_SIZE];
+            this.ids = new String[CHUNK_SIZE];
+            this.size = 0;
+        }
+
+        void grow(int capacity) {
+            if (capacity > ids.length) {
+                int length = Math.max(capacity, ids.length * 2);
+                for (int c = 0; c < columns.length; c++) {
+                    columns[c] = Arrays.copyOf(columns[c], length);
+                }
+                ids = Arrays.copyOf(ids, length);
+            }
+        }
+
+        void set(int row, String id, double[] values) {
+            ids[row] = id;
+            for (int c = 0; c < columns.length; c++) {
+                columns[c][row] = values == null ? Double.NaN : values[c];
+            }
+            if (values == null) {
+                failures++;
+            }
+            size = Math.max(size, row + 1);
+        }
+
+        /**
+         *
+         * @return number of molecules
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         *
+         * @return number of molecules without descriptors
+         */
+        public int getFailures() {
+            return failures;
+        }
+
+        /**
+         *
+         * @return descriptors in column order
+         */
+        public List<Descriptor> getDescriptors() {
+            return descriptors;
+        }
+
+        /**
+         *
+         * @param descriptor
+         * @return values of the descriptor, one per molecule
+         */
+        public double[] getColumn(Descriptor descriptor) {
+            int c = descriptors.indexOf(descriptor);
+            if (c < 0) {
+                throw new IllegalArgumentException("Descriptor not computed " + descriptor);
+            }
+            return Arrays.copyOf(columns[c], size);
+        }
+
+        /**
+         *
+         * @return molecule IDs, one per row
+         */
+        public String[] getIds() {
+            return Arrays.copyOf(ids, size);
+        }
+
+        /**
+         * Writes a header and one line per molecule, failed values are left
+         * empty. IDs with a comma, quote or line break are quoted as in RFC
+         * 4180.
+         *
+         * @param writer
+         * @throws IOException
+         */
+        public void writeCSV(Writer writer) throws IOException {
+            StringBuilder sb = new StringBuilder("ID");
+            for (Descriptor descriptor : descriptors) {
+                sb.append(',').append(descriptor.getLabel());
+            }
+            writer.write(sb.append('\n').toString());
+            for (int row = 0; row < size; row++) {
+                sb.setLength(0);
+                sb.append(ids[row] == null ? "" : quote(ids[row]));
+                for (double[] column : columns) {
+                    sb.append(',');
+                    if (!Double.isNaN(column[row])) {
+                        sb.append(column[row]);
+                    }
+                }
+                writer.write(sb.append('\n').toString());
+            }
+            writer.flush();
+        }
+
+        private static String quote(String field) {
+            if (field.indexOf(',') < 0 && field.indexOf('"') < 0
+                    && field.indexOf('\n') < 0 && field.indexOf('\r') < 0) {
+                return field;
+            }
+            return '"' + field.replace("\"", "\"\"") + '"';
+        }
+
+        /**
+         * Writes the row and column counts, the column names and then each
+         * column as doubles.
+         *
+         * @param out
+         * @throws IOException
+         */
+        public void writeBinary(DataOutputStream out) throws IOException {
+            out.writeInt(size);
+            out.writeInt(columns.length);
+            for (Descriptor descriptor : descriptors) {
+                out.writeUTF(descriptor.getLabel());
+            }
+            for (double[] column : columns) {
+                for (int row = 0; row < size; row++) {
+                    out.writeDouble(column[row]);
+                }
+            }
+            out.flush();
+        }
+    }
+}
@@ -51,6 +51,8 @@ import static org.openscience.cdk.tools.manipulator.AtomContainerManipulator.get
 import org.openscience.smsd.helper.MoleculeInitializer;
 import org.openscience.smsd.tools.ExtAtomContainerManipulator;
 import static org.openscience.smsd.tools.ExtAtomContainerManipulator.checkAndCleanMolecule;
+import static org.openscience.smsd.tools.ExtAtomContainerManipulator.cleanMolecule;
+import static org.openscience.smsd.tools.ExtAtomContainerManipulator.cloneWithIDs;
 import uk.ac.ebi.reactionblast.interfaces.IMolDescriptors;
 
 /**
@@ -63,7 +65,7 @@ public class CDKMolecularDescriptor extends MoleculeInitializer implements IMolD
      private static final ILoggingTool LOGGER
             = LoggingToolFactory.createLoggingTool(CDKMolecularDescriptor.class);
 
-    private final IAtomContainer molecule;
+    private IAtomContainer molecule;
 
     /**
      *
@@ -76,6 +78,36 @@ public class CDKMolecularDescriptor extends MoleculeInitializer implements IMolD
         initializeMolecule(molecule);
     }
 
+    /*
+     * molecule set by the factory
+     */
+    private CDKMolecularDescriptor() {
+        super();
+    }
+
+    /**
+     * Descriptors of a copy of the molecule. The copy is cleaned and prepared
+     * without the locks of {@link ExtAtomContainerManipulator#checkAndCleanMolecule}
+     * and {@link #initializeMolecule}, so several threads can prepare their
+     * molecules at once; the molecule itself is left unchanged.
+     *
+     * @param molecule
+     * @return descriptors of the copy
+     * @throws CDKException if the molecule can't be copied
+     */
+    public static CDKMolecularDescriptor ofCopy(IAtomContainer molecule) throws CDKException {
+        IAtomContainer copy;
+        try {
+            copy = cloneWithIDs(molecule);
+        } catch (CloneNotSupportedException ex) {
+            throw new CDKException("Unable to copy " + molecule.getID(), ex);
+        }
+        CDKMolecularDescriptor descriptor = new CDKMolecularDescriptor();
+        descriptor.molecule = cleanMolecule(copy);
+        prepare(descriptor.molecule);
+        return descriptor;
+    }
+
     /**
      *
      * @param molFile
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2003-2020 Syed Asad Rahman <asad @ ebi.ac.uk>.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package uk.ac.ebi.reactionblast.tools.labelling;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Objects;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.smiles.SmiFlavor;
+import org.openscience.cdk.smiles.SmilesGenerator;
+import org.openscience.cdk.tools.ILoggingTool;
+import org.openscience.cdk.tools.LoggingToolFactory;
+
+/**
+ * Canonical (unique isomeric SMILES) key of a molecule together with the
+ * canonical rank of each atom. Two molecules with the same key are identical
+ * (charges, isotopes and stereo included) and atoms with the same rank
+ * correspond to each other.
+ *
+ * @contact Syed Asad Rahman, EMBL-EBI, Cambridge, UK.
+ * @author Syed Asad Rahman <asad @ ebi.ac.uk>
+ */
+public class CanonicalForm implements Serializable {
+
+    private static final ILoggingTool LOGGER
+            = LoggingToolFactory.createLoggingTool(CanonicalForm.class);
+    private static final long serialVersionUID = 0x5e1f7a20c93bL;
+
+    private final String key;
+    private final int[] rank;
+    private final int[] atomAt;
+
+    /**
+     * Canonical form of the molecule or null if the molecule can't be
+     * canonicalised (empty, pseudo atoms etc.).
+     *
+     * @param ac
+     * @return canonical form or null
+     */
+    public static CanonicalForm create(IAtomContainer ac) {
+        if (ac == null || ac.getAtomCount() == 0) {
+            return null;
+        }
+        int[] order = new int[ac.getAtomCount()];
+        try {
+            SmilesGenerator sg = new SmilesGenerator(SmiFlavor.Unique | SmiFlavor.Isomeric);
+            String smiles = sg.create(ac, order);
+            int[] atomAt = new int[order.length];
+            Arrays.fill(atomAt, -1);
+            for (int i = 0; i < order.length; i++) {
+                if (order[i] < 0 || order[i] >= order.length || atomAt[order[i]] != -1) {
+                    return null;
+                }
+                atomAt[order[i]] = i;
+            }
+            return new CanonicalForm(smiles, order, atomAt);
+        } catch (CDKException | RuntimeException ex) {
+            /*
+             * e.g. NPE of the SMILES generator on unset implicit hydrogens,
+             * the callers fall back to the uncached path
+             */
+            LOGGER.debug("Unable to canonicalise " + ac.getID(), ex.getMessage());
+        }
+        return null;
+    }
+
+    private CanonicalForm(String key, int[] rank, int[] atomAt) {
+        this.key = key;
+        this.rank = rank;
+        this.atomAt = atomAt;
+    }
+
+    /**
+     * @return the canonical SMILES
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     *
+     * @return number of atoms
+     */
+    public int getAtomCount() {
+        return rank.length;
+    }
+
+    /**
+     *
+     * @param atomIndex index of the atom in the container
+     * @return canonical rank of the atom
+     */
+    public int getRank(int atomIndex) {
+        return rank[atomIndex];
+    }
+
+    /**
+     *
+     * @param rank canonical rank
+     * @return index of the atom in the container
+     */
+    public int getAtomIndex(int rank) {
+        return atomAt[rank];
+    }
+
+    /**
+     * True if both molecules have the same key and the atoms at the same
+     * canonical rank agree in element, charge and hydrogen count.
+     *
+     * @param container molecule of this form
+     * @param other form of the other molecule
+     * @param otherContainer the other molecule
+     * @return
+     */
+    public boolean isEquivalent(IAtomContainer container, CanonicalForm other, IAtomContainer otherContainer) {
+        if (other == null
+                || !key.equals(other.key)
+                || container.getAtomCount() != otherContainer.getAtomCount()
+                || rank.length != other.rank.length) {
+            return false;
+        }
+        for (int r = 0; r < atomAt.length; r++) {
+            IAtom a = container.getAtom(atomAt[r]);
+            IAtom b = otherContainer.getAtom(other.atomAt[r]);
+            if (!a.getSymbol().equals(b.getSymbol())
+                    || !Objects.equals(a.getFormalCharge(), b.getFormalCharge())
+                    || !Objects.equals(a.getImplicitHydrogenCount(), b.getImplicitHydrogenCount())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "CanonicalForm{" + "key=" + key + '}';
+    }
+}
@@ -0,0 +1,512 @@
+/* Copyright (C) 2006-2020  Syed Asad Rahman <asad @ ebi.ac.uk>
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package uk.ac.ebi.reactionblast.tools.rxnfile;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import static java.util.logging.Level.SEVERE;
+import org.openscience.cdk.AtomContainer;
+import org.openscience.cdk.Reaction;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IReaction;
+import org.openscience.cdk.io.IChemObjectReader.Mode;
+import static org.openscience.cdk.io.IChemObjectReader.Mode.RELAXED;
+import org.openscience.cdk.tools.ILoggingTool;
+import org.openscience.cdk.tools.LoggingToolFactory;
+
+/**
+ * Random access reader for large RDF, RXN and SDF collections. The file is
+ * memory-mapped and scanned once to build an index of record offsets, which
+ * can be kept next to the file ({@code <file>.idx}) and is reused as long as
+ * the file size and modification time match.
+ *
+ * Records are read and parsed on demand by {@link MDLRXNV2000Reader}
+ * (reactions) or {@link MDLV2000Reader} (molecules), each with its own reader,
+ * hence a range of records can be parsed on several threads and a batch can
+ * start at any record without re-scanning the file.
+ *
+ * @author Syed Asad Rahman <asad @ ebi.ac.uk>
+ */
+public class IndexedMDLReader implements Closeable {
+
+    private static final ILoggingTool LOGGER
+            = LoggingToolFactory.createLoggingTool(IndexedMDLReader.class);
+    private static final boolean DEBUG = false;
+    private static final String INDEX_SUFFIX = ".idx";
+    private static final int INDEX_VERSION = 1;
+    /*
+     * Size of a mapped window while indexing
+     */
+    private static final long SEGMENT = 1L << 30;
+    private static final int RECORD_BUFFER = 64 * 1024;
+
+    /**
+     * Type of an indexed record
+     */
+    public enum RecordType {
+        /**
+         * $RXN block
+         */
+        REACTION,
+        /**
+         * Mol file
+         */
+        MOLECULE
+    }
+
+    private final File file;
+    private final FileChannel channel;
+    private final Mode mode;
+    private long[] offsets;
+    private int[] lengths;
+    private byte[] types;
+    private int count;
+    /*
+     * Record buffer of each reading thread, records are read by position
+     * rather than mapped one by one
+     */
+    private final ThreadLocal<ByteBuffer> buffers
+            = ThreadLocal.withInitial(() -> ByteBuffer.allocate(RECORD_BUFFER));
+
+    /**
+     * Opens the file in relaxed mode, the index is built (or loaded) and kept
+     * next to the file.
+     *
+     * @param file RDF, RXN or SDF file
+     * @throws IOException
+     */
+    public IndexedMDLReader(File file) throws IOException {
+        this(file, RELAXED, true);
+    }
+
+    /**
+     *
+     * @param file RDF, RXN or SDF file
+     * @param mode reader mode passed to the MDL readers
+     * @param persistIndex store/reuse the record index in {@code <file>.idx}
+     * @throws IOException
+     */
+    public IndexedMDLReader(File file, Mode mode, boolean persistIndex) throws IOException {
+        this.file = file;
+        this.mode = mode;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        File indexFile = new File(file.getPath() + INDEX_SUFFIX);
+        if (!(persistIndex && loadIndex(indexFile))) {
+            buildIndex();
+            if (persistIndex) {
+                saveIndex(indexFile);
+            }
+        }
+        if (DEBUG) {
+            System.out.println("Indexed " + count + " records in " + file.getName());
+        }
+    }
+
+    /**
+     * @return number of records
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     *
+     * @param index record index
+     * @return type of the record
+     */
+    public RecordType getType(int index) {
+        checkIndex(index);
+        return RecordType.values()[types[index]];
+    }
+
+    /**
+     *
+     * @param index record index
+     * @return raw text of the record
+     * @throws IOException
+     */
+    public String getRecord(int index) throws IOException {
+        checkIndex(index);
+        int length = lengths[index];
+        ByteBuffer buffer = buffers.get();
+        if (buffer.capacity() < length) {
+            buffer = ByteBuffer.allocate(length);
+            buffers.set(buffer);
+        }
+        buffer.clear();
+        buffer.limit(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offsets[index] + buffer.position()) < 0) {
+                throw new EOFException("Record " + index + " of " + file.getName() + " is truncated");
+            }
+        }
+        return new String(buffer.array(), 0, length, ISO_8859_1);
+    }
+
+    /**
+     * Parses a reaction record, the ID is set to {@code <file>_<index+1>} if
+     * the record carries none.
+     *
+     * @param index record index
+     * @return reaction
+     * @throws IOException
+     * @throws CDKException if the record is not a reaction or can't be parsed
+     */
+    public IReaction readReaction(int index) throws IOException, CDKException {
+        if (getType(index) != RecordType.REACTION) {
+            throw new CDKException("Record " + index + " is not a reaction");
+        }
+        IReaction reaction;
+        try (MDLRXNV2000Reader reader = new MDLRXNV2000Reader(new StringReader(getRecord(index)), mode)) {
+            reaction = reader.read(new Reaction());
+        }
+        if (reaction.getID() == null || reaction.getID().isEmpty()) {
+            reaction.setID(getRecordName(index));
+        }
+        return reaction;
+    }
+
+    /**
+     * Parses a molecule record, the ID is set to {@code <file>_<index+1>} if
+     * the record carries none.
+     *
+     * @param index record index
+     * @return molecule
+     * @throws IOException
+     * @throws CDKException if the record is not a molecule or can't be parsed
+     */
+    public IAtomContainer readMolecule(int index) throws IOException, CDKException {
+        if (getType(index) != RecordType.MOLECULE) {
+            throw new CDKException("Record " + index + " is not a molecule");
+        }
+        IAtomContainer molecule;
+        try (MDLV2000Reader reader = new MDLV2000Reader(new StringReader(getRecord(index)), mode)) {
+            molecule = reader.read(new AtomContainer());
+        }
+        if (molecule.getID() == null || molecule.getID().isEmpty()) {
+            molecule.setID(getRecordName(index));
+        }
+        return molecule;
+    }
+
+    /**
+     * Parses the reactions of the records [from, to) on the given number of
+     * threads. The result is in record order, records which can't be parsed
+     * are logged and left out.
+     *
+     * @param from first record (inclusive)
+     * @param to last record (exclusive)
+     * @param threads number of parser threads
+     * @return reactions
+     * @throws IOException
+     */
+    public List<IReaction> readReactions(int from, int to, int threads) throws IOException {
+        List<IReaction> result = new ArrayList<>();
+        for (Object o : readRange(from, to, threads, RecordType.REACTION)) {
+            result.add((IReaction) o);
+        }
+        return result;
+    }
+
+    /**
+     * Parses the molecules of the records [from, to) on the given number of
+     * threads. The result is in record order, records which can't be parsed
+     * are logged and left out.
+     *
+     * @param from first record (inclusive)
+     * @param to last record (exclusive)
+     * @param threads number of parser threads
+     * @return molecules
+     * @throws IOException
+     */
+    public List<IAtomContainer> readMolecules(int from, int to, int threads) throws IOException {
+        List<IAtomContainer> result = new ArrayList<>();
+        for (Object o : readRange(from, to, threads, RecordType.MOLECULE)) {
+            result.add((IAtomContainer) o);
+        }
+        return result;
+    }
+
+    private List<Object> readRange(int from, int to, int threads, RecordType type) throws IOException {
+        int start = Math.max(0, from);
+        int end = Math.min(count, to);
+        if (start >= end) {
+            return Collections.emptyList();
+        }
+        List<Callable<Object>> jobs = new ArrayList<>();
+        for (int i = start; i < end; i++) {
+            if (types[i] != type.ordinal()) {
+                continue;
+            }
+            final int index = i;
+            jobs.add(() -> type == RecordType.REACTION ? readReaction(index) : readMolecule(index));
+        }
+        List<Object> result = new ArrayList<>(jobs.size());
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, jobs.size())));
+        try {
+            List<Future<Object>> futures = executor.invokeAll(jobs);
+            for (Future<Object> future : futures) {
+                try {
+                    result.add(future.get());
+                } catch (ExecutionException ex) {
+                    LOGGER.error(SEVERE, "Unable to parse record of " + file.getName(), ex.getCause());
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while parsing " + file.getName(), ex);
+        } finally {
+            executor.shutdown();
+        }
+        return result;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private String getRecordName(int index) {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        return (dot > 0 ? name.substring(0, dot) : name) + "_" + (index + 1);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Record " + index + " of " + count);
+        }
+    }
+
+    /*
+     * Scans the mapped file line by line. RDF: a reaction starts at $RXN and
+     * a molecule after $MFMT, both end at the next $RFMT/$MFMT/$DTYPE/$DATUM.
+     * RXN: every $RXN starts a reaction. SDF: molecules are separated by $$$$.
+     */
+    private void buildIndex() throws IOException {
+        offsets = new long[64];
+        lengths = new int[64];
+        types = new byte[64];
+        count = 0;
+
+        long size = channel.size();
+        int format = -1;
+        long recordStart = -1;
+        byte recordType = 0;
+        boolean recordHasContent = false;
+
+        long position = 0;
+        while (position < size) {
+            long window = Math.min(SEGMENT, size - position);
+            MappedByteBuffer buffer = channel.map(READ_ONLY, position, window);
+            boolean last = position + window == size;
+            int lineStart = 0;
+            int limit = (int) window;
+            for (int i = 0; i <= limit; i++) {
+                if (i < limit && buffer.get(i) != '\n') {
+                    continue;
+                }
+                if (i == limit && !last) {
+                    break;
+                }
+                int lineEnd = i == limit ? limit : i + 1;
+                if (lineStart == lineEnd) {
+                    break;
+                }
+                long lineOffset = position + lineStart;
+                if (format < 0) {
+                    format = startsWith(buffer, lineStart, lineEnd, "$RDFILE") ? 0
+                            : startsWith(buffer, lineStart, lineEnd, "$RXN") ? 1 : 2;
+                    if (format == 2) {
+                        recordStart = lineOffset;
+                        recordType = (byte) RecordType.MOLECULE.ordinal();
+                        recordHasContent = false;
+                    }
+                }
+                boolean blank = isBlank(buffer, lineStart, lineEnd);
+                switch (format) {
+                    case 0:
+                        if (startsWith(buffer, lineStart, lineEnd, "$RXN")) {
+                            addRecord(recordStart, lineOffset, recordType, recordHasContent);
+                            recordStart = lineOffset;
+                            recordType = (byte) RecordType.REACTION.ordinal();
+                            recordHasContent = true;
+                        } else if (startsWith(buffer, lineStart, lineEnd, "$MFMT")) {
+                            addRecord(recordStart, lineOffset, recordType, recordHasContent);
+                            recordStart = position + lineEnd;
+                            recordType = (byte) RecordType.MOLECULE.ordinal();
+                            recordHasContent = false;
+                        } else if (startsWith(buffer, lineStart, lineEnd, "$RFMT")
+                                || startsWith(buffer, lineStart, lineEnd, "$DTYPE")
+                                || startsWith(buffer, lineStart, lineEnd, "$DATUM")
+                                || startsWith(buffer, lineStart, lineEnd, "$RDFILE")
+                                || startsWith(buffer, lineStart, lineEnd, "$DATM")) {
+                            addRecord(recordStart, lineOffset, recordType, recordHasContent);
+                            recordStart = -1;
+                        } else if (recordStart >= 0 && !blank) {
+                            recordHasContent = true;
+                        }
+                        break;
+                    case 1:
+                        if (startsWith(buffer, lineStart, lineEnd, "$RXN")) {
+                            addRecord(recordStart, lineOffset, recordType, recordHasContent);
+                            recordStart = lineOffset;
+                            recordType = (byte) RecordType.REACTION.ordinal();
+                            recordHasContent = true;
+                        }
+                        break;
+                    default:
+                        if (startsWith(buffer, lineStart, lineEnd, "$$$$")) {
+                            addRecord(recordStart, lineOffset, recordType, recordHasContent);
+                            recordStart = position + lineEnd;
+                            recordHasContent = false;
+                        } else if (!blank) {
+                            recordHasContent = true;
+                        }
+                        break;
+                }
+                lineStart = lineEnd;
+            }
+            if (lineStart == 0 && !last) {
+                throw new IOException("Line longer than " + SEGMENT + " bytes in " + file.getName());
+            }
+            position += last ? window : lineStart;
+        }
+        addRecord(recordStart, size, recordType, recordHasContent);
+        offsets = Arrays.copyOf(offsets, count);
+        lengths = Arrays.copyOf(lengths, count);
+        types = Arrays.copyOf(types, count);
+    }
+
+    private void addRecord(long start, long end, byte type, boolean hasContent) throws IOException {
+        if (start < 0 || end <= start || !hasContent) {
+            return;
+        }
+        if (end - start > Integer.MAX_VALUE) {
+            throw new IOException("Record at " + start + " is too large in " + file.getName());
+        }
+        if (count == offsets.length) {
+            int capacity = count * 2;
+            offsets = Arrays.copyOf(offsets, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            types = Arrays.copyOf(types, capacity);
+        }
+        offsets[count] = start;
+        lengths[count] = (int) (end - start);
+        types[count] = type;
+        count++;
+    }
+
+    private static boolean startsWith(MappedByteBuffer buffer, int from, int to, String prefix) {
+        if (to - from < prefix.length()) {
+            return false;
+        }
+        for (int k = 0; k < prefix.length(); k++) {
+            if (buffer.get(from + k) != prefix.charAt(k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isBlank(MappedByteBuffer buffer, int from, int to) {
+        for (int k = from; k < to; k++) {
+            byte b = buffer.get(k);
+            if (b != ' ' && b != '\t' && b != '\r' && b != '\n') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean loadIndex(File indexFile) {
+        if (!indexFile.isFile()) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readInt() != INDEX_VERSION
+                    || in.readLong() != file.length()
+                    || in.readLong() != file.lastModified()) {
+                return false;
+            }
+            int n = in.readInt();
+            long[] o = new long[n];
+            int[] l = new int[n];
+            byte[] t = new byte[n];
+            for (int i = 0; i < n; i++) {
+                o[i] = in.readLong();
+                l[i] = in.readInt();
+                t[i] = in.readByte();
+            }
+            offsets = o;
+            lengths = l;
+            types = t;
+            count = n;
+            return true;
+        } catch (IOException ex) {
+            LOGGER.debug("Unable to load index " + indexFile.getName(), ex.getMessage());
+        }
+        return false;
+    }
+
+    private void saveIndex(File indexFile) {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)))) {
+            out.writeInt(INDEX_VERSION);
+            out.writeLong(file.length());
+            out.writeLong(file.lastModified());
+            out.writeInt(count);
+            for (int i = 0; i < count; i++) {
+                out.writeLong(offsets[i]);
+                out.writeInt(lengths[i]);
+                out.writeByte(types[i]);
+            }
+        } catch (IOException ex) {
+            LOGGER.warn("Unable to store index " + indexFile.getName() + " " + ex.getMessage());
+        }
+    }
+}
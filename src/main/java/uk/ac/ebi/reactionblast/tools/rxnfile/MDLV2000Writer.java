@@ -74,14 +74,13 @@ import java.util.Set;
 import java.util.TreeMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import static org.openscience.cdk.geometry.GeometryUtil.has2DCoordinates;
 import org.openscience.cdk.io.DefaultChemObjectWriter;
 import org.openscience.cdk.isomorphism.matchers.Expr;
 import static org.openscience.cdk.isomorphism.matchers.Expr.Type.ALIPHATIC_ORDER;
 import static org.openscience.cdk.isomorphism.matchers.Expr.Type.IS_AROMATIC;
 import static org.openscience.cdk.isomorphism.matchers.Expr.Type.OR;
 import static org.openscience.cdk.isomorphism.matchers.Expr.Type.ORDER;
-import org.openscience.cdk.layout.StructureDiagramGenerator;
+import uk.ac.ebi.reactionblast.tools.LayoutCache;
 
 /**
  * RDT format added
@@ -375,18 +374,7 @@ public class MDLV2000Writer extends DefaultChemObjectWriter {
         /*
          Check for 2D co-ordinates for EC-BLAST
          */
-        if (!has2DCoordinates(container)) {
-            try {
-                /*
-                 Clone it else it will loose mol ID
-                 */
-                IAtomContainer clone = container.clone();
-                StructureDiagramGenerator sdg = new StructureDiagramGenerator(clone);
-                sdg.generateCoordinates();
-                container = sdg.getMolecule();
-            } catch (CDKException e) {
-            }
-        }
+        container = LayoutCache.getMoleculeWithLayout(container);
 
         final int dim = getNumberOfDimensions(container);
         StringBuilder line = new StringBuilder();
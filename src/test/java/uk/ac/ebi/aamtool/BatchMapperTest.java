@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2007-2020 Syed Asad Rahman <asad at ebi.ac.uk>.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package uk.ac.ebi.aamtool;
+
+import java.io.File;
+import java.io.IOException;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.Files.readAllBytes;
+import static java.nio.file.Files.readAllLines;
+import static java.nio.file.Files.write;
+import java.util.List;
+import java.util.Map;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import uk.ac.ebi.aamtool.BatchMapper.Status;
+
+/**
+ * Resume and recovery of the batch journal.
+ *
+ * @author Syed Asad Rahman <asad at ebi.ac.uk>
+ */
+public class BatchMapperTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File input() throws IOException {
+        File input = folder.newFile("batch.smi");
+        write(input.toPath(), ("CC(=O)O.OCC>>CC(=O)OCC.O ESTER\n"
+                + "N#CSCC1=CC=CC=C1>>S=C=NCC1=CC=CC=C1 RHEA10006\n"
+                + "C1CC>>CC BROKEN\n").getBytes(UTF_8));
+        return input;
+    }
+
+    private static boolean run(String job, File input) throws IOException {
+        try (BatchMapper mapper = new BatchMapper(job, "JSON", false, false, true, 0)) {
+            return mapper.run(input, 2, false);
+        }
+    }
+
+    /**
+     * A rerun with a complete journal maps nothing and writes the same output
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testResumeCompleteJournal() throws Exception {
+        File input = input();
+        String job = new File(folder.getRoot(), "resume").getPath();
+        assertTrue(run(job, input));
+        byte[] first = readAllBytes(new File(job + ".jsonl").toPath());
+        List<String> journal = readAllLines(new File(job + ".journal").toPath(), UTF_8);
+
+        assertTrue(run(job, input));
+        assertArrayEquals(first, readAllBytes(new File(job + ".jsonl").toPath()));
+        assertEquals(journal, readAllLines(new File(job + ".journal").toPath(), UTF_8));
+
+        try (BatchMapper mapper = new BatchMapper(job, "JSON", false, false, true, 0)) {
+            Map<Integer, Status> status = mapper.getStatus();
+            assertEquals(3, status.size());
+            assertEquals(Status.FAILED, status.get(2));
+        }
+    }
+
+    /**
+     * A torn last line is dropped and its reaction mapped again, the output
+     * is the one of an uninterrupted run
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testRecoverTornJournal() throws Exception {
+        File input = input();
+        String job = new File(folder.getRoot(), "recover").getPath();
+        assertTrue(run(job, input));
+        byte[] first = readAllBytes(new File(job + ".jsonl").toPath());
+        File journalFile = new File(job + ".journal");
+        List<String> journal = readAllLines(journalFile.toPath(), UTF_8);
+        assertEquals(4, journal.size());
+
+        /*
+         * header, first reaction and a line cut before its newline
+         */
+        String torn = journal.get(0) + "\n" + journal.get(1) + "\n"
+                + journal.get(2).substring(0, journal.get(2).length() - 1);
+        write(journalFile.toPath(), torn.getBytes(UTF_8));
+        try (BatchMapper mapper = new BatchMapper(job, "JSON", false, false, true, 0)) {
+            assertEquals(1, mapper.getStatus().size());
+        }
+        assertEquals(2, readAllLines(journalFile.toPath(), UTF_8).size());
+
+        assertTrue(run(job, input));
+        assertArrayEquals(first, readAllBytes(new File(job + ".jsonl").toPath()));
+        for (String line : readAllLines(journalFile.toPath(), UTF_8).subList(1, 4)) {
+            assertEquals(7, line.split("\t", -1).length);
+        }
+    }
+
+    /**
+     * A journal is refused for an input which was changed since
+     *
+     * @throws Exception
+     */
+    @Test(expected = IOException.class)
+    public void testOtherInputRefused() throws Exception {
+        File input = input();
+        String job = new File(folder.getRoot(), "changed").getPath();
+        assertTrue(run(job, input));
+        write(input.toPath(), "CC(=O)O.OCC>>CC(=O)OCC.O ESTER\n".getBytes(UTF_8));
+        run(job, input);
+    }
+
+    /**
+     * The lines of a journal without the predicted time are still read
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testReadSixColumnJournal() throws Exception {
+        File input = input();
+        String job = new File(folder.getRoot(), "v1").getPath();
+        assertTrue(run(job, input));
+        byte[] first = readAllBytes(new File(job + ".jsonl").toPath());
+        File journalFile = new File(job + ".journal");
+        List<String> journal = readAllLines(journalFile.toPath(), UTF_8);
+        StringBuilder v1 = new StringBuilder(journal.get(0)).append('\n');
+        for (String line : journal.subList(1, journal.size())) {
+            v1.append(line.substring(0, line.lastIndexOf('\t'))).append('\n');
+        }
+        write(journalFile.toPath(), v1.toString().getBytes(UTF_8));
+        try (BatchMapper mapper = new BatchMapper(job, "JSON", false, false, true, 0)) {
+            assertEquals(3, mapper.getStatus().size());
+        }
+        assertTrue(run(job, input));
+        assertArrayEquals(first, readAllBytes(new File(job + ".jsonl").toPath()));
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2007-2020 Syed Asad Rahman <asad at ebi.ac.uk>.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package uk.ac.ebi.aamtool;
+
+import static org.junit.Assert.assertEquals;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openscience.cdk.interfaces.IReaction;
+import org.openscience.cdk.silent.SilentChemObjectBuilder;
+import org.openscience.cdk.smiles.SmilesParser;
+import static uk.ac.ebi.aamtool.Annotator.getReactionMechanismTool;
+import uk.ac.ebi.reactionblast.mapping.cache.ReactionResultCache;
+import uk.ac.ebi.reactionblast.mechanism.BondChangeCalculator;
+
+/**
+ * A reaction annotated with the cached mapping has the bond changes of the
+ * mapped one.
+ *
+ * @author Syed Asad Rahman <asad at ebi.ac.uk>
+ */
+public class ReactionResultCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @After
+    public void disableCache() {
+        ReactionResultCache.setInstance(null);
+    }
+
+    @Test
+    public void testHitMatchesMiss() throws Exception {
+        ReactionResultCache cache = new ReactionResultCache(folder.newFile("reactions.cache"));
+        ReactionResultCache.setInstance(cache);
+        String[] reactions = {
+            "CC(=O)O.OCC>>CC(=O)OCC.O",
+            "N#CSCC1=CC=CC=C1>>S=C=NCC1=CC=CC=C1",
+            "CC(=O)C=C.CC=CC=C>>CC1CC(CC=C1)C(C)=O"
+        };
+        for (String smiles : reactions) {
+            BondChangeCalculator miss = annotate(smiles, true);
+            long hits = cache.getHits();
+            /*
+             * components in another order, as the key ignores it
+             */
+            String[] sides = smiles.split(">>");
+            BondChangeCalculator hit = annotate(reverse(sides[0]) + ">>" + reverse(sides[1]), true);
+            assertEquals(smiles, hits + 1, cache.getHits());
+            assertSameChanges(miss, hit);
+        }
+    }
+
+    /**
+     * The same molecules written with another atom order hit the cache
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testPermutedAtomOrder() throws Exception {
+        ReactionResultCache cache = new ReactionResultCache(folder.newFile("permuted.cache"));
+        ReactionResultCache.setInstance(cache);
+        BondChangeCalculator miss = annotate("CC(=O)O.OCC>>CC(=O)OCC.O", true);
+        BondChangeCalculator hit = annotate("OC(C)=O.C(C)O>>O=C(OCC)C.O", true);
+        assertEquals(1, cache.getHits());
+        assertSameChanges(miss, hit);
+    }
+
+    /**
+     * Atom-atom mapping numbers of a reaction to be remapped are not part of
+     * the key and are replaced by the cached mapping
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testInputAtomMapsIgnored() throws Exception {
+        ReactionResultCache cache = new ReactionResultCache(folder.newFile("atommaps.cache"));
+        ReactionResultCache.setInstance(cache);
+        BondChangeCalculator miss = annotate("CC(=O)O.OCC>>CC(=O)OCC.O", true);
+        BondChangeCalculator hit = annotate(
+                "[CH3:7][C:6](=[O:5])[OH:1].[OH:2][CH2:3][CH3:4]>>[CH3:1][C:2](=[O:3])[O:4][CH2:5][CH3:6].[OH2:7]", true);
+        assertEquals(1, cache.getHits());
+        assertSameChanges(miss, hit);
+    }
+
+    /**
+     * A mapping is only reused with the options it was computed with
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testOptionsInKey() throws Exception {
+        ReactionResultCache cache = new ReactionResultCache(folder.newFile("options.cache"));
+        ReactionResultCache.setInstance(cache);
+        annotate("CC(=O)O.OCC>>CC(=O)OCC.O", true);
+        annotate("CC(=O)O.OCC>>CC(=O)OCC.O", false);
+        assertEquals(0, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testUserMappingBypassesCache() throws Exception {
+        ReactionResultCache cache = new ReactionResultCache(folder.newFile("premapped.cache"));
+        ReactionResultCache.setInstance(cache);
+        SmilesParser smilesParser = new SmilesParser(SilentChemObjectBuilder.getInstance());
+        IReaction reaction = smilesParser.parseReactionSmiles(
+                "[CH3:1][C:2](=[O:3])[OH:4].[OH:5][CH2:6][CH3:7]>>[CH3:1][C:2](=[O:3])[O:5][CH2:6][CH3:7].[OH2:4]");
+        reaction.setID("Premapped");
+        getReactionMechanismTool(reaction, false, true, true);
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getHits() + cache.getMisses());
+    }
+
+    private static BondChangeCalculator annotate(String smiles, boolean complex) throws Exception {
+        SmilesParser smilesParser = new SmilesParser(SilentChemObjectBuilder.getInstance());
+        IReaction reaction = smilesParser.parseReactionSmiles(smiles);
+        reaction.setID("Cache");
+        return getReactionMechanismTool(reaction, true, complex, true)
+                .getSelectedSolution().getBondChangeCalculator();
+    }
+
+    private static void assertSameChanges(BondChangeCalculator miss, BondChangeCalculator hit) throws Exception {
+        String reaction = miss.getReaction().getID();
+        assertEquals(reaction, miss.getFormedCleavedWFingerprint().getFeatures().toString(),
+                hit.getFormedCleavedWFingerprint().getFeatures().toString());
+        assertEquals(reaction, miss.getOrderChangesWFingerprint().getFeatures().toString(),
+                hit.getOrderChangesWFingerprint().getFeatures().toString());
+        assertEquals(reaction, miss.getStereoChangesWFingerprint().getFeatures().toString(),
+                hit.getStereoChangesWFingerprint().getFeatures().toString());
+        assertEquals(reaction, miss.getReactionCenterWFingerprint().getFeatures().toString(),
+                hit.getReactionCenterWFingerprint().getFeatures().toString());
+    }
+
+    private static String reverse(String side) {
+        String[] molecules = side.split("\\.");
+        StringBuilder sb = new StringBuilder();
+        for (int i = molecules.length - 1; i >= 0; i--) {
+            sb.append(sb.length() == 0 ? "" : ".").append(molecules[i]);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2007-2020 Syed Asad Rahman <asad at ebi.ac.uk>.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package uk.ac.ebi.reactionblast.mapping.blocks;
+
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import org.junit.After;
+import org.junit.Test;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IBond;
+import org.openscience.cdk.silent.SilentChemObjectBuilder;
+import org.openscience.cdk.smiles.SmilesParser;
+import static uk.ac.ebi.reactionblast.mapping.blocks.BlockSignatures.COST_CAP_PROPERTY;
+import uk.ac.ebi.reactionblast.mapping.blocks.BlockSignatures.BlockSignature;
+
+/**
+ * The bounded labels of a block don't depend on the order of its atoms.
+ *
+ * @author Syed Asad Rahman <asad at ebi.ac.uk>
+ */
+public class BlockSignaturesTest {
+
+    /*
+     * anthranilic acid written from different atoms
+     */
+    private static final String[] ANTHRANILIC_ACID = {
+        "OC(=O)c1ccccc1N",
+        "Nc1ccccc1C(O)=O",
+        "c1cc(N)c(C(=O)O)cc1",
+        "O=C(O)c1c(N)cccc1"
+    };
+
+    /*
+     * phthalic acid, symmetric: over a cost cap of one it takes the fallback
+     */
+    private static final String[] PHTHALIC_ACID = {
+        "OC(=O)c1ccccc1C(=O)O",
+        "c1ccc(C(O)=O)c(C(=O)O)c1",
+        "O=C(O)c1c(C(O)=O)cccc1"
+    };
+
+    @After
+    public void reset() {
+        System.clearProperty(COST_CAP_PROPERTY);
+        BlockSignatures.clear();
+    }
+
+    @Test
+    public void testExactLabelsInvariant() throws Exception {
+        assertInvariant(ANTHRANILIC_ACID, true);
+        assertEquals(0, BlockSignatures.getFallbacks());
+    }
+
+    @Test
+    public void testFallbackLabelsInvariant() throws Exception {
+        System.setProperty(COST_CAP_PROPERTY, "1");
+        assertInvariant(PHTHALIC_ACID, true);
+        assertEquals(PHTHALIC_ACID.length, BlockSignatures.getFallbacks());
+    }
+
+    @Test
+    public void testCacheIgnoresAtomOrder() throws Exception {
+        assertInvariant(ANTHRANILIC_ACID, false);
+        assertEquals(1, BlockSignatures.getMisses());
+        assertEquals(ANTHRANILIC_ACID.length - 1, BlockSignatures.getHits());
+    }
+
+    @Test
+    public void testCachedFallbackIgnoresAtomOrder() throws Exception {
+        System.setProperty(COST_CAP_PROPERTY, "1");
+        assertInvariant(PHTHALIC_ACID, false);
+        assertEquals(1, BlockSignatures.getFallbacks());
+        assertEquals(PHTHALIC_ACID.length - 1, BlockSignatures.getHits());
+    }
+
+    /*
+     * same signature and same relabelled block for every order
+     */
+    private static void assertInvariant(String[] orders, boolean clearCache) throws Exception {
+        BlockSignatures.clear();
+        SmilesParser smilesParser = new SmilesParser(SilentChemObjectBuilder.getInstance());
+        String signature = null;
+        String form = null;
+        for (String smiles : orders) {
+            if (clearCache) {
+                BlockSignatures.clear();
+            }
+            IAtomContainer mol = smilesParser.parseSmiles(smiles);
+            List<IAtom> atoms = new ArrayList<>();
+            mol.atoms().forEach(atoms::add);
+            BlockSignature block = BlockSignatures.canonicalise(mol, atoms);
+            if (signature == null) {
+                signature = block.getSignature();
+                form = form(mol, block.getLabels());
+            } else {
+                assertEquals(smiles, signature, block.getSignature());
+                assertEquals(smiles, form, form(mol, block.getLabels()));
+            }
+        }
+    }
+
+    private static String form(IAtomContainer mol, int[] labels) {
+        String[] symbols = new String[labels.length];
+        for (int i = 0; i < labels.length; i++) {
+            symbols[labels[i]] = BlockSignatures.vertexSymbol(mol.getAtom(i));
+        }
+        List<String> edges = new ArrayList<>();
+        for (IBond bond : mol.bonds()) {
+            int a = labels[mol.indexOf(bond.getBegin())];
+            int b = labels[mol.indexOf(bond.getEnd())];
+            edges.add(String.format("%03d-%03d:%d", Math.min(a, b), Math.max(a, b),
+                    BlockSignatures.edgeColor(bond)));
+        }
+        edges.sort(null);
+        return String.join(",", symbols) + "|" + String.join(",", edges);
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2007-2020 Syed Asad Rahman <asad at ebi.ac.uk>.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package uk.ac.ebi.reactionblast.mapping.graph;
+
+import java.util.Set;
+import java.util.TreeSet;
+import static org.junit.Assert.assertEquals;
+import org.junit.After;
+import org.junit.Test;
+import org.openscience.cdk.interfaces.IReaction;
+import org.openscience.cdk.silent.SilentChemObjectBuilder;
+import org.openscience.cdk.smiles.SmilesParser;
+import uk.ac.ebi.reactionblast.mapping.container.ReactionContainer;
+import uk.ac.ebi.reactionblast.mechanism.BondChangeCalculator;
+import uk.ac.ebi.reactionblast.mechanism.ReactionMechanismTool;
+import uk.ac.ebi.reactionblast.tools.StandardizeReaction;
+
+/**
+ * Pruning of the educt/product pairs and its element coverage fallback.
+ *
+ * @author Syed Asad Rahman <asad at ebi.ac.uk>
+ */
+public class PairPrunerTest {
+
+    /*
+     * benzene hydroxylation, the benzene/water pair shares no element
+     */
+    private static final String REACTION = "c1ccccc1.O=O>>Oc1ccccc1.O";
+
+    @After
+    public void reset() {
+        GraphMatcher.setPairPruner(null);
+    }
+
+    /**
+     * Pairs without an element in common are pruned, the others kept
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testUnrelatedPairPruned() throws Exception {
+        Set<Combination> kept = new PairPruner(0.0, 0.5, 1).prune(container(), candidates());
+        assertEquals(expected(), kept);
+    }
+
+    /**
+     * Dioxygen/phenol is under the element overlap threshold but is
+     * the only pair giving the phenol oxygen an educt partner, so it is put
+     * back
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testElementCoverageFallback() throws Exception {
+        Set<Combination> kept = new PairPruner(0.0, 0.9, 1).prune(container(), candidates());
+        assertEquals(expected(), kept);
+    }
+
+    /**
+     * Reactions with fewer pairs than the minimum are left alone
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testSmallReactionNotPruned() throws Exception {
+        Set<Combination> candidates = candidates();
+        assertEquals(candidates, new PairPruner().prune(container(), candidates));
+    }
+
+    /**
+     * The pruned pair is reported as an empty mapping and the reaction maps
+     * as without pruning
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testPrunedMappingMatchesFull() throws Exception {
+        BondChangeCalculator full = map(null);
+        BondChangeCalculator pruned = map(new PairPruner(0.0, 0.5, 1));
+        assertEquals(full.getFormedCleavedWFingerprint().getFeatures().toString(),
+                pruned.getFormedCleavedWFingerprint().getFeatures().toString());
+        assertEquals(full.getOrderChangesWFingerprint().getFeatures().toString(),
+                pruned.getOrderChangesWFingerprint().getFeatures().toString());
+        assertEquals(full.getReactionCenterWFingerprint().getFeatures().toString(),
+                pruned.getReactionCenterWFingerprint().getFeatures().toString());
+    }
+
+    private static ReactionContainer container() throws Exception {
+        IReaction reaction = parse();
+        ReactionContainer container = new ReactionContainer();
+        for (int i = 0; i < reaction.getReactantCount(); i++) {
+            container.putEduct(i, reaction.getReactants().getAtomContainer(i));
+        }
+        for (int i = 0; i < reaction.getProductCount(); i++) {
+            container.putProduct(i, reaction.getProducts().getAtomContainer(i));
+        }
+        return container;
+    }
+
+    private static Set<Combination> candidates() {
+        Set<Combination> candidates = new TreeSet<>();
+        for (int i = 0; i < 2; i++) {
+            for (int j = 0; j < 2; j++) {
+                candidates.add(new Combination(i, j));
+            }
+        }
+        return candidates;
+    }
+
+    private static Set<Combination> expected() {
+        Set<Combination> expected = new TreeSet<>();
+        expected.add(new Combination(0, 0));
+        expected.add(new Combination(1, 0));
+        expected.add(new Combination(1, 1));
+        return expected;
+    }
+
+    private static IReaction parse() throws Exception {
+        SmilesParser smilesParser = new SmilesParser(SilentChemObjectBuilder.getInstance());
+        IReaction reaction = smilesParser.parseReactionSmiles(REACTION);
+        reaction.setID("Prune");
+        return reaction;
+    }
+
+    private static BondChangeCalculator map(PairPruner pruner) throws Exception {
+        GraphMatcher.setPairPruner(pruner);
+        ReactionMechanismTool rmt = new ReactionMechanismTool(parse(),
+                true, true, false, true, false, new StandardizeReaction());
+        return rmt.getSelectedSolution().getBondChangeCalculator();
+    }
+}
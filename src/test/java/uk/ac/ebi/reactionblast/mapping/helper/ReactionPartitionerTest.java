@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2007-2020 Syed Asad Rahman <asad at ebi.ac.uk>.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package uk.ac.ebi.reactionblast.mapping.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import org.openscience.cdk.interfaces.IReaction;
+import org.openscience.cdk.silent.SilentChemObjectBuilder;
+import org.openscience.cdk.smiles.SmilesParser;
+import uk.ac.ebi.reactionblast.mechanism.BondChangeCalculator;
+import uk.ac.ebi.reactionblast.mechanism.ReactionMechanismTool;
+import static uk.ac.ebi.reactionblast.mapping.helper.ReactionPartitioner.PARTITION_PROPERTY;
+import uk.ac.ebi.reactionblast.tools.StandardizeReaction;
+
+/**
+ * The partitioned mapping reports the bond changes of the whole reaction.
+ *
+ * @author Syed Asad Rahman <asad at ebi.ac.uk>
+ */
+public class ReactionPartitionerTest {
+
+    private static final String[] REACTIONS = {
+        /*
+         * esterification with a benzene spectator
+         */
+        "CC(=O)O.OCC.c1ccccc1>>CC(=O)OCC.O.c1ccccc1",
+        /*
+         * RHEA10006 with water and acetate spectators
+         */
+        "N#CSCC1=CC=CC=C1.O.CC(=O)[O-]>>S=C=NCC1=CC=CC=C1.O.CC(=O)[O-]"
+    };
+
+    @Test
+    public void testSpectatorsAreSplit() throws Exception {
+        for (String smiles : REACTIONS) {
+            IReaction reaction = parse(smiles);
+            ReactionPartitioner partitioner = new ReactionPartitioner(reaction);
+            assertTrue(smiles, partitioner.isPartitioned());
+            assertTrue(smiles, partitioner.getSpectatorCount() > 0);
+        }
+    }
+
+    @Test
+    public void testPartitionedMatchesWholeReaction() throws Exception {
+        for (String smiles : REACTIONS) {
+            BondChangeCalculator whole = map(smiles, false);
+            BondChangeCalculator partitioned = map(smiles, true);
+            assertEquals(smiles, whole.getFormedCleavedWFingerprint().getFeatures().toString(),
+                    partitioned.getFormedCleavedWFingerprint().getFeatures().toString());
+            assertEquals(smiles, whole.getOrderChangesWFingerprint().getFeatures().toString(),
+                    partitioned.getOrderChangesWFingerprint().getFeatures().toString());
+            assertEquals(smiles, whole.getReactionCenterWFingerprint().getFeatures().toString(),
+                    partitioned.getReactionCenterWFingerprint().getFeatures().toString());
+        }
+    }
+
+    private static IReaction parse(String smiles) throws Exception {
+        SmilesParser smilesParser = new SmilesParser(SilentChemObjectBuilder.getInstance());
+        IReaction reaction = smilesParser.parseReactionSmiles(smiles);
+        reaction.setID("Partition");
+        return reaction;
+    }
+
+    private static BondChangeCalculator map(String smiles, boolean partition) throws Exception {
+        String previous = System.getProperty(PARTITION_PROPERTY);
+        System.setProperty(PARTITION_PROPERTY, String.valueOf(partition));
+        try {
+            ReactionMechanismTool rmt = new ReactionMechanismTool(parse(smiles),
+                    true, true, false, true, false, new StandardizeReaction());
+            return rmt.getSelectedSolution().getBondChangeCalculator();
+        } finally {
+            if (previous == null) {
+                System.clearProperty(PARTITION_PROPERTY);
+            } else {
+                System.setProperty(PARTITION_PROPERTY, previous);
+            }
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2007-2020 Syed Asad Rahman <asad at ebi.ac.uk>.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package uk.ac.ebi.reactionblast.tools;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import uk.ac.ebi.reactionblast.tools.ReactionSmilesReader.Entry;
+
+/**
+ * Parallel reading of reaction SMILES keeps the input order and reports the
+ * failed lines on their own.
+ *
+ * @author Syed Asad Rahman <asad at ebi.ac.uk>
+ */
+public class ReactionSmilesReaderTest {
+
+    private static final String ESTER = "CC(=O)O.OCC>>CC(=O)OCC.O";
+    private static final String BROKEN = "C1CC>>CC";
+
+    /**
+     * Lines spread over several slices come back in input order, with their
+     * line numbers and IDs
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testInputOrder() throws Exception {
+        List<String> lines = new ArrayList<>();
+        for (int i = 1; i <= 200; i++) {
+            lines.add(ESTER + " R" + i);
+        }
+        List<Entry> entries = new ReactionSmilesReader(4, false).read(lines);
+        assertEquals(200, entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            Entry entry = entries.get(i);
+            assertEquals(i + 1, entry.getLine());
+            assertEquals("R" + (i + 1), entry.getId());
+            assertTrue(entry.isParsed());
+            assertEquals("R" + (i + 1), entry.getReaction().getID());
+        }
+    }
+
+    /**
+     * A failed line is reported with its line number and error, the others
+     * are parsed; blank and comment lines are skipped
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testPerLineErrors() throws Exception {
+        List<String> lines = new ArrayList<>();
+        lines.add("# reactions");
+        for (int i = 2; i <= 150; i++) {
+            if (i == 70) {
+                lines.add("");
+            } else if (i % 50 == 0) {
+                lines.add(BROKEN + " BAD" + i);
+            } else {
+                lines.add(ESTER);
+            }
+        }
+        List<Entry> entries = new ReactionSmilesReader(4, false).read(lines);
+        assertEquals(148, entries.size());
+        int previous = 0;
+        for (Entry entry : entries) {
+            assertTrue(entry.getLine() > previous);
+            previous = entry.getLine();
+            if (entry.getLine() % 50 == 0) {
+                assertFalse(entry.toString(), entry.isParsed());
+                assertEquals("BAD" + entry.getLine(), entry.getId());
+                assertNull(entry.getReaction());
+                assertNotNull(entry.getError());
+            } else {
+                assertTrue(entry.toString(), entry.isParsed());
+                assertEquals("smiles_" + entry.getLine(), entry.getId());
+                assertNull(entry.getError());
+            }
+        }
+        assertEquals(2, entries.get(0).getLine());
+        assertEquals(71, entries.get(68).getLine());
+    }
+
+    /**
+     * A stream is handed over in order while it is read, a bounded number of
+     * lines ahead of the consumer
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testStreamIsBounded() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (int i = 1; i <= 1000; i++) {
+            text.append(ESTER).append(" R").append(i).append('\n');
+        }
+        int[] read = new int[1];
+        BufferedReader reader = new BufferedReader(new StringReader(text.toString())) {
+            @Override
+            public String readLine() throws IOException {
+                String line = super.readLine();
+                if (line != null) {
+                    read[0]++;
+                }
+                return line;
+            }
+        };
+        List<Integer> ahead = new ArrayList<>();
+        List<Entry> entries = new ArrayList<>();
+        new ReactionSmilesReader(2, false).read(reader, entry -> {
+            ahead.add(read[0] - entry.getLine());
+            entries.add(entry);
+        });
+        assertEquals(1000, entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            assertEquals(i + 1, entries.get(i).getLine());
+            assertEquals("R" + (i + 1), entries.get(i).getId());
+        }
+        assertTrue(ahead.toString(), ahead.stream().allMatch(n -> n <= 4 * 64));
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2007-2020 Syed Asad Rahman <asad at ebi.ac.uk>.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package uk.ac.ebi.reactionblast.tools.descriptors;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.silent.Atom;
+import org.openscience.cdk.silent.AtomContainer;
+import org.openscience.cdk.silent.SilentChemObjectBuilder;
+import org.openscience.cdk.smiles.SmilesParser;
+import uk.ac.ebi.reactionblast.tools.descriptors.BulkMolecularDescriptor.Descriptor;
+import uk.ac.ebi.reactionblast.tools.descriptors.BulkMolecularDescriptor.DescriptorTable;
+
+/**
+ * The bulk columns match the single molecule descriptors, a failed molecule
+ * gives a NaN row.
+ *
+ * @author Syed Asad Rahman <asad at ebi.ac.uk>
+ */
+public class BulkMolecularDescriptorTest {
+
+    private static final String[] SMILES = {
+        "CC(=O)Oc1ccccc1C(=O)O",
+        "CN1C=NC2=C1C(=O)N(C(=O)N2C)C",
+        "OCC(O)C(O)C(O)C(O)CO",
+        "c1ccc2ccccc2c1"
+    };
+
+    private static final List<Descriptor> DESCRIPTORS = asList(Descriptor.LIPINSKI_FAILURES,
+            Descriptor.MOLECULAR_WEIGHT, Descriptor.HBOND_DONORS, Descriptor.TPSA, Descriptor.XLOGP);
+
+    /**
+     * Every column holds the value of the single molecule path, in input order
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testColumnsMatchSingleMolecule() throws Exception {
+        DescriptorTable table = new BulkMolecularDescriptor(DESCRIPTORS, 3).calculate(molecules());
+        assertEquals(SMILES.length, table.size());
+        assertEquals(0, table.getFailures());
+        LipinskiRuleOfFiveDescriptor lipinski = new LipinskiRuleOfFiveDescriptor();
+        for (int i = 0; i < SMILES.length; i++) {
+            assertEquals("m" + i, table.getIds()[i]);
+            CDKMolecularDescriptor cmd = new CDKMolecularDescriptor(parse(SMILES[i]));
+            assertEquals(SMILES[i], cmd.getMolecularWeight(),
+                    table.getColumn(Descriptor.MOLECULAR_WEIGHT)[i], 1e-9);
+            assertEquals(SMILES[i], cmd.getHBondDoners(false),
+                    table.getColumn(Descriptor.HBOND_DONORS)[i], 1e-9);
+            assertEquals(SMILES[i], cmd.getTPSADescriptor(false),
+                    table.getColumn(Descriptor.TPSA)[i], 1e-9);
+            assertEquals(SMILES[i], cmd.getXlogP(false),
+                    table.getColumn(Descriptor.XLOGP)[i], 1e-9);
+            int failures = lipinski.calculate(cmd.getXlogP(false), cmd.getHBondAcceptors(false),
+                    cmd.getHBondDoners(false), cmd.getMolecularWeight(),
+                    cmd.getRotatableBondsCountDescriptor(true, false));
+            assertEquals(SMILES[i], failures, table.getColumn(Descriptor.LIPINSKI_FAILURES)[i], 1e-9);
+        }
+    }
+
+    /**
+     * A molecule which can't be prepared gives NaN in every column, the
+     * others are not affected
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testFailedMoleculeIsNaN() throws Exception {
+        List<IAtomContainer> molecules = molecules();
+        IAtomContainer broken = new AtomContainer();
+        broken.addAtom(new Atom());
+        broken.setID("broken");
+        molecules.add(1, broken);
+
+        DescriptorTable table = new BulkMolecularDescriptor(DESCRIPTORS, 2).calculate(molecules);
+        assertEquals(SMILES.length + 1, table.size());
+        assertEquals(1, table.getFailures());
+        assertEquals("broken", table.getIds()[1]);
+        for (Descriptor descriptor : DESCRIPTORS) {
+            double[] column = table.getColumn(descriptor);
+            for (int i = 0; i < column.length; i++) {
+                assertEquals(descriptor + " " + i, i == 1, Double.isNaN(column[i]));
+            }
+        }
+    }
+
+    /**
+     * IDs with separators are quoted, the other columns stay in place
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testCSVQuotesIds() throws Exception {
+        IAtomContainer comma = parse("CCO");
+        comma.setID("ethanol, absolute");
+        IAtomContainer quote = parse("CO");
+        quote.setID("methyl \"wood\" alcohol");
+
+        DescriptorTable table = new BulkMolecularDescriptor(asList(Descriptor.HEAVY_ATOM_COUNT), 1)
+                .calculate(asList(comma, quote));
+        StringWriter writer = new StringWriter();
+        table.writeCSV(writer);
+        String[] lines = writer.toString().split("\n");
+        assertEquals(3, lines.length);
+        assertEquals("ID,HeavyAtomCount", lines[0]);
+        assertTrue(lines[1], lines[1].startsWith("\"ethanol, absolute\","));
+        assertTrue(lines[2], lines[2].startsWith("\"methyl \"\"wood\"\" alcohol\","));
+    }
+
+    private static List<IAtomContainer> molecules() throws Exception {
+        List<IAtomContainer> molecules = new ArrayList<>();
+        for (int i = 0; i < SMILES.length; i++) {
+            IAtomContainer molecule = parse(SMILES[i]);
+            molecule.setID("m" + i);
+            molecules.add(molecule);
+        }
+        return molecules;
+    }
+
+    private static IAtomContainer parse(String smiles) throws Exception {
+        return new SmilesParser(SilentChemObjectBuilder.getInstance()).parseSmiles(smiles);
+    }
+}